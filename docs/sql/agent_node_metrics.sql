@@ -0,0 +1,48 @@
+DROP TABLE IF EXISTS `agent_node_metrics`;
+
+CREATE TABLE `agent_node_metrics`
+(
+    `id`           bigint(20)  NOT NULL AUTO_INCREMENT COMMENT 'id',
+    `agent_id`     varchar(64) NOT NULL COMMENT 'agent节点的唯一标识',
+    `sample_time`  datetime    NOT NULL COMMENT '采样时间(心跳上报时间)',
+    `cpu_usage`    double      NULL DEFAULT NULL COMMENT 'CPU利用率',
+    `memory_usage` double      NULL DEFAULT NULL COMMENT '内存利用率',
+    `disk_usage`   double      NULL DEFAULT NULL COMMENT '磁盘利用率',
+
+    PRIMARY KEY (`id`) USING BTREE,
+    INDEX `idx_agent_time` (`agent_id`, `sample_time`) USING BTREE COMMENT '节点时间范围查询索引',
+    INDEX `idx_sample_time` (`sample_time`) USING BTREE COMMENT '汇总与过期清理索引'
+) ENGINE = InnoDB
+  CHARACTER SET = utf8mb4
+  COLLATE = utf8mb4_general_ci COMMENT = 'agent节点资源使用率采样表'
+  ROW_FORMAT = DYNAMIC;
+
+DROP TABLE IF EXISTS `agent_node_metrics_rollup`;
+
+CREATE TABLE `agent_node_metrics_rollup`
+(
+    `id`           bigint(20)  NOT NULL AUTO_INCREMENT COMMENT 'id',
+    `agent_id`     varchar(64) NOT NULL COMMENT 'agent节点的唯一标识',
+    `resolution`   varchar(8)  NOT NULL COMMENT '汇总粒度(MINUTE、HOUR)',
+    `bucket_time`  datetime    NOT NULL COMMENT '汇总时间段的开始时间',
+    `samples`      int(11)     NOT NULL COMMENT '采样次数',
+    `cpu_sum`      double      NULL DEFAULT NULL COMMENT 'CPU利用率总和',
+    `cpu_count`    int(11)     NOT NULL DEFAULT 0 COMMENT 'CPU利用率非空采样次数',
+    `cpu_avg`      double      NULL DEFAULT NULL COMMENT 'CPU利用率平均值',
+    `cpu_max`      double      NULL DEFAULT NULL COMMENT 'CPU利用率最大值',
+    `memory_sum`   double      NULL DEFAULT NULL COMMENT '内存利用率总和',
+    `memory_count` int(11)     NOT NULL DEFAULT 0 COMMENT '内存利用率非空采样次数',
+    `memory_avg`   double      NULL DEFAULT NULL COMMENT '内存利用率平均值',
+    `memory_max`   double      NULL DEFAULT NULL COMMENT '内存利用率最大值',
+    `disk_sum`     double      NULL DEFAULT NULL COMMENT '磁盘利用率总和',
+    `disk_count`   int(11)     NOT NULL DEFAULT 0 COMMENT '磁盘利用率非空采样次数',
+    `disk_avg`     double      NULL DEFAULT NULL COMMENT '磁盘利用率平均值',
+    `disk_max`     double      NULL DEFAULT NULL COMMENT '磁盘利用率最大值',
+
+    PRIMARY KEY (`id`) USING BTREE,
+    UNIQUE INDEX `uk_agent_resolution_bucket` (`agent_id`, `resolution`, `bucket_time`) USING BTREE COMMENT '节点汇总时间段唯一索引',
+    INDEX `idx_resolution_bucket` (`resolution`, `bucket_time`) USING BTREE COMMENT '过期清理索引'
+) ENGINE = InnoDB
+  CHARACTER SET = utf8mb4
+  COLLATE = utf8mb4_general_ci COMMENT = 'agent节点资源使用率汇总表'
+  ROW_FORMAT = DYNAMIC;
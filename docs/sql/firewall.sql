@@ -22,12 +22,20 @@ CREATE TABLE `firewall_port_rule`
     `policy`      bit(1)       NULL DEFAULT NULL COMMENT '端口策略(允许，拒绝)',
     `source_rule` varchar(255) NULL DEFAULT NULL COMMENT '源IP地址或CIDR',
     `descriptor`  varchar(255) NULL DEFAULT NULL COMMENT '端口描述信息',
+    `fingerprint` char(32)     NULL DEFAULT NULL COMMENT '规则内容指纹(family,port,protocol,source,policy,agent_id,permanent,type,zone)',
 
     PRIMARY KEY (`id`) USING BTREE,
-    UNIQUE INDEX `uk_agent_port_protocol`(`agent_id`, `permanent`, `type`, `zone`, `family`, `port`, `protocol`, `source_rule`, `policy`) COMMENT '组合唯一索引'
+    UNIQUE INDEX `uk_fingerprint` (`fingerprint`) USING BTREE COMMENT '规则内容指纹唯一索引',
+    INDEX `idx_agent_id` (`agent_id`) USING BTREE COMMENT '节点索引'
 ) ENGINE = InnoDB
   CHARACTER SET = utf8mb4
   COLLATE = utf8mb4_general_ci COMMENT = '防火墙端口规则表'
   ROW_FORMAT = DYNAMIC;
 
-
+-- 已有数据库升级：规则内容指纹代替9列组合唯一索引
+-- 已有规则的 fingerprint 为 NULL，服务启动后由 PortRuleService.backfillFingerprints 回填（唯一索引允许多个 NULL）
+-- ALTER TABLE `firewall_port_rule`
+--     ADD COLUMN `fingerprint` char(32) NULL DEFAULT NULL COMMENT '规则内容指纹(family,port,protocol,source,policy,agent_id,permanent,type,zone)' AFTER `descriptor`,
+--     DROP INDEX `uk_agent_port_protocol`,
+--     ADD UNIQUE INDEX `uk_fingerprint` (`fingerprint`) USING BTREE COMMENT '规则内容指纹唯一索引',
+--     ADD INDEX `idx_agent_id` (`agent_id`) USING BTREE COMMENT '节点索引';
@@ -0,0 +1,30 @@
+DROP TABLE IF EXISTS `firewall_command_outbox`;
+
+CREATE TABLE `firewall_command_outbox`
+(
+    `id`                bigint(20)   NOT NULL AUTO_INCREMENT COMMENT 'id',
+    `create_time`       datetime     NULL DEFAULT NULL COMMENT '创建时间',
+    `created_by`        bigint(20)   NULL DEFAULT NULL COMMENT '创建人',
+    `update_time`       datetime     NULL DEFAULT NULL COMMENT '修改时间',
+    `updated_by`        bigint(20)   NULL DEFAULT NULL COMMENT '修改人',
+
+    `agent_id`          varchar(64)  NOT NULL COMMENT 'agent节点的唯一标识',
+    `stream_suffix`     varchar(64)  NOT NULL COMMENT 'stream后缀(portRule、portInfo、firewallStatusInfo)',
+    `op_type`           varchar(16)  NOT NULL COMMENT '操作类型(INSERT、UPDATE、DELETE)',
+    `payload`           mediumtext   NOT NULL COMMENT '命令消息(JSON)',
+    `status`            varchar(16)  NOT NULL COMMENT '状态(PENDING、SENDING、SUCCEEDED、FAILED)',
+    `attempts`          int(11)      NOT NULL DEFAULT 0 COMMENT '已下发次数',
+    `next_attempt_time` datetime     NOT NULL COMMENT '最早下发时间',
+    `claim_token`       varchar(32)  NULL DEFAULT NULL COMMENT '领取批次标识',
+    `sent_time`         datetime     NULL DEFAULT NULL COMMENT '最近一次下发时间',
+    `last_error`        varchar(512) NULL DEFAULT NULL COMMENT '最近一次失败原因',
+
+    PRIMARY KEY (`id`) USING BTREE,
+    INDEX `idx_status_next_attempt` (`status`, `next_attempt_time`) USING BTREE COMMENT '待下发命令查询索引',
+    INDEX `idx_claim_token` (`claim_token`) USING BTREE COMMENT '领取批次索引',
+    INDEX `idx_agent_suffix_status` (`agent_id`, `stream_suffix`, `status`) USING BTREE COMMENT '节点未完成命令查询索引',
+    INDEX `idx_status_sent_time` (`status`, `sent_time`) USING BTREE COMMENT '已完成命令清理索引'
+) ENGINE = InnoDB
+  CHARACTER SET = utf8mb4
+  COLLATE = utf8mb4_general_ci COMMENT = 'agent命令发件箱表'
+  ROW_FORMAT = DYNAMIC;
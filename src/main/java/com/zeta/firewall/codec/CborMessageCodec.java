@@ -0,0 +1,116 @@
+package com.zeta.firewall.codec;
+
+import cn.hutool.core.date.DatePattern;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
+import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
+import com.zeta.firewall.model.dto.RedisCommandMessage;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * CBOR编码
+ *
+ * 消息格式：
+ * <pre>
+ * codec   cbor
+ * version 1
+ * schema  消息结构id，见 {@link MessageSchema}，0 表示 primaryKeyColumns 在消息体中
+ * payload CBOR编码的 RedisCommandMessage（字段名与JSON编码一致，值为null的字段不发送）
+ * </pre>
+ * agent节点的响应同样使用 codec、payload 字段，payload 解码后的顶层字段即响应字段。
+ */
+@Component
+public class CborMessageCodec implements MessageCodec {
+
+    public static final String NAME = "cbor";
+    public static final String VERSION = "1";
+
+    private static final ObjectMapper cborMapper = new CBORMapper();
+
+    static {
+        cborMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        cborMapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+        cborMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        cborMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+        JavaTimeModule javaTimeModule = new JavaTimeModule();
+        javaTimeModule.addSerializer(LocalDateTime.class, new LocalDateTimeSerializer(DatePattern.NORM_DATETIME_FORMATTER));
+        javaTimeModule.addDeserializer(LocalDateTime.class, new LocalDateTimeDeserializer(DatePattern.NORM_DATETIME_FORMATTER));
+        cborMapper.registerModule(new Jdk8Module());
+        cborMapper.registerModule(javaTimeModule);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Map<String, byte[]> encode(RedisCommandMessage<?> message) {
+        try {
+            ObjectNode payload = cborMapper.valueToTree(message);
+
+            // 已知结构的主键列只发送结构id
+            MessageSchema schema = MessageSchema.fromPrimaryKeyColumns(message.getPrimaryKeyColumns());
+            if (schema != null) {
+                payload.remove("primaryKeyColumns");
+            }
+
+            Map<String, byte[]> fields = new LinkedHashMap<>();
+            fields.put(FIELD_CODEC, ascii(NAME));
+            fields.put(FIELD_VERSION, ascii(VERSION));
+            fields.put(FIELD_SCHEMA, ascii(String.valueOf(schema == null ? MessageSchema.NONE : schema.getId())));
+            fields.put(FIELD_PAYLOAD, cborMapper.writeValueAsBytes(payload));
+            return fields;
+        } catch (IOException e) {
+            throw new RuntimeException("CBOR encoding failed", e);
+        }
+    }
+
+    @Override
+    public Map<Object, Object> decode(Map<String, byte[]> fields) {
+        Map<Object, Object> value = new LinkedHashMap<>();
+        fields.forEach((key, bytes) -> {
+            if (!FIELD_PAYLOAD.equals(key)) {
+                value.put(key, bytes == null ? null : new String(bytes, StandardCharsets.UTF_8));
+            }
+        });
+
+        byte[] payload = fields.get(FIELD_PAYLOAD);
+        if (payload == null) {
+            return value;
+        }
+        try {
+            JsonNode root = cborMapper.readTree(payload);
+            Iterator<Map.Entry<String, JsonNode>> iterator = root.fields();
+            while (iterator.hasNext()) {
+                Map.Entry<String, JsonNode> field = iterator.next();
+                JsonNode node = field.getValue();
+                // 简单字段转为字符串，与JSON编码的响应保持一致；复杂字段保留为 JsonNode，避免再转一次JSON字符串
+                value.put(field.getKey(), node.isNull() ? null : node.isValueNode() ? node.asText() : node);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("CBOR decoding failed", e);
+        }
+        return value;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
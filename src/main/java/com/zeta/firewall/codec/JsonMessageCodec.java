@@ -0,0 +1,40 @@
+package com.zeta.firewall.codec;
+
+import com.zeta.firewall.model.dto.RedisCommandMessage;
+import com.zeta.firewall.util.JsonMessageConverter;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JSON编码
+ *
+ * 与旧版本agent节点兼容的格式：每个字段单独存储，复杂字段为JSON字符串，不带 codec 字段
+ */
+@Component
+public class JsonMessageCodec implements MessageCodec {
+
+    public static final String NAME = "json";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Map<String, byte[]> encode(RedisCommandMessage<?> message) {
+        Map<String, byte[]> fields = new LinkedHashMap<>();
+        JsonMessageConverter.beanToMap(message)
+                .forEach((key, value) -> fields.put(key, value.getBytes(StandardCharsets.UTF_8)));
+        return fields;
+    }
+
+    @Override
+    public Map<Object, Object> decode(Map<String, byte[]> fields) {
+        Map<Object, Object> value = new LinkedHashMap<>();
+        fields.forEach((key, bytes) -> value.put(key, bytes == null ? null : new String(bytes, StandardCharsets.UTF_8)));
+        return value;
+    }
+}
@@ -0,0 +1,48 @@
+package com.zeta.firewall.codec;
+
+import com.zeta.firewall.model.dto.RedisCommandMessage;
+
+import java.util.Map;
+
+/**
+ * 命令消息编解码器
+ *
+ * 负责 RedisCommandMessage 与 redis stream 消息字段之间的转换，以及agent响应消息的解析。
+ * 除JSON编码外，其他编码的消息都带有 codec、version 字段，agent节点据此选择解码方式。
+ */
+public interface MessageCodec {
+
+    /** 编码名称字段 */
+    String FIELD_CODEC = "codec";
+    /** 编码格式版本字段 */
+    String FIELD_VERSION = "version";
+    /** 消息结构id字段，见 {@link MessageSchema} */
+    String FIELD_SCHEMA = "schema";
+    /** 二进制消息体字段 */
+    String FIELD_PAYLOAD = "payload";
+
+    /**
+     * 编码名称，与消息中的 codec 字段一致
+     *
+     * @return 编码名称
+     */
+    String name();
+
+    /**
+     * 将命令消息编码为 redis stream 的消息字段
+     *
+     * @param message 命令消息
+     * @return 消息字段
+     */
+    Map<String, byte[]> encode(RedisCommandMessage<?> message);
+
+    /**
+     * 解析agent节点的响应消息
+     * 简单字段解析为字符串，data 等复杂字段可能是JSON字符串或 JsonNode，
+     * 使用 {@link com.zeta.firewall.util.JsonMessageConverter#readData} 读取
+     *
+     * @param fields 响应消息字段
+     * @return 响应内容
+     */
+    Map<Object, Object> decode(Map<String, byte[]> fields);
+}
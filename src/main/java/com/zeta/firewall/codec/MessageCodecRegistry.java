@@ -0,0 +1,69 @@
+package com.zeta.firewall.codec;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.service.AgentVersionRegistry;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 编解码器注册表
+ *
+ * 按agent节点心跳上报的 clientVersion（见 {@link AgentVersionRegistry}）协商编码：支持二进制编码的节点使用CBOR，其余节点（含尚未上报心跳的节点）使用JSON。
+ * 解码响应时按消息中的 codec 字段选择编解码器，没有 codec 字段的响应按JSON解析。
+ */
+@Component
+public class MessageCodecRegistry {
+
+    private final Map<String, MessageCodec> codecs = new ConcurrentHashMap<>();
+    private final MessageCodec fallbackCodec;
+    private final FirewallProperties.Codec properties;
+    private final AgentVersionRegistry agentVersionRegistry;
+
+    public MessageCodecRegistry(List<MessageCodec> codecList, FirewallProperties firewallProperties,
+                                AgentVersionRegistry agentVersionRegistry) {
+        codecList.forEach(codec -> codecs.put(codec.name(), codec));
+        this.fallbackCodec = codecs.computeIfAbsent(JsonMessageCodec.NAME, name -> new JsonMessageCodec());
+        this.properties = firewallProperties.getCodec();
+        this.agentVersionRegistry = agentVersionRegistry;
+    }
+
+    /**
+     * 获取向指定节点发送命令时使用的编解码器
+     *
+     * @param agentId 节点ID
+     * @return 编解码器
+     */
+    public MessageCodec codecFor(String agentId) {
+        if (!Boolean.TRUE.equals(properties.getBinaryEnabled())) {
+            return fallbackCodec;
+        }
+        MessageCodec binary = codecs.get(CborMessageCodec.NAME);
+        if (binary == null || !agentVersionRegistry.isAtLeast(agentId, properties.getBinaryMinClientVersion())) {
+            return fallbackCodec;
+        }
+        return binary;
+    }
+
+    /**
+     * 解析agent节点的响应消息
+     *
+     * @param fields 响应消息字段
+     * @return 响应内容
+     */
+    public Map<Object, Object> decode(Map<String, byte[]> fields) {
+        byte[] codecName = fields.get(MessageCodec.FIELD_CODEC);
+        if (codecName == null) {
+            return fallbackCodec.decode(fields);
+        }
+        String name = new String(codecName, StandardCharsets.UTF_8);
+        MessageCodec codec = codecs.get(name);
+        if (codec == null) {
+            throw new IllegalArgumentException("Unsupported message codec: " + name);
+        }
+        return codec.decode(fields);
+    }
+}
@@ -0,0 +1,88 @@
+package com.zeta.firewall.codec;
+
+import java.util.List;
+
+/**
+ * 命令消息结构
+ *
+ * 同一类命令每次发送的 primaryKeyColumns 都相同，二进制编码时只发送结构id，agent节点按id还原主键列。
+ * id 一经发布不可修改，新增结构只能追加新的id。
+ */
+public enum MessageSchema {
+    /**
+     * 端口规则
+     */
+    PORT_RULE(1, List.of("family", "port", "protocol", "sourceRule", "policy", "agentId", "permanent", "type", "zone")),
+
+    /**
+     * 端口规则（刷新节点时使用）
+     */
+    PORT_RULE_KEY(2, List.of("port", "protocol")),
+
+    /**
+     * 端口使用信息
+     */
+    PORT_INFO(3, List.of("agentId", "protocol", "portNumber")),
+
+    /**
+     * 防火墙状态信息
+     */
+    FIREWALL_STATUS(4, List.of("agentId", "firewallType")),
+
+    /**
+     * 端口规则（按规则内容指纹匹配）
+     */
+    PORT_RULE_FINGERPRINT(5, List.of("fingerprint"));
+
+    /** 未匹配到结构时使用的id，primaryKeyColumns 随消息发送 */
+    public static final int NONE = 0;
+
+    private final int id;
+    private final List<String> primaryKeyColumns;
+
+    MessageSchema(int id, List<String> primaryKeyColumns) {
+        this.id = id;
+        this.primaryKeyColumns = primaryKeyColumns;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public List<String> getPrimaryKeyColumns() {
+        return primaryKeyColumns;
+    }
+
+    /**
+     * 根据主键列查找消息结构
+     *
+     * @param primaryKeyColumns 主键列
+     * @return 消息结构，未找到时返回null
+     */
+    public static MessageSchema fromPrimaryKeyColumns(List<String> primaryKeyColumns) {
+        if (primaryKeyColumns == null) {
+            return null;
+        }
+        for (MessageSchema schema : values()) {
+            if (schema.primaryKeyColumns.equals(primaryKeyColumns)) {
+                return schema;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 根据id查找消息结构
+     *
+     * @param id 结构id
+     * @return 消息结构，未找到时返回null
+     */
+    public static MessageSchema fromId(int id) {
+        for (MessageSchema schema : values()) {
+            if (schema.id == id) {
+                return schema;
+            }
+        }
+        return null;
+    }
+}
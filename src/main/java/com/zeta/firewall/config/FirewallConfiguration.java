@@ -0,0 +1,93 @@
+package com.zeta.firewall.config;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * 防火墙模块配置
+ */
+@Configuration
+@EnableConfigurationProperties(FirewallProperties.class)
+public class FirewallConfiguration {
+
+    /**
+     * 批量操作线程池
+     *
+     * 核心线程数与最大线程数都等于配置的并发数，多余的任务进入队列排队，
+     * 保证同一时刻向agent节点下发的命令数量不超过并发上限；
+     * 队列有界，队列已满时使用默认的AbortPolicy拒绝任务，由调用方快速失败，而不是让请求无限排队
+     *
+     * @param firewallProperties 防火墙模块配置
+     * @return ThreadPoolTaskExecutor
+     */
+    @Bean("bulkOperationExecutor")
+    public ThreadPoolTaskExecutor bulkOperationExecutor(FirewallProperties firewallProperties) {
+        int concurrency = Math.max(1, firewallProperties.getBulk().getConcurrency());
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        executor.setQueueCapacity(Math.max(0, firewallProperties.getBulk().getQueueCapacity()));
+        executor.setThreadNamePrefix("firewall-bulk-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 发件箱命令结果回写线程池
+     *
+     * agent节点的响应由分发器线程完成，回写数据库、执行补偿等耗时操作放到该线程池中执行
+     *
+     * @param firewallProperties 防火墙模块配置
+     * @return ThreadPoolTaskExecutor
+     */
+    @Bean("outboxExecutor")
+    public ThreadPoolTaskExecutor outboxExecutor(FirewallProperties firewallProperties) {
+        int threads = Math.max(1, firewallProperties.getOutbox().getResultThreads());
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("firewall-outbox-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 端口信息同步调度线程池
+     *
+     * 合并后的端口规则变化事件在该单线程中依次处理，不占用请求线程和定时任务通道
+     *
+     * @return ThreadPoolTaskScheduler
+     */
+    @Bean("portSyncScheduler")
+    public ThreadPoolTaskScheduler portSyncScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("firewall-port-sync-");
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduler.initialize();
+        return scheduler;
+    }
+
+    /**
+     * 端口信息解析线程池
+     *
+     * 定时同步时每一页节点上报的端口信息在该线程池中并发解析，线程数固定，避免节点数多时占用过多CPU
+     *
+     * @param firewallProperties 防火墙模块配置
+     * @return ThreadPoolTaskExecutor
+     */
+    @Bean("portInfoParseExecutor")
+    public ThreadPoolTaskExecutor portInfoParseExecutor(FirewallProperties firewallProperties) {
+        int threads = Math.max(1, firewallProperties.getPortSync().getParseThreads());
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("firewall-port-parse-");
+        executor.initialize();
+        return executor;
+    }
+}
@@ -1,29 +1,26 @@
 package com.zeta.firewall.config;
 
-import com.zeta.firewall.schedule.HeartBeatService;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.zeta.firewall.schedule.JobLaneScheduler;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.SchedulingConfigurer;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 
+/**
+ * 定时任务配置
+ *
+ * 每个 @Scheduled 任务在 JobLaneScheduler 中独立的单线程通道执行，
+ * 避免端口信息同步等耗时任务阻塞心跳检查
+ */
 @Configuration
 public class SchedulingConfig implements SchedulingConfigurer {
-    private static final Logger logger = LoggerFactory.getLogger(HeartBeatService.class);
+    private final JobLaneScheduler jobLaneScheduler;
+
+    public SchedulingConfig(JobLaneScheduler jobLaneScheduler) {
+        this.jobLaneScheduler = jobLaneScheduler;
+    }
 
     @Override
     public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
-        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
-        scheduler.setPoolSize(1);  // 线程池大小
-        scheduler.setThreadNamePrefix("heartbeat-");
-        scheduler.setWaitForTasksToCompleteOnShutdown(true);  // 优雅关闭
-        scheduler.setAwaitTerminationSeconds(60);  // 关闭超时时间
-        scheduler.setErrorHandler(throwable -> {
-            // 自定义错误处理
-            logger.error("Task execution failed", throwable);
-        });
-        scheduler.initialize();
-        taskRegistrar.setTaskScheduler(scheduler);
+        taskRegistrar.setTaskScheduler(jobLaneScheduler);
     }
-}
\ No newline at end of file
+}
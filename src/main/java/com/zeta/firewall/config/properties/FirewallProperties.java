@@ -0,0 +1,1099 @@
+package com.zeta.firewall.config.properties;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 防火墙模块配置
+ *
+ * master节点与agent节点之间命令收发相关的配置
+ */
+@ConfigurationProperties(prefix = FirewallProperties.PREFIX)
+public class FirewallProperties {
+    public static final String PREFIX = "zeta.firewall";
+
+    /** agent命令配置 */
+    private Command command = new Command();
+
+    /** 响应分发配置 */
+    private Dispatcher dispatcher = new Dispatcher();
+
+    /** 批量操作配置 */
+    private Bulk bulk = new Bulk();
+
+    /** 命令编码配置 */
+    private Codec codec = new Codec();
+
+    /** 命令stream保留策略配置 */
+    private Retention retention = new Retention();
+
+    /** 优先级通道配置 */
+    private Lane lane = new Lane();
+
+    /** agent节点熔断配置 */
+    private Breaker breaker = new Breaker();
+
+    /** 响应延迟统计与自适应超时配置 */
+    private Latency latency = new Latency();
+
+    /** 命令发件箱配置 */
+    private Outbox outbox = new Outbox();
+
+    /** 心跳存活索引配置 */
+    private Liveness liveness = new Liveness();
+
+    /** 节点资源使用率时序存储配置 */
+    private Metrics metrics = new Metrics();
+
+    /** 多master实例分片配置 */
+    private Shard shard = new Shard();
+
+    /** 后台定时任务调度配置 */
+    private Scheduler scheduler = new Scheduler();
+
+    /** 端口信息同步配置 */
+    private PortSync portSync = new PortSync();
+
+
+    /**
+     * agent命令配置
+     */
+    public static class Command {
+        /** 等待agent响应的默认超时时间（毫秒），默认：12000 */
+        private Long timeoutMillis = 12000L;
+
+        /** 是否合并正在等待响应的相同查询命令，默认：true */
+        private Boolean coalesceQueries = true;
+
+        public Long getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
+        public void setTimeoutMillis(Long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        public Boolean getCoalesceQueries() {
+            return coalesceQueries;
+        }
+
+        public void setCoalesceQueries(Boolean coalesceQueries) {
+            this.coalesceQueries = coalesceQueries;
+        }
+    }
+
+    /**
+     * 响应分发配置
+     *
+     * 每个分片一个常驻线程，使用 XREADGROUP BLOCK 同时阻塞读取分片内全部的响应stream
+     */
+    public static class Dispatcher {
+        /** 分片数量，即常驻读取线程数，默认：4 */
+        private Integer shards = 4;
+
+        /** 单次 XREADGROUP 阻塞的最长时间（毫秒），默认：1000 */
+        private Long blockMillis = 1000L;
+
+        /** 单次 XREADGROUP 最多读取的消息条数，默认：100 */
+        private Integer batchSize = 100;
+
+        /** 读取响应使用的消费者组名前缀，实际组名为 前缀@实例id，每个master实例一个组 */
+        private String groupName = "firewall_response_dispatcher";
+
+        /** 其他实例的消费者组全部消费者空闲超过该时间（毫秒）后视为已退出并删除，默认：600000 */
+        private Long staleGroupMillis = 600000L;
+
+        /** 单个分块响应累计的最大字节数，超过后该请求失败，默认：33554432（32MB） */
+        private Long maxResponseBytes = 32L * 1024 * 1024;
+
+        public Integer getShards() {
+            return shards;
+        }
+
+        public void setShards(Integer shards) {
+            this.shards = shards;
+        }
+
+        public Long getBlockMillis() {
+            return blockMillis;
+        }
+
+        public void setBlockMillis(Long blockMillis) {
+            this.blockMillis = blockMillis;
+        }
+
+        public Integer getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(Integer batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public String getGroupName() {
+            return groupName;
+        }
+
+        public void setGroupName(String groupName) {
+            this.groupName = groupName;
+        }
+
+        public Long getStaleGroupMillis() {
+            return staleGroupMillis;
+        }
+
+        public void setStaleGroupMillis(Long staleGroupMillis) {
+            this.staleGroupMillis = staleGroupMillis;
+        }
+
+        public Long getMaxResponseBytes() {
+            return maxResponseBytes;
+        }
+
+        public void setMaxResponseBytes(Long maxResponseBytes) {
+            this.maxResponseBytes = maxResponseBytes;
+        }
+    }
+
+    /**
+     * 批量操作配置
+     */
+    public static class Bulk {
+        /** 同时向agent节点下发命令的最大并发数，默认：16 */
+        private Integer concurrency = 16;
+
+        /** 单次批量操作最多允许的节点数量，默认：1000 */
+        private Integer maxNodes = 1000;
+
+        /** 批量操作线程池的等待队列长度，队列已满时新的批量操作直接失败，默认：1000 */
+        private Integer queueCapacity = 1000;
+
+        public Integer getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(Integer concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public Integer getMaxNodes() {
+            return maxNodes;
+        }
+
+        public void setMaxNodes(Integer maxNodes) {
+            this.maxNodes = maxNodes;
+        }
+
+        public Integer getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(Integer queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    /**
+     * 命令编码配置
+     *
+     * agent节点通过心跳上报 clientVersion，版本不低于 binaryMinClientVersion 的节点使用CBOR编码，其余节点使用JSON编码；
+     * 版本不低于 portRangeMinClientVersion 的节点，端口查询命令的 port 参数按区间下发，其余节点展开为单个端口；
+     * 版本不低于 fingerprintMinClientVersion 的节点，端口规则命令按规则指纹 fingerprint 匹配规则
+     */
+    public static class Codec {
+        /** 是否启用二进制(CBOR)编码，默认：true */
+        private Boolean binaryEnabled = true;
+
+        /** 支持二进制编码的最低agent版本，默认：2.0.0 */
+        private String binaryMinClientVersion = "2.0.0";
+
+        /** 支持端口区间查询参数的最低agent版本，默认：2.0.0 */
+        private String portRangeMinClientVersion = "2.0.0";
+
+        /** 支持按规则指纹匹配端口规则的最低agent版本，默认：2.0.0 */
+        private String fingerprintMinClientVersion = "2.0.0";
+
+        public Boolean getBinaryEnabled() {
+            return binaryEnabled;
+        }
+
+        public void setBinaryEnabled(Boolean binaryEnabled) {
+            this.binaryEnabled = binaryEnabled;
+        }
+
+        public String getBinaryMinClientVersion() {
+            return binaryMinClientVersion;
+        }
+
+        public void setBinaryMinClientVersion(String binaryMinClientVersion) {
+            this.binaryMinClientVersion = binaryMinClientVersion;
+        }
+
+        public String getPortRangeMinClientVersion() {
+            return portRangeMinClientVersion;
+        }
+
+        public void setPortRangeMinClientVersion(String portRangeMinClientVersion) {
+            this.portRangeMinClientVersion = portRangeMinClientVersion;
+        }
+
+        public String getFingerprintMinClientVersion() {
+            return fingerprintMinClientVersion;
+        }
+
+        public void setFingerprintMinClientVersion(String fingerprintMinClientVersion) {
+            this.fingerprintMinClientVersion = fingerprintMinClientVersion;
+        }
+    }
+
+    /**
+     * 优先级通道配置
+     *
+     * 版本不低于 minClientVersion 的agent节点，LOW 优先级的命令发布到单独的 :low 通道
+     */
+    public static class Lane {
+        /** 是否启用优先级通道，默认：true */
+        private Boolean enabled = true;
+
+        /** 支持优先级通道的最低agent版本，默认：2.0.0 */
+        private String minClientVersion = "2.0.0";
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getMinClientVersion() {
+            return minClientVersion;
+        }
+
+        public void setMinClientVersion(String minClientVersion) {
+            this.minClientVersion = minClientVersion;
+        }
+    }
+
+    /**
+     * agent节点熔断配置
+     *
+     * 心跳离线或连续超时 failureThreshold 次的节点熔断，熔断期间的命令直接失败
+     */
+    public static class Breaker {
+        /** 是否启用熔断，默认：true */
+        private Boolean enabled = true;
+
+        /** 触发熔断的连续超时次数，默认：3 */
+        private Integer failureThreshold = 3;
+
+        /** 超时引起的熔断持续多久后放行探测命令（毫秒），默认：30000；心跳离线引起的熔断在心跳恢复后放行 */
+        private Long openMillis = 30000L;
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Integer getFailureThreshold() {
+            return failureThreshold;
+        }
+
+        public void setFailureThreshold(Integer failureThreshold) {
+            this.failureThreshold = failureThreshold;
+        }
+
+        public Long getOpenMillis() {
+            return openMillis;
+        }
+
+        public void setOpenMillis(Long openMillis) {
+            this.openMillis = openMillis;
+        }
+    }
+
+    /**
+     * 响应延迟统计与自适应超时配置
+     *
+     * 按节点和操作统计响应延迟，未指定超时时间的命令使用 percentile 分位的延迟 × multiplier 作为超时时间，限制在 [floorMillis, capMillis] 之间
+     */
+    public static class Latency {
+        /** 是否根据响应延迟计算超时时间，关闭时使用 command.timeoutMillis，默认：true */
+        private Boolean adaptiveTimeout = true;
+
+        /** 延迟统计的滚动窗口（毫秒），统计最近 1~2 个窗口的数据，默认：300000 */
+        private Long windowMillis = 300000L;
+
+        /** 计算超时时间所需的最少样本数，不足时使用 command.timeoutMillis，默认：20 */
+        private Integer minSamples = 20;
+
+        /** 计算超时时间使用的延迟分位，默认：0.99 */
+        private Double percentile = 0.99;
+
+        /** 超时时间相对延迟分位的倍数，默认：3.0 */
+        private Double multiplier = 3.0;
+
+        /** 超时时间下限（毫秒），默认：1000 */
+        private Long floorMillis = 1000L;
+
+        /** 超时时间上限（毫秒），窗口内有超时的命令时使用该值，默认：30000 */
+        private Long capMillis = 30000L;
+
+        public Boolean getAdaptiveTimeout() {
+            return adaptiveTimeout;
+        }
+
+        public void setAdaptiveTimeout(Boolean adaptiveTimeout) {
+            this.adaptiveTimeout = adaptiveTimeout;
+        }
+
+        public Long getWindowMillis() {
+            return windowMillis;
+        }
+
+        public void setWindowMillis(Long windowMillis) {
+            this.windowMillis = windowMillis;
+        }
+
+        public Integer getMinSamples() {
+            return minSamples;
+        }
+
+        public void setMinSamples(Integer minSamples) {
+            this.minSamples = minSamples;
+        }
+
+        public Double getPercentile() {
+            return percentile;
+        }
+
+        public void setPercentile(Double percentile) {
+            this.percentile = percentile;
+        }
+
+        public Double getMultiplier() {
+            return multiplier;
+        }
+
+        public void setMultiplier(Double multiplier) {
+            this.multiplier = multiplier;
+        }
+
+        public Long getFloorMillis() {
+            return floorMillis;
+        }
+
+        public void setFloorMillis(Long floorMillis) {
+            this.floorMillis = floorMillis;
+        }
+
+        public Long getCapMillis() {
+            return capMillis;
+        }
+
+        public void setCapMillis(Long capMillis) {
+            this.capMillis = capMillis;
+        }
+    }
+
+    /**
+     * 命令发件箱配置
+     *
+     * 端口规则的增删改在事务内把命令写入发件箱，由后台批量下发并异步回写结果，事务不等待agent节点响应
+     */
+    public static class Outbox {
+        /** 是否启用发件箱命令下发，默认：true */
+        private Boolean enabled = true;
+
+        /** 领取待下发命令的间隔（毫秒），默认：500 */
+        private Long relayIntervalMillis = 500L;
+
+        /** 每次最多领取的命令数，默认：100 */
+        private Integer batchSize = 100;
+
+        /** 超时或节点熔断时最多下发的次数，超过后执行补偿，默认：3 */
+        private Integer maxAttempts = 3;
+
+        /** 重新下发的等待时间（毫秒），按已下发次数递增，默认：5000 */
+        private Long retryBackoffMillis = 5000L;
+
+        /** 下发后多久没有结果视为丢失并重新下发（毫秒），应大于命令超时上限，默认：120000 */
+        private Long sendingTimeoutMillis = 120000L;
+
+        /** 回写执行结果的线程数，默认：2 */
+        private Integer resultThreads = 2;
+
+        /** 已完成（成功或最终失败）的命令保留小时数，按最近一次下发时间计算，默认：72 */
+        private Integer retentionHours = 72;
+
+        /** 清理已完成命令的间隔（毫秒），默认：3600000 */
+        private Long purgeIntervalMillis = 3600000L;
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Long getRelayIntervalMillis() {
+            return relayIntervalMillis;
+        }
+
+        public void setRelayIntervalMillis(Long relayIntervalMillis) {
+            this.relayIntervalMillis = relayIntervalMillis;
+        }
+
+        public Integer getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(Integer batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Integer getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(Integer maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public Long getRetryBackoffMillis() {
+            return retryBackoffMillis;
+        }
+
+        public void setRetryBackoffMillis(Long retryBackoffMillis) {
+            this.retryBackoffMillis = retryBackoffMillis;
+        }
+
+        public Long getSendingTimeoutMillis() {
+            return sendingTimeoutMillis;
+        }
+
+        public void setSendingTimeoutMillis(Long sendingTimeoutMillis) {
+            this.sendingTimeoutMillis = sendingTimeoutMillis;
+        }
+
+        public Integer getResultThreads() {
+            return resultThreads;
+        }
+
+        public void setResultThreads(Integer resultThreads) {
+            this.resultThreads = resultThreads;
+        }
+
+        public Integer getRetentionHours() {
+            return retentionHours;
+        }
+
+        public void setRetentionHours(Integer retentionHours) {
+            this.retentionHours = retentionHours;
+        }
+
+        public Long getPurgeIntervalMillis() {
+            return purgeIntervalMillis;
+        }
+
+        public void setPurgeIntervalMillis(Long purgeIntervalMillis) {
+            this.purgeIntervalMillis = purgeIntervalMillis;
+        }
+    }
+
+    /**
+     * 心跳存活索引配置
+     *
+     * 存活索引 firewall:heartbeats:liveness 为 ZSET，member 为 agentId，score 为最近一次心跳时间戳（秒），
+     * 心跳检查通过 ZRANGEBYSCORE 找出状态变化的节点，不必每轮解析全部节点的心跳数据
+     */
+    public static class Liveness {
+        /** 是否启用存活索引，关闭时每轮全量扫描心跳hash表，默认：true */
+        private Boolean enabled = true;
+
+        /** 每隔多少轮全量扫描一次心跳hash表，用于发现重启的节点、校正索引，默认：10 */
+        private Integer fullScanEvery = 10;
+
+        /** 自行维护存活索引的最低agent版本，更低版本的节点由master代为写入索引，默认：2.0.0 */
+        private String minClientVersion = "2.0.0";
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Integer getFullScanEvery() {
+            return fullScanEvery;
+        }
+
+        public void setFullScanEvery(Integer fullScanEvery) {
+            this.fullScanEvery = fullScanEvery;
+        }
+
+        public String getMinClientVersion() {
+            return minClientVersion;
+        }
+
+        public void setMinClientVersion(String minClientVersion) {
+            this.minClientVersion = minClientVersion;
+        }
+    }
+
+    /**
+     * 节点资源使用率时序存储配置
+     *
+     * 在心跳检查中采集CPU、内存、磁盘利用率，每轮检查批量追加到 agent_node_metrics，
+     * 再按分钟、小时汇总到 agent_node_metrics_rollup，各粒度分别按保留时间清理
+     */
+    public static class Metrics {
+        /** 是否启用资源使用率采集，默认：true */
+        private Boolean enabled = true;
+
+        /** 按存活索引补充采样的间隔（毫秒），只读取心跳时间戳有变化的节点，默认：60000 */
+        private Long sampleIntervalMillis = 60000L;
+
+        /** 汇总与清理的执行间隔（毫秒），默认：60000 */
+        private Long rollupIntervalMillis = 60000L;
+
+        /** 每次汇总时回溯的分钟数，用于覆盖迟到的采样，默认：5 */
+        private Integer rollupLookbackMinutes = 5;
+
+        /** 原始采样的保留时间（小时），默认：48 */
+        private Integer rawRetentionHours = 48;
+
+        /** 分钟汇总的保留时间（天），默认：14 */
+        private Integer minuteRetentionDays = 14;
+
+        /** 小时汇总的保留时间（天），默认：365 */
+        private Integer hourRetentionDays = 365;
+
+        /** 范围查询未指定粒度时，单个节点返回的最大点数，超过时改用更粗的粒度，默认：1500 */
+        private Integer maxPoints = 1500;
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Long getSampleIntervalMillis() {
+            return sampleIntervalMillis;
+        }
+
+        public void setSampleIntervalMillis(Long sampleIntervalMillis) {
+            this.sampleIntervalMillis = sampleIntervalMillis;
+        }
+
+        public Long getRollupIntervalMillis() {
+            return rollupIntervalMillis;
+        }
+
+        public void setRollupIntervalMillis(Long rollupIntervalMillis) {
+            this.rollupIntervalMillis = rollupIntervalMillis;
+        }
+
+        public Integer getRollupLookbackMinutes() {
+            return rollupLookbackMinutes;
+        }
+
+        public void setRollupLookbackMinutes(Integer rollupLookbackMinutes) {
+            this.rollupLookbackMinutes = rollupLookbackMinutes;
+        }
+
+        public Integer getRawRetentionHours() {
+            return rawRetentionHours;
+        }
+
+        public void setRawRetentionHours(Integer rawRetentionHours) {
+            this.rawRetentionHours = rawRetentionHours;
+        }
+
+        public Integer getMinuteRetentionDays() {
+            return minuteRetentionDays;
+        }
+
+        public void setMinuteRetentionDays(Integer minuteRetentionDays) {
+            this.minuteRetentionDays = minuteRetentionDays;
+        }
+
+        public Integer getHourRetentionDays() {
+            return hourRetentionDays;
+        }
+
+        public void setHourRetentionDays(Integer hourRetentionDays) {
+            this.hourRetentionDays = hourRetentionDays;
+        }
+
+        public Integer getMaxPoints() {
+            return maxPoints;
+        }
+
+        public void setMaxPoints(Integer maxPoints) {
+            this.maxPoints = maxPoints;
+        }
+    }
+
+    /**
+     * 多master实例分片配置
+     *
+     * agent节点按哈希划分到固定数量的分片，分片按一致性哈希分配给存活的master实例，
+     * 并通过可续约的redis租约保证同一时刻只有一个实例处理某个分片内的节点
+     */
+    public static class Shard {
+        /** 是否启用分片，关闭时每个master实例处理全部agent节点，默认：true */
+        private Boolean enabled = true;
+
+        /** 当前master实例id，为空时使用 主机名-随机串，默认：空 */
+        private String instanceId;
+
+        /** 分片总数，所有master实例必须一致，默认：64 */
+        private Integer shardCount = 64;
+
+        /** 一致性哈希环上每个master实例的虚拟节点数，默认：100 */
+        private Integer virtualNodes = 100;
+
+        /** 注册与分片租约的有效时长（毫秒），默认：30000 */
+        private Long leaseMillis = 30000L;
+
+        /** 续约间隔（毫秒），应明显小于租约时长，默认：5000 */
+        private Long renewIntervalMillis = 5000L;
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getInstanceId() {
+            return instanceId;
+        }
+
+        public void setInstanceId(String instanceId) {
+            this.instanceId = instanceId;
+        }
+
+        public Integer getShardCount() {
+            return shardCount;
+        }
+
+        public void setShardCount(Integer shardCount) {
+            this.shardCount = shardCount;
+        }
+
+        public Integer getVirtualNodes() {
+            return virtualNodes;
+        }
+
+        public void setVirtualNodes(Integer virtualNodes) {
+            this.virtualNodes = virtualNodes;
+        }
+
+        public Long getLeaseMillis() {
+            return leaseMillis;
+        }
+
+        public void setLeaseMillis(Long leaseMillis) {
+            this.leaseMillis = leaseMillis;
+        }
+
+        public Long getRenewIntervalMillis() {
+            return renewIntervalMillis;
+        }
+
+        public void setRenewIntervalMillis(Long renewIntervalMillis) {
+            this.renewIntervalMillis = renewIntervalMillis;
+        }
+    }
+
+    /**
+     * 后台定时任务调度配置
+     *
+     * 每个定时任务在独立的单线程通道中执行，首次执行前增加随机延迟，耗时超过预算的执行记为一次 overrun
+     */
+    public static class Scheduler {
+        /** fixedRate、fixedDelay 任务首次执行前的最大随机延迟（毫秒），cron 任务不受影响，0 表示不延迟，默认：2000 */
+        private Long jitterMillis = 2000L;
+
+        /** 关闭时等待正在执行的任务结束的时间（秒），默认：60 */
+        private Integer awaitTerminationSeconds = 60;
+
+        /**
+         * 各任务单次执行的耗时预算（毫秒），key 为任务名称（类名.方法名），如 HeartBeatService.heartBeatCheckPeriod
+         * 未配置的任务以调度间隔作为预算，cron 任务未配置时不统计 overrun
+         */
+        private Map<String, Long> budgets = new LinkedHashMap<>();
+
+        public Long getJitterMillis() {
+            return jitterMillis;
+        }
+
+        public void setJitterMillis(Long jitterMillis) {
+            this.jitterMillis = jitterMillis;
+        }
+
+        public Integer getAwaitTerminationSeconds() {
+            return awaitTerminationSeconds;
+        }
+
+        public void setAwaitTerminationSeconds(Integer awaitTerminationSeconds) {
+            this.awaitTerminationSeconds = awaitTerminationSeconds;
+        }
+
+        public Map<String, Long> getBudgets() {
+            return budgets;
+        }
+
+        public void setBudgets(Map<String, Long> budgets) {
+            this.budgets = budgets;
+        }
+    }
+
+    /**
+     * 端口信息同步配置
+     *
+     * 端口规则变化事件在事务提交后按节点合并，静默一段时间后在后台统一同步一次；
+     * 定时同步时分页读取端口信息hash，逐页并发解析并同步，内存占用与节点总数无关
+     */
+    public static class PortSync {
+        /** 端口规则变化事件的合并窗口（毫秒），窗口内没有新事件时执行同步，默认：500 */
+        private Long debounceMillis = 500L;
+
+        /** 持续有事件时，从第一个事件起最长等待的时间（毫秒），默认：5000 */
+        private Long maxDelayMillis = 5000L;
+
+        /** 分页读取端口信息hash时每页的条数（HSCAN COUNT），默认：200 */
+        private Integer scanCount = 200;
+
+        /** 解析各节点上报的端口信息的并发线程数，默认：4 */
+        private Integer parseThreads = 4;
+
+        /** 端口信息同步后是否通过websocket推送节点端口使用变化，默认：true */
+        private Boolean pushEnabled = true;
+
+        /** 取走其他master实例转交的端口规则变化节点的间隔（毫秒），默认：2000 */
+        private Long forwardPollMillis = 2000L;
+
+        public Long getDebounceMillis() {
+            return debounceMillis;
+        }
+
+        public void setDebounceMillis(Long debounceMillis) {
+            this.debounceMillis = debounceMillis;
+        }
+
+        public Long getMaxDelayMillis() {
+            return maxDelayMillis;
+        }
+
+        public void setMaxDelayMillis(Long maxDelayMillis) {
+            this.maxDelayMillis = maxDelayMillis;
+        }
+
+        public Integer getScanCount() {
+            return scanCount;
+        }
+
+        public void setScanCount(Integer scanCount) {
+            this.scanCount = scanCount;
+        }
+
+        public Integer getParseThreads() {
+            return parseThreads;
+        }
+
+        public void setParseThreads(Integer parseThreads) {
+            this.parseThreads = parseThreads;
+        }
+
+        public Boolean getPushEnabled() {
+            return pushEnabled;
+        }
+
+        public void setPushEnabled(Boolean pushEnabled) {
+            this.pushEnabled = pushEnabled;
+        }
+
+        public Long getForwardPollMillis() {
+            return forwardPollMillis;
+        }
+
+        public void setForwardPollMillis(Long forwardPollMillis) {
+            this.forwardPollMillis = forwardPollMillis;
+        }
+    }
+
+    /**
+     * 命令stream保留策略配置
+     *
+     * 后台定期按stream族（如 pub:*:portRule）的策略裁剪每个agent节点的命令/响应stream：
+     * 先按消息存活时间（XTRIM MINID）裁剪，再按内存上限（MEMORY USAGE）裁剪
+     */
+    public static class Retention {
+        /** 是否启用后台裁剪，默认：true */
+        private Boolean enabled = true;
+
+        /** 后台裁剪的执行间隔（毫秒），默认：60000 */
+        private Long sweepIntervalMillis = 60000L;
+
+        /** 发布命令时随 XADD 一起执行的 MAXLEN ~ 上限，作为后台裁剪之外的兜底，0 表示不裁剪，默认：10000 */
+        private Long inlineMaxLength = 10000L;
+
+        /** 每次执行裁剪脚本处理的stream数量，默认：100 */
+        private Integer batchSize = 100;
+
+        /** 报告中列出的占用内存最多的stream数量，默认：20 */
+        private Integer topStreams = 20;
+
+        /** 未单独配置的stream族使用的默认策略 */
+        private Policy defaultPolicy = new Policy(3600000L, 1048576L);
+
+        /** 需要裁剪的stream族，* 代表agent节点ID */
+        private List<String> families = new ArrayList<>(List.of(
+                "pub:*:portRule", "sub:*:portRule",
+                "pub:*:portInfo", "sub:*:portInfo",
+                "pub:*:firewallStatusInfo", "sub:*:firewallStatusInfo",
+                "pub:*:portRule:low", "sub:*:portRule:low",
+                "pub:*:portInfo:low", "sub:*:portInfo:low",
+                "pub:*:firewallStatusInfo:low", "sub:*:firewallStatusInfo:low"));
+
+        /** 各stream族单独的策略，key 为stream族 */
+        private Map<String, Policy> policies = new LinkedHashMap<>();
+
+        /**
+         * 获取stream族的策略
+         *
+         * @param family stream族
+         * @return 单独配置的策略，未配置时返回默认策略
+         */
+        public Policy policyOf(String family) {
+            return policies.getOrDefault(family, defaultPolicy);
+        }
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Long getSweepIntervalMillis() {
+            return sweepIntervalMillis;
+        }
+
+        public void setSweepIntervalMillis(Long sweepIntervalMillis) {
+            this.sweepIntervalMillis = sweepIntervalMillis;
+        }
+
+        public Long getInlineMaxLength() {
+            return inlineMaxLength;
+        }
+
+        public void setInlineMaxLength(Long inlineMaxLength) {
+            this.inlineMaxLength = inlineMaxLength;
+        }
+
+        public Integer getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(Integer batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Integer getTopStreams() {
+            return topStreams;
+        }
+
+        public void setTopStreams(Integer topStreams) {
+            this.topStreams = topStreams;
+        }
+
+        public Policy getDefaultPolicy() {
+            return defaultPolicy;
+        }
+
+        public void setDefaultPolicy(Policy defaultPolicy) {
+            this.defaultPolicy = defaultPolicy;
+        }
+
+        public List<String> getFamilies() {
+            return families;
+        }
+
+        public void setFamilies(List<String> families) {
+            this.families = families;
+        }
+
+        public Map<String, Policy> getPolicies() {
+            return policies;
+        }
+
+        public void setPolicies(Map<String, Policy> policies) {
+            this.policies = policies;
+        }
+    }
+
+    /**
+     * stream保留策略
+     */
+    public static class Policy {
+        /** 消息最长保留时间（毫秒），0 表示不按时间裁剪；响应stream的保留时间应大于命令超时时间 */
+        private Long maxAgeMillis = 0L;
+
+        /** 单个stream的内存上限（字节），0 表示不按内存裁剪 */
+        private Long maxMemoryBytes = 0L;
+
+        public Policy() {
+        }
+
+        public Policy(Long maxAgeMillis, Long maxMemoryBytes) {
+            this.maxAgeMillis = maxAgeMillis;
+            this.maxMemoryBytes = maxMemoryBytes;
+        }
+
+        public Long getMaxAgeMillis() {
+            return maxAgeMillis;
+        }
+
+        public void setMaxAgeMillis(Long maxAgeMillis) {
+            this.maxAgeMillis = maxAgeMillis;
+        }
+
+        public Long getMaxMemoryBytes() {
+            return maxMemoryBytes;
+        }
+
+        public void setMaxMemoryBytes(Long maxMemoryBytes) {
+            this.maxMemoryBytes = maxMemoryBytes;
+        }
+    }
+
+
+    public Command getCommand() {
+        return command;
+    }
+
+    public void setCommand(Command command) {
+        this.command = command;
+    }
+
+    public Dispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public void setDispatcher(Dispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    public Bulk getBulk() {
+        return bulk;
+    }
+
+    public void setBulk(Bulk bulk) {
+        this.bulk = bulk;
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public void setCodec(Codec codec) {
+        this.codec = codec;
+    }
+
+    public Retention getRetention() {
+        return retention;
+    }
+
+    public void setRetention(Retention retention) {
+        this.retention = retention;
+    }
+
+    public Lane getLane() {
+        return lane;
+    }
+
+    public void setLane(Lane lane) {
+        this.lane = lane;
+    }
+
+    public Breaker getBreaker() {
+        return breaker;
+    }
+
+    public void setBreaker(Breaker breaker) {
+        this.breaker = breaker;
+    }
+
+    public Latency getLatency() {
+        return latency;
+    }
+
+    public void setLatency(Latency latency) {
+        this.latency = latency;
+    }
+
+    public Outbox getOutbox() {
+        return outbox;
+    }
+
+    public void setOutbox(Outbox outbox) {
+        this.outbox = outbox;
+    }
+
+    public Liveness getLiveness() {
+        return liveness;
+    }
+
+    public void setLiveness(Liveness liveness) {
+        this.liveness = liveness;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public Shard getShard() {
+        return shard;
+    }
+
+    public void setShard(Shard shard) {
+        this.shard = shard;
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    public void setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public PortSync getPortSync() {
+        return portSync;
+    }
+
+    public void setPortSync(PortSync portSync) {
+        this.portSync = portSync;
+    }
+}
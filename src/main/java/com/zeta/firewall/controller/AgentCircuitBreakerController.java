@@ -0,0 +1,69 @@
+package com.zeta.firewall.controller;
+
+import com.zeta.firewall.model.dto.AgentCircuitBreakerStatus;
+import com.zeta.firewall.service.AgentCircuitBreakerRegistry;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.zetaframework.base.result.ApiResult;
+import org.zetaframework.core.log.annotation.SysLog;
+
+import java.util.List;
+
+@Slf4j
+@RequiredArgsConstructor
+@Api(tags = "agent节点熔断管理")
+//@PreAuth(replace = "agents:node") // 权限注解，可根据需要启用
+@RestController
+@RequestMapping("/api/agents/firewall/breakers")
+public class AgentCircuitBreakerController {
+    private final AgentCircuitBreakerRegistry agentCircuitBreakerRegistry;
+
+    /**
+     * 获取全部节点的熔断器状态
+     *
+     * @return 熔断器状态列表
+     */
+    @ApiOperation(value = "获取全部节点的熔断状态", notes = "列出心跳检查或命令下发记录过的全部节点的熔断器状态")
+    @GetMapping
+    public ApiResult<List<AgentCircuitBreakerStatus>> list() {
+        return ApiResult.success(agentCircuitBreakerRegistry.getStatuses());
+    }
+
+    /**
+     * 获取指定节点的熔断器状态
+     *
+     * @param nodeId 节点ID
+     * @return 熔断器状态
+     */
+    @ApiOperation(value = "获取节点的熔断状态", notes = "获取指定节点的熔断器状态")
+    @GetMapping("/{nodeId}")
+    public ApiResult<AgentCircuitBreakerStatus> get(
+            @ApiParam(value = "节点ID", required = true, example = "node1")
+            @PathVariable String nodeId) {
+        return ApiResult.success(agentCircuitBreakerRegistry.getStatus(nodeId));
+    }
+
+    /**
+     * 手动恢复节点的熔断器
+     *
+     * @param nodeId 节点ID
+     * @return 恢复后的熔断器状态
+     */
+    @SysLog
+    @ApiOperation(value = "恢复节点的熔断", notes = "手动将节点的熔断器恢复为 CLOSED，下一次心跳检查仍会按心跳状态更新")
+    @PostMapping("/{nodeId}/reset")
+    public ApiResult<AgentCircuitBreakerStatus> reset(
+            @ApiParam(value = "节点ID", required = true, example = "node1")
+            @PathVariable String nodeId) {
+        agentCircuitBreakerRegistry.reset(nodeId);
+        return ApiResult.success(agentCircuitBreakerRegistry.getStatus(nodeId));
+    }
+}
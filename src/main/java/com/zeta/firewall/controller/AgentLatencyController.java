@@ -0,0 +1,51 @@
+package com.zeta.firewall.controller;
+
+import com.zeta.firewall.model.dto.AgentLatencyStats;
+import com.zeta.firewall.service.AgentLatencyTracker;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.zetaframework.base.result.ApiResult;
+
+import java.util.List;
+
+@Slf4j
+@RequiredArgsConstructor
+@Api(tags = "agent节点响应延迟")
+//@PreAuth(replace = "agents:node") // 权限注解，可根据需要启用
+@RestController
+@RequestMapping("/api/agents/firewall/latency")
+public class AgentLatencyController {
+    private final AgentLatencyTracker agentLatencyTracker;
+
+    /**
+     * 获取全部节点的响应延迟统计
+     *
+     * @return 延迟统计列表
+     */
+    @ApiOperation(value = "获取全部节点的响应延迟", notes = "按节点和操作列出滚动窗口内的响应延迟直方图、分位数及当前使用的超时时间")
+    @GetMapping
+    public ApiResult<List<AgentLatencyStats>> list() {
+        return ApiResult.success(agentLatencyTracker.getStats());
+    }
+
+    /**
+     * 获取指定节点的响应延迟统计
+     *
+     * @param nodeId 节点ID
+     * @return 延迟统计列表
+     */
+    @ApiOperation(value = "获取节点的响应延迟", notes = "按操作列出指定节点滚动窗口内的响应延迟直方图、分位数及当前使用的超时时间")
+    @GetMapping("/{nodeId}")
+    public ApiResult<List<AgentLatencyStats>> get(
+            @ApiParam(value = "节点ID", required = true, example = "node1")
+            @PathVariable String nodeId) {
+        return ApiResult.success(agentLatencyTracker.getStats(nodeId));
+    }
+}
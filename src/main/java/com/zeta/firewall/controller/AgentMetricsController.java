@@ -0,0 +1,63 @@
+package com.zeta.firewall.controller;
+
+import com.zeta.firewall.model.dto.AgentMetricsPoint;
+import com.zeta.firewall.model.enums.MetricsResolution;
+import com.zeta.firewall.service.AgentNodeMetricsService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.zetaframework.base.result.ApiResult;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+@Slf4j
+@RequiredArgsConstructor
+@Api(tags = "agent节点资源使用率")
+//@PreAuth(replace = "agents:node") // 权限注解，可根据需要启用
+@RestController
+@RequestMapping("/api/agents/firewall/metrics")
+public class AgentMetricsController {
+    private final AgentNodeMetricsService agentNodeMetricsService;
+
+    /**
+     * 查询节点在时间范围内的资源使用率
+     *
+     * @param nodeId     节点ID
+     * @param start      开始时间（毫秒时间戳），默认为一小时前
+     * @param end        结束时间（毫秒时间戳），默认为当前时间
+     * @param resolution 粒度，为空时按时间范围自动选择
+     * @return 按时间升序的数据点
+     */
+    @ApiOperation(value = "查询节点资源使用率", notes = "返回节点在时间范围内的CPU、内存、磁盘利用率，未指定粒度时按时间范围自动选择原始采样、分钟或小时汇总")
+    @GetMapping("/{nodeId}")
+    public ApiResult<List<AgentMetricsPoint>> range(
+            @ApiParam(value = "节点ID", required = true, example = "node1")
+            @PathVariable String nodeId,
+            @ApiParam(value = "开始时间（毫秒时间戳）", example = "1700000000000")
+            @RequestParam(required = false) Long start,
+            @ApiParam(value = "结束时间（毫秒时间戳）", example = "1700003600000")
+            @RequestParam(required = false) Long end,
+            @ApiParam(value = "粒度：RAW、MINUTE、HOUR")
+            @RequestParam(required = false) MetricsResolution resolution) {
+        LocalDateTime to = end != null ? toLocalDateTime(end) : LocalDateTime.now();
+        LocalDateTime from = start != null ? toLocalDateTime(start) : to.minusHours(1);
+        if (!from.isBefore(to)) {
+            return ApiResult.fail("开始时间必须早于结束时间");
+        }
+        return ApiResult.success(agentNodeMetricsService.query(nodeId, from, to, resolution));
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
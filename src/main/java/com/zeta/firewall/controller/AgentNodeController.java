@@ -12,16 +12,12 @@ import com.zeta.firewall.model.entity.AgentNodeInfo;
 import com.zeta.firewall.model.entity.PortRule;
 import com.zeta.firewall.model.param.AgentNodeQueryParam;
 import com.zeta.firewall.schedule.HeartBeatService;
+import com.zeta.firewall.service.AgentCommandService;
 import com.zeta.firewall.service.AgentNodeInfoService;
-import com.zeta.firewall.service.StreamResponseService;
-import com.zeta.firewall.subscirbe.StreamProducer;
-import com.zeta.firewall.util.JsonMessageConverter;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.connection.stream.RecordId;
 import org.springframework.web.bind.annotation.*;
 import org.zetaframework.base.controller.SuperSimpleController;
 import org.zetaframework.base.controller.extra.NoPageQueryController;
@@ -31,11 +27,8 @@ import org.zetaframework.base.result.PageResult;
 import org.zetaframework.core.log.annotation.SysLog;
 import org.zetaframework.core.saToken.annotation.PreCheckPermission;
 
-import javax.annotation.Resource;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 /**
@@ -56,11 +49,7 @@ public class AgentNodeController extends SuperSimpleController<AgentNodeInfoServ
         implements NoPageQueryController<AgentNodeInfo, String, AgentNodeQueryParam> {
 
     private final HeartBeatService heartBeatService;
-    private final StreamProducer streamProducer;
-    @Autowired
-    private StreamResponseService streamResponseService;
-    @Resource(name = "taskExecutor")  // 按名称注入，不需要 @Autowired
-    private Executor taskExecutor;
+    private final AgentCommandService agentCommandService;
 
     /**
      * 分页查询节点列表
@@ -369,12 +358,8 @@ public class AgentNodeController extends SuperSimpleController<AgentNodeInfoServ
                 return ApiResult.success("刷新成功", true);
             }
 
-            // 存储刷新失败的节点列表
-            List<String> refreshFailNodeIds = new ArrayList<>();
-            // 串行的向所有agent节点发布手动心跳命令，消费来自每个agent节点的响应
-            // 如果节点非常多且子节点响应耗时长，极端情况下每个节点都会等待一定时间，将会导致本次controller响应超时
-            // 考虑使用异步发送命令
-            refreshFailNodeIds = refreshNodesAsync(nodeIds, 10);
+            // 向所有agent节点批量发布手动心跳命令，响应由分发器异步收集，总耗时不超过最慢节点的超时时间
+            List<String> refreshFailNodeIds = refreshNodesAsync(nodeIds);
 
             // 不管刷新结果如何，都手动触发一次主节点心跳检查
             heartBeatService.heartBeatCheckPeriod();
@@ -394,88 +379,72 @@ public class AgentNodeController extends SuperSimpleController<AgentNodeInfoServ
     /**
      * 异步刷新多个节点
      *
+     * 所有节点的刷新命令在一个 pipeline 中发布，响应由分发器在agent响应到达时完成，不再为每个节点占用一个线程等待
+     *
+     * 每个节点的超时时间按该节点的历史响应延迟计算，响应快的节点不必等待固定的超时时间
+     *
      * @param nodeIds 需要刷新的节点ID列表
-     * @param timeoutSeconds 操作超时时间（秒）
      * @return 刷新失败的节点ID列表
      */
-    public List<String> refreshNodesAsync(List<String> nodeIds, int timeoutSeconds) {
+    public List<String> refreshNodesAsync(List<String> nodeIds) {
         // 创建线程安全的集合，用于存储刷新失败的节点ID
         List<String> failedNodeIds = Collections.synchronizedList(new ArrayList<>());
 
-        // 为每个节点创建异步任务，并使用配置好的线程池执行
-        List<CompletableFuture<Void>> futures = nodeIds.stream()
-                .map(nodeId -> CompletableFuture.runAsync(() -> refreshSingleNode(nodeId, failedNodeIds), taskExecutor))
+        // 为每个节点构建刷新命令
+        Map<String, RedisCommandMessage<PortRule>> messages = new LinkedHashMap<>();
+        nodeIds.forEach(nodeId -> messages.put(nodeId, buildRefreshMessage(nodeId)));
+
+        // 判断是否刷新成功，agent节点会向 名为"sub:" + nodeId + ":portRule" 的StreamKey发送消息id为recordId的消息，其中value中包含status字段，如果status为200则刷新成功
+        Map<String, CompletableFuture<Map<Object, Object>>> responses =
+                agentCommandService.submitAll(messages, "portRule");
+        List<CompletableFuture<Void>> futures = responses.entrySet().stream()
+                .map(entry -> entry.getValue()
+                        .handle((value, ex) -> {
+                            if (ex != null) {
+                                log.error("Failed to refresh node: {}", entry.getKey(), ex);
+                            }
+                            if (ex != null || !AgentCommandService.isResponseSuccess(value)) {
+                                failedNodeIds.add(entry.getKey());
+                            }
+                            return (Void) null;
+                        }))
                 .collect(Collectors.toList());
 
-        try {
-            // 等待所有异步任务完成，并设置超时时间
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-                    .get(timeoutSeconds, java.util.concurrent.TimeUnit.SECONDS);  // 使用完整类名引用TimeUnit
-        } catch (InterruptedException e) {
-            // 如果等待过程被中断，记录警告并重新设置中断标志
-            log.warn("Node refresh operation was interrupted", e);
-            Thread.currentThread().interrupt();
-        } catch (ExecutionException e) {
-            // 如果任务执行过程中发生异常，记录错误
-            log.error("Error during node refresh operation", e.getCause());
-        } catch (java.util.concurrent.TimeoutException e) {  // 使用完整类名引用TimeoutException
-            // 如果操作超时，记录警告
-            log.warn("Node refresh operation timed out after {} seconds", timeoutSeconds);
-        }
+        // 每个future都会在自身截止时间内完成（成功、失败或超时），这里不会无限等待
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
 
         // 返回刷新失败的节点ID列表
         return failedNodeIds;
     }
 
     /**
-     * 刷新单个节点
+     * 构建单个节点的刷新命令
+     *
+     * @param nodeId 节点ID
+     * @return 刷新命令
      */
-    private void refreshSingleNode(String nodeId, List<String> failedNodeIds) {
-
-        String pubStreamkey = "pub:" + nodeId + ":" + "portRule";
-        String subStreamkey = "sub:" + nodeId + ":" + "portRule";
-
-        try {
-            // 构建消息体
-            HashMap<String, String> map = new HashMap<>();
-            map.put("isUsing", "false");
-            map.put("policy", "false");
-
-            List<String> primaryKeyColumns = List.of("port", "protocol");
-
-            PortRule portRule = PortRule.builder()
-                    .port("2323")
-                    .build();
-
-            RedisCommandMessage<PortRule> build = RedisCommandMessage.<PortRule>builder()
-                    .agentId(nodeId)
-                    .ts(System.currentTimeMillis() / 1000)
-                    .agentComponentType(RedisCommandMessage.ComponentType.FIREWALL)
-                    .dataOpType(RedisCommandMessage.OperationType.OPTIONS)
-                    .requestParams(map)
-                    .primaryKeyColumns(primaryKeyColumns)
-                    .data(Collections.<PortRule>emptyList())
-                    .old(portRule)
-                    .build();
-
-            Map<String, String> messageMap = JsonMessageConverter.beanToMap(build);
-
-            // 发布消息
-            RecordId recordId = streamProducer.publishMessage(pubStreamkey, messageMap);
-
-            // 获取响应，重试的方式获取响应，减少因为从节点响应不及时导致的失败
-            Map<Object, Object> value = streamResponseService.getResponseEntry(nodeId, subStreamkey, pubStreamkey, recordId);
-
-            // 判断是否刷新成功
-            // 判断是否刷新成功，agent节点会向 名为"pub:" + nodeId 的StreamKey发送消息id为recordId的消息，其中value中包含status字段，如果status为200则刷新成功
-            boolean respSuccess = value.containsKey("status") && value.get("status").equals("200");
-            if (!respSuccess) {
-                failedNodeIds.add(nodeId);
-            }
-        } catch (Exception e) {
-            log.error("Failed to refresh node: {}", nodeId, e);
-            failedNodeIds.add(nodeId);
-        }
+    private RedisCommandMessage<PortRule> buildRefreshMessage(String nodeId) {
+        // 构建消息体
+        HashMap<String, String> map = new HashMap<>();
+        map.put("isUsing", "false");
+        map.put("policy", "false");
+
+        List<String> primaryKeyColumns = List.of("port", "protocol");
+
+        PortRule portRule = PortRule.builder()
+                .port("2323")
+                .build();
+
+        return RedisCommandMessage.<PortRule>builder()
+                .agentId(nodeId)
+                .ts(System.currentTimeMillis() / 1000)
+                .agentComponentType(RedisCommandMessage.ComponentType.FIREWALL)
+                .dataOpType(RedisCommandMessage.OperationType.OPTIONS)
+                .requestParams(map)
+                .primaryKeyColumns(primaryKeyColumns)
+                .data(Collections.<PortRule>emptyList())
+                .old(portRule)
+                .build();
     }
 
 
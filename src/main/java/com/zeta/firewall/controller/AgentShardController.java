@@ -0,0 +1,33 @@
+package com.zeta.firewall.controller;
+
+import com.zeta.firewall.model.dto.MasterShardStatus;
+import com.zeta.firewall.service.AgentShardManager;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.zetaframework.base.result.ApiResult;
+
+@Slf4j
+@RequiredArgsConstructor
+@Api(tags = "master实例分片")
+//@PreAuth(replace = "agents:node") // 权限注解，可根据需要启用
+@RestController
+@RequestMapping("/api/agents/firewall/shards")
+public class AgentShardController {
+    private final AgentShardManager agentShardManager;
+
+    /**
+     * 获取当前master实例的分片归属状态
+     *
+     * @return 分片归属状态
+     */
+    @ApiOperation(value = "获取分片归属状态", notes = "返回存活的master实例、当前实例按一致性哈希分配到的分片以及实际持有租约的分片")
+    @GetMapping
+    public ApiResult<MasterShardStatus> status() {
+        return ApiResult.success(agentShardManager.getStatus());
+    }
+}
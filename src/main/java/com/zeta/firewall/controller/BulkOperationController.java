@@ -0,0 +1,47 @@
+package com.zeta.firewall.controller;
+
+import com.zeta.firewall.model.dto.BulkOperationRequest;
+import com.zeta.firewall.model.dto.BulkOperationResult;
+import com.zeta.firewall.service.BulkOperationService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.zetaframework.base.result.ApiResult;
+import org.zetaframework.core.log.annotation.SysLog;
+
+import javax.validation.Valid;
+
+@Slf4j
+@RequiredArgsConstructor
+@Api(tags = "防火墙批量操作")
+//@PreAuth(replace = "agents:node") // 权限注解，可根据需要启用
+@RestController
+@RequestMapping("/api/agents/firewall")
+public class BulkOperationController {
+    private final BulkOperationService bulkOperationService;
+
+    /**
+     * 对多个节点执行同一个操作（添加端口规则、操作防火墙、ping控制）
+     *
+     * 各节点并行执行，返回每个节点的结果与耗时；部分节点失败不影响其他节点
+     *
+     * @param request 批量操作请求
+     * @return 汇总结果
+     */
+    @SysLog
+    @ApiOperation(value = "批量操作", notes = "对多个节点执行同一个操作，返回每个节点的执行结果")
+    @PostMapping("/bulk")
+    public ApiResult<BulkOperationResult> bulkOperation(@RequestBody @Valid BulkOperationRequest request) {
+        BulkOperationResult result = bulkOperationService.execute(request);
+
+        if (result.getFailCount() == 0) {
+            return ApiResult.success("操作成功", result);
+        }
+        return ApiResult.success("部分节点操作失败：" + result.getFailCount() + "/" + result.getTotal(), result);
+    }
+}
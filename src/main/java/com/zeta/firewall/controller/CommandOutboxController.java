@@ -0,0 +1,46 @@
+package com.zeta.firewall.controller;
+
+import com.zeta.firewall.model.dto.CommandOutboxStatus;
+import com.zeta.firewall.model.entity.CommandOutbox;
+import com.zeta.firewall.service.CommandOutboxService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.zetaframework.base.result.ApiResult;
+
+@Slf4j
+@RequiredArgsConstructor
+@Api(tags = "防火墙命令执行状态")
+//@PreAuth(replace = "agents:node") // 权限注解，可根据需要启用
+@RestController
+@RequestMapping("/api/agents/firewall/commands")
+public class CommandOutboxController {
+    private final CommandOutboxService commandOutboxService;
+
+    /**
+     * 查询发件箱命令的执行状态
+     *
+     * 端口规则的增删改接口只返回已受理和命令id，节点最终是否执行成功通过该接口查询；
+     * 已完成的命令超过保留时间（zeta.firewall.outbox.retention-hours）后会被清理
+     *
+     * @param id 发件箱命令id
+     * @return 执行状态
+     */
+    @ApiOperation(value = "查询命令执行状态", notes = "SUCCEEDED 表示节点执行成功，FAILED 表示执行失败且数据库已恢复")
+    @GetMapping("/{id}")
+    public ApiResult<CommandOutboxStatus> get(
+            @ApiParam(value = "发件箱命令id", required = true, example = "1")
+            @PathVariable Long id) {
+        CommandOutbox outbox = commandOutboxService.getById(id);
+        if (outbox == null) {
+            return ApiResult.fail("命令不存在或已清理: " + id);
+        }
+        return ApiResult.success(CommandOutboxStatus.fromEntity(outbox));
+    }
+}
@@ -0,0 +1,55 @@
+package com.zeta.firewall.controller;
+
+import com.zeta.firewall.model.dto.JobLaneStats;
+import com.zeta.firewall.schedule.JobLaneScheduler;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.zetaframework.base.result.ApiResult;
+
+import java.util.List;
+
+@Slf4j
+@RequiredArgsConstructor
+@Api(tags = "后台定时任务")
+//@PreAuth(replace = "agents:node") // 权限注解，可根据需要启用
+@RestController
+@RequestMapping("/api/agents/firewall/jobs")
+public class JobLaneController {
+    private final JobLaneScheduler jobLaneScheduler;
+
+    /**
+     * 获取全部定时任务的运行统计
+     *
+     * @return 运行统计列表
+     */
+    @ApiOperation(value = "获取全部定时任务的运行统计", notes = "列出每个定时任务的执行次数、失败次数、耗时以及耗时超过预算（overrun）的次数")
+    @GetMapping
+    public ApiResult<List<JobLaneStats>> list() {
+        return ApiResult.success(jobLaneScheduler.getStats());
+    }
+
+    /**
+     * 获取指定定时任务的运行统计
+     *
+     * @param job 任务名称
+     * @return 运行统计
+     */
+    @ApiOperation(value = "获取定时任务的运行统计", notes = "任务名称格式为 类名.方法名，如 HeartBeatService.heartBeatCheckPeriod")
+    @GetMapping("/{job}")
+    public ApiResult<JobLaneStats> get(
+            @ApiParam(value = "任务名称", required = true, example = "HeartBeatService.heartBeatCheckPeriod")
+            @PathVariable String job) {
+        JobLaneStats stats = jobLaneScheduler.getStats(job);
+        if (stats == null) {
+            return ApiResult.fail("定时任务不存在: " + job);
+        }
+        return ApiResult.success(stats);
+    }
+}
@@ -2,11 +2,8 @@ package com.zeta.firewall.controller;
 
 import com.zeta.firewall.model.dto.DeletePortRulesRequest;
 import com.zeta.firewall.model.dto.PortRuleDTO;
-import com.zeta.firewall.model.entity.FirewallPortRuleInfo;
-import com.zeta.firewall.model.entity.PortInfo;
 import com.zeta.firewall.model.entity.PortRule;
-import com.zeta.firewall.service.FirewallPortRuleInfoService;
-import com.zeta.firewall.service.PortInfoService;
+import com.zeta.firewall.service.AgentPortUsageView;
 import com.zeta.firewall.service.PortRuleService;
 import com.zeta.firewall.util.IpUtils;
 import io.swagger.annotations.Api;
@@ -20,8 +17,6 @@ import org.zetaframework.base.result.ApiResult;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.stream.Collectors;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -32,8 +27,7 @@ import java.util.stream.Collectors;
 public class PortRuleController {
 
     private final PortRuleService portRuleService;
-    private final PortInfoService portInfoService;
-    private final FirewallPortRuleInfoService firewallPortRuleInfoService;
+    private final AgentPortUsageView agentPortUsageView;
 
     /**
      * 获取指定节点的端口规则列表
@@ -47,36 +41,17 @@ public class PortRuleController {
             @ApiParam(value = "节点ID", required = true, example = "node1")
             @PathVariable String nodeId) {
 
-        // 调用服务层获取规则列表
-        List<PortRule> rules = portRuleService.getPortRulesByNodeId(nodeId);
-        List<FirewallPortRuleInfo> firewallPortRuleInfos = firewallPortRuleInfoService.queryAll();
-        List<PortInfo> portInfos = portInfoService.queryAllPortInfosDB();
-
-        // 根据规则列表获取端口使用信息(usedStatus，usedPorts，portUsageDetails)
-        // 思路：遍历rules，从firewallPortRuleInfos(ruleId 和 infoId关系映射表)查询是否有对应的ruleId，有则从portInfos中查询对应的portInfo，最后将portRule 转化为 PortRuleDTO
-
-        // 建立 ruleId -> List<infoId>
-        Map<Long, List<Long>> ruleIdToInfoIdList = firewallPortRuleInfos.stream()
-                .collect(Collectors.groupingBy(
-                        FirewallPortRuleInfo::getRuleId,
-                        Collectors.mapping(FirewallPortRuleInfo::getInfoId, Collectors.toList())
-                ));
-
-        // 建立 infoId -> PortInfo
-        Map<Long, PortInfo> infoIdToPortInfo = portInfos.stream()
-                .collect(Collectors.toMap(PortInfo::getId, p -> p));
-
-        // 转换为DTO列表
-        List<PortRuleDTO> dtoList = rules.stream()
-                .map(portRule -> {
-                    List<Long> infoIds = ruleIdToInfoIdList.getOrDefault(portRule.getId(), Collections.emptyList());
-                    List<PortInfo> relatedPortInfos = infoIds.stream()
-                            .map(infoIdToPortInfo::get)
-                            .filter(Objects::nonNull)
-                            .collect(Collectors.toList());
-                    return PortRuleDTO.fromEntity(portRule, relatedPortInfos);
-                })
-                .collect(Collectors.toList());
+        // 从读模型获取该节点的端口规则及匹配的端口使用信息(usedStatus，usedPorts，portUsageDetails)
+        AgentPortUsageView.AgentPortUsage usage = agentPortUsageView.get(nodeId);
+        if (usage.getRules().isEmpty()) {
+            // 数据库中没有该节点的端口规则时从agent节点获取，保存后读模型会失效并重新加载
+            if (portRuleService.getPortRulesByNodeId(nodeId).isEmpty()) {
+                return ApiResult.success("获取端口规则成功", Collections.emptyList());
+            }
+            usage = agentPortUsageView.get(nodeId);
+        }
+
+        List<PortRuleDTO> dtoList = usage.toPortRuleDTOs();
         // 返回成功结果
         return ApiResult.success("获取端口规则成功", dtoList);
 
@@ -86,9 +61,9 @@ public class PortRuleController {
      * 添加端口规则
      *
      * @param portRuleDTO 端口规则DTO
-     * @return 添加结果
+     * @return 受理结果，包含规则id和发件箱命令id
      */
-    @ApiOperation(value = "添加端口规则", notes = "为指定节点添加防火墙端口规则")
+    @ApiOperation(value = "添加端口规则", notes = "为指定节点添加防火墙端口规则，命令异步下发，返回的 commandId 用于查询执行结果")
     @PostMapping("/port-rule")
     public ApiResult<?> addPortRule(
             @ApiParam(value = "节点ID", required = true, example = "node1")
@@ -107,13 +82,14 @@ public class PortRuleController {
         try {
             log.info("Adding port rule for node {}: {}", agentId, portRuleDTO);
 
-            // 2. 发送Redis命令并持久化mysql并获取响应
-            if (!portRuleService.addPortRule(portRule)) {
+            // 2. 持久化mysql，命令写入发件箱后异步下发
+            Long commandId = portRuleService.addPortRule(portRule);
+            if (commandId == null) {
                 return ApiResult.fail("添加端口规则失败");
             }
 
-            // 响应
-            return ApiResult.success("端口规则添加成功", Map.of("id", portRule.getId()));
+            // 响应：命令只是已受理，节点执行结果通过 GET /api/agents/firewall/commands/{commandId} 查询
+            return ApiResult.success("端口规则添加已受理，等待节点执行", Map.of("id", portRule.getId(), "commandId", commandId));
 
         } catch (Exception e) {
             log.error("Failed to add port rule for node {}", agentId, e);
@@ -125,19 +101,19 @@ public class PortRuleController {
      * 删除端口规则
      *
      * @param request 删除请求对象
-     * @return 删除结果
+     * @return 受理结果，包含发件箱命令id
      */
-    @ApiOperation(value = "删除端口规则", notes = "删除指定节点的防火墙端口规则")
+    @ApiOperation(value = "删除端口规则", notes = "删除指定节点的防火墙端口规则，命令异步下发，返回的 commandId 用于查询执行结果")
     @PostMapping("/port-rules/delete")
-    public ApiResult<Boolean> deletePortRules(@RequestBody DeletePortRulesRequest request) {
+    public ApiResult<?> deletePortRules(@RequestBody DeletePortRulesRequest request) {
         try {
             log.info("Deleting port rules for node {}: rule IDs {}", request.getNodeId(), request.getRuleIds());
 
             // 调用服务层删除规则
-            Boolean result = portRuleService.deletePortRules(request.getNodeId(), request.getRuleIds());
+            Long commandId = portRuleService.deletePortRules(request.getNodeId(), request.getRuleIds());
 
-            if (result) {
-                return ApiResult.success("删除端口规则成功", true);
+            if (commandId != null) {
+                return ApiResult.success("删除端口规则已受理，等待节点执行", Map.of("commandId", commandId));
             } else {
                 return ApiResult.fail("删除端口规则失败");
             }
@@ -153,11 +129,11 @@ public class PortRuleController {
      *
      * @param ruleId      规则ID
      * @param portRuleDTO 端口规则DTO
-     * @return 更新结果
+     * @return 受理结果，包含发件箱命令id
      */
-    @ApiOperation(value = "更新端口规则", notes = "更新指定节点的防火墙端口规则")
+    @ApiOperation(value = "更新端口规则", notes = "更新指定节点的防火墙端口规则，命令异步下发，返回的 commandId 用于查询执行结果")
     @PutMapping("/port-rule/{ruleId}")
-    public ApiResult<Boolean> updatePortRuleApi(
+    public ApiResult<?> updatePortRuleApi(
             @ApiParam(value = "规则ID", required = true, example = "1")
             @PathVariable Long ruleId,
             @ApiParam(value = "端口规则信息", required = true)
@@ -170,10 +146,10 @@ public class PortRuleController {
 
             // 2. 调用服务层更新规则
             // todo 更新时源地址未能更新
-            Boolean result = portRuleService.updatePortRule(ruleId, portRule);
+            Long commandId = portRuleService.updatePortRule(ruleId, portRule);
 
-            if (result) {
-                return ApiResult.success("更新成功", true);
+            if (commandId != null) {
+                return ApiResult.success("更新端口规则已受理，等待节点执行", Map.of("commandId", commandId));
             } else {
                 return ApiResult.fail("更新端口规则失败");
             }
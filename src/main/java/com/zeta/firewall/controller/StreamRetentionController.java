@@ -0,0 +1,51 @@
+package com.zeta.firewall.controller;
+
+import com.zeta.firewall.model.dto.StreamRetentionReport;
+import com.zeta.firewall.schedule.StreamRetentionService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.zetaframework.base.result.ApiResult;
+import org.zetaframework.core.log.annotation.SysLog;
+
+@Slf4j
+@RequiredArgsConstructor
+@Api(tags = "命令stream管理")
+//@PreAuth(replace = "agents:node") // 权限注解，可根据需要启用
+@RestController
+@RequestMapping("/api/agents/firewall/streams")
+public class StreamRetentionController {
+    private final StreamRetentionService streamRetentionService;
+
+    /**
+     * 获取最近一次裁剪的stream保留情况报告
+     *
+     * @return 报告
+     */
+    @ApiOperation(value = "获取stream保留情况", notes = "获取最近一次后台裁剪统计的stream数量、消息条数与内存占用")
+    @GetMapping("/retention")
+    public ApiResult<StreamRetentionReport> getRetentionReport() {
+        StreamRetentionReport report = streamRetentionService.getLastReport();
+        if (report == null) {
+            return ApiResult.success("尚未执行过裁剪", null);
+        }
+        return ApiResult.success(report);
+    }
+
+    /**
+     * 立即执行一次裁剪
+     *
+     * @return 本次裁剪的报告
+     */
+    @SysLog
+    @ApiOperation(value = "立即裁剪stream", notes = "按保留策略立即裁剪全部agent节点的命令stream，并返回报告")
+    @PostMapping("/retention/sweep")
+    public ApiResult<StreamRetentionReport> sweep() {
+        return ApiResult.success(streamRetentionService.sweep());
+    }
+}
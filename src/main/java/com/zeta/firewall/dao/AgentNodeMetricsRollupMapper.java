@@ -0,0 +1,30 @@
+package com.zeta.firewall.dao;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.zeta.firewall.model.entity.AgentNodeMetricsRollup;
+import org.apache.ibatis.annotations.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface AgentNodeMetricsRollupMapper extends BaseMapper<AgentNodeMetricsRollup> {
+
+    /**
+     * 将 [from, to) 内的原始采样按分钟汇总，已存在的汇总会被覆盖
+     *
+     * @param from 开始时间（含）
+     * @param to   结束时间（不含）
+     * @return 影响的行数
+     */
+    int rollupMinutes(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    /**
+     * 将 [from, to) 内的分钟汇总按小时汇总，已存在的汇总会被覆盖
+     *
+     * @param from 开始时间（含）
+     * @param to   结束时间（不含）
+     * @return 影响的行数
+     */
+    int rollupHours(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+}
@@ -0,0 +1,10 @@
+package com.zeta.firewall.dao;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.zeta.firewall.model.entity.CommandOutbox;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CommandOutboxMapper extends BaseMapper<CommandOutbox> {
+
+}
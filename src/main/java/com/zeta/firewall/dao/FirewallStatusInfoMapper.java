@@ -1,9 +1,9 @@
 package com.zeta.firewall.dao;
 
-import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.zeta.firewall.model.entity.FirewallStatusInfo;
 import org.springframework.stereotype.Repository;
+import org.zetaframework.core.mybatisplus.mapper.UpsertMapper;
 
 @Repository
-public interface FirewallStatusInfoMapper extends BaseMapper<FirewallStatusInfo> {
+public interface FirewallStatusInfoMapper extends UpsertMapper<FirewallStatusInfo> {
 }
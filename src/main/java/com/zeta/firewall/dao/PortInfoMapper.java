@@ -1,9 +1,9 @@
 package com.zeta.firewall.dao;
 
-import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.zeta.firewall.model.entity.PortInfo;
 import org.springframework.stereotype.Repository;
+import org.zetaframework.core.mybatisplus.mapper.UpsertMapper;
 
 @Repository
-public interface PortInfoMapper extends BaseMapper<PortInfo> {
+public interface PortInfoMapper extends UpsertMapper<PortInfo> {
 }
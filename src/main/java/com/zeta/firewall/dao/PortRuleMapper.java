@@ -1,10 +1,10 @@
 package com.zeta.firewall.dao;
 
-import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.zeta.firewall.model.entity.PortRule;
 import org.springframework.stereotype.Repository;
+import org.zetaframework.core.mybatisplus.mapper.UpsertMapper;
 
 @Repository
-public interface PortRuleMapper  extends BaseMapper<PortRule> {
+public interface PortRuleMapper extends UpsertMapper<PortRule> {
 
 }
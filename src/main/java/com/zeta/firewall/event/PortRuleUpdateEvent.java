@@ -2,8 +2,46 @@ package com.zeta.firewall.event;
 
 import org.springframework.context.ApplicationEvent;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 端口规则更新事件
+ *
+ * agentIds 为端口规则发生变化的节点，为空时表示无法确定节点，视为所有节点都可能变化
+ */
 public class PortRuleUpdateEvent extends ApplicationEvent {
+    private final Set<String> agentIds;
+
     public PortRuleUpdateEvent(Object source) {
+        this(source, Collections.emptySet());
+    }
+
+    public PortRuleUpdateEvent(Object source, Collection<String> agentIds) {
         super(source);
+        this.agentIds = agentIds == null ? Collections.emptySet() : Collections.unmodifiableSet(new LinkedHashSet<>(agentIds));
+    }
+
+    /**
+     * @return 端口规则发生变化的节点，为空时表示所有节点
+     */
+    public Set<String> getAgentIds() {
+        return agentIds;
+    }
+
+    /**
+     * 是否涉及所有节点
+     */
+    public boolean isAllAgents() {
+        return agentIds.isEmpty();
+    }
+
+    /**
+     * 指定节点的端口规则是否可能发生了变化
+     */
+    public boolean affects(String agentId) {
+        return agentIds.isEmpty() || agentIds.contains(agentId);
     }
-}
\ No newline at end of file
+}
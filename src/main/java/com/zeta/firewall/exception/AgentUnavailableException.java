@@ -0,0 +1,8 @@
+package com.zeta.firewall.exception;
+
+// agent节点熔断中，命令未下发
+public class AgentUnavailableException extends RuntimeException {
+    public AgentUnavailableException(String message) {
+        super(message);
+    }
+}
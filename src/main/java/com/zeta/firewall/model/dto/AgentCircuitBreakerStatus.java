@@ -0,0 +1,41 @@
+package com.zeta.firewall.model.dto;
+
+import com.zeta.firewall.model.enums.CircuitBreakerState;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * agent节点熔断器状态DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(description = "agent节点熔断器状态")
+public class AgentCircuitBreakerStatus {
+
+    @ApiModelProperty(value = "节点ID")
+    private String nodeId;
+
+    @ApiModelProperty(value = "熔断器状态")
+    private CircuitBreakerState state;
+
+    @ApiModelProperty(value = "熔断原因")
+    private String reason;
+
+    @ApiModelProperty(value = "连续超时次数")
+    private Integer consecutiveFailures;
+
+    @ApiModelProperty(value = "最近一次熔断的时间戳（毫秒）")
+    private Long openedAt;
+
+    @ApiModelProperty(value = "心跳是否在线")
+    private Boolean heartbeatAlive;
+
+    @ApiModelProperty(value = "熔断期间被拒绝的命令数")
+    private Long rejectedCount;
+}
@@ -0,0 +1,51 @@
+package com.zeta.firewall.model.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * agent节点命令响应延迟统计DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(description = "agent节点命令响应延迟统计")
+public class AgentLatencyStats {
+
+    @ApiModelProperty(value = "节点ID")
+    private String nodeId;
+
+    @ApiModelProperty(value = "操作，格式为 stream后缀:操作类型，如 portRule:QUERY")
+    private String operation;
+
+    @ApiModelProperty(value = "统计窗口内收到响应的命令数")
+    private Long count;
+
+    @ApiModelProperty(value = "统计窗口内超时的命令数")
+    private Long timeouts;
+
+    @ApiModelProperty(value = "p50延迟（毫秒）")
+    private Long p50Millis;
+
+    @ApiModelProperty(value = "p90延迟（毫秒）")
+    private Long p90Millis;
+
+    @ApiModelProperty(value = "p99延迟（毫秒）")
+    private Long p99Millis;
+
+    @ApiModelProperty(value = "最大延迟（毫秒）")
+    private Long maxMillis;
+
+    @ApiModelProperty(value = "当前使用的超时时间（毫秒）")
+    private Long timeoutMillis;
+
+    @ApiModelProperty(value = "直方图，key为桶的上界（毫秒），value为计数")
+    private Map<Long, Long> buckets;
+}
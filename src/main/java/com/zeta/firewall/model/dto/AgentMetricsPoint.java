@@ -0,0 +1,45 @@
+package com.zeta.firewall.model.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * agent节点资源使用率数据点DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(description = "agent节点资源使用率数据点")
+public class AgentMetricsPoint {
+
+    @ApiModelProperty(value = "时间，原始采样为采样时间，汇总数据为时间段的开始时间")
+    private LocalDateTime time;
+
+    @ApiModelProperty(value = "采样次数")
+    private Integer samples;
+
+    @ApiModelProperty(value = "CPU利用率（平均值）")
+    private Double cpuUsage;
+
+    @ApiModelProperty(value = "CPU利用率最大值")
+    private Double cpuMax;
+
+    @ApiModelProperty(value = "内存利用率（平均值）")
+    private Double memoryUsage;
+
+    @ApiModelProperty(value = "内存利用率最大值")
+    private Double memoryMax;
+
+    @ApiModelProperty(value = "磁盘利用率（平均值）")
+    private Double diskUsage;
+
+    @ApiModelProperty(value = "磁盘利用率最大值")
+    private Double diskMax;
+}
@@ -0,0 +1,40 @@
+package com.zeta.firewall.model.dto;
+
+import com.zeta.firewall.model.enums.BulkOperationType;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.util.List;
+
+/**
+ * 批量操作请求DTO
+ * 对一组节点执行同一个操作
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(description = "批量操作请求")
+public class BulkOperationRequest {
+
+    @NotEmpty(message = "节点ID列表不能为空")
+    @ApiModelProperty(value = "目标节点ID列表", required = true)
+    private List<String> nodeIds;
+
+    @NotNull(message = "操作类型不能为空")
+    @ApiModelProperty(value = "操作类型", required = true, example = "FIREWALL", notes = "可选值: ADD_PORT_RULE, FIREWALL, PING")
+    private BulkOperationType operation;
+
+    @ApiModelProperty(value = "端口规则，operation为ADD_PORT_RULE时必填，其中的nodeId会被忽略")
+    private PortRuleDTO portRule;
+
+    @ApiModelProperty(value = "防火墙操作，operation为FIREWALL时必填", example = "start", notes = "可选值: start, stop, restart")
+    private String firewallOperation;
+
+    @ApiModelProperty(value = "ping状态，operation为PING时必填", example = "Disable", notes = "可选值: Enable, Disable")
+    private String pingStatus;
+}
@@ -0,0 +1,72 @@
+package com.zeta.firewall.model.dto;
+
+import com.zeta.firewall.model.enums.BulkOperationType;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 批量操作结果DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(description = "批量操作结果")
+public class BulkOperationResult {
+
+    @ApiModelProperty(value = "操作类型")
+    private BulkOperationType operation;
+
+    @ApiModelProperty(value = "目标节点数量")
+    private Integer total;
+
+    @ApiModelProperty(value = "成功的节点数量")
+    private Integer successCount;
+
+    @ApiModelProperty(value = "已提交、等待节点异步执行的节点数量（添加端口规则），最终结果以端口规则状态为准")
+    private Integer acceptedCount;
+
+    @ApiModelProperty(value = "失败的节点数量")
+    private Integer failCount;
+
+    @ApiModelProperty(value = "批量操作总耗时（毫秒）")
+    private Long elapsedMillis;
+
+    @ApiModelProperty(value = "各个节点的操作结果，与请求中的节点顺序一致")
+    private List<NodeResult> results;
+
+    /**
+     * 单个节点的操作结果
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @ApiModel(description = "单个节点的操作结果")
+    public static class NodeResult {
+
+        @ApiModelProperty(value = "节点ID")
+        private String nodeId;
+
+        @ApiModelProperty(value = "是否成功")
+        private Boolean success;
+
+        @ApiModelProperty(value = "是否已提交、等待节点异步执行，此时success为false")
+        private Boolean accepted;
+
+        @ApiModelProperty(value = "已提交时的发件箱命令id，执行结果通过 GET /api/agents/firewall/commands/{commandId} 查询")
+        private Long commandId;
+
+        @ApiModelProperty(value = "失败原因或提示信息")
+        private String message;
+
+        @ApiModelProperty(value = "该节点操作耗时（毫秒），不包含排队等待时间")
+        private Long elapsedMillis;
+    }
+}
@@ -0,0 +1,59 @@
+package com.zeta.firewall.model.dto;
+
+import com.zeta.firewall.model.entity.CommandOutbox;
+import com.zeta.firewall.model.enums.OutboxStatus;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 发件箱命令执行状态DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(description = "发件箱命令执行状态")
+public class CommandOutboxStatus {
+
+    @ApiModelProperty(value = "发件箱命令id")
+    private Long id;
+
+    @ApiModelProperty(value = "节点ID")
+    private String agentId;
+
+    @ApiModelProperty(value = "操作类型", example = "INSERT")
+    private String opType;
+
+    @ApiModelProperty(value = "状态：PENDING 等待下发，SENDING 等待节点响应，SUCCEEDED 执行成功，FAILED 执行失败（数据库已恢复）")
+    private OutboxStatus status;
+
+    @ApiModelProperty(value = "已下发次数")
+    private Integer attempts;
+
+    @ApiModelProperty(value = "最近一次下发时间")
+    private LocalDateTime sentTime;
+
+    @ApiModelProperty(value = "最近一次失败原因")
+    private String lastError;
+
+    /**
+     * 发件箱记录转换为状态DTO，不包含命令内容
+     */
+    public static CommandOutboxStatus fromEntity(CommandOutbox entity) {
+        return CommandOutboxStatus.builder()
+                .id(entity.getId())
+                .agentId(entity.getAgentId())
+                .opType(entity.getOpType())
+                .status(entity.getStatus())
+                .attempts(entity.getAttempts())
+                .sentTime(entity.getSentTime())
+                .lastError(entity.getLastError())
+                .build();
+    }
+}
@@ -0,0 +1,55 @@
+package com.zeta.firewall.model.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 后台定时任务运行统计DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(description = "后台定时任务运行统计")
+public class JobLaneStats {
+
+    @ApiModelProperty(value = "任务名称，格式为 类名.方法名")
+    private String job;
+
+    @ApiModelProperty(value = "调度间隔（毫秒），fixedDelay 任务为两次执行之间的间隔，cron 任务为空")
+    private Long intervalMillis;
+
+    @ApiModelProperty(value = "首次执行前的随机延迟（毫秒）")
+    private Long jitterMillis;
+
+    @ApiModelProperty(value = "单次执行的耗时预算（毫秒），未配置时为调度间隔，为空时不统计 overrun")
+    private Long budgetMillis;
+
+    @ApiModelProperty(value = "是否正在执行")
+    private Boolean running;
+
+    @ApiModelProperty(value = "执行次数")
+    private Long runs;
+
+    @ApiModelProperty(value = "执行失败次数")
+    private Long failures;
+
+    @ApiModelProperty(value = "耗时超过预算的次数")
+    private Long overruns;
+
+    @ApiModelProperty(value = "最近一次开始时间（毫秒时间戳）")
+    private Long lastStartTime;
+
+    @ApiModelProperty(value = "最近一次耗时（毫秒）")
+    private Long lastDurationMillis;
+
+    @ApiModelProperty(value = "平均耗时（毫秒）")
+    private Long avgDurationMillis;
+
+    @ApiModelProperty(value = "最大耗时（毫秒）")
+    private Long maxDurationMillis;
+}
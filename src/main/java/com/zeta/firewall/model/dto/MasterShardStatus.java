@@ -0,0 +1,45 @@
+package com.zeta.firewall.model.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * master实例分片归属状态DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(description = "master实例分片归属状态")
+public class MasterShardStatus {
+
+    @ApiModelProperty(value = "是否启用分片，未启用时每个master实例处理全部agent节点")
+    private Boolean enabled;
+
+    @ApiModelProperty(value = "当前master实例id")
+    private String instanceId;
+
+    @ApiModelProperty(value = "存活的master实例id列表")
+    private List<String> members;
+
+    @ApiModelProperty(value = "分片总数")
+    private Integer shardCount;
+
+    @ApiModelProperty(value = "按一致性哈希应由当前实例持有的分片")
+    private List<Integer> assignedShards;
+
+    @ApiModelProperty(value = "当前实例实际持有租约的分片")
+    private List<Integer> heldShards;
+
+    @ApiModelProperty(value = "租约本地有效期截止时间（毫秒时间戳）")
+    private Long leaseValidUntil;
+
+    @ApiModelProperty(value = "分片归属版本，持有的分片每变化一次加一")
+    private Long ownershipVersion;
+}
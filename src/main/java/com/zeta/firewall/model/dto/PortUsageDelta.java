@@ -0,0 +1,43 @@
+package com.zeta.firewall.model.dto;
+
+import com.zeta.firewall.model.entity.PortInfo;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 节点端口使用变化DTO
+ *
+ * 端口信息同步后通过websocket推送到 /topic/agent/{nodeId}/ports
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(description = "节点端口使用变化")
+public class PortUsageDelta {
+
+    @ApiModelProperty(value = "节点ID")
+    private String nodeId;
+
+    @ApiModelProperty(value = "同步完成的时间戳（毫秒）")
+    private Long timestamp;
+
+    @ApiModelProperty(value = "新开始监听的端口")
+    private List<PortInfo> added;
+
+    @ApiModelProperty(value = "进程信息变化的端口")
+    private List<PortInfo> changed;
+
+    @ApiModelProperty(value = "不再监听的端口")
+    private List<PortInfo> removed;
+
+    @ApiModelProperty(value = "有端口正在使用的端口规则id，服务端未缓存该节点的端口使用情况时为空")
+    private Set<Long> usingRuleIds;
+}
@@ -40,6 +40,12 @@ public class RedisCommandMessage<T> {
 
     private T old;
 
+    /**
+     * 命令优先级，为空时按 HIGH 处理
+     * 支持优先级通道的agent节点，LOW 优先级的命令发布到单独的 :low 通道
+     */
+    private Priority priority;
+
     // 操作类型枚举
     public enum OperationType {
         @JsonEnumDefaultValue
@@ -51,6 +57,19 @@ public class RedisCommandMessage<T> {
         OPTIONS
     }
 
+    // 命令优先级枚举
+    public enum Priority {
+        /**
+         * 交互式命令，如页面上的单条规则增删改查
+         */
+        @JsonEnumDefaultValue
+        HIGH,
+        /**
+         * 后台命令，如批量操作、对账同步
+         */
+        LOW
+    }
+
     // 组件类型枚举
     public enum ComponentType {
         @JsonEnumDefaultValue
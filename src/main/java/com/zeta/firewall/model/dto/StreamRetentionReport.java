@@ -0,0 +1,104 @@
+package com.zeta.firewall.model.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 命令stream保留情况报告
+ * 由最近一次后台裁剪生成
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(description = "命令stream保留情况报告")
+public class StreamRetentionReport {
+
+    @ApiModelProperty(value = "裁剪完成时间（毫秒时间戳）")
+    private Long sweepTime;
+
+    @ApiModelProperty(value = "裁剪耗时（毫秒）")
+    private Long durationMillis;
+
+    @ApiModelProperty(value = "agent节点数量")
+    private Integer agentCount;
+
+    @ApiModelProperty(value = "存在的stream数量")
+    private Integer streamCount;
+
+    @ApiModelProperty(value = "全部stream的消息条数")
+    private Long totalEntries;
+
+    @ApiModelProperty(value = "全部stream的内存占用（字节）")
+    private Long totalBytes;
+
+    @ApiModelProperty(value = "平均每个agent节点的stream内存占用（字节），乘以节点数即可估算所需的redis内存")
+    private Long averageBytesPerAgent;
+
+    @ApiModelProperty(value = "本次按时间裁剪的消息条数")
+    private Long trimmedByAge;
+
+    @ApiModelProperty(value = "本次按内存裁剪的消息条数")
+    private Long trimmedByMemory;
+
+    @ApiModelProperty(value = "各stream族的使用情况")
+    private List<FamilyUsage> families;
+
+    @ApiModelProperty(value = "内存占用最多的stream")
+    private List<StreamUsage> largestStreams;
+
+    /**
+     * stream族的使用情况
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @ApiModel(description = "stream族的使用情况")
+    public static class FamilyUsage {
+
+        @ApiModelProperty(value = "stream族，如 pub:*:portRule")
+        private String family;
+
+        @ApiModelProperty(value = "消息最长保留时间（毫秒）")
+        private Long maxAgeMillis;
+
+        @ApiModelProperty(value = "单个stream的内存上限（字节）")
+        private Long maxMemoryBytes;
+
+        @ApiModelProperty(value = "存在的stream数量")
+        private Integer streams;
+
+        @ApiModelProperty(value = "消息条数")
+        private Long entries;
+
+        @ApiModelProperty(value = "内存占用（字节）")
+        private Long bytes;
+    }
+
+    /**
+     * 单个stream的使用情况
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @ApiModel(description = "单个stream的使用情况")
+    public static class StreamUsage {
+
+        @ApiModelProperty(value = "stream key")
+        private String key;
+
+        @ApiModelProperty(value = "消息条数")
+        private Long entries;
+
+        @ApiModelProperty(value = "内存占用（字节）")
+        private Long bytes;
+    }
+}
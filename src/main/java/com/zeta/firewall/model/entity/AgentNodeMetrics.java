@@ -0,0 +1,30 @@
+package com.zeta.firewall.model.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * agent节点资源使用率采样
+ * 只追加不修改，由 AgentMetricsCollector 按心跳批量写入
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@TableName("agent_node_metrics")
+public class AgentNodeMetrics {
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+    private String agentId;
+    private LocalDateTime sampleTime;
+    private Double cpuUsage;
+    private Double memoryUsage;
+    private Double diskUsage;
+}
@@ -0,0 +1,42 @@
+package com.zeta.firewall.model.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.zeta.firewall.model.enums.MetricsResolution;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * agent节点资源使用率汇总（按分钟、按小时）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@TableName("agent_node_metrics_rollup")
+public class AgentNodeMetricsRollup {
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+    private String agentId;
+    private MetricsResolution resolution;
+    private LocalDateTime bucketTime;
+    private Integer samples;
+    // 各指标非空采样的总和与个数，按小时汇总时据此计算平均值
+    private Double cpuSum;
+    private Integer cpuCount;
+    private Double cpuAvg;
+    private Double cpuMax;
+    private Double memorySum;
+    private Integer memoryCount;
+    private Double memoryAvg;
+    private Double memoryMax;
+    private Double diskSum;
+    private Integer diskCount;
+    private Double diskAvg;
+    private Double diskMax;
+}
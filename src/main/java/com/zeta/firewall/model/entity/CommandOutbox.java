@@ -0,0 +1,43 @@
+package com.zeta.firewall.model.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.zeta.firewall.model.enums.OutboxStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import org.zetaframework.base.entity.Entity;
+
+import java.time.LocalDateTime;
+
+/**
+ * agent命令发件箱
+ *
+ * 业务事务内只写入命令，事务提交后由 CommandOutboxRelay 批量下发到agent节点，并异步回写执行结果
+ */
+@EqualsAndHashCode(callSuper = false)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("firewall_command_outbox")
+public class CommandOutbox extends Entity<Long> {
+
+    // 使用数据表的自增id
+    @TableId(value = "id", type = IdType.AUTO)
+    protected Long id;
+
+    private String agentId;           // agent节点ID
+    private String streamSuffix;      // stream后缀
+    private String opType;            // 操作类型
+    private String payload;           // 命令消息(JSON)
+    private OutboxStatus status;      // 状态
+    private Integer attempts;         // 已下发次数
+    private LocalDateTime nextAttemptTime; // 最早下发时间
+    private String claimToken;        // 领取批次标识
+    private LocalDateTime sentTime;   // 最近一次下发时间
+    private String lastError;         // 最近一次失败原因
+}
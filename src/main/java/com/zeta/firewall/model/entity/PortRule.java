@@ -4,9 +4,11 @@ import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import cn.hutool.core.util.HashUtil;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import lombok.*;
 
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -39,6 +41,7 @@ public class PortRule extends AbstractFirewallRule {
     @TableField(typeHandler = com.baomidou.mybatisplus.extension.handlers.JacksonTypeHandler.class)
     private SourceRule sourceRule; // 源IP地址或CIDR
     private String descriptor; //端口描述信息
+    private String fingerprint; // 规则内容指纹，对应唯一索引 uk_fingerprint，见 computeFingerprint()
 
     /**
      * 对象比较只包含 family, port、protocol sourceRule，policy 和父类属性（agentId，permanent，type，zone）
@@ -62,6 +65,65 @@ public class PortRule extends AbstractFirewallRule {
         return Objects.hash(super.hashCode(), family,port, protocol,sourceRule,policy);
     }
 
+    /**
+     * 计算规则内容指纹
+     * 由 family、port、protocol、source、policy、agentId、permanent、type、zone 规范化后拼接，
+     * 取 MurmurHash3 128 位的十六进制（32 个字符）；源地址只取 source。
+     * equals 按原值比较，只有经过 {@link #normalize()} 的规则，指纹相同才意味着上述属性 equals 相同，
+     * 所以写入数据库前统一调用 {@link #refreshFingerprint()}
+     * @return 指纹
+     */
+    public String computeFingerprint() {
+        String canonical = String.join("\u0001",
+                normalize(family),
+                port == null ? "\u0000" : port.replace(" ", ""),
+                normalize(protocol),
+                sourceRule == null || sourceRule.getSource() == null ? "\u0000" : sourceRule.getSource().trim(),
+                String.valueOf(policy),
+                agentId == null ? "\u0000" : agentId,
+                String.valueOf(permanent),
+                type == null ? "\u0000" : type.name(),
+                zone == null ? "\u0000" : zone.trim());
+        long[] hash = HashUtil.murmur128(canonical.getBytes(StandardCharsets.UTF_8));
+        return String.format("%016x%016x", hash[0], hash[1]);
+    }
+
+    /**
+     * 规范化参与指纹计算的属性，写入数据库的值与指纹使用的值一致
+     * family、protocol 去空格并转小写，port 去掉空格，zone、source 去掉首尾空格
+     */
+    public void normalize() {
+        if (family != null) {
+            family = family.trim().toLowerCase();
+        }
+        if (port != null) {
+            port = port.replace(" ", "");
+        }
+        if (protocol != null) {
+            protocol = protocol.trim().toLowerCase();
+        }
+        if (zone != null) {
+            zone = zone.trim();
+        }
+        if (sourceRule != null && sourceRule.getSource() != null) {
+            sourceRule.setSource(sourceRule.getSource().trim());
+        }
+    }
+
+    /**
+     * 规范化规则内容并重新计算指纹，写入数据库前调用
+     * @return 指纹
+     */
+    public String refreshFingerprint() {
+        normalize();
+        this.fingerprint = computeFingerprint();
+        return fingerprint;
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "\u0000" : value.trim().toLowerCase();
+    }
+
     @Override
     public Map<String, Object> toDBusParams() {
         Map<String, Object> params = new HashMap<>();
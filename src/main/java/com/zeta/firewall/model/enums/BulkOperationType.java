@@ -0,0 +1,21 @@
+package com.zeta.firewall.model.enums;
+
+/**
+ * 批量操作类型
+ */
+public enum BulkOperationType {
+    /**
+     * 添加端口规则
+     */
+    ADD_PORT_RULE,
+
+    /**
+     * 操作防火墙（启动、停止、重启）
+     */
+    FIREWALL,
+
+    /**
+     * 是否禁止外部系统ping
+     */
+    PING
+}
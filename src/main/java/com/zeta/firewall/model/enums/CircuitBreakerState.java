@@ -0,0 +1,21 @@
+package com.zeta.firewall.model.enums;
+
+/**
+ * agent节点熔断器状态
+ */
+public enum CircuitBreakerState {
+    /**
+     * 正常，命令正常下发
+     */
+    CLOSED,
+
+    /**
+     * 熔断，命令直接失败，不再下发
+     */
+    OPEN,
+
+    /**
+     * 半开，允许下发一个探测命令，成功后恢复为 CLOSED，失败则重新熔断
+     */
+    HALF_OPEN
+}
@@ -0,0 +1,21 @@
+package com.zeta.firewall.model.enums;
+
+/**
+ * 资源使用率数据的粒度
+ */
+public enum MetricsResolution {
+    /**
+     * 原始采样
+     */
+    RAW,
+
+    /**
+     * 按分钟汇总
+     */
+    MINUTE,
+
+    /**
+     * 按小时汇总
+     */
+    HOUR
+}
@@ -0,0 +1,26 @@
+package com.zeta.firewall.model.enums;
+
+/**
+ * 发件箱命令状态
+ */
+public enum OutboxStatus {
+    /**
+     * 等待下发
+     */
+    PENDING,
+
+    /**
+     * 已下发，等待agent节点响应
+     */
+    SENDING,
+
+    /**
+     * agent节点执行成功
+     */
+    SUCCEEDED,
+
+    /**
+     * 执行失败（agent节点返回失败或重试次数用尽），已执行补偿
+     */
+    FAILED
+}
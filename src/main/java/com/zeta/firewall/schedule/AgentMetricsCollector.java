@@ -0,0 +1,235 @@
+package com.zeta.firewall.schedule;
+
+import cn.hutool.core.util.StrUtil;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.model.entity.AgentNodeInfo;
+import com.zeta.firewall.model.entity.AgentNodeMetrics;
+import com.zeta.firewall.service.AgentNodeMetricsService;
+import com.zeta.firewall.service.AgentShardManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * agent节点资源使用率采集
+ *
+ * 由 HeartBeatService 在每轮心跳检查中驱动：检查时已解析的节点心跳直接转为采样（offer），
+ * 本轮检查结束时一次批量写入 agent_node_metrics（collect）。增量检查只解析状态可能变化的节点，
+ * 因此每隔采样间隔再按存活索引（ZSET，score 为心跳时间戳）找出心跳时间戳有变化、尚未采样的节点，
+ * 只读取并解析这些节点的心跳数据，不再扫描整个心跳hash表；不属于当前实例分片的节点不解析。
+ * 历史数据只追加到时序表，不再更新 agent_node_info，并定期汇总为分钟、小时粒度和清理过期数据。
+ * 多个master实例时只采集当前实例持有分片内的节点，汇总按时间段覆盖写入，各实例重复执行不会产生重复数据。
+ */
+@Service
+public class AgentMetricsCollector {
+    private static final Logger logger = LoggerFactory.getLogger(AgentMetricsCollector.class);
+    // redis 中存储心跳数据的hash表名
+    private static final String HEART_BEAT_HASH_TABLE_NAME = "firewall:heartbeats";
+    // 存活索引 ZSET，member 为 agentId，score 为最近一次心跳时间戳（秒）
+    private static final String LIVENESS_INDEX_NAME = "firewall:heartbeats:liveness";
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final StringRedisTemplate stringRedisTemplate;
+    private final AgentNodeMetricsService agentNodeMetricsService;
+    private final AgentShardManager agentShardManager;
+    private final FirewallProperties firewallProperties;
+    private final FirewallProperties.Metrics properties;
+
+    // 各节点最近一次采样的心跳时间戳（秒）
+    private final Map<String, Long> lastSampledTimestamps = new ConcurrentHashMap<>();
+    // 本轮心跳检查中已生成、尚未写入的采样
+    private List<AgentNodeMetrics> pendingSamples = new ArrayList<>();
+    // 上一次读取存活索引时见到的最大心跳时间戳，下一次只读取此后有心跳的节点
+    private double indexWatermark = Double.NEGATIVE_INFINITY;
+    // 上一次读取存活索引的时间（毫秒）
+    private long lastIndexReadMillis;
+
+    public AgentMetricsCollector(StringRedisTemplate stringRedisTemplate,
+                                 AgentNodeMetricsService agentNodeMetricsService,
+                                 AgentShardManager agentShardManager,
+                                 FirewallProperties firewallProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.agentNodeMetricsService = agentNodeMetricsService;
+        this.agentShardManager = agentShardManager;
+        this.firewallProperties = firewallProperties;
+        this.properties = firewallProperties.getMetrics();
+    }
+
+    /**
+     * 是否启用资源使用率采集
+     */
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(properties.getEnabled());
+    }
+
+    /**
+     * 周期性汇总并清理过期数据
+     */
+    @Scheduled(fixedDelayString = "${zeta.firewall.metrics.rollup-interval-millis:60000}",
+            initialDelayString = "${zeta.firewall.metrics.rollup-interval-millis:60000}")
+    public void rollupPeriod() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            agentNodeMetricsService.rollup(now);
+            agentNodeMetricsService.purge(now);
+        } catch (Exception e) {
+            logger.error("Rollup agent metrics failed", e);
+        }
+    }
+
+    /**
+     * 心跳检查中已解析的节点心跳转为采样，须在心跳时间戳被格式化之前调用
+     *
+     * @param agentId 当前实例负责的节点
+     * @param info    心跳数据，heartbeatTimestamp 为秒级时间戳
+     */
+    public synchronized void offer(String agentId, AgentNodeInfo info) {
+        if (!isEnabled()) {
+            return;
+        }
+        AgentNodeMetrics sample = toSample(agentId, info);
+        if (sample != null) {
+            pendingSamples.add(sample);
+        }
+    }
+
+    /**
+     * 写入本轮心跳检查的采样，每轮检查结束时调用一次
+     * 到达采样间隔时，按存活索引补充心跳时间戳有变化、本轮未解析的节点
+     *
+     * @return 本次写入的采样数
+     */
+    public synchronized int collect() {
+        if (!isEnabled()) {
+            return 0;
+        }
+        List<AgentNodeMetrics> samples = pendingSamples;
+        pendingSamples = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        if (Boolean.TRUE.equals(firewallProperties.getLiveness().getEnabled())
+                && now - lastIndexReadMillis >= properties.getSampleIntervalMillis()) {
+            lastIndexReadMillis = now;
+            samples.addAll(collectChanged());
+        }
+        // 不再由当前实例负责的节点不再跟踪
+        lastSampledTimestamps.keySet().removeIf(agentId -> !agentShardManager.owns(agentId));
+
+        if (!samples.isEmpty()) {
+            agentNodeMetricsService.append(samples);
+        }
+        logger.debug("Collected {} metrics samples", samples.size());
+        return samples.size();
+    }
+
+    /**
+     * 按存活索引找出心跳时间戳晚于上次采样的节点，只读取并解析当前实例负责的这部分节点
+     */
+    private List<AgentNodeMetrics> collectChanged() {
+        // 回溯一个采样间隔，容忍节点之间的时钟偏差，已采样的时间戳由 lastSampledTimestamps 去重
+        double min = indexWatermark - properties.getSampleIntervalMillis() / 1000d;
+        Set<ZSetOperations.TypedTuple<String>> changed = stringRedisTemplate.opsForZSet()
+                .rangeByScoreWithScores(LIVENESS_INDEX_NAME, min, Double.POSITIVE_INFINITY);
+        List<AgentNodeMetrics> samples = new ArrayList<>();
+        if (changed == null || changed.isEmpty()) {
+            return samples;
+        }
+        List<Object> agentIds = new ArrayList<>();
+        for (ZSetOperations.TypedTuple<String> tuple : changed) {
+            String agentId = tuple.getValue();
+            Double score = tuple.getScore();
+            if (agentId == null || score == null) {
+                continue;
+            }
+            indexWatermark = Math.max(indexWatermark, score);
+            if (agentShardManager.owns(agentId) && !Objects.equals(score.longValue(), lastSampledTimestamps.get(agentId))) {
+                agentIds.add(agentId);
+            }
+        }
+        if (agentIds.isEmpty()) {
+            return samples;
+        }
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(HEART_BEAT_HASH_TABLE_NAME, agentIds);
+        for (int i = 0; i < agentIds.size(); i++) {
+            String agentId = (String) agentIds.get(i);
+            AgentNodeMetrics sample = toSample(agentId, (String) values.get(i));
+            if (sample != null) {
+                samples.add(sample);
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * 将心跳数据转为采样，心跳时间戳未变化或数据无效时返回 null
+     */
+    AgentNodeMetrics toSample(String agentId, String value) {
+        if (value == null) {
+            return null;
+        }
+        AgentNodeInfo info;
+        try {
+            info = objectMapper.readValue(value, AgentNodeInfo.class);
+        } catch (Exception e) {
+            logger.debug("Invalid heartbeat data for agent {}, skipping metrics sample", agentId);
+            return null;
+        }
+        return toSample(agentId, info);
+    }
+
+    /**
+     * 将已解析的心跳数据转为采样，心跳时间戳未变化或无效时返回 null
+     */
+    AgentNodeMetrics toSample(String agentId, AgentNodeInfo info) {
+        String timestamp = info.getHeartbeatTimestamp();
+        if (!StrUtil.isNumeric(timestamp)) {
+            return null;
+        }
+        long heartbeatTimestamp = Long.parseLong(timestamp);
+        if (Objects.equals(heartbeatTimestamp, lastSampledTimestamps.get(agentId))) {
+            return null;
+        }
+        lastSampledTimestamps.put(agentId, heartbeatTimestamp);
+
+        return AgentNodeMetrics.builder()
+                .agentId(agentId)
+                // 心跳时间戳为秒级
+                .sampleTime(LocalDateTime.ofInstant(Instant.ofEpochSecond(heartbeatTimestamp), ZoneId.systemDefault()))
+                .cpuUsage(parseUsage(info.getCpuUsage()))
+                .memoryUsage(parseUsage(info.getMemoryUsage()))
+                .diskUsage(parseUsage(info.getDiskUsage()))
+                .build();
+    }
+
+    /**
+     * 解析使用率，兼容带百分号的字符串，无法解析时返回 null
+     */
+    static Double parseUsage(String usage) {
+        if (StrUtil.isBlank(usage)) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(usage.replace("%", "").trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.zeta.firewall.schedule;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.exception.AgentUnavailableException;
+import com.zeta.firewall.exception.EmptyResultException;
+import com.zeta.firewall.model.dto.RedisCommandMessage;
+import com.zeta.firewall.model.entity.CommandOutbox;
+import com.zeta.firewall.service.AgentCommandService;
+import com.zeta.firewall.service.CommandOutboxHandler;
+import com.zeta.firewall.service.CommandOutboxService;
+import com.zeta.firewall.util.JsonMessageConverter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 发件箱命令下发
+ *
+ * 周期性地领取到期的发件箱命令，按stream后缀分组后通过 pipeline 批量下发，不等待agent节点响应；
+ * 响应到达后在 outboxExecutor 线程池中回写结果，并交给对应的 {@link CommandOutboxHandler} 处理或补偿。
+ * 同一个节点同一stream后缀的命令逐条下发：前一条命令有结果（成功或最终失败）之前，后面的命令不会被领取，
+ * 前一条等待重试时后面的命令也一起推迟，保证节点执行命令的顺序与写入发件箱的顺序一致。
+ * 已完成的命令保留 retentionHours 小时后定期分批删除，避免发件箱表只增不减。
+ */
+@Slf4j
+@Service
+public class CommandOutboxRelay {
+    private final CommandOutboxService commandOutboxService;
+    private final AgentCommandService agentCommandService;
+    private final FirewallProperties firewallProperties;
+    private final ThreadPoolTaskExecutor outboxExecutor;
+    private final Map<String, CommandOutboxHandler> handlers;
+
+    public CommandOutboxRelay(CommandOutboxService commandOutboxService, AgentCommandService agentCommandService,
+                              FirewallProperties firewallProperties,
+                              @Qualifier("outboxExecutor") ThreadPoolTaskExecutor outboxExecutor,
+                              List<CommandOutboxHandler> handlers) {
+        this.commandOutboxService = commandOutboxService;
+        this.agentCommandService = agentCommandService;
+        this.firewallProperties = firewallProperties;
+        this.outboxExecutor = outboxExecutor;
+        this.handlers = handlers.stream().collect(Collectors.toMap(CommandOutboxHandler::streamSuffix, Function.identity()));
+    }
+
+    /**
+     * 下发一批到期的发件箱命令
+     */
+    @Scheduled(fixedDelayString = "${zeta.firewall.outbox.relay-interval-millis:500}")
+    public void relay() {
+        FirewallProperties.Outbox outbox = firewallProperties.getOutbox();
+        if (!Boolean.TRUE.equals(outbox.getEnabled())) {
+            return;
+        }
+
+        int recovered = commandOutboxService.recoverStale(outbox.getSendingTimeoutMillis());
+        if (recovered > 0) {
+            log.warn("Recovered {} outbox commands without result", recovered);
+        }
+
+        List<CommandOutbox> batch = commandOutboxService.claim(outbox.getBatchSize());
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<CommandOutbox>> bySuffix = batch.stream()
+                .collect(Collectors.groupingBy(CommandOutbox::getStreamSuffix, LinkedHashMap::new, Collectors.toList()));
+        bySuffix.forEach(this::send);
+        log.debug("Relayed {} outbox commands", batch.size());
+    }
+
+    /**
+     * 清理超过保留时间的已完成命令
+     */
+    @Scheduled(fixedDelayString = "${zeta.firewall.outbox.purge-interval-millis:3600000}",
+            initialDelayString = "${zeta.firewall.outbox.purge-interval-millis:3600000}")
+    public void purge() {
+        FirewallProperties.Outbox outbox = firewallProperties.getOutbox();
+        if (!Boolean.TRUE.equals(outbox.getEnabled())) {
+            return;
+        }
+        int purged = commandOutboxService.purgeFinished(LocalDateTime.now().minusHours(outbox.getRetentionHours()));
+        if (purged > 0) {
+            log.info("Purged {} finished outbox commands", purged);
+        }
+    }
+
+    /**
+     * 下发同一个stream后缀的命令，每轮每个节点最多一条
+     */
+    private void send(String streamSuffix, List<CommandOutbox> commands) {
+        List<CommandOutbox> remaining = commands;
+        while (!remaining.isEmpty()) {
+            Map<String, CommandOutbox> round = new LinkedHashMap<>();
+            Map<String, RedisCommandMessage<JsonNode>> messages = new LinkedHashMap<>();
+            List<CommandOutbox> next = new ArrayList<>();
+            for (CommandOutbox command : remaining) {
+                if (round.containsKey(command.getAgentId())) {
+                    next.add(command);
+                    continue;
+                }
+                RedisCommandMessage<JsonNode> message;
+                try {
+                    message = JsonMessageConverter.parseMessage(command.getPayload(), JsonNode.class);
+                } catch (Exception e) {
+                    fail(command, "Invalid payload: " + e.getMessage());
+                    continue;
+                }
+                round.put(command.getAgentId(), command);
+                messages.put(command.getAgentId(), message);
+            }
+
+            Map<String, CompletableFuture<Map<Object, Object>>> futures = agentCommandService.submitAll(messages, streamSuffix);
+            futures.forEach((agentId, future) -> future.whenCompleteAsync(
+                    (value, ex) -> complete(round.get(agentId), value, ex), outboxExecutor));
+            remaining = next;
+        }
+    }
+
+    /**
+     * 回写命令结果
+     * agent节点返回失败时不重试；超时或节点熔断时在重试次数内稍后重新下发
+     */
+    void complete(CommandOutbox command, Map<Object, Object> value, Throwable ex) {
+        try {
+            if (ex == null) {
+                if (AgentCommandService.isResponseSuccess(value)) {
+                    if (commandOutboxService.markSucceeded(command) == 0) {
+                        log.warn("Outbox command: {} was reclaimed, skip handling its result", command.getId());
+                        return;
+                    }
+                    CommandOutboxHandler handler = handlers.get(command.getStreamSuffix());
+                    if (handler != null) {
+                        handler.onSuccess(command, value);
+                    }
+                } else {
+                    fail(command, "Agent returned status: " + (value == null ? null : value.get("status")));
+                }
+                return;
+            }
+
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            FirewallProperties.Outbox outbox = firewallProperties.getOutbox();
+            boolean retryable = cause instanceof EmptyResultException || cause instanceof AgentUnavailableException;
+            if (retryable && command.getAttempts() < outbox.getMaxAttempts()) {
+                long delay = outbox.getRetryBackoffMillis() * command.getAttempts();
+                log.warn("Outbox command: {} to node: {} failed, retry in {} ms: {}", command.getId(), command.getAgentId(), delay, cause.getMessage());
+                commandOutboxService.retryLater(command, delay, cause.getMessage());
+            } else {
+                fail(command, cause.getMessage());
+            }
+        } catch (Exception e) {
+            log.error("Failed to complete outbox command: {}", command.getId(), e);
+        }
+    }
+
+    private void fail(CommandOutbox command, String reason) {
+        log.error("Outbox command: {} ({} {}) to node: {} failed: {}", command.getId(), command.getStreamSuffix(),
+                command.getOpType(), command.getAgentId(), reason);
+        // 命令已被恢复并由其他下发重新领取时，结果以新的下发为准，不做补偿
+        if (commandOutboxService.markFailed(command, reason) == 0) {
+            log.warn("Outbox command: {} was reclaimed, skip compensation", command.getId());
+            return;
+        }
+        CommandOutboxHandler handler = handlers.get(command.getStreamSuffix());
+        if (handler != null) {
+            handler.onFailure(command, reason);
+        }
+    }
+}
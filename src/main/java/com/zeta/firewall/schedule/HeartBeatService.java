@@ -1,19 +1,32 @@
 package com.zeta.firewall.schedule;
 
+import cn.hutool.core.util.StrUtil;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zeta.firewall.config.properties.FirewallProperties;
 import com.zeta.firewall.model.entity.AgentNodeInfo;
+import com.zeta.firewall.service.AgentCircuitBreakerRegistry;
 import com.zeta.firewall.service.AgentNodeInfoService;
+import com.zeta.firewall.service.AgentShardManager;
+import com.zeta.firewall.service.AgentVersionRegistry;
 import com.zeta.firewall.util.DateTimeUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.DefaultTypedTuple;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -27,6 +40,8 @@ public class HeartBeatService {
     private final ObjectMapper objectMapper = new ObjectMapper();
     // redis 中存储心跳数据的hash表名
     private final String heartBeatHashTableName = "firewall:heartbeats";
+    // 存活索引 ZSET，member 为 agentId，score 为最近一次心跳时间戳（秒）
+    private final String livenessIndexName = "firewall:heartbeats:liveness";
 
     // 统计某个节点连续离线次数
     private final ConcurrentHashMap<String, Integer> offlineCountMap = new ConcurrentHashMap<>();
@@ -36,91 +51,338 @@ public class HeartBeatService {
     private static final int OFFLINE_MAX = 3;
     // 节点上报时间 早于 心跳检查时间 OFFLINE_THRESHOLD 秒，则判定为离线
     private static final long OFFLINE_THRESHOLD = 30; // 30秒
+    // 检查轮次
+    private long cycle;
+    // 上一轮的离线判定界限（秒），心跳时间早于该值的节点在上一轮已判定为离线
+    private Long lastCutoff;
+    // 不维护存活索引的旧版本节点，由master读取心跳并代为写入索引
+    private Set<String> legacyAgents = new HashSet<>();
+    // 上一次全量扫描时心跳hash表中的节点数
+    private long knownAgentCount = -1;
+    // 上一轮检查时的分片归属版本
+    private long lastOwnershipVersion = -1;
+    // 由其他master实例处理、已按存活索引判定为离线的节点，只用于驱动本实例的熔断器
+    private final Set<String> remoteOfflineAgents = new HashSet<>();
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
     @Autowired
     private AgentNodeInfoService agentNodeInfoService;
+    @Autowired
+    private AgentVersionRegistry agentVersionRegistry;
+    @Autowired
+    private AgentCircuitBreakerRegistry agentCircuitBreakerRegistry;
+    @Autowired
+    private FirewallProperties firewallProperties;
+    @Autowired
+    private AgentShardManager agentShardManager;
+    @Autowired
+    private AgentMetricsCollector agentMetricsCollector;
 
     /**
      * master节点周期性地检查来自agent节点的心跳
      * 每10秒执行一次，但“上次任务执行完毕后再等10秒”才开始下次（适合任务耗时不确定且不能重叠)
+     *
+     * 每轮只调用一次 TIME，通过存活索引（ZSET，agentId -> 最近心跳时间）找出状态可能变化的节点，
+     * 只读取并解析这些节点的心跳数据；新节点加入、索引未启用或每隔 fullScanEvery 轮时全量扫描一次心跳hash表
+     *
+     * 多个master实例时只处理当前实例持有分片内的节点，持有的分片变化后清理本地状态并全量扫描一次；
+     * 其他实例负责的节点只按心跳时间（全量扫描时的心跳数据或存活索引）驱动本实例的熔断器，
+     * 使本实例发往这些节点的命令同样能在节点离线时快速失败、在节点恢复后放行
+     *
+     * 本轮解析过的节点心跳同时交给 AgentMetricsCollector 生成资源使用率采样，检查结束时批量写入一次
      */
     @Scheduled(fixedDelay = FIXED_DELAY)
-    public void heartBeatCheckPeriod() throws JsonProcessingException {
+    public synchronized void heartBeatCheckPeriod() throws JsonProcessingException {
         // 通过读取redis中名为 heartbeats 的hash表数据来检测agent节点的存活状态
         // 将所有汇报心跳的agentId数据持久化
         // 如何区分agent节点心跳是否是首次？如果是首次，需要持久化agent节点信息;不是首次，需要判断agent节点是否离线？
         //     通过对比redis服务器时间戳和心跳汇报的时间戳间隔，比如超过30秒，表示agent节点离线
+        long currentRedisServerTime = getRedisServerTime();
+        FirewallProperties.Liveness liveness = firewallProperties.getLiveness();
+        cycle++;
+
+        boolean ownershipChanged = onOwnershipChange();
+        if (ownershipChanged || !Boolean.TRUE.equals(liveness.getEnabled()) || lastCutoff == null
+                || cycle % Math.max(1, liveness.getFullScanEvery()) == 0 || hasUnindexedAgents()) {
+            fullScan(currentRedisServerTime);
+        } else {
+            incrementalScan(currentRedisServerTime);
+        }
+        lastCutoff = currentRedisServerTime - OFFLINE_THRESHOLD;
+        collectMetrics();
+    }
+
+    /**
+     * 写入本轮的资源使用率采样，采集失败不影响心跳检查
+     */
+    private void collectMetrics() {
+        try {
+            agentMetricsCollector.collect();
+        } catch (Exception e) {
+            logger.error("Collect agent metrics failed", e);
+        }
+    }
+
+    /**
+     * 全量扫描心跳hash表，并重建存活索引
+     */
+    private void fullScan(long currentRedisServerTime) throws JsonProcessingException {
         Map<Object, Object> heartBeats = stringRedisTemplate.opsForHash().entries(heartBeatHashTableName);
 
+        Set<ZSetOperations.TypedTuple<String>> scores = new HashSet<>();
+        Set<String> legacy = new HashSet<>();
         for (Map.Entry<Object, Object> heartBeat : heartBeats.entrySet()) {
             String agentId = (String) heartBeat.getKey();
-            String value = (String) heartBeat.getValue();
-            AgentNodeInfo agentNodeInfo = new AgentNodeInfo();
-            try {
-                // 尝试解析JSON，如果失败则跳过该条数据
-                agentNodeInfo = objectMapper.readValue(value, AgentNodeInfo.class);
-            } catch (Exception e) {
-                logger.error("Invalid JSON data for agent {}, value: {}, skipping...", agentId, value);
+            AgentNodeInfo agentNodeInfo = parse(agentId, (String) heartBeat.getValue());
+            if (agentNodeInfo == null) {
                 continue;
             }
+            scores.add(new DefaultTypedTuple<>(agentId, Double.valueOf(agentNodeInfo.getHeartbeatTimestamp())));
+            if (!agentShardManager.owns(agentId)) {
+                // 由其他master实例处理，这里只记录版本（用于协商命令编码、优先级通道等）并驱动熔断器
+                agentVersionRegistry.update(agentId, agentNodeInfo.getClientVersion());
+                onRemoteHeartbeat(agentId, isAlive(Long.parseLong(agentNodeInfo.getHeartbeatTimestamp()), currentRedisServerTime)
+                        || Boolean.TRUE.equals(agentNodeInfo.getIsFirstHeartbeat()));
+                continue;
+            }
+            processHeartbeat(agentId, agentNodeInfo, currentRedisServerTime);
+            if (!agentVersionRegistry.isAtLeast(agentId, firewallProperties.getLiveness().getMinClientVersion())) {
+                legacy.add(agentId);
+            }
+        }
+        legacyAgents = legacy;
+        knownAgentCount = heartBeats.size();
 
+        if (!Boolean.TRUE.equals(firewallProperties.getLiveness().getEnabled())) {
+            return;
+        }
+        // 重建索引：写入全部节点的心跳时间，删除心跳hash表中已不存在的节点
+        if (!scores.isEmpty()) {
+            stringRedisTemplate.opsForZSet().add(livenessIndexName, scores);
+        }
+        Set<String> indexed = stringRedisTemplate.opsForZSet().range(livenessIndexName, 0, -1);
+        if (indexed != null) {
+            Object[] removed = indexed.stream().filter(agentId -> !heartBeats.containsKey(agentId)).toArray();
+            if (removed.length > 0) {
+                stringRedisTemplate.opsForZSet().remove(livenessIndexName, removed);
+            }
+        }
+    }
 
-            Long reportTimeStamp = Long.parseLong(agentNodeInfo.getHeartbeatTimestamp());
-            Boolean firstReportFlag = agentNodeInfo.getIsFirstHeartbeat();
-            Long currentRedisServerTime = getRedisServerTime();
+    /**
+     * 增量检查：只处理状态可能变化的节点
+     * 1. 不维护存活索引的旧版本节点，由master读取心跳并代为写入索引
+     * 2. 上一轮到本轮之间心跳超过离线阈值的节点（ZRANGEBYSCORE）
+     * 3. 已离线或疑似离线的节点，用于发现恢复和累计离线次数
+     */
+    private void incrementalScan(long currentRedisServerTime) throws JsonProcessingException {
+        long cutoff = currentRedisServerTime - OFFLINE_THRESHOLD;
+        Set<String> candidates = new LinkedHashSet<>(legacyAgents);
+        Set<String> newlyStale = stringRedisTemplate.opsForZSet().rangeByScore(livenessIndexName, lastCutoff, cutoff - 1);
+        if (newlyStale != null) {
+            candidates.addAll(newlyStale);
+        }
+        offlineCountMap.forEach((agentId, count) -> {
+            if (count > 0) {
+                candidates.add(agentId);
+            }
+        });
+        lastStateMap.forEach((agentId, alive) -> {
+            if (!alive) {
+                candidates.add(agentId);
+            }
+        });
+        candidates.removeIf(agentId -> {
+            if (agentShardManager.owns(agentId)) {
+                return false;
+            }
+            if (newlyStale != null && newlyStale.contains(agentId)) {
+                onRemoteHeartbeat(agentId, false);
+            }
+            return true;
+        });
+        checkRemoteRecovery(cutoff);
+        if (candidates.isEmpty()) {
+            return;
+        }
 
-            boolean isAlive = currentRedisServerTime >= reportTimeStamp &&
-                    Math.abs(currentRedisServerTime - reportTimeStamp) <= OFFLINE_THRESHOLD;
+        List<Object> agentIds = new ArrayList<>(candidates);
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(heartBeatHashTableName, agentIds);
+        Set<ZSetOperations.TypedTuple<String>> scores = new HashSet<>();
+        for (int i = 0; i < agentIds.size(); i++) {
+            String agentId = (String) agentIds.get(i);
+            AgentNodeInfo agentNodeInfo = parse(agentId, (String) values.get(i));
+            if (agentNodeInfo == null) {
+                continue;
+            }
+            if (legacyAgents.contains(agentId)) {
+                scores.add(new DefaultTypedTuple<>(agentId, Double.valueOf(agentNodeInfo.getHeartbeatTimestamp())));
+            }
+            processHeartbeat(agentId, agentNodeInfo, currentRedisServerTime);
+        }
+        if (!scores.isEmpty()) {
+            stringRedisTemplate.opsForZSet().add(livenessIndexName, scores);
+        }
+    }
 
-            // 将秒级时间戳转化为 yyyy-MM-dd HH:mm:ss格式字符串
-            String heartbeatTimestamp = DateTimeUtil.timestampSecToString(reportTimeStamp);
-            agentNodeInfo.setHeartbeatTimestamp(heartbeatTimestamp);
+    /**
+     * 按存活索引检查已判定为离线的其他实例负责的节点，心跳恢复的节点通知熔断器
+     * 索引中已不存在的节点不再跟踪
+     */
+    private void checkRemoteRecovery(long cutoff) {
+        for (String agentId : new ArrayList<>(remoteOfflineAgents)) {
+            Double score = stringRedisTemplate.opsForZSet().score(livenessIndexName, agentId);
+            if (score == null) {
+                remoteOfflineAgents.remove(agentId);
+            } else if (score >= cutoff) {
+                onRemoteHeartbeat(agentId, true);
+            }
+        }
+    }
 
-            if (firstReportFlag) {
-                logger.info("agent节点: {} 首次注册，对agent节点信息进行持久化", agentId);
-                agentNodeInfoService.saveOrUpdate(agentNodeInfo);
-                // 注册节点为在线
-                offlineCountMap.put(agentId, 0);
-                lastStateMap.put(agentId, true);
-                // 更新Redis中的心跳数据，将isFirstHeartbeat设置为false
-                agentNodeInfo.setIsFirstHeartbeat(false);
-                String updatedValue = objectMapper.writeValueAsString(agentNodeInfo);
-                stringRedisTemplate.opsForHash().put(heartBeatHashTableName, agentId, updatedValue);
-                continue;
+    /**
+     * 其他master实例负责的节点的心跳状态，只在状态变化时通知熔断器，不为在线的节点创建熔断器
+     */
+    private void onRemoteHeartbeat(String agentId, boolean alive) {
+        if (alive ? remoteOfflineAgents.remove(agentId) : remoteOfflineAgents.add(agentId)) {
+            agentCircuitBreakerRegistry.onHeartbeat(agentId, alive);
+        }
+    }
+
+    /**
+     * 持有的分片变化时，清理已不由当前实例处理的节点的本地状态
+     * 移交出去时已离线或疑似离线的节点转为按存活索引跟踪，心跳恢复后熔断器仍能放行探测命令
+     *
+     * @return 持有的分片是否发生变化
+     */
+    private boolean onOwnershipChange() {
+        long version = agentShardManager.getOwnershipVersion();
+        if (version == lastOwnershipVersion) {
+            return false;
+        }
+        lastOwnershipVersion = version;
+        offlineCountMap.entrySet().removeIf(entry -> {
+            if (agentShardManager.owns(entry.getKey())) {
+                return false;
+            }
+            if (entry.getValue() > 0) {
+                remoteOfflineAgents.add(entry.getKey());
+            }
+            return true;
+        });
+        lastStateMap.entrySet().removeIf(entry -> {
+            if (agentShardManager.owns(entry.getKey())) {
+                return false;
+            }
+            if (!entry.getValue()) {
+                remoteOfflineAgents.add(entry.getKey());
+            }
+            return true;
+        });
+        remoteOfflineAgents.removeIf(agentShardManager::owns);
+        return true;
+    }
+
+    /**
+     * 有新节点加入（心跳hash表的节点数变化）或索引与心跳hash表不一致时需要全量扫描
+     * 已有节点重启后的首次心跳在下一次定期全量扫描时处理
+     */
+    private boolean hasUnindexedAgents() {
+        Long hashSize = stringRedisTemplate.opsForHash().size(heartBeatHashTableName);
+        Long indexSize = stringRedisTemplate.opsForZSet().zCard(livenessIndexName);
+        return hashSize == null || hashSize != knownAgentCount || !Objects.equals(hashSize, indexSize);
+    }
+
+    private AgentNodeInfo parse(String agentId, String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            // 尝试解析JSON，如果失败则跳过该条数据
+            AgentNodeInfo agentNodeInfo = objectMapper.readValue(value, AgentNodeInfo.class);
+            if (!StrUtil.isNumeric(agentNodeInfo.getHeartbeatTimestamp())) {
+                logger.error("Invalid heartbeat timestamp for agent {}, value: {}, skipping...", agentId, value);
+                return null;
             }
+            return agentNodeInfo;
+        } catch (Exception e) {
+            logger.error("Invalid JSON data for agent {}, value: {}, skipping...", agentId, value);
+            return null;
+        }
+    }
+
+    /**
+     * 根据单个节点的心跳数据更新节点状态
+     */
+    private void processHeartbeat(String agentId, AgentNodeInfo agentNodeInfo, long currentRedisServerTime) throws JsonProcessingException {
+        // 记录agent版本，用于协商命令编码、优先级通道等
+        agentVersionRegistry.update(agentId, agentNodeInfo.getClientVersion());
+        // 资源使用率采样，需要秒级心跳时间戳，须在下面格式化之前
+        agentMetricsCollector.offer(agentId, agentNodeInfo);
+
+        Long reportTimeStamp = Long.parseLong(agentNodeInfo.getHeartbeatTimestamp());
+        Boolean firstReportFlag = agentNodeInfo.getIsFirstHeartbeat();
 
-            if (isAlive) {
-                // 节点在线
-                offlineCountMap.put(agentId, 0); // 离线计数清零
-                if (!Boolean.TRUE.equals(lastStateMap.get(agentId))) {
-                    logger.info("节点:{} 在线，当前检测集群节点心跳时间间隔: {} 毫秒", agentId, FIXED_DELAY);
-                    // 数据库状态更新为在线
-                    agentNodeInfo.setIsActive(true);
-                    agentNodeInfoService.updateById(agentNodeInfo);
-                    lastStateMap.put(agentId, true);
-                }
-            } else {
-                // 节点被判定为离线
-                int count = offlineCountMap.getOrDefault(agentId, 0) + 1;
-                offlineCountMap.put(agentId, count);
-                // 只在统计到第3次时打印一次离线
-                if (count == OFFLINE_MAX && !Boolean.FALSE.equals(lastStateMap.get(agentId))) {
-                    logger.error("节点:{} 离线，当前检测集群节点心跳时间间隔: {} 毫秒, 当前已经检测 {} 次，节点均为离线状态！", agentId, FIXED_DELAY,OFFLINE_MAX);
-                    // 数据库状态更新为离线
-                    agentNodeInfo.setIsActive(false);
-                    agentNodeInfoService.updateById(agentNodeInfo);
-                    lastStateMap.put(agentId, false);
-                }
+        boolean isAlive = isAlive(reportTimeStamp, currentRedisServerTime);
+        // 心跳超时立即熔断，不等连续 OFFLINE_MAX 次，避免命令在离线节点上等待超时
+        agentCircuitBreakerRegistry.onHeartbeat(agentId, isAlive || Boolean.TRUE.equals(firstReportFlag));
+
+        // 将秒级时间戳转化为 yyyy-MM-dd HH:mm:ss格式字符串
+        String heartbeatTimestamp = DateTimeUtil.timestampSecToString(reportTimeStamp);
+        agentNodeInfo.setHeartbeatTimestamp(heartbeatTimestamp);
+
+        if (firstReportFlag) {
+            logger.info("agent节点: {} 首次注册，对agent节点信息进行持久化", agentId);
+            agentNodeInfoService.saveOrUpdate(agentNodeInfo);
+            // 注册节点为在线
+            offlineCountMap.put(agentId, 0);
+            lastStateMap.put(agentId, true);
+            // 更新Redis中的心跳数据，将isFirstHeartbeat设置为false
+            agentNodeInfo.setIsFirstHeartbeat(false);
+            agentNodeInfo.setHeartbeatTimestamp(String.valueOf(reportTimeStamp));
+            String updatedValue = objectMapper.writeValueAsString(agentNodeInfo);
+            stringRedisTemplate.opsForHash().put(heartBeatHashTableName, agentId, updatedValue);
+            return;
+        }
+
+        if (isAlive) {
+            // 节点在线
+            offlineCountMap.put(agentId, 0); // 离线计数清零
+            if (!Boolean.TRUE.equals(lastStateMap.get(agentId))) {
+                logger.info("节点:{} 在线，当前检测集群节点心跳时间间隔: {} 毫秒", agentId, FIXED_DELAY);
+                // 数据库状态更新为在线
+                agentNodeInfo.setIsActive(true);
+                agentNodeInfoService.updateById(agentNodeInfo);
+                lastStateMap.put(agentId, true);
+            }
+        } else {
+            // 节点被判定为离线
+            int count = offlineCountMap.getOrDefault(agentId, 0) + 1;
+            offlineCountMap.put(agentId, count);
+            // 只在统计到第3次时打印一次离线
+            if (count == OFFLINE_MAX && !Boolean.FALSE.equals(lastStateMap.get(agentId))) {
+                logger.error("节点:{} 离线，当前检测集群节点心跳时间间隔: {} 毫秒, 当前已经检测 {} 次，节点均为离线状态！", agentId, FIXED_DELAY,OFFLINE_MAX);
+                // 数据库状态更新为离线
+                agentNodeInfo.setIsActive(false);
+                agentNodeInfoService.updateById(agentNodeInfo);
+                lastStateMap.put(agentId, false);
             }
         }
     }
 
+    /**
+     * 心跳时间在离线阈值内视为在线
+     */
+    private static boolean isAlive(long reportTimeStamp, long currentRedisServerTime) {
+        return currentRedisServerTime >= reportTimeStamp &&
+                Math.abs(currentRedisServerTime - reportTimeStamp) <= OFFLINE_THRESHOLD;
+    }
+
     /**
      * 获取 Redis 服务器当前 Unix 时间戳（秒级，等价于 TIME 命令返回的第一个元素）
      * @return long 当前时间戳（秒）
      */
-    private Long getRedisServerTime() {
+    private long getRedisServerTime() {
         // 执行TIME原生命令
         return  stringRedisTemplate.execute((RedisConnection connection) -> connection.time()) / 1000;
     }
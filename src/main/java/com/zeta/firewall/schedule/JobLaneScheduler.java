@@ -0,0 +1,227 @@
+package com.zeta.firewall.schedule;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.model.dto.JobLaneStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.ScheduledMethodRunnable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按任务隔离的定时任务调度器
+ *
+ * 每个 @Scheduled 任务在独立的单线程通道（lane）中执行，互不阻塞：端口信息全量同步耗时再长，也不会推迟心跳检查。
+ * 每个通道只有一个线程，上一次执行尚未结束时下一次不会开始，同一任务不会重叠执行（skip-if-running 由此保证）；
+ * fixedDelay 任务的下一次执行在上一次结束后才开始计时，耗时较长会推迟自己的下一次执行。
+ * <ul>
+ *     <li>fixedRate、fixedDelay 任务首次执行前增加 0 ~ jitterMillis 的随机延迟，避免多个任务、多个master实例同时启动；
+ *     cron 任务和自定义 Trigger 任务的执行时间由触发器决定，不加随机延迟</li>
+ *     <li>记录每个任务的执行次数、失败次数和耗时</li>
+ *     <li>单次耗时超过预算（zeta.firewall.scheduler.budgets，未配置时为调度间隔）记为一次 overrun，
+ *     如心跳检查超过预算说明离线判定被推迟</li>
+ * </ul>
+ */
+@Component
+public class JobLaneScheduler implements TaskScheduler, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(JobLaneScheduler.class);
+
+    private final FirewallProperties.Scheduler properties;
+    private final Map<String, JobLane> lanes = new ConcurrentHashMap<>();
+
+    public JobLaneScheduler(FirewallProperties firewallProperties) {
+        this.properties = firewallProperties.getScheduler();
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
+        JobLane lane = newLane(task, null);
+        return lane.scheduler.schedule(lane.wrap(task), trigger);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, Date startTime) {
+        JobLane lane = newLane(task, null);
+        return lane.scheduler.schedule(lane.wrap(task), startTime);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Date startTime, long period) {
+        JobLane lane = newLane(task, period);
+        return lane.scheduler.scheduleAtFixedRate(lane.wrap(task), lane.jitter(startTime), period);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period) {
+        JobLane lane = newLane(task, period);
+        return lane.scheduler.scheduleAtFixedRate(lane.wrap(task), lane.jitter(new Date()), period);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Date startTime, long delay) {
+        JobLane lane = newLane(task, delay);
+        return lane.scheduler.scheduleWithFixedDelay(lane.wrap(task), lane.jitter(startTime), delay);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay) {
+        JobLane lane = newLane(task, delay);
+        return lane.scheduler.scheduleWithFixedDelay(lane.wrap(task), lane.jitter(new Date()), delay);
+    }
+
+    /**
+     * 获取全部任务的运行统计
+     */
+    public List<JobLaneStats> getStats() {
+        List<JobLaneStats> stats = new ArrayList<>();
+        lanes.values().forEach(lane -> stats.add(lane.snapshot()));
+        stats.sort((a, b) -> a.getJob().compareTo(b.getJob()));
+        return stats;
+    }
+
+    /**
+     * 获取指定任务的运行统计
+     *
+     * @param job 任务名称
+     * @return 运行统计，任务不存在时返回 null
+     */
+    public JobLaneStats getStats(String job) {
+        JobLane lane = lanes.get(job);
+        return lane == null ? null : lane.snapshot();
+    }
+
+    @Override
+    public void destroy() {
+        lanes.values().forEach(lane -> lane.scheduler.shutdown());
+    }
+
+    private synchronized JobLane newLane(Runnable task, Long intervalMillis) {
+        String name = jobName(task);
+        String job = name;
+        for (int i = 2; lanes.containsKey(job); i++) {
+            job = name + "#" + i;
+        }
+        String laneName = job;
+
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("job-" + laneName + "-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);  // 优雅关闭
+        scheduler.setAwaitTerminationSeconds(properties.getAwaitTerminationSeconds());
+        scheduler.setErrorHandler(throwable -> logger.error("Task execution failed, job: {}", laneName, throwable));
+        scheduler.initialize();
+
+        long jitterMillis = Math.max(0, properties.getJitterMillis());
+        Long budgetMillis = properties.getBudgets().getOrDefault(laneName, intervalMillis);
+        JobLane lane = new JobLane(laneName, scheduler, intervalMillis, budgetMillis,
+                jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        lanes.put(laneName, lane);
+        logger.info("Scheduled job {} on a dedicated lane, interval: {} ms, budget: {} ms, jitter: {} ms",
+                laneName, intervalMillis, budgetMillis, lane.jitterMillis);
+        return lane;
+    }
+
+    private static String jobName(Runnable task) {
+        if (task instanceof ScheduledMethodRunnable) {
+            ScheduledMethodRunnable methodRunnable = (ScheduledMethodRunnable) task;
+            return ClassUtils.getUserClass(methodRunnable.getTarget()).getSimpleName() + "." + methodRunnable.getMethod().getName();
+        }
+        return task.getClass().getSimpleName();
+    }
+
+    /**
+     * 单个任务的执行通道及运行统计
+     */
+    static class JobLane {
+        final String job;
+        final ThreadPoolTaskScheduler scheduler;
+        final Long intervalMillis;
+        final Long budgetMillis;
+        final long jitterMillis;
+
+        private volatile boolean running;
+        private long runs;
+        private long failures;
+        private long overruns;
+        private long lastStartTime;
+        private long lastDurationMillis;
+        private long totalDurationMillis;
+        private long maxDurationMillis;
+
+        JobLane(String job, ThreadPoolTaskScheduler scheduler, Long intervalMillis, Long budgetMillis, long jitterMillis) {
+            this.job = job;
+            this.scheduler = scheduler;
+            this.intervalMillis = intervalMillis;
+            this.budgetMillis = budgetMillis;
+            this.jitterMillis = jitterMillis;
+        }
+
+        Date jitter(Date startTime) {
+            return new Date(startTime.getTime() + jitterMillis);
+        }
+
+        Runnable wrap(Runnable task) {
+            return () -> run(task);
+        }
+
+        /**
+         * 执行一次任务并记录耗时
+         */
+        void run(Runnable task) {
+            running = true;
+            long start = System.currentTimeMillis();
+            boolean failed = true;
+            try {
+                task.run();
+                failed = false;
+            } finally {
+                record(start, System.currentTimeMillis() - start, failed);
+                running = false;
+            }
+        }
+
+        private synchronized void record(long start, long durationMillis, boolean failed) {
+            runs++;
+            if (failed) {
+                failures++;
+            }
+            lastStartTime = start;
+            lastDurationMillis = durationMillis;
+            totalDurationMillis += durationMillis;
+            maxDurationMillis = Math.max(maxDurationMillis, durationMillis);
+            if (budgetMillis != null && durationMillis > budgetMillis) {
+                overruns++;
+                logger.warn("Job {} took {} ms, longer than its budget of {} ms", job, durationMillis, budgetMillis);
+            }
+        }
+
+        synchronized JobLaneStats snapshot() {
+            return JobLaneStats.builder()
+                    .job(job)
+                    .intervalMillis(intervalMillis)
+                    .jitterMillis(jitterMillis)
+                    .budgetMillis(budgetMillis)
+                    .running(running)
+                    .runs(runs)
+                    .failures(failures)
+                    .overruns(overruns)
+                    .lastStartTime(lastStartTime == 0 ? null : lastStartTime)
+                    .lastDurationMillis(runs == 0 ? null : lastDurationMillis)
+                    .avgDurationMillis(runs == 0 ? null : totalDurationMillis / runs)
+                    .maxDurationMillis(runs == 0 ? null : maxDurationMillis)
+                    .build();
+        }
+    }
+}
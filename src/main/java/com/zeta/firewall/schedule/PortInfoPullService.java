@@ -1,32 +1,43 @@
 package com.zeta.firewall.schedule;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
+import cn.hutool.core.util.HashUtil;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.zeta.firewall.config.properties.FirewallProperties;
 import com.zeta.firewall.dao.PortRuleMapper;
-import com.zeta.firewall.event.PortRuleUpdateEvent;
+import com.zeta.firewall.model.dto.PortUsageDelta;
 import com.zeta.firewall.model.entity.FirewallPortRuleInfo;
 import com.zeta.firewall.model.entity.PortInfo;
 import com.zeta.firewall.model.entity.PortRule;
+import com.zeta.firewall.service.AgentPortUsageView;
+import com.zeta.firewall.service.AgentShardManager;
 import com.zeta.firewall.service.FirewallPortRuleInfoService;
 import com.zeta.firewall.service.PortInfoService;
+import com.zeta.firewall.service.PortUsagePublisher;
 import com.zeta.firewall.util.PortRuleUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.event.EventListener;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.zetaframework.core.utils.JSONUtil;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 /**
@@ -38,22 +49,46 @@ public class PortInfoPullService {
     private static final Logger logger = LoggerFactory.getLogger(PortInfoPullService.class);
     private static final long FIXED_DELAY = 60000;
     private static final String portInfoHashTableName = "firewall:portInfo";
+    // 转交给分片持有者的端口规则变化节点，后接分片序号
+    private static final String DIRTY_KEY_PREFIX = "firewall:portRules:dirty:";
+    /** 转交的节点中表示全部节点的标记 */
+    public static final String ALL_AGENTS = "*";
     private final ObjectMapper objectMapper = JSONUtil.getObjectMapper();
+    private final ObjectReader portInfoReader = objectMapper.readerFor(PortInfo.class);
 
 
-    // 使用 CopyOnWriteArrayList 保存上一次最新端口信息
-    private final List<PortInfo> lastAllAgentsLastedPortInfos = new CopyOnWriteArrayList<>();
+    // 各节点上一次同步到数据库的端口信息
+    private final Map<String, AgentPortSnapshot> agentSnapshots = new ConcurrentHashMap<>();
+    // 上一次同步时的分片归属版本
+    private long lastOwnershipVersion = -1;
 
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
     private final PortInfoService portInfoService;
     private final PortRuleMapper portRuleMapper;
     private final FirewallPortRuleInfoService firewallPortRuleInfoService;
+    private final AgentShardManager agentShardManager;
+    private final TransactionTemplate transactionTemplate;
+    private final AgentPortUsageView agentPortUsageView;
+    private final FirewallProperties firewallProperties;
+    private final Executor portInfoParseExecutor;
+    private final PortUsagePublisher portUsagePublisher;
 
-    public PortInfoPullService(PortInfoService portInfoService, PortRuleMapper portRuleMapper, FirewallPortRuleInfoService firewallPortRuleInfoService) {
+    public PortInfoPullService(PortInfoService portInfoService, PortRuleMapper portRuleMapper,
+                               FirewallPortRuleInfoService firewallPortRuleInfoService, AgentShardManager agentShardManager,
+                               TransactionTemplate transactionTemplate, AgentPortUsageView agentPortUsageView,
+                               FirewallProperties firewallProperties,
+                               @Qualifier("portInfoParseExecutor") Executor portInfoParseExecutor,
+                               PortUsagePublisher portUsagePublisher) {
         this.portInfoService = portInfoService;
         this.portRuleMapper = portRuleMapper;
         this.firewallPortRuleInfoService = firewallPortRuleInfoService;
+        this.agentShardManager = agentShardManager;
+        this.transactionTemplate = transactionTemplate;
+        this.agentPortUsageView = agentPortUsageView;
+        this.firewallProperties = firewallProperties;
+        this.portInfoParseExecutor = portInfoParseExecutor;
+        this.portUsagePublisher = portUsagePublisher;
     }
 
     /**
@@ -78,138 +113,414 @@ public class PortInfoPullService {
      *     "listenAddress":"0.0.0.0"
      *   }
      * ]}     */
-    /**
-     * 定时从 Redis 中拉取端口信息并更新数据库
-     */
 
     /**
-     * 定时拉取各节点（Agent）最新端口使用信息，并同步至数据库。
+     * 定时拉取各节点（Agent）最新端口使用信息，按节点增量同步至数据库。
      *
      * 方法逻辑说明：
      * <ol>
-     *     <li>从 Redis Hash（key: firewall:portInfo）中读取所有节点当前上报的端口数据。</li>
-     *     <li>解析每个节点的数据，汇总成全量端口信息列表。</li>
-     *     <li>将本次汇总结果与上一次同步的端口信息进行内容比对（忽略时间字段，仅关注关键端口特征字段）。</li>
-     *     <li>如有变化（即任意节点端口状态发生变更），将全部最新端口信息批量写入数据库。</li>
-     *     <li>删除数据库中与当前列表中记录不匹配的端口信息。</li>
-     *     <li>更新端口规则和端口使用映射关系。</li>
-     *     <li>同步（更新）本地缓存的最新端口集合，用于下次比对。</li>
+     *     <li>用 HSCAN 分页读取 Redis Hash（key: firewall:portInfo）中各节点当前上报的端口数据，每页处理完再读下一页。</li>
+     *     <li>在解析线程池中并发、流式解析一页节点上报的端口列表，计算内容指纹（忽略时间字段，仅关注关键端口特征字段）。</li>
+     *     <li>指纹与上一次同步时相同的节点直接跳过。</li>
+     *     <li>指纹变化的节点，与上一次同步的端口集合（重启后首次同步时从数据库读取该节点的端口信息）比较，得出新增、变化和不再使用的端口。</li>
+     *     <li>在该节点自己的事务中删除不再使用的端口信息及其映射，写入新增和变化的端口信息，为新增端口建立与该节点端口规则的映射。</li>
+     *     <li>更新该节点的本地快照，用于下次比对。</li>
      * </ol>
      *
      * 主要作用：
      * <ul>
-     *     <li>高效检测分布式节点实际端口使用情况的变化，及时反映至中心库。</li>
-     *     <li>避免每次无变化都批量写库，节省数据库压力与资源。</li>
+     *     <li>一个节点打开或关闭端口，只产生该节点的增量读写，与集群中节点和端口的总数无关。</li>
+     *     <li>单个节点同步失败只回滚该节点，下一轮从数据库重新读取该节点的端口信息后重试。</li>
+     *     <li>同一时刻只保留一页节点的原始json，内存占用与集群中节点总数无关。</li>
      * </ul>
      *
      * 其他说明：
      * <ul>
      *     <li>端口信息比对仅涉及关键字段（如 agentId、protocol、portNumber、processName、processId、commandLine、listenAddress）。</li>
-     *     <li>方法包含异常捕获和详细日志，异常节点数据不会影响整体流程。</li>
-     * </ul>
-     *
-     * 注意事项：
-     * <ul>
-     *     <li>适合中等规模节点场景，如节点数极多建议分批或分节点维护 last 状态。</li>
-     *     <li>如需按单个 agent 粒度判断变更，可在 parse 和比对环节拆分实现。</li>
+     *     <li>同一节点上报的协议和端口相同的多条记录（如监听多个地址）只保留信息最完整的一条，与表的唯一索引一致。</li>
+     *     <li>心跳表中已不存在的节点视为上报了空列表，其端口信息会被删除。</li>
+     *     <li>多个master实例时只同步当前实例持有分片内的节点。</li>
      * </ul>
      */
     @Scheduled(fixedDelay = FIXED_DELAY)
-    @Transactional(rollbackFor = Exception.class)
-    public Boolean pullPortInfo() {
+    public synchronized Boolean pullPortInfo() {
+        // 需要同步的节点：本次上报的节点 + 上一次同步过的节点（可能已下线）
+        Set<String> agentIds = new LinkedHashSet<>(agentSnapshots.keySet());
+        long ownershipVersion = agentShardManager.getOwnershipVersion();
+        if (ownershipVersion != lastOwnershipVersion) {
+            // 首次同步或持有的分片变化：丢弃不再负责的节点快照，并核对数据库中残留的节点
+            agentSnapshots.keySet().removeIf(agentId -> !agentShardManager.owns(agentId));
+            agentIds.removeIf(agentId -> !agentShardManager.owns(agentId));
+            portInfoService.queryAgentIdsDB().stream()
+                    .filter(agentShardManager::owns)
+                    .forEach(agentIds::add);
+            lastOwnershipVersion = ownershipVersion;
+        }
 
+        // 分页读取各节点上报的端口信息，每页解析后立即同步，不在内存中保留全部节点的数据
+        Set<String> reportedAgentIds = new HashSet<>();
         Boolean success = Boolean.TRUE;
+        int scanCount = Math.max(1, firewallProperties.getPortSync().getScanCount());
+        ScanOptions options = ScanOptions.scanOptions().count(scanCount).build();
+        try (Cursor<Map.Entry<String, String>> cursor = stringRedisTemplate.<String, String>opsForHash().scan(portInfoHashTableName, options)) {
+            Map<String, String> page = new HashMap<>();
+            while (cursor.hasNext()) {
+                Map.Entry<String, String> entry = cursor.next();
+                // 只处理当前实例持有分片内的节点，HSCAN 可能重复返回同一节点
+                if (!agentShardManager.owns(entry.getKey()) || !reportedAgentIds.add(entry.getKey())) {
+                    continue;
+                }
+                page.put(entry.getKey(), entry.getValue());
+                if (page.size() >= scanCount) {
+                    success &= syncPage(page);
+                    page = new HashMap<>();
+                }
+            }
+            if (!page.isEmpty()) {
+                success &= syncPage(page);
+            }
+        } catch (Exception e) {
+            // 读取中断时本轮不处理未上报的节点，避免把尚未读到的节点当作已下线
+            logger.error("读取端口信息失败, 当前间隔：{} 毫秒", FIXED_DELAY, e);
+            return Boolean.FALSE;
+        }
 
-        Map<String, String> rawMap = stringRedisTemplate.<String, String>opsForHash().entries(portInfoHashTableName);
-        List<PortInfo> allCurrentPortInfos = parseAllPortInfos(rawMap);
-
-        boolean hasChange = !portInfosAreEqual(lastAllAgentsLastedPortInfos, allCurrentPortInfos);
-        if (!hasChange) return success;
+        // 心跳表中已不存在的节点视为上报了空列表
+        agentIds.removeAll(reportedAgentIds);
+        for (String agentId : agentIds) {
+            success &= syncAgentSafely(agentId, Collections.emptyList());
+        }
+        // 已不再上报且端口信息已清空的节点不再跟踪
+        agentSnapshots.entrySet().removeIf(entry -> !reportedAgentIds.contains(entry.getKey()) && entry.getValue().ports.isEmpty());
+        return success;
+    }
 
-        // 数据库中全部端口信息
-        List<PortInfo> currentAllPortInfoFromDB = portInfoService.queryAllPortInfosDB();
+    /**
+     * 并发解析一页节点上报的端口信息，再依次同步这些节点
+     * 解析失败的节点本轮跳过，不能当作上报了空列表
+     */
+    private boolean syncPage(Map<String, String> page) {
+        Map<String, List<PortInfo>> reported = parseAllPortInfos(page);
+        boolean success = true;
+        for (Map.Entry<String, List<PortInfo>> entry : reported.entrySet()) {
+            success &= syncAgentSafely(entry.getKey(), entry.getValue());
+        }
+        return success;
+    }
 
+    /**
+     * 同步单个节点，失败时丢弃该节点的快照，下一轮从数据库重新读取该节点的端口信息后重试
+     */
+    private boolean syncAgentSafely(String agentId, List<PortInfo> currentPorts) {
         try {
-            logger.info("端口信息有变化，开始更新数据库");
-
-            // 找出不再使用的端口信息（在数据库中存在，但在当前列表中不存在）
-            List<PortInfo> notInUsePortInfos = findNotInUsePortInfos(currentAllPortInfoFromDB, allCurrentPortInfos);
-            if (!notInUsePortInfos.isEmpty()) {
-                logger.info("发现 {} 个端口不再使用，将从数据库中删除", notInUsePortInfos.size());
-                Boolean removePortInfosNotInUse = portInfoService.removePortInfosNotInUse(notInUsePortInfos);
-                if (!removePortInfosNotInUse) {
-                    logger.info("删除端口信息失败，当前间隔：{} 毫秒", FIXED_DELAY);
-                    success =  Boolean.FALSE;
-                }
+            syncAgent(agentId, currentPorts);
+            return true;
+        } catch (Exception e) {
+            agentSnapshots.remove(agentId);
+            logger.error("节点 {} 端口信息同步异常, 当前间隔：{} 毫秒", agentId, FIXED_DELAY, e);
+            return false;
+        }
+    }
+
+    /**
+     * 只同步指定节点的端口信息，并按最新的端口规则重建这些节点的映射关系
+     * 与定时全量同步共用同一把锁，同一节点不会同时有两次同步在执行
+     * 不属于当前实例分片的节点转交给持有该分片的master实例处理，见 {@link #forwardToOwners(Collection)}
+     *
+     * @param agentIds 需要同步的节点id
+     * @return 全部节点同步成功返回true
+     */
+    public synchronized Boolean syncAgents(Collection<String> agentIds) {
+        Map<Boolean, List<String>> partitioned = agentIds.stream()
+                .distinct()
+                .collect(Collectors.partitioningBy(agentShardManager::owns));
+        List<String> ownedAgentIds = partitioned.get(true);
+        forwardToOwners(partitioned.get(false));
+        if (ownedAgentIds.isEmpty()) {
+            return Boolean.TRUE;
+        }
+        List<String> values = stringRedisTemplate.<String, String>opsForHash().multiGet(portInfoHashTableName, ownedAgentIds);
+        Map<String, String> rawMap = new HashMap<>();
+        for (int i = 0; i < ownedAgentIds.size(); i++) {
+            if (values != null && values.get(i) != null) {
+                rawMap.put(ownedAgentIds.get(i), values.get(i));
             }
+        }
+        Map<String, List<PortInfo>> reported = parseAllPortInfos(rawMap);
 
-            // 插入或更新当前端口信息
-            Boolean insertOrUpdateBatch = portInfoService.insertOrUpdateBatchPortInfos(allCurrentPortInfos);
+        Boolean success = Boolean.TRUE;
+        for (String agentId : ownedAgentIds) {
+            // 解析失败的节点本次跳过，不能当作上报了空列表
+            if (rawMap.containsKey(agentId) && !reported.containsKey(agentId)) {
+                continue;
+            }
+            success &= syncAgentSafely(agentId, reported.getOrDefault(agentId, Collections.emptyList()));
+        }
+        remapPortRules(ownedAgentIds);
+        return success;
+    }
 
-            // 全部的端口规则
-            List<PortRule> currentAllPortRulesFromDB = portRuleMapper.selectList(null);
+    /**
+     * 把端口规则发生变化、但不属于当前实例分片的节点转交给持有分片的master实例
+     * 节点按分片写入 firewall:portRules:dirty:{分片序号}（SET），持有分片的实例通过 {@link #pollForwardedAgents()} 取走后同步
+     *
+     * @param agentIds 端口规则发生变化的节点id，属于当前实例分片的节点会被忽略
+     */
+    public void forwardToOwners(Collection<String> agentIds) {
+        List<String> remoteAgentIds = agentIds.stream()
+                .filter(agentId -> !agentShardManager.owns(agentId))
+                .distinct()
+                .collect(Collectors.toList());
+        if (remoteAgentIds.isEmpty()) {
+            return;
+        }
+        Map<Integer, List<String>> byShard = remoteAgentIds.stream()
+                .collect(Collectors.groupingBy(agentShardManager::shardOf));
+        byShard.forEach((shard, ids) ->
+                stringRedisTemplate.opsForSet().add(DIRTY_KEY_PREFIX + shard, ids.toArray(new String[0])));
+        logger.info("端口规则已更新的节点不属于当前实例，已转交给分片持有者: {}", remoteAgentIds);
+    }
 
-            // 寻找 端口规则和端口使用信息的映射关系
-            Map<String, List<PortInfo>> mappings = PortRuleUtils.connectPortInfosWithPortRules(currentAllPortRulesFromDB, allCurrentPortInfos);
-            ArrayList<FirewallPortRuleInfo> mappingsList = new ArrayList<>();
-            for (Map.Entry<String, List<PortInfo>> mapping : mappings.entrySet()) {
-                List<PortInfo> portInfoList = mapping.getValue();
-                for (PortInfo portInfo : portInfoList) {
-                    mappingsList.add(FirewallPortRuleInfo
-                            .builder()
-                            .ruleId(Long.parseLong(mapping.getKey()))
-                            .infoId(portInfo.getId())
-                            .build());
-                }
+    /**
+     * 通知其他master实例重建各自负责的全部节点的端口规则映射
+     * 在当前实例未持有的每个分片中写入 {@link #ALL_AGENTS}
+     */
+    public void forwardAllToOwners() {
+        if (!agentShardManager.isEnabled()) {
+            return;
+        }
+        Set<Integer> heldShards = agentShardManager.getHeldShards();
+        for (int shard = 0; shard < agentShardManager.getShardCount(); shard++) {
+            if (!heldShards.contains(shard)) {
+                stringRedisTemplate.opsForSet().add(DIRTY_KEY_PREFIX + shard, ALL_AGENTS);
+            }
+        }
+    }
+
+    /**
+     * 取走其他master实例转交给当前实例的节点
+     *
+     * @return 端口规则发生变化的节点id，包含 {@link #ALL_AGENTS} 时表示需要重建当前实例负责的全部节点
+     */
+    public Set<String> pollForwardedAgents() {
+        Set<String> agentIds = new LinkedHashSet<>();
+        for (Integer shard : agentShardManager.getHeldShards()) {
+            String key = DIRTY_KEY_PREFIX + shard;
+            Set<String> members = stringRedisTemplate.opsForSet().members(key);
+            if (members == null || members.isEmpty()) {
+                continue;
             }
+            // 只删除已读取的成员，读取后新转交的节点留到下一次
+            stringRedisTemplate.opsForSet().remove(key, members.toArray());
+            agentIds.addAll(members);
+        }
+        return agentIds;
+    }
 
+    /**
+     * 增量同步单个节点的端口信息
+     *
+     * @param agentId      节点id
+     * @param currentPorts 节点本次上报的端口信息
+     */
+    private void syncAgent(String agentId, List<PortInfo> currentPorts) {
+        Map<String, PortInfo> current = indexByPort(currentPorts);
+        long fingerprint = fingerprint(current.values());
+        AgentPortSnapshot snapshot = agentSnapshots.get(agentId);
+        if (snapshot != null && snapshot.fingerprint == fingerprint) {
+            return;
+        }
 
-            // 删除端口规则和端口使用映射关系（先全部删除，再全量插入）
-            Boolean allRemove = firewallPortRuleInfoService.removeAll();
-            Boolean addAll = firewallPortRuleInfoService.addOrUpdateAll(mappingsList);
+        Map<String, PortInfo> baseline = snapshot != null
+                ? snapshot.ports
+                : indexByPort(portInfoService.queryPortInfosByAgentIdDB(agentId));
 
-            if (insertOrUpdateBatch && allRemove && addAll) {
-                synchronized (lastAllAgentsLastedPortInfos) {
-                    lastAllAgentsLastedPortInfos.clear();
-                    lastAllAgentsLastedPortInfos.addAll(allCurrentPortInfos);
-                }
-                logger.info("端口信息更新成功，当前间隔：{} 毫秒", FIXED_DELAY);
+        // 不再使用的端口
+        List<PortInfo> removed = baseline.entrySet().stream()
+                .filter(entry -> !current.containsKey(entry.getKey()))
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toList());
+        List<Long> removedIds = removed.stream()
+                .map(PortInfo::getId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        // 新增或进程信息变化的端口，已存在的沿用原主键
+        List<PortInfo> changed = new ArrayList<>();
+        List<PortInfo> added = new ArrayList<>();
+        current.forEach((key, portInfo) -> {
+            PortInfo previous = baseline.get(key);
+            if (previous == null) {
+                added.add(portInfo);
+                changed.add(portInfo);
             } else {
-                success = Boolean.FALSE;
-                logger.error("定时拉取端口信息更新失败, 当前间隔：{} 毫秒", FIXED_DELAY);
+                portInfo.setId(previous.getId());
+                if (!previous.equals(portInfo)) {
+                    changed.add(portInfo);
+                }
             }
-        } catch (Exception e) {
-            success = Boolean.FALSE;
-            logger.error("端口信息更新异常, 当前间隔：{} 毫秒", FIXED_DELAY, e);
+        });
+        if (!removedIds.isEmpty() || !changed.isEmpty()) {
+            applyDelta(agentId, removedIds, changed, added);
+            AgentPortUsageView.AgentPortUsage usage = agentPortUsageView.onPortInfosChanged(agentId, current.values());
+            publishDelta(agentId, added, changed, removed, usage);
+            logger.info("节点 {} 端口信息已同步：新增 {}，变化 {}，删除 {}", agentId, added.size(), changed.size() - added.size(), removedIds.size());
         }
-        return success;
+        agentSnapshots.put(agentId, new AgentPortSnapshot(fingerprint, current));
     }
 
-    /** 将redis中节点所有json解码，合成全端口info列表 */
-    private List<PortInfo> parseAllPortInfos(Map<String, String> agentsLastedPortInfos) {
-        List<PortInfo> result = new ArrayList<>();
-        for (Map.Entry<String, String> entry : agentsLastedPortInfos.entrySet()) {
+    /**
+     * 把节点已提交的端口变化推送给订阅了该节点的页面
+     */
+    private void publishDelta(String agentId, List<PortInfo> added, List<PortInfo> changed, List<PortInfo> removed,
+                              AgentPortUsageView.AgentPortUsage usage) {
+        // changed 中包含新增的端口，推送时只保留进程信息变化的端口
+        Set<PortInfo> addedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        addedSet.addAll(added);
+        List<PortInfo> modified = changed.stream()
+                .filter(portInfo -> !addedSet.contains(portInfo))
+                .collect(Collectors.toList());
+        portUsagePublisher.publish(PortUsageDelta.builder()
+                .nodeId(agentId)
+                .timestamp(System.currentTimeMillis())
+                .added(added)
+                .changed(modified)
+                .removed(removed)
+                .usingRuleIds(usage != null ? usage.getUsingRuleIds() : null)
+                .build());
+    }
+
+    /**
+     * 在单个事务中把节点的端口变化写入 firewall_port_info 和 firewall_port_rule_info
+     */
+    private void applyDelta(String agentId, List<Long> removedIds, List<PortInfo> changed, List<PortInfo> added) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!removedIds.isEmpty()) {
+                portInfoService.removePortInfosByIds(removedIds);
+                firewallPortRuleInfoService.removeByInfoIds(removedIds);
+            }
+            if (!changed.isEmpty() && !portInfoService.insertOrUpdateBatchPortInfos(changed)) {
+                throw new IllegalStateException("Failed to save port infos of agent " + agentId);
+            }
+            if (!added.isEmpty()) {
+                List<PortRule> agentPortRules = portRuleMapper.selectList(Wrappers.<PortRule>lambdaQuery()
+                        .eq(PortRule::getAgentId, agentId));
+                ArrayList<FirewallPortRuleInfo> mappingsList = toMappings(PortRuleUtils.connectPortInfosWithPortRules(agentPortRules, added));
+                if (!mappingsList.isEmpty() && !firewallPortRuleInfoService.addOrUpdateAll(mappingsList)) {
+                    throw new IllegalStateException("Failed to save port rule mappings of agent " + agentId);
+                }
+            }
+        });
+    }
+
+    /**
+     * 重建当前实例负责的节点的端口规则和端口使用映射关系
+     * 端口规则变化后，已同步的端口信息需要与最新的端口规则重新建立映射
+     */
+    public void remapPortRules() {
+        remapPortRules(Collections.emptySet());
+    }
+
+    /**
+     * 重建指定节点的端口规则和端口使用映射关系，只读取这些节点的端口规则
+     *
+     * @param agentIds 端口规则发生变化的节点，为空时重建当前实例负责的全部节点
+     */
+    public synchronized void remapPortRules(Collection<String> agentIds) {
+        LambdaQueryWrapper<PortRule> query = Wrappers.<PortRule>lambdaQuery();
+        if (!agentIds.isEmpty()) {
+            query.in(PortRule::getAgentId, agentIds);
+        }
+        Map<String, List<PortRule>> rulesByAgent = portRuleMapper.selectList(query).stream()
+                .filter(portRule -> agentShardManager.owns(portRule.getAgentId()))
+                .collect(Collectors.groupingBy(PortRule::getAgentId));
+
+        agentSnapshots.forEach((agentId, snapshot) -> {
+            if (!agentIds.isEmpty() && !agentIds.contains(agentId)) {
+                return;
+            }
+            List<PortInfo> portInfos = new ArrayList<>(snapshot.ports.values());
+            List<Long> infoIds = portInfos.stream().map(PortInfo::getId).filter(Objects::nonNull).collect(Collectors.toList());
+            ArrayList<FirewallPortRuleInfo> mappingsList = toMappings(PortRuleUtils.connectPortInfosWithPortRules(
+                    rulesByAgent.getOrDefault(agentId, Collections.emptyList()), portInfos));
             try {
-                JsonNode node = objectMapper.readTree(entry.getValue());
-                List<PortInfo> portInfos  = objectMapper.convertValue(node.get("reportPortInfos"), new TypeReference<List<PortInfo>>() {});
-                result.addAll(portInfos);
-            } catch (JsonProcessingException e) {
-                logger.error("解析端口信息失败: {}", entry.getKey(), e);
+                transactionTemplate.executeWithoutResult(status -> {
+                    firewallPortRuleInfoService.removeByInfoIds(infoIds);
+                    firewallPortRuleInfoService.addOrUpdateAll(mappingsList);
+                });
+            } catch (Exception e) {
+                logger.error("节点 {} 端口规则映射重建失败", agentId, e);
             }
+        });
+    }
+
+    /**
+     * 在解析线程池中并发解码各节点的json，按节点分组，解析失败的节点不在结果中
+     */
+    private Map<String, List<PortInfo>> parseAllPortInfos(Map<String, String> agentsLastedPortInfos) {
+        Map<String, CompletableFuture<List<PortInfo>>> futures = new LinkedHashMap<>();
+        agentsLastedPortInfos.forEach((agentId, json) ->
+                futures.put(agentId, CompletableFuture.supplyAsync(() -> parsePortInfos(agentId, json), portInfoParseExecutor)));
+
+        Map<String, List<PortInfo>> result = new LinkedHashMap<>();
+        futures.forEach((agentId, future) -> {
+            List<PortInfo> portInfos = future.join();
+            if (portInfos != null) {
+                result.put(agentId, portInfos);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 流式解码单个节点上报的json，reportPortInfos 中的元素直接反序列化为 PortInfo，不构建中间的树结构
+     *
+     * @return 端口信息列表，解析失败返回null
+     */
+    private List<PortInfo> parsePortInfos(String agentId, String json) {
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a json object");
+            }
+            List<PortInfo> portInfos = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("reportPortInfos".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        portInfos.add(portInfoReader.readValue(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return portInfos;
+        } catch (IOException | RuntimeException e) {
+            logger.error("解析端口信息失败: {}", agentId, e);
+            return null;
+        }
+    }
+
+    /** 按 协议:端口 建立索引（与表的唯一索引一致），重复的端口保留信息最完整的一条 */
+    private static Map<String, PortInfo> indexByPort(List<PortInfo> portInfos) {
+        Map<String, PortInfo> result = new HashMap<>();
+        for (PortInfo portInfo : portInfos) {
+            result.merge(portInfo.getProtocol() + ":" + portInfo.getPortNumber(), portInfo,
+                    (a, b) -> b.gainInfoCompletenessScore() > a.gainInfoCompletenessScore() ? b : a);
         }
         return result;
     }
 
-    /** 比较两版端口列表是否一致，按“关键字段去重后内容一致”为准 */
-    private boolean portInfosAreEqual(List<PortInfo> list1, List<PortInfo> list2) {
-        if (list1.size() != list2.size()) return false;
-        Set<String> set1 = list1.stream().map(this::portInfoKey).collect(Collectors.toSet());
-        Set<String> set2 = list2.stream().map(this::portInfoKey).collect(Collectors.toSet());
-        return set1.equals(set2);
+    /** 端口集合的内容指纹，与顺序无关 */
+    private static long fingerprint(Collection<PortInfo> portInfos) {
+        String content = portInfos.stream()
+                .map(PortInfoPullService::portInfoKey)
+                .sorted()
+                .collect(Collectors.joining("\n"));
+        return HashUtil.murmur64(content.getBytes(StandardCharsets.UTF_8));
     }
 
     /** 关键字段唯一key（可把字段组合成字符串，作为内容变化判断） */
-    private String portInfoKey(PortInfo p) {
+    private static String portInfoKey(PortInfo p) {
         return p.getAgentId() + ":" +
                 p.getProtocol() + ":" +
                 p.getPortNumber() + ":" +
@@ -219,32 +530,31 @@ public class PortInfoPullService {
                 p.getListenAddress();
     }
 
-    /**
-     * 找出不再使用的端口信息（在上次列表中存在，但在当前列表中不存在）
-     *
-     * @param lastPortInfos 上次的端口信息列表
-     * @param currentPortInfos 当前的端口信息列表
-     * @return 不再使用的端口信息列表
-     */
-    private List<PortInfo> findNotInUsePortInfos(List<PortInfo> lastPortInfos, List<PortInfo> currentPortInfos) {
-        // 将当前端口信息按照关键字段组合进行映射
-        Set<String> currentPortKeys = currentPortInfos.stream()
-                .map(p -> p.getAgentId() + ":" + p.getProtocol() + ":" + p.getPortNumber())
-                .collect(Collectors.toSet());
-
-        // 找出在上次列表中存在，但在当前列表中不存在的端口信息
-        return lastPortInfos.stream()
-                .filter(p -> !currentPortKeys.contains(p.getAgentId() + ":" + p.getProtocol() + ":" + p.getPortNumber()))
-                .collect(Collectors.toList());
+    private static ArrayList<FirewallPortRuleInfo> toMappings(Map<String, List<PortInfo>> mappings) {
+        ArrayList<FirewallPortRuleInfo> mappingsList = new ArrayList<>();
+        for (Map.Entry<String, List<PortInfo>> mapping : mappings.entrySet()) {
+            for (PortInfo portInfo : mapping.getValue()) {
+                mappingsList.add(FirewallPortRuleInfo
+                        .builder()
+                        .ruleId(Long.parseLong(mapping.getKey()))
+                        .infoId(portInfo.getId())
+                        .build());
+            }
+        }
+        return mappingsList;
     }
 
     /**
-     * 监听端口规则更新事件
-     * 当端口规则发生变化时，立即触发一次端口信息拉取
+     * 节点上一次同步到数据库的端口信息
      */
-    @EventListener
-    public void handlePortRuleUpdate(PortRuleUpdateEvent event) {
-        logger.info("收到端口规则更新事件，触发端口信息拉取");
-        this.pullPortInfo();
+    private static class AgentPortSnapshot {
+        private final long fingerprint;
+        // 协议:端口 -> 端口信息（含数据库主键）
+        private final Map<String, PortInfo> ports;
+
+        AgentPortSnapshot(long fingerprint, Map<String, PortInfo> ports) {
+            this.fingerprint = fingerprint;
+            this.ports = ports;
+        }
     }
 }
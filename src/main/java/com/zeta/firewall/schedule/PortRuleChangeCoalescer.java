@@ -0,0 +1,154 @@
+package com.zeta.firewall.schedule;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.event.PortRuleUpdateEvent;
+import com.zeta.firewall.service.AgentPortUsageView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * 端口规则变化事件合并器
+ *
+ * 端口规则变化事件在事务提交后才处理（没有事务时立即处理），按节点收集到待同步集合中，
+ * 合并窗口内没有新事件（或从第一个事件起超过最长等待时间）时，在 portSyncScheduler 单线程中统一同步一次：
+ * <ul>
+ *     <li>只涉及部分节点时，只同步这些节点的端口信息并重建它们的端口规则映射。</li>
+ *     <li>有事件无法确定节点时，执行一次全量同步并重建全部映射。</li>
+ *     <li>不属于当前实例分片的节点转交给持有分片的master实例，由该实例定期取走后按同样的方式合并同步。</li>
+ * </ul>
+ * 批量修改端口规则时请求线程立即返回，一批事件只产生一次同步；
+ * 同步与定时全量同步共用 PortInfoPullService 的锁，同一节点同一时刻最多只有一次同步在执行。
+ */
+@Component
+public class PortRuleChangeCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PortRuleChangeCoalescer.class);
+
+    private final PortInfoPullService portInfoPullService;
+    private final TaskScheduler portSyncScheduler;
+    private final FirewallProperties.PortSync properties;
+    private final AgentPortUsageView agentPortUsageView;
+
+    private final Object lock = new Object();
+    // 等待同步的节点
+    private Set<String> pendingAgentIds = new LinkedHashSet<>();
+    // 是否需要重建当前实例负责的全部节点
+    private boolean pendingAll;
+    // 是否需要通知其他master实例重建全部节点（只对本实例发布的事件转交，避免实例之间来回转交）
+    private boolean pendingForwardAll;
+    // 本批第一个事件到达的时间
+    private long firstPendingAt;
+    private ScheduledFuture<?> pendingFlush;
+
+    public PortRuleChangeCoalescer(PortInfoPullService portInfoPullService,
+                                   @Qualifier("portSyncScheduler") TaskScheduler portSyncScheduler,
+                                   FirewallProperties firewallProperties, AgentPortUsageView agentPortUsageView) {
+        this.portInfoPullService = portInfoPullService;
+        this.portSyncScheduler = portSyncScheduler;
+        this.properties = firewallProperties.getPortSync();
+        this.agentPortUsageView = agentPortUsageView;
+    }
+
+    /**
+     * 监听端口规则更新事件
+     * 在发布事件的事务提交后记录变化的节点，并把本批的同步推迟到合并窗口结束
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void handlePortRuleUpdate(PortRuleUpdateEvent event) {
+        enqueue(event.isAllAgents(), event.isAllAgents(), event.getAgentIds());
+        logger.debug("收到端口规则更新事件，合并后同步，节点: {}", event.isAllAgents() ? "全部" : event.getAgentIds());
+    }
+
+    /**
+     * 定期取走其他master实例转交给当前实例的节点，与本实例的事件一起合并同步
+     * 端口规则已在其他实例提交，先丢弃这些节点的端口使用情况缓存，避免继续按旧的端口规则匹配
+     */
+    @Scheduled(fixedDelayString = "${zeta.firewall.port-sync.forward-poll-millis:2000}")
+    public void pollForwardedChanges() {
+        Set<String> agentIds = portInfoPullService.pollForwardedAgents();
+        if (agentIds.isEmpty()) {
+            return;
+        }
+        boolean all = agentIds.remove(PortInfoPullService.ALL_AGENTS);
+        if (all) {
+            agentPortUsageView.invalidateAll();
+        } else {
+            agentIds.forEach(agentPortUsageView::invalidate);
+        }
+        enqueue(all, false, agentIds);
+        logger.debug("收到其他master实例转交的端口规则变化，节点: {}", all ? "全部" : agentIds);
+    }
+
+    /**
+     * 记录变化的节点，并把本批的同步推迟到合并窗口结束
+     */
+    private void enqueue(boolean all, boolean forwardAll, Collection<String> agentIds) {
+        long now = System.currentTimeMillis();
+        synchronized (lock) {
+            pendingAll |= all;
+            pendingForwardAll |= forwardAll;
+            pendingAgentIds.addAll(agentIds);
+            if (pendingFlush == null) {
+                firstPendingAt = now;
+            } else {
+                pendingFlush.cancel(false);
+            }
+            long delay = Math.min(properties.getDebounceMillis(),
+                    Math.max(0, firstPendingAt + properties.getMaxDelayMillis() - now));
+            pendingFlush = portSyncScheduler.schedule(this::flush, Instant.ofEpochMilli(now + delay));
+        }
+    }
+
+    /**
+     * 同步本批收集到的节点
+     */
+    void flush() {
+        Set<String> agentIds;
+        boolean all;
+        boolean forwardAll;
+        synchronized (lock) {
+            agentIds = pendingAgentIds;
+            all = pendingAll;
+            forwardAll = pendingForwardAll;
+            pendingAgentIds = new LinkedHashSet<>();
+            pendingAll = false;
+            pendingForwardAll = false;
+            pendingFlush = null;
+        }
+        // 已被前一次执行一并处理
+        if (!all && agentIds.isEmpty()) {
+            return;
+        }
+
+        try {
+            if (all) {
+                logger.info("端口规则已更新，触发全量端口信息同步");
+                portInfoPullService.pullPortInfo();
+                portInfoPullService.remapPortRules();
+                if (forwardAll) {
+                    portInfoPullService.forwardAllToOwners();
+                } else {
+                    // 全量同步只覆盖当前实例负责的节点，其余节点仍需转交
+                    portInfoPullService.forwardToOwners(agentIds);
+                }
+            } else {
+                logger.info("端口规则已更新，触发端口信息同步，节点: {}", agentIds);
+                portInfoPullService.syncAgents(agentIds);
+            }
+        } catch (Exception e) {
+            logger.error("端口规则更新后同步端口信息失败，节点: {}", all ? "全部" : agentIds, e);
+        }
+    }
+}
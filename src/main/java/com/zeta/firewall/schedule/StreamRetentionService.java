@@ -0,0 +1,170 @@
+package com.zeta.firewall.schedule;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.model.dto.StreamRetentionReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 命令stream的保留策略
+ *
+ * 定期遍历已知的agent节点（心跳hash表中的节点），按stream族的策略裁剪 pub:{nodeId}:xxx、sub:{nodeId}:xxx：
+ * <ul>
+ *     <li>按时间：XTRIM MINID ~ (redis服务器时间 - maxAgeMillis)，需要 redis 6.2+</li>
+ *     <li>按内存：MEMORY USAGE 超过 maxMemoryBytes 时，按平均消息大小估算保留条数，XTRIM MAXLEN ~</li>
+ * </ul>
+ * 裁剪在lua脚本中按批执行，每批一次网络往返；同时统计各stream的长度与内存占用，生成报告。
+ */
+@Service
+public class StreamRetentionService {
+    private static final Logger log = LoggerFactory.getLogger(StreamRetentionService.class);
+    // redis 中存储心跳数据的hash表名
+    private static final String HEART_BEAT_HASH_TABLE_NAME = "firewall:heartbeats";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final FirewallProperties.Retention properties;
+    private final DefaultRedisScript<List> retentionScript;
+
+    private volatile StreamRetentionReport lastReport;
+
+    public StreamRetentionService(StringRedisTemplate stringRedisTemplate, FirewallProperties firewallProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.properties = firewallProperties.getRetention();
+
+        this.retentionScript = new DefaultRedisScript<>();
+        this.retentionScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("/stream_retention.lua")));
+        this.retentionScript.setResultType(List.class);
+    }
+
+    /**
+     * 周期性裁剪
+     */
+    @Scheduled(fixedDelayString = "${zeta.firewall.retention.sweep-interval-millis:60000}",
+            initialDelayString = "${zeta.firewall.retention.sweep-interval-millis:60000}")
+    public void sweepPeriod() {
+        if (!Boolean.TRUE.equals(properties.getEnabled())) {
+            return;
+        }
+        try {
+            sweep();
+        } catch (Exception e) {
+            log.error("Stream retention sweep failed", e);
+        }
+    }
+
+    /**
+     * 立即执行一次裁剪
+     *
+     * @return 本次裁剪的报告
+     */
+    public synchronized StreamRetentionReport sweep() {
+        long start = System.currentTimeMillis();
+        Set<Object> agentIds = stringRedisTemplate.opsForHash().keys(HEART_BEAT_HASH_TABLE_NAME);
+        // stream id 的时间部分是redis服务器时间，这里统一使用redis服务器时间计算 MINID
+        long now = stringRedisTemplate.execute((RedisConnection connection) -> connection.time());
+
+        List<String> keys = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        Map<String, String> familyOfKey = new HashMap<>();
+        for (Object agentId : agentIds) {
+            for (String family : properties.getFamilies()) {
+                FirewallProperties.Policy policy = properties.policyOf(family);
+                String key = family.replace("*", String.valueOf(agentId));
+                keys.add(key);
+                args.add(policy.getMaxAgeMillis() > 0 ? (now - policy.getMaxAgeMillis()) + "-0" : "0");
+                args.add(String.valueOf(policy.getMaxMemoryBytes()));
+                familyOfKey.put(key, family);
+            }
+        }
+
+        long trimmedByAge = 0;
+        long trimmedByMemory = 0;
+        Map<String, StreamRetentionReport.FamilyUsage> families = new LinkedHashMap<>();
+        for (String family : properties.getFamilies()) {
+            FirewallProperties.Policy policy = properties.policyOf(family);
+            families.put(family, StreamRetentionReport.FamilyUsage.builder()
+                    .family(family)
+                    .maxAgeMillis(policy.getMaxAgeMillis())
+                    .maxMemoryBytes(policy.getMaxMemoryBytes())
+                    .streams(0).entries(0L).bytes(0L)
+                    .build());
+        }
+        List<StreamRetentionReport.StreamUsage> usages = new ArrayList<>();
+
+        int batchSize = Math.max(1, properties.getBatchSize());
+        for (int from = 0; from < keys.size(); from += batchSize) {
+            int to = Math.min(from + batchSize, keys.size());
+            List<?> result = stringRedisTemplate.execute(retentionScript, keys.subList(from, to),
+                    args.subList(from * 2, to * 2).toArray());
+            if (result == null) {
+                continue;
+            }
+            for (int i = from; i < to; i++) {
+                int offset = (i - from) * 4;
+                long len = toLong(result.get(offset + 2));
+                if (len == 0) {
+                    continue;
+                }
+                long bytes = toLong(result.get(offset + 3));
+                trimmedByAge += toLong(result.get(offset));
+                trimmedByMemory += toLong(result.get(offset + 1));
+
+                StreamRetentionReport.FamilyUsage usage = families.get(familyOfKey.get(keys.get(i)));
+                usage.setStreams(usage.getStreams() + 1);
+                usage.setEntries(usage.getEntries() + len);
+                usage.setBytes(usage.getBytes() + bytes);
+                usages.add(new StreamRetentionReport.StreamUsage(keys.get(i), len, bytes));
+            }
+        }
+
+        long totalEntries = usages.stream().mapToLong(StreamRetentionReport.StreamUsage::getEntries).sum();
+        long totalBytes = usages.stream().mapToLong(StreamRetentionReport.StreamUsage::getBytes).sum();
+        List<StreamRetentionReport.StreamUsage> largest = usages.stream()
+                .sorted(Comparator.comparing(StreamRetentionReport.StreamUsage::getBytes).reversed())
+                .limit(properties.getTopStreams())
+                .collect(Collectors.toList());
+
+        long end = System.currentTimeMillis();
+        StreamRetentionReport report = StreamRetentionReport.builder()
+                .sweepTime(end)
+                .durationMillis(end - start)
+                .agentCount(agentIds.size())
+                .streamCount(usages.size())
+                .totalEntries(totalEntries)
+                .totalBytes(totalBytes)
+                .averageBytesPerAgent(agentIds.isEmpty() ? 0L : totalBytes / agentIds.size())
+                .trimmedByAge(trimmedByAge)
+                .trimmedByMemory(trimmedByMemory)
+                .families(new ArrayList<>(families.values()))
+                .largestStreams(largest)
+                .build();
+        lastReport = report;
+
+        log.info("Stream retention sweep finished in {} ms, agents: {}, streams: {}, bytes: {}, trimmed by age: {}, by memory: {}",
+                report.getDurationMillis(), report.getAgentCount(), report.getStreamCount(), totalBytes, trimmedByAge, trimmedByMemory);
+        return report;
+    }
+
+    /**
+     * 最近一次裁剪的报告
+     *
+     * @return 报告，尚未执行过裁剪时返回null
+     */
+    public StreamRetentionReport getLastReport() {
+        return lastReport;
+    }
+
+    private static long toLong(Object value) {
+        return value == null ? 0L : ((Number) value).longValue();
+    }
+}
@@ -0,0 +1,234 @@
+package com.zeta.firewall.service;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.exception.EmptyResultException;
+import com.zeta.firewall.model.dto.AgentCircuitBreakerStatus;
+import com.zeta.firewall.model.enums.CircuitBreakerState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * agent节点熔断器
+ *
+ * 每个agent节点一个熔断器，由心跳检查和命令超时共同驱动：
+ * 心跳离线或连续超时达到阈值时熔断，熔断期间发往该节点的命令直接失败，不再等待超时；
+ * 熔断时间到期后进入半开状态，只放行一个探测命令，探测成功后恢复，失败则重新熔断；
+ * 因心跳离线而熔断的节点，心跳从离线恢复为在线时不必等熔断时间到期，立即进入半开状态。
+ * 因命令超时而熔断的节点心跳通常一直在线，仍按熔断时间恢复
+ */
+@Component
+public class AgentCircuitBreakerRegistry {
+    private static final Logger log = LoggerFactory.getLogger(AgentCircuitBreakerRegistry.class);
+    private static final String HEARTBEAT_OFFLINE = "心跳离线";
+
+    private final FirewallProperties firewallProperties;
+
+    // agentId -> 熔断器
+    private final ConcurrentHashMap<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    public AgentCircuitBreakerRegistry(FirewallProperties firewallProperties) {
+        this.firewallProperties = firewallProperties;
+    }
+
+    /**
+     * 申请向agent节点下发命令
+     * 返回true时，调用方必须在命令结束后调用 {@link #record(String, Throwable)}
+     *
+     * @param agentId 节点ID
+     * @return false 表示节点熔断中，命令不应下发
+     */
+    public boolean tryAcquire(String agentId) {
+        if (!Boolean.TRUE.equals(firewallProperties.getBreaker().getEnabled())) {
+            return true;
+        }
+        Breaker breaker = breakers.get(agentId);
+        return breaker == null || breaker.tryAcquire(System.currentTimeMillis(), firewallProperties.getBreaker().getOpenMillis());
+    }
+
+    /**
+     * 记录命令的结果
+     * 只有超时会计入失败次数，agent节点返回了响应（即使是失败的响应）说明节点可用
+     *
+     * @param agentId 节点ID
+     * @param ex      命令的异常，成功时为null
+     */
+    public void record(String agentId, Throwable ex) {
+        if (!Boolean.TRUE.equals(firewallProperties.getBreaker().getEnabled())) {
+            return;
+        }
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause == null) {
+            Breaker breaker = breakers.get(agentId);
+            if (breaker != null) {
+                breaker.onSuccess(agentId);
+            }
+        } else if (cause instanceof EmptyResultException) {
+            breaker(agentId).onTimeout(agentId, System.currentTimeMillis(), firewallProperties.getBreaker().getFailureThreshold());
+        } else {
+            // 命令发布失败等与节点无关的错误，只释放探测名额
+            Breaker breaker = breakers.get(agentId);
+            if (breaker != null) {
+                breaker.release();
+            }
+        }
+    }
+
+    /**
+     * 心跳检查的结果
+     *
+     * @param agentId 节点ID
+     * @param alive   心跳是否在线
+     */
+    public void onHeartbeat(String agentId, boolean alive) {
+        breaker(agentId).onHeartbeat(agentId, alive, System.currentTimeMillis());
+    }
+
+    /**
+     * 手动恢复节点的熔断器
+     * 同时视为心跳在线，之后的超时熔断可以按熔断时间恢复；心跳确实离线时由下一轮心跳检查重新熔断
+     *
+     * @param agentId 节点ID
+     */
+    public void reset(String agentId) {
+        Breaker breaker = breakers.get(agentId);
+        if (breaker != null) {
+            breaker.reset(agentId);
+        }
+    }
+
+    /**
+     * 获取节点的熔断器状态
+     *
+     * @param agentId 节点ID
+     * @return 从未记录过的节点视为 CLOSED
+     */
+    public AgentCircuitBreakerStatus getStatus(String agentId) {
+        Breaker breaker = breakers.get(agentId);
+        if (breaker == null) {
+            return AgentCircuitBreakerStatus.builder()
+                    .nodeId(agentId)
+                    .state(CircuitBreakerState.CLOSED)
+                    .consecutiveFailures(0)
+                    .rejectedCount(0L)
+                    .build();
+        }
+        return breaker.toStatus(agentId);
+    }
+
+    /**
+     * 获取全部节点的熔断器状态
+     *
+     * @return 按节点ID排序
+     */
+    public List<AgentCircuitBreakerStatus> getStatuses() {
+        List<AgentCircuitBreakerStatus> statuses = new ArrayList<>(breakers.size());
+        breakers.forEach((agentId, breaker) -> statuses.add(breaker.toStatus(agentId)));
+        statuses.sort(Comparator.comparing(AgentCircuitBreakerStatus::getNodeId));
+        return statuses;
+    }
+
+    private Breaker breaker(String agentId) {
+        return breakers.computeIfAbsent(agentId, k -> new Breaker());
+    }
+
+    /**
+     * 单个节点的熔断器，状态变更都在同一把锁内完成
+     */
+    private static final class Breaker {
+        private CircuitBreakerState state = CircuitBreakerState.CLOSED;
+        private String reason;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean heartbeatAlive = true;
+        // 半开状态下是否已经放行了探测命令
+        private boolean probing;
+        private long rejectedCount;
+
+        synchronized boolean tryAcquire(long now, long openMillis) {
+            if (state == CircuitBreakerState.OPEN && heartbeatAlive && now - openedAt >= openMillis) {
+                state = CircuitBreakerState.HALF_OPEN;
+                probing = false;
+            }
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case HALF_OPEN:
+                    if (!probing) {
+                        probing = true;
+                        return true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            rejectedCount++;
+            return false;
+        }
+
+        synchronized void onSuccess(String agentId) {
+            if (state != CircuitBreakerState.CLOSED) {
+                log.info("agent节点: {} 熔断恢复", agentId);
+            }
+            state = CircuitBreakerState.CLOSED;
+            reason = null;
+            consecutiveFailures = 0;
+            probing = false;
+        }
+
+        synchronized void reset(String agentId) {
+            onSuccess(agentId);
+            heartbeatAlive = true;
+        }
+
+        synchronized void onTimeout(String agentId, long now, int failureThreshold) {
+            consecutiveFailures++;
+            if (state == CircuitBreakerState.HALF_OPEN
+                    || (state == CircuitBreakerState.CLOSED && consecutiveFailures >= failureThreshold)) {
+                open(agentId, "连续 " + consecutiveFailures + " 次命令超时", now);
+            }
+        }
+
+        synchronized void onHeartbeat(String agentId, boolean alive, long now) {
+            boolean recovered = alive && !heartbeatAlive;
+            heartbeatAlive = alive;
+            if (!alive && state != CircuitBreakerState.OPEN) {
+                open(agentId, HEARTBEAT_OFFLINE, now);
+            } else if (recovered && state == CircuitBreakerState.OPEN && HEARTBEAT_OFFLINE.equals(reason)) {
+                // 心跳从离线恢复，不必等熔断时间到期，立即放行探测命令
+                state = CircuitBreakerState.HALF_OPEN;
+                probing = false;
+            }
+        }
+
+        synchronized void release() {
+            probing = false;
+        }
+
+        private void open(String agentId, String reason, long now) {
+            log.warn("agent节点: {} 熔断，原因: {}", agentId, reason);
+            this.state = CircuitBreakerState.OPEN;
+            this.reason = reason;
+            this.openedAt = now;
+            this.probing = false;
+        }
+
+        synchronized AgentCircuitBreakerStatus toStatus(String agentId) {
+            return AgentCircuitBreakerStatus.builder()
+                    .nodeId(agentId)
+                    .state(state)
+                    .reason(reason)
+                    .consecutiveFailures(consecutiveFailures)
+                    .openedAt(openedAt == 0 ? null : openedAt)
+                    .heartbeatAlive(heartbeatAlive)
+                    .rejectedCount(rejectedCount)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.zeta.firewall.service;
+
+import com.zeta.firewall.codec.MessageCodecRegistry;
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.exception.AgentUnavailableException;
+import com.zeta.firewall.exception.EmptyResultException;
+import com.zeta.firewall.model.dto.RedisCommandMessage;
+import com.zeta.firewall.subscirbe.StreamProducer;
+import com.zeta.firewall.util.JsonMessageConverter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 向agent节点发送命令并获取响应
+ *
+ * 命令发布到 pub:{nodeId}:{streamSuffix}，agent节点使用相同的 recordId 将响应写入 sub:{nodeId}:{streamSuffix}
+ * 命令的编码由 {@link MessageCodecRegistry} 按节点协商
+ *
+ * 优先级通道：LOW 优先级的命令（批量操作、后台同步）发布到 pub:{nodeId}:{streamSuffix}:low，响应写入 sub:{nodeId}:{streamSuffix}:low，
+ * agent节点优先处理高优先级通道，见 docs/03功能介绍/Agent命令协议.md。不支持优先级通道的旧版本agent节点只使用高优先级通道。
+ *
+ * 熔断中的节点（见 {@link AgentCircuitBreakerRegistry}）不下发命令，直接以 AgentUnavailableException 异常失败。
+ * 未指定超时时间的命令按节点的历史响应延迟计算超时时间，见 {@link AgentLatencyTracker}。
+ */
+@Slf4j
+@Service
+public class AgentCommandService {
+
+    private final StreamProducer streamProducer;
+    private final StreamResponseService streamResponseService;
+    private final FirewallProperties firewallProperties;
+    private final MessageCodecRegistry messageCodecRegistry;
+    private final AgentVersionRegistry agentVersionRegistry;
+    private final AgentCircuitBreakerRegistry agentCircuitBreakerRegistry;
+    private final AgentLatencyTracker agentLatencyTracker;
+
+    // 当前线程发出的命令的默认优先级，见 withPriority
+    private static final ThreadLocal<RedisCommandMessage.Priority> PRIORITY = new ThreadLocal<>();
+    // 低优先级通道的stream后缀
+    public static final String LOW_PRIORITY_LANE = "low";
+
+    // 等待响应中的查询 key: 合并键
+    private final ConcurrentHashMap<String, CompletableFuture<Map<Object, Object>>> inFlightQueries = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    public AgentCommandService(StreamProducer streamProducer, StreamResponseService streamResponseService,
+                               FirewallProperties firewallProperties, MessageCodecRegistry messageCodecRegistry,
+                               AgentVersionRegistry agentVersionRegistry, AgentCircuitBreakerRegistry agentCircuitBreakerRegistry,
+                               AgentLatencyTracker agentLatencyTracker) {
+        this.streamProducer = streamProducer;
+        this.streamResponseService = streamResponseService;
+        this.firewallProperties = firewallProperties;
+        this.messageCodecRegistry = messageCodecRegistry;
+        this.agentVersionRegistry = agentVersionRegistry;
+        this.agentCircuitBreakerRegistry = agentCircuitBreakerRegistry;
+        this.agentLatencyTracker = agentLatencyTracker;
+    }
+
+    /**
+     * 以指定的优先级执行一段逻辑，其间发出的未指定优先级的命令都使用该优先级
+     * 用于批量操作、后台同步等复用单节点业务方法的场景
+     *
+     * @param priority 优先级
+     * @param action   要执行的逻辑
+     * @return action 的返回值
+     */
+    public static <T> T withPriority(RedisCommandMessage.Priority priority, Supplier<T> action) {
+        RedisCommandMessage.Priority previous = PRIORITY.get();
+        PRIORITY.set(priority);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                PRIORITY.remove();
+            } else {
+                PRIORITY.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 当前线程发出的命令的优先级，未通过 withPriority 指定时为 HIGH
+     * 用于命令写入发件箱等不在当前线程发送的场景，提前确定优先级
+     *
+     * @return 优先级
+     */
+    public static RedisCommandMessage.Priority currentPriority() {
+        RedisCommandMessage.Priority priority = PRIORITY.get();
+        return priority == null ? RedisCommandMessage.Priority.HIGH : priority;
+    }
+
+    /**
+     * 发送命令，使用按节点响应延迟计算的超时时间等待响应
+     *
+     * @param nodeId       节点ID
+     * @param streamSuffix stream后缀，如 portRule、portInfo、firewallStatusInfo
+     * @param message      命令消息
+     * @return 响应内容的future
+     */
+    public CompletableFuture<Map<Object, Object>> submit(String nodeId, String streamSuffix, RedisCommandMessage<?> message) {
+        return submit(nodeId, streamSuffix, message, agentLatencyTracker.timeoutFor(nodeId, AgentLatencyTracker.operationOf(streamSuffix, message)));
+    }
+
+    /**
+     * 发送命令，在指定的时间内等待响应
+     * 相同的查询（QUERY）正在等待响应时不会重复下发，而是共用正在进行的那次查询的结果和超时时间
+     *
+     * @param nodeId       节点ID
+     * @param streamSuffix stream后缀，如 portRule、portInfo、firewallStatusInfo
+     * @param message      命令消息
+     * @param timeout      最长等待时间
+     * @return 响应内容的future，超时未收到响应时以 EmptyResultException 异常完成，节点熔断中时以 AgentUnavailableException 异常完成
+     */
+    public CompletableFuture<Map<Object, Object>> submit(String nodeId, String streamSuffix, RedisCommandMessage<?> message, Duration timeout) {
+        if (!isCoalescable(message)) {
+            return send(nodeId, streamSuffix, message, timeout);
+        }
+
+        // 相同通道上相同的查询正在等待响应时，共用同一次命令往返的结果；
+        // 高优先级查询不会挂到低优先级通道的查询上，在批量命令后面排队
+        String key = coalesceKey(nodeId, laneOf(nodeId, streamSuffix, message), message);
+        CompletableFuture<Map<Object, Object>> leader = new CompletableFuture<>();
+        CompletableFuture<Map<Object, Object>> inFlight = inFlightQueries.putIfAbsent(key, leader);
+        if (inFlight != null) {
+            coalescedCount.incrementAndGet();
+            log.debug("Coalesced query to node: {}, key: {}", nodeId, key);
+            // 返回新的future，避免调用方完成或取消共享的future影响其他调用方
+            return inFlight.thenApply(Function.identity());
+        }
+
+        send(nodeId, streamSuffix, message, timeout).whenComplete((value, ex) -> {
+            inFlightQueries.remove(key, leader);
+            if (ex != null) {
+                leader.completeExceptionally(ex);
+            } else {
+                leader.complete(value);
+            }
+        });
+        return leader.thenApply(Function.identity());
+    }
+
+    /**
+     * 已合并的查询次数
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * 发布命令并等待响应
+     */
+    private CompletableFuture<Map<Object, Object>> send(String nodeId, String streamSuffix, RedisCommandMessage<?> message, Duration timeout) {
+        if (!agentCircuitBreakerRegistry.tryAcquire(nodeId)) {
+            return failed(unavailable(nodeId));
+        }
+        String lane = laneOf(nodeId, streamSuffix, message);
+        String pubStreamKey = pubStreamKey(nodeId, lane);
+        String subStreamKey = subStreamKey(nodeId, lane);
+        try {
+            // 按节点协商的编码序列化命令
+            Map<String, byte[]> fields = messageCodecRegistry.codecFor(nodeId).encode(message);
+            long start = System.currentTimeMillis();
+            RecordId recordId = streamProducer.publishEncodedMessage(pubStreamKey, fields);
+            return track(nodeId, AgentLatencyTracker.operationOf(streamSuffix, message), start,
+                    streamResponseService.awaitResponse(nodeId, subStreamKey, pubStreamKey, recordId, timeout));
+        } catch (Exception e) {
+            agentCircuitBreakerRegistry.record(nodeId, e);
+            return failed(e);
+        }
+    }
+
+    /**
+     * 只有查询命令可以合并，写命令每次都要下发
+     */
+    private boolean isCoalescable(RedisCommandMessage<?> message) {
+        return Boolean.TRUE.equals(firewallProperties.getCommand().getCoalesceQueries())
+                && message.getDataOpType() == RedisCommandMessage.OperationType.QUERY;
+    }
+
+    /**
+     * 查询的合并键：节点、通道（stream后缀，低优先级时带 :low）、组件类型、操作类型、按key排序后的请求参数，以及 data、old
+     */
+    private static String coalesceKey(String nodeId, String lane, RedisCommandMessage<?> message) {
+        Map<String, String> canonical = JsonMessageConverter.beanToMap(message);
+        StringBuilder key = new StringBuilder()
+                .append(nodeId).append('|')
+                .append(lane).append('|')
+                .append(message.getAgentComponentType()).append('|')
+                .append(message.getDataOpType()).append('|');
+        if (message.getRequestParams() != null) {
+            key.append(new TreeMap<>(message.getRequestParams()));
+        }
+        return key.append('|').append(canonical.get("data"))
+                .append('|').append(canonical.get("old"))
+                .toString();
+    }
+
+    /**
+     * 向多个节点批量发送命令，所有命令在一个 pipeline 中发布，每个节点使用按其响应延迟计算的超时时间
+     *
+     * @param messages     key为节点ID，value为发送给该节点的命令消息
+     * @param streamSuffix stream后缀
+     * @return key为节点ID，value为该节点响应内容的future；熔断中的节点和发布失败时的future以异常完成
+     */
+    public Map<String, CompletableFuture<Map<Object, Object>>> submitAll(Map<String, ? extends RedisCommandMessage<?>> messages, String streamSuffix) {
+        return submitAll(messages, streamSuffix,
+                nodeId -> agentLatencyTracker.timeoutFor(nodeId, AgentLatencyTracker.operationOf(streamSuffix, messages.get(nodeId))));
+    }
+
+    /**
+     * 向多个节点批量发送命令，所有命令在一个 pipeline 中发布
+     *
+     * @param messages     key为节点ID，value为发送给该节点的命令消息
+     * @param streamSuffix stream后缀
+     * @param timeout      每个命令的最长等待时间
+     * @return key为节点ID，value为该节点响应内容的future；熔断中的节点和发布失败时的future以异常完成
+     */
+    public Map<String, CompletableFuture<Map<Object, Object>>> submitAll(Map<String, ? extends RedisCommandMessage<?>> messages, String streamSuffix, Duration timeout) {
+        return submitAll(messages, streamSuffix, nodeId -> timeout);
+    }
+
+    private Map<String, CompletableFuture<Map<Object, Object>>> submitAll(Map<String, ? extends RedisCommandMessage<?>> messages, String streamSuffix,
+                                                                          Function<String, Duration> timeoutOf) {
+        Map<String, CompletableFuture<Map<Object, Object>>> futures = new LinkedHashMap<>();
+        if (messages.isEmpty()) {
+            return futures;
+        }
+
+        // 熔断中的节点不下发命令
+        List<String> nodeIds = new ArrayList<>(messages.size());
+        for (String nodeId : messages.keySet()) {
+            if (agentCircuitBreakerRegistry.tryAcquire(nodeId)) {
+                nodeIds.add(nodeId);
+            } else {
+                futures.put(nodeId, failed(unavailable(nodeId)));
+            }
+        }
+        if (nodeIds.isEmpty()) {
+            return futures;
+        }
+
+        Map<String, String> lanes = new HashMap<>();
+        List<RecordId> recordIds;
+        long start;
+        try {
+            List<MapRecord<String, String, byte[]>> records = new ArrayList<>(nodeIds.size());
+            for (String nodeId : nodeIds) {
+                RedisCommandMessage<?> message = messages.get(nodeId);
+                lanes.put(nodeId, laneOf(nodeId, streamSuffix, message));
+                Map<String, byte[]> fields = messageCodecRegistry.codecFor(nodeId).encode(message);
+                records.add(StreamRecords.newRecord().in(pubStreamKey(nodeId, lanes.get(nodeId))).ofMap(fields));
+            }
+            start = System.currentTimeMillis();
+            recordIds = streamProducer.publishEncodedMessages(records);
+        } catch (Exception e) {
+            log.error("Failed to publish commands to nodes: {}", nodeIds, e);
+            for (String nodeId : nodeIds) {
+                agentCircuitBreakerRegistry.record(nodeId, e);
+                futures.put(nodeId, failed(e));
+            }
+            return futures;
+        }
+
+        for (int i = 0; i < nodeIds.size(); i++) {
+            String nodeId = nodeIds.get(i);
+            String lane = lanes.get(nodeId);
+            futures.put(nodeId, track(nodeId, AgentLatencyTracker.operationOf(streamSuffix, messages.get(nodeId)), start,
+                    streamResponseService.awaitResponse(nodeId, subStreamKey(nodeId, lane),
+                            pubStreamKey(nodeId, lane), recordIds.get(i), timeoutOf.apply(nodeId))));
+        }
+        return futures;
+    }
+
+    /**
+     * 发送命令并阻塞等待响应
+     *
+     * @param nodeId       节点ID
+     * @param streamSuffix stream后缀
+     * @param message      命令消息
+     * @return 响应内容
+     * @throws RuntimeException 发布失败或在超时时间内未收到响应
+     */
+    public Map<Object, Object> execute(String nodeId, String streamSuffix, RedisCommandMessage<?> message) {
+        try {
+            return submit(nodeId, streamSuffix, message).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * 确定命令的优先级，并返回命令使用的通道（stream后缀）
+     * 命令未指定优先级时使用当前线程的优先级，默认为 HIGH
+     */
+    private String laneOf(String nodeId, String streamSuffix, RedisCommandMessage<?> message) {
+        if (message.getPriority() == null) {
+            message.setPriority(currentPriority());
+        }
+        FirewallProperties.Lane lane = firewallProperties.getLane();
+        if (message.getPriority() == RedisCommandMessage.Priority.LOW
+                && Boolean.TRUE.equals(lane.getEnabled())
+                && agentVersionRegistry.isAtLeast(nodeId, lane.getMinClientVersion())) {
+            return streamSuffix + ":" + LOW_PRIORITY_LANE;
+        }
+        return streamSuffix;
+    }
+
+    /**
+     * 命令结束后记录熔断器结果和响应延迟
+     */
+    private CompletableFuture<Map<Object, Object>> track(String nodeId, String operation, long start,
+                                                          CompletableFuture<Map<Object, Object>> response) {
+        return response.whenComplete((value, ex) -> {
+            agentCircuitBreakerRegistry.record(nodeId, ex);
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (cause == null) {
+                agentLatencyTracker.record(nodeId, operation, System.currentTimeMillis() - start);
+            } else if (cause instanceof EmptyResultException) {
+                agentLatencyTracker.recordTimeout(nodeId, operation);
+            }
+        });
+    }
+
+    private static AgentUnavailableException unavailable(String nodeId) {
+        return new AgentUnavailableException("Node: " + nodeId + " is unavailable (circuit open), command not sent");
+    }
+
+    private static CompletableFuture<Map<Object, Object>> failed(Throwable e) {
+        CompletableFuture<Map<Object, Object>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(e);
+        return failed;
+    }
+
+    /**
+     * 判断agent节点的响应是否成功
+     *
+     * @param value 响应内容
+     * @return status 为 200 表示成功
+     */
+    public static boolean isResponseSuccess(Map<Object, Object> value) {
+        return value != null && value.containsKey("status") && "200".equals(value.get("status"));
+    }
+
+    public static String pubStreamKey(String nodeId, String streamSuffix) {
+        return "pub:" + nodeId + ":" + streamSuffix;
+    }
+
+    public static String subStreamKey(String nodeId, String streamSuffix) {
+        return "sub:" + nodeId + ":" + streamSuffix;
+    }
+}
@@ -0,0 +1,143 @@
+package com.zeta.firewall.service;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.model.dto.AgentLatencyStats;
+import com.zeta.firewall.model.dto.RedisCommandMessage;
+import com.zeta.firewall.util.LatencyHistogram;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * agent节点命令响应延迟统计
+ *
+ * 按节点和操作（stream后缀:操作类型）分别统计滚动窗口内的响应延迟，并据此计算命令的超时时间：
+ * 超时时间 = p99 × multiplier，限制在 [floorMillis, capMillis] 之间；样本不足时使用默认超时时间。
+ * 超时的命令没有延迟样本，只按成功响应计算会让超时时间只减不增，因此窗口内出现超时时直接使用 capMillis，
+ * 等超时移出窗口后再按延迟分位收紧
+ */
+@Component
+public class AgentLatencyTracker {
+    private final FirewallProperties firewallProperties;
+
+    // key: 节点ID|操作
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    public AgentLatencyTracker(FirewallProperties firewallProperties) {
+        this.firewallProperties = firewallProperties;
+    }
+
+    /**
+     * 命令对应的操作
+     *
+     * @param streamSuffix stream后缀
+     * @param message      命令消息
+     * @return 如 portRule:QUERY
+     */
+    public static String operationOf(String streamSuffix, RedisCommandMessage<?> message) {
+        return streamSuffix + ":" + message.getDataOpType();
+    }
+
+    /**
+     * 记录一次响应延迟
+     *
+     * @param agentId       节点ID
+     * @param operation     操作
+     * @param latencyMillis 从发布命令到收到完整响应的耗时（毫秒）
+     */
+    public void record(String agentId, String operation, long latencyMillis) {
+        histogram(agentId, operation).record(latencyMillis, System.currentTimeMillis());
+    }
+
+    /**
+     * 记录一次超时
+     *
+     * @param agentId   节点ID
+     * @param operation 操作
+     */
+    public void recordTimeout(String agentId, String operation) {
+        histogram(agentId, operation).recordTimeout(System.currentTimeMillis());
+    }
+
+    /**
+     * 计算命令的超时时间
+     *
+     * @param agentId   节点ID
+     * @param operation 操作
+     * @return 超时时间
+     */
+    public Duration timeoutFor(String agentId, String operation) {
+        return Duration.ofMillis(timeoutMillis(histograms.get(key(agentId, operation)), System.currentTimeMillis()));
+    }
+
+    /**
+     * 获取全部节点的延迟统计
+     *
+     * @return 按节点ID、操作排序
+     */
+    public List<AgentLatencyStats> getStats() {
+        return getStats(null);
+    }
+
+    /**
+     * 获取延迟统计
+     *
+     * @param agentId 节点ID，为null时返回全部节点
+     * @return 按节点ID、操作排序
+     */
+    public List<AgentLatencyStats> getStats(String agentId) {
+        long now = System.currentTimeMillis();
+        List<AgentLatencyStats> stats = new ArrayList<>();
+        histograms.forEach((key, histogram) -> {
+            int index = key.indexOf('|');
+            String nodeId = key.substring(0, index);
+            if (agentId != null && !agentId.equals(nodeId)) {
+                return;
+            }
+            stats.add(AgentLatencyStats.builder()
+                    .nodeId(nodeId)
+                    .operation(key.substring(index + 1))
+                    .count(histogram.count(now))
+                    .timeouts(histogram.timeouts(now))
+                    .p50Millis(histogram.percentile(0.5, now))
+                    .p90Millis(histogram.percentile(0.9, now))
+                    .p99Millis(histogram.percentile(0.99, now))
+                    .maxMillis(histogram.max(now))
+                    .timeoutMillis(timeoutMillis(histogram, now))
+                    .buckets(histogram.buckets(now))
+                    .build());
+        });
+        stats.sort(Comparator.comparing(AgentLatencyStats::getNodeId).thenComparing(AgentLatencyStats::getOperation));
+        return stats;
+    }
+
+    private long timeoutMillis(LatencyHistogram histogram, long now) {
+        FirewallProperties.Latency latency = firewallProperties.getLatency();
+        long defaultTimeout = firewallProperties.getCommand().getTimeoutMillis();
+        if (!Boolean.TRUE.equals(latency.getAdaptiveTimeout()) || histogram == null) {
+            return defaultTimeout;
+        }
+        // 有命令在当前超时时间内没有响应，说明超时时间已经偏小
+        if (histogram.timeouts(now) > 0) {
+            return latency.getCapMillis();
+        }
+        if (histogram.count(now) < latency.getMinSamples()) {
+            return defaultTimeout;
+        }
+        long timeout = (long) (histogram.percentile(latency.getPercentile(), now) * latency.getMultiplier());
+        return Math.min(latency.getCapMillis(), Math.max(latency.getFloorMillis(), timeout));
+    }
+
+    private LatencyHistogram histogram(String agentId, String operation) {
+        return histograms.computeIfAbsent(key(agentId, operation),
+                k -> new LatencyHistogram(firewallProperties.getLatency().getWindowMillis(), System.currentTimeMillis()));
+    }
+
+    private static String key(String agentId, String operation) {
+        return agentId + "|" + operation;
+    }
+}
@@ -0,0 +1,58 @@
+package com.zeta.firewall.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.zeta.firewall.model.dto.AgentMetricsPoint;
+import com.zeta.firewall.model.entity.AgentNodeMetrics;
+import com.zeta.firewall.model.enums.MetricsResolution;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * agent节点资源使用率时序服务
+ */
+public interface AgentNodeMetricsService extends IService<AgentNodeMetrics> {
+
+    /**
+     * 追加一批采样
+     *
+     * @param samples 采样列表
+     */
+    void append(List<AgentNodeMetrics> samples);
+
+    /**
+     * 将最近的原始采样汇总为分钟数据，再将分钟数据汇总为小时数据
+     * 汇总结果按 (节点, 粒度, 时间段) 覆盖写入，重复执行不会产生重复数据
+     *
+     * @param now 当前时间
+     */
+    void rollup(LocalDateTime now);
+
+    /**
+     * 按各粒度的保留时间清理过期数据
+     *
+     * @param now 当前时间
+     */
+    void purge(LocalDateTime now);
+
+    /**
+     * 查询节点在时间范围内的资源使用率
+     *
+     * @param agentId    节点ID
+     * @param from       开始时间（含）
+     * @param to         结束时间（不含）
+     * @param resolution 粒度，为空时按时间范围自动选择
+     * @return 按时间升序的数据点
+     */
+    List<AgentMetricsPoint> query(String agentId, LocalDateTime from, LocalDateTime to, MetricsResolution resolution);
+
+    /**
+     * 按时间范围选择粒度：在保留时间内且点数不超过上限的最细粒度
+     *
+     * @param from 开始时间
+     * @param to   结束时间
+     * @param now  当前时间
+     * @return 粒度
+     */
+    MetricsResolution resolve(LocalDateTime from, LocalDateTime to, LocalDateTime now);
+}
@@ -0,0 +1,194 @@
+package com.zeta.firewall.service;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.zeta.firewall.dao.PortRuleMapper;
+import com.zeta.firewall.event.PortRuleUpdateEvent;
+import com.zeta.firewall.model.dto.PortRuleDTO;
+import com.zeta.firewall.model.entity.PortInfo;
+import com.zeta.firewall.model.entity.PortRule;
+import com.zeta.firewall.util.PortRuleUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 节点端口使用情况读模型
+ *
+ * 按节点缓存 端口规则 -> 匹配的正在监听的端口（含进程信息），端口规则列表接口直接从这里读取，
+ * 一次查询只涉及该节点的端口规则和端口信息，与集群中的节点数、端口总数无关。
+ * <ul>
+ *     <li>首次读取时从数据库加载该节点的端口规则和端口信息</li>
+ *     <li>端口信息同步（PortInfoPullService）后按该节点最新的端口重新匹配，不再访问数据库</li>
+ *     <li>收到 PortRuleUpdateEvent 时丢弃相关节点，下次读取时重新加载</li>
+ *     <li>其他master实例修改了当前实例负责的节点的端口规则时，由 PortRuleChangeCoalescer 取走转交的节点后丢弃</li>
+ *     <li>不由当前实例同步端口信息的节点（分片属于其他master实例）超过 REMOTE_TTL_MILLIS 后重新加载</li>
+ * </ul>
+ */
+@Component
+public class AgentPortUsageView {
+    private static final Logger log = LoggerFactory.getLogger(AgentPortUsageView.class);
+
+    /** 其他master实例负责的节点的缓存时间，与端口信息拉取的间隔一致 */
+    static final long REMOTE_TTL_MILLIS = 60000;
+
+    private final PortRuleMapper portRuleMapper;
+    private final PortInfoService portInfoService;
+    private final AgentShardManager agentShardManager;
+
+    // agentId -> 节点端口使用情况
+    private final ConcurrentHashMap<String, AgentPortUsage> usages = new ConcurrentHashMap<>();
+    // 每次缓存失效加一，加载期间发生失效时不写入加载结果
+    private final AtomicLong generation = new AtomicLong();
+
+    public AgentPortUsageView(PortRuleMapper portRuleMapper, PortInfoService portInfoService, AgentShardManager agentShardManager) {
+        this.portRuleMapper = portRuleMapper;
+        this.portInfoService = portInfoService;
+        this.agentShardManager = agentShardManager;
+    }
+
+    /**
+     * 获取节点的端口使用情况，没有缓存或缓存已过期时从数据库加载
+     *
+     * @param agentId 节点id
+     * @return 节点端口使用情况
+     */
+    public AgentPortUsage get(String agentId) {
+        AgentPortUsage usage = usages.get(agentId);
+        if (usage != null && !isExpired(agentId, usage)) {
+            return usage;
+        }
+        long loadGeneration = generation.get();
+        AgentPortUsage loaded = load(agentId);
+        // 加载期间可能已被事件丢弃或被同步更新，只在缓存未变化时写入
+        if (generation.get() == loadGeneration) {
+            if (usage == null) {
+                usages.putIfAbsent(agentId, loaded);
+            } else {
+                usages.replace(agentId, usage, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 节点的端口信息已同步到数据库，按最新的端口重新匹配端口规则
+     * 尚未加载的节点不处理，下次读取时从数据库加载
+     *
+     * @param agentId   节点id
+     * @param portInfos 节点当前的全部端口信息（含数据库主键）
+     * @return 更新后的端口使用情况，节点尚未加载时返回null
+     */
+    public AgentPortUsage onPortInfosChanged(String agentId, Collection<PortInfo> portInfos) {
+        return usages.computeIfPresent(agentId, (key, usage) -> AgentPortUsage.of(usage.rules, portInfos));
+    }
+
+    /**
+     * 端口规则变化后丢弃相关节点的缓存
+     */
+    @EventListener
+    public void handlePortRuleUpdate(PortRuleUpdateEvent event) {
+        generation.incrementAndGet();
+        if (event.isAllAgents()) {
+            usages.clear();
+        } else {
+            event.getAgentIds().forEach(usages::remove);
+        }
+        log.debug("端口使用情况缓存已失效: {}", event.isAllAgents() ? "全部节点" : event.getAgentIds());
+    }
+
+    /**
+     * 事务提交后再丢弃一次相关节点的缓存
+     * 避免其他线程在事务提交前用旧的端口规则重新加载了缓存
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void handlePortRuleUpdateAfterCommit(PortRuleUpdateEvent event) {
+        handlePortRuleUpdate(event);
+    }
+
+    /**
+     * 丢弃节点的缓存
+     *
+     * @param agentId 节点id
+     */
+    public void invalidate(String agentId) {
+        generation.incrementAndGet();
+        usages.remove(agentId);
+    }
+
+    /**
+     * 丢弃全部节点的缓存
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        usages.clear();
+    }
+
+    private boolean isExpired(String agentId, AgentPortUsage usage) {
+        return !agentShardManager.owns(agentId) && System.currentTimeMillis() - usage.loadedAt > REMOTE_TTL_MILLIS;
+    }
+
+    private AgentPortUsage load(String agentId) {
+        List<PortRule> rules = portRuleMapper.selectList(Wrappers.<PortRule>lambdaQuery().eq(PortRule::getAgentId, agentId));
+        List<PortInfo> portInfos = portInfoService.queryPortInfosByAgentIdDB(agentId);
+        return AgentPortUsage.of(rules, portInfos);
+    }
+
+    /**
+     * 单个节点的端口使用情况，不可变
+     */
+    public static class AgentPortUsage {
+        private final List<PortRule> rules;
+        // 端口规则id -> 匹配的端口信息
+        private final Map<Long, List<PortInfo>> portInfosByRuleId;
+        private final long loadedAt;
+
+        private AgentPortUsage(List<PortRule> rules, Map<Long, List<PortInfo>> portInfosByRuleId) {
+            this.rules = rules;
+            this.portInfosByRuleId = portInfosByRuleId;
+            this.loadedAt = System.currentTimeMillis();
+        }
+
+        static AgentPortUsage of(List<PortRule> rules, Collection<PortInfo> portInfos) {
+            Map<Long, List<PortInfo>> portInfosByRuleId = new HashMap<>();
+            PortRuleUtils.connectPortInfosWithPortRules(rules, new ArrayList<>(portInfos)).forEach((ruleId, matched) -> {
+                if (!matched.isEmpty()) {
+                    portInfosByRuleId.put(Long.valueOf(ruleId), Collections.unmodifiableList(matched));
+                }
+            });
+            return new AgentPortUsage(Collections.unmodifiableList(new ArrayList<>(rules)), portInfosByRuleId);
+        }
+
+        public List<PortRule> getRules() {
+            return rules;
+        }
+
+        /**
+         * @param ruleId 端口规则id
+         * @return 匹配该规则的正在监听的端口，没有时返回空列表
+         */
+        public List<PortInfo> getPortInfos(Long ruleId) {
+            return portInfosByRuleId.getOrDefault(ruleId, Collections.emptyList());
+        }
+
+        /**
+         * @return 有端口正在使用的端口规则id
+         */
+        public Set<Long> getUsingRuleIds() {
+            return Collections.unmodifiableSet(portInfosByRuleId.keySet());
+        }
+
+        public List<PortRuleDTO> toPortRuleDTOs() {
+            return rules.stream()
+                    .map(rule -> PortRuleDTO.fromEntity(rule, getPortInfos(rule.getId())))
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.zeta.firewall.service;
+
+import cn.hutool.core.util.HashUtil;
+import cn.hutool.core.util.StrUtil;
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.model.dto.MasterShardStatus;
+import com.zeta.firewall.util.UUIDUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * agent节点的分片归属
+ *
+ * 多个master实例同时运行时，agent节点按哈希固定划分到 shardCount 个分片，分片再按一致性哈希分配给存活的master实例：
+ * <ul>
+ *     <li>master实例定期在 firewall:masters（ZSET，score 为注册过期时间）中续期注册，过期的实例被移除</li>
+ *     <li>每个分片由 firewall:shards:{分片序号} 租约（SET NX PX）保护，同一时刻只有一个实例持有</li>
+ *     <li>成员变化时，不再属于当前实例的分片立即释放，新的持有者在下一次续约时接管</li>
+ * </ul>
+ * 心跳检查、端口信息同步、资源使用率采集只处理当前实例持有分片内的agent节点。
+ */
+@Slf4j
+@Component
+public class AgentShardManager {
+    // 存活的master实例
+    private static final String MASTER_REGISTRY_KEY = "firewall:masters";
+    // 分片租约key前缀
+    private static final String SHARD_LEASE_KEY_PREFIX = "firewall:shards:";
+    // 本地判断租约有效期时预留的时钟误差（毫秒）
+    private static final long CLOCK_DRIFT_MILLIS = 1000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final FirewallProperties.Shard properties;
+    private final DefaultRedisScript<List> leaseScript;
+    private final String instanceId;
+
+    private volatile List<String> members = Collections.emptyList();
+    private volatile Set<Integer> assignedShards = Collections.emptySet();
+    private volatile Set<Integer> heldShards = Collections.emptySet();
+    private volatile long leaseValidUntil;
+    private volatile long ownershipVersion;
+
+    public AgentShardManager(StringRedisTemplate stringRedisTemplate, FirewallProperties firewallProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.properties = firewallProperties.getShard();
+        this.instanceId = StrUtil.isNotBlank(properties.getInstanceId()) ? properties.getInstanceId() : defaultInstanceId();
+
+        this.leaseScript = new DefaultRedisScript<>();
+        this.leaseScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("/shard_lease.lua")));
+        this.leaseScript.setResultType(List.class);
+    }
+
+    /**
+     * 启动时先注册并抢占分片，避免首轮心跳检查时没有任何分片
+     */
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            renew();
+        } catch (Exception e) {
+            log.error("Initial shard lease renewal failed, instance: {}", instanceId, e);
+        }
+    }
+
+    /**
+     * 周期性续期注册、续约分片
+     */
+    @Scheduled(fixedDelayString = "${zeta.firewall.shard.renew-interval-millis:5000}",
+            initialDelayString = "${zeta.firewall.shard.renew-interval-millis:5000}")
+    public void renewPeriod() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            renew();
+        } catch (Exception e) {
+            log.error("Shard lease renewal failed, instance: {}", instanceId, e);
+        }
+    }
+
+    /**
+     * 续期当前实例的注册，按存活成员重新分配分片，并续约、抢占或释放分片租约
+     */
+    public synchronized void renew() {
+        long start = System.currentTimeMillis();
+        long leaseMillis = properties.getLeaseMillis();
+        long now = stringRedisTemplate.execute((RedisConnection connection) -> connection.time());
+
+        stringRedisTemplate.opsForZSet().add(MASTER_REGISTRY_KEY, instanceId, now + leaseMillis);
+        stringRedisTemplate.opsForZSet().removeRangeByScore(MASTER_REGISTRY_KEY, Double.NEGATIVE_INFINITY, now);
+        Set<String> registered = stringRedisTemplate.opsForZSet().range(MASTER_REGISTRY_KEY, 0, -1);
+        List<String> liveMembers = registered == null ? new ArrayList<>() : new ArrayList<>(registered);
+        if (!liveMembers.contains(instanceId)) {
+            liveMembers.add(instanceId);
+        }
+        Collections.sort(liveMembers);
+
+        Map<Integer, String> assignment = assignShards(liveMembers, properties.getShardCount(), properties.getVirtualNodes());
+        Set<Integer> assigned = assignment.entrySet().stream()
+                .filter(entry -> instanceId.equals(entry.getValue()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toCollection(TreeSet::new));
+
+        Set<Integer> held = executeLeaseScript(assigned, leaseMillis);
+        if (!liveMembers.equals(members)) {
+            log.info("Master members changed: {} -> {}, instance: {} assigned {} shards", members, liveMembers, instanceId, assigned.size());
+        }
+        if (!held.equals(heldShards)) {
+            ownershipVersion++;
+            log.info("Instance {} now holds {}/{} shards (assigned {})", instanceId, held.size(), properties.getShardCount(), assigned.size());
+        }
+        members = Collections.unmodifiableList(liveMembers);
+        assignedShards = Collections.unmodifiableSet(assigned);
+        heldShards = Collections.unmodifiableSet(held);
+        leaseValidUntil = start + leaseMillis - CLOCK_DRIFT_MILLIS;
+    }
+
+    /**
+     * 注销当前实例并释放持有的分片，其他实例在下一次续约时接管
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            heldShards = executeLeaseScript(Collections.emptySet(), properties.getLeaseMillis());
+            stringRedisTemplate.opsForZSet().remove(MASTER_REGISTRY_KEY, instanceId);
+            log.info("Instance {} released its shards", instanceId);
+        } catch (Exception e) {
+            log.warn("Failed to release shards of instance {}", instanceId, e);
+        }
+    }
+
+    /**
+     * 当前实例是否负责指定的agent节点
+     * 未启用分片时负责全部节点；租约未能按时续约时不负责任何节点，避免与接管的实例重复处理
+     *
+     * @param agentId agent节点id
+     * @return true 表示由当前实例处理
+     */
+    public boolean owns(String agentId) {
+        if (!isEnabled()) {
+            return true;
+        }
+        if (System.currentTimeMillis() >= leaseValidUntil) {
+            return false;
+        }
+        return heldShards.contains(shardOf(agentId, properties.getShardCount()));
+    }
+
+    /**
+     * 当前实例持有且租约有效的分片
+     * 未启用分片或租约未能按时续约时返回空集合
+     *
+     * @return 分片序号
+     */
+    public Set<Integer> getHeldShards() {
+        if (!isEnabled() || System.currentTimeMillis() >= leaseValidUntil) {
+            return Collections.emptySet();
+        }
+        return heldShards;
+    }
+
+    /**
+     * agent节点所属的分片
+     *
+     * @param agentId agent节点id
+     * @return 分片序号，从 0 开始
+     */
+    public int shardOf(String agentId) {
+        return shardOf(agentId, properties.getShardCount());
+    }
+
+    public int getShardCount() {
+        return properties.getShardCount();
+    }
+
+    /**
+     * 分片归属版本，持有的分片每变化一次加一，用于让调用方清理本地状态、重新全量扫描
+     */
+    public long getOwnershipVersion() {
+        return ownershipVersion;
+    }
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(properties.getEnabled());
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * 获取当前实例的分片归属状态
+     */
+    public MasterShardStatus getStatus() {
+        return MasterShardStatus.builder()
+                .enabled(isEnabled())
+                .instanceId(instanceId)
+                .members(members)
+                .shardCount(properties.getShardCount())
+                .assignedShards(new ArrayList<>(assignedShards))
+                .heldShards(new ArrayList<>(heldShards))
+                .leaseValidUntil(leaseValidUntil)
+                .ownershipVersion(ownershipVersion)
+                .build();
+    }
+
+    /**
+     * agent节点所属的分片
+     *
+     * @param agentId    agent节点id
+     * @param shardCount 分片总数
+     * @return 分片序号，从 0 开始
+     */
+    public static int shardOf(String agentId, int shardCount) {
+        return Math.floorMod(HashUtil.murmur32(agentId.getBytes(StandardCharsets.UTF_8)), shardCount);
+    }
+
+    /**
+     * 按一致性哈希把分片分配给master实例
+     * 每个实例在哈希环上放置 virtualNodes 个虚拟节点，分片归属于哈希环上顺时针方向的第一个虚拟节点，
+     * 成员增减时只有相邻区间的分片会移动
+     *
+     * @param members      master实例id
+     * @param shardCount   分片总数
+     * @param virtualNodes 每个实例的虚拟节点数
+     * @return 分片序号 -> master实例id
+     */
+    public static Map<Integer, String> assignShards(Collection<String> members, int shardCount, int virtualNodes) {
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (String member : members) {
+            for (int i = 0; i < Math.max(1, virtualNodes); i++) {
+                ring.put(hash(member + "#" + i), member);
+            }
+        }
+        Map<Integer, String> assignment = new TreeMap<>();
+        if (ring.isEmpty()) {
+            return assignment;
+        }
+        for (int shard = 0; shard < shardCount; shard++) {
+            Map.Entry<Long, String> entry = ring.ceilingEntry(hash("shard-" + shard));
+            assignment.put(shard, entry != null ? entry.getValue() : ring.firstEntry().getValue());
+        }
+        return assignment;
+    }
+
+    private Set<Integer> executeLeaseScript(Set<Integer> assigned, long leaseMillis) {
+        int shardCount = properties.getShardCount();
+        List<String> keys = IntStream.range(0, shardCount)
+                .mapToObj(shard -> SHARD_LEASE_KEY_PREFIX + shard)
+                .collect(Collectors.toList());
+        Object[] args = new Object[shardCount + 2];
+        args[0] = instanceId;
+        args[1] = String.valueOf(leaseMillis);
+        for (int shard = 0; shard < shardCount; shard++) {
+            args[shard + 2] = assigned.contains(shard) ? "1" : "0";
+        }
+
+        List<?> result = stringRedisTemplate.execute(leaseScript, keys, args);
+        Set<Integer> held = new TreeSet<>();
+        if (result != null) {
+            for (Object shard : result) {
+                held.add(((Number) shard).intValue());
+            }
+        }
+        return held;
+    }
+
+    private static long hash(String value) {
+        return HashUtil.murmur64(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String defaultInstanceId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "master";
+        }
+        return host + "-" + UUIDUtil.generateSimpleUuid().substring(0, 8);
+    }
+}
@@ -0,0 +1,60 @@
+package com.zeta.firewall.service;
+
+import cn.hutool.core.comparator.VersionComparator;
+import cn.hutool.core.util.StrUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * agent节点版本
+ *
+ * 由心跳检查记录各节点上报的 clientVersion，命令编码、优先级通道等需要agent配合的功能据此判断节点是否支持
+ */
+@Component
+public class AgentVersionRegistry {
+    private static final Logger log = LoggerFactory.getLogger(AgentVersionRegistry.class);
+
+    // agentId -> clientVersion
+    private final ConcurrentHashMap<String, String> clientVersions = new ConcurrentHashMap<>();
+
+    /**
+     * 记录agent节点的版本
+     *
+     * @param agentId       节点ID
+     * @param clientVersion agent版本
+     */
+    public void update(String agentId, String clientVersion) {
+        if (StrUtil.isBlank(agentId) || StrUtil.isBlank(clientVersion)) {
+            return;
+        }
+        String previous = clientVersions.put(agentId, clientVersion);
+        if (!clientVersion.equals(previous)) {
+            log.info("agent节点: {} 版本: {}", agentId, clientVersion);
+        }
+    }
+
+    /**
+     * 获取agent节点的版本
+     *
+     * @param agentId 节点ID
+     * @return 版本，尚未上报心跳时返回null
+     */
+    public String getVersion(String agentId) {
+        return clientVersions.get(agentId);
+    }
+
+    /**
+     * 判断agent节点的版本是否不低于指定版本
+     *
+     * @param agentId    节点ID
+     * @param minVersion 最低版本
+     * @return 尚未上报版本的节点返回false
+     */
+    public boolean isAtLeast(String agentId, String minVersion) {
+        String clientVersion = clientVersions.get(agentId);
+        return StrUtil.isNotBlank(clientVersion) && VersionComparator.INSTANCE.compare(clientVersion, minVersion) >= 0;
+    }
+}
@@ -0,0 +1,16 @@
+package com.zeta.firewall.service;
+
+import com.zeta.firewall.model.dto.BulkOperationRequest;
+import com.zeta.firewall.model.dto.BulkOperationResult;
+
+public interface BulkOperationService {
+
+    /**
+     * 对一组节点执行同一个操作
+     * 各节点的操作并行执行，并发数受 zeta.firewall.bulk.concurrency 限制；
+     * 线程池队列（zeta.firewall.bulk.queue-capacity）剩余容量不足时抛出 BusinessException，不排队等待
+     * @param request 批量操作请求
+     * @return 汇总结果，包含每个节点的成功与否以及耗时
+     */
+    BulkOperationResult execute(BulkOperationRequest request);
+}
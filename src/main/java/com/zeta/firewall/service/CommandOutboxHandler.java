@@ -0,0 +1,35 @@
+package com.zeta.firewall.service;
+
+import com.zeta.firewall.model.entity.CommandOutbox;
+
+import java.util.Map;
+
+/**
+ * 发件箱命令执行结果的处理器
+ *
+ * 命令在业务事务中先修改了数据库，agent节点执行成功后在 onSuccess 中补充后续处理，
+ * 执行失败时在 onFailure 中把数据库恢复为与agent节点一致的状态
+ */
+public interface CommandOutboxHandler {
+
+    /**
+     * 处理的stream后缀
+     */
+    String streamSuffix();
+
+    /**
+     * agent节点执行成功
+     *
+     * @param outbox   发件箱记录
+     * @param response agent节点的响应
+     */
+    void onSuccess(CommandOutbox outbox, Map<Object, Object> response);
+
+    /**
+     * 命令执行失败，需要补偿
+     *
+     * @param outbox 发件箱记录
+     * @param reason 失败原因
+     */
+    void onFailure(CommandOutbox outbox, String reason);
+}
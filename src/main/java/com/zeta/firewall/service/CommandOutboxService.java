@@ -0,0 +1,73 @@
+package com.zeta.firewall.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.zeta.firewall.model.dto.RedisCommandMessage;
+import com.zeta.firewall.model.entity.CommandOutbox;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * agent命令发件箱服务
+ */
+public interface CommandOutboxService extends IService<CommandOutbox> {
+
+    /**
+     * 在当前事务内写入一条待下发的命令
+     * 命令未指定优先级时在写入时确定（当前线程的优先级，默认 HIGH），与命令一起保存
+     *
+     * @param streamSuffix stream后缀
+     * @param message      命令消息
+     * @return 发件箱记录
+     */
+    CommandOutbox enqueue(String streamSuffix, RedisCommandMessage<?> message);
+
+    /**
+     * 领取一批到期的待下发命令，领取的命令状态变为 SENDING
+     * 多个master节点同时领取时，每条命令只会被一个节点领到；
+     * 同一节点同一stream后缀只领取最早的一条未完成命令，前一条在下发中或等待重试时后面的命令不会下发
+     *
+     * @param limit 最多领取的条数
+     * @return 按id排序的命令列表
+     */
+    List<CommandOutbox> claim(int limit);
+
+    /**
+     * 标记命令执行成功
+     *
+     * @return 更新的条数，命令已被恢复并重新领取时为0
+     */
+    int markSucceeded(CommandOutbox outbox);
+
+    /**
+     * 标记命令执行失败
+     *
+     * @return 更新的条数，命令已被恢复并重新领取时为0
+     */
+    int markFailed(CommandOutbox outbox, String reason);
+
+    /**
+     * 命令稍后重新下发
+     *
+     * @param outbox      发件箱记录
+     * @param delayMillis 延迟时间（毫秒）
+     * @param reason      本次失败原因
+     */
+    void retryLater(CommandOutbox outbox, long delayMillis, String reason);
+
+    /**
+     * 将下发后长时间没有结果的命令（如master节点下发后宕机）恢复为待下发
+     *
+     * @param sendingTimeoutMillis 下发后多久没有结果视为丢失（毫秒）
+     * @return 恢复的条数
+     */
+    int recoverStale(long sendingTimeoutMillis);
+
+    /**
+     * 分批删除最近一次下发早于 cutoff 的已完成命令（SUCCEEDED、FAILED）
+     *
+     * @param cutoff 保留截止时间
+     * @return 删除的条数
+     */
+    int purgeFinished(LocalDateTime cutoff);
+}
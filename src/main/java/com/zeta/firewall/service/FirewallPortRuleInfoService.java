@@ -3,6 +3,7 @@ package com.zeta.firewall.service;
 import com.zeta.firewall.model.entity.FirewallPortRuleInfo;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public interface FirewallPortRuleInfoService {
@@ -12,6 +13,13 @@ public interface FirewallPortRuleInfoService {
      */
     Boolean removeAll();
 
+    /**
+     * 删除指定端口信息对应的全部映射
+     * @param infoIds firewall_port_info主键ID
+     * @return 删除结果 true:成功 false:失败
+     */
+    Boolean removeByInfoIds(Collection<Long> infoIds);
+
     /**
      * 批量插入
      * @param mappingsList mappingsList
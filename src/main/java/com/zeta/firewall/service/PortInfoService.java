@@ -3,6 +3,7 @@ package com.zeta.firewall.service;
 import com.zeta.firewall.model.entity.PortInfo;
 import com.zeta.firewall.model.entity.PortRule;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -60,4 +61,24 @@ public interface PortInfoService {
      * @return 端口信息列表
      */
     List<PortInfo> queryAllPortInfosDB();
+
+    /**
+     * 查询数据库中指定节点的端口信息
+     * @param agentId 节点id
+     * @return 端口信息列表
+     */
+    List<PortInfo> queryPortInfosByAgentIdDB(String agentId);
+
+    /**
+     * 查询数据库中有端口信息的全部节点id
+     * @return 节点id列表
+     */
+    List<String> queryAgentIdsDB();
+
+    /**
+     * 按主键删除端口信息
+     * @param ids 端口信息主键
+     * @return 删除成功返回true，否则返回false
+     */
+    Boolean removePortInfosByIds(Collection<Long> ids);
 }
@@ -30,30 +30,38 @@ public interface PortRuleService extends IService<PortRule> {
 
     /**
      * 添加端口规则
+     * 规则写入数据库，命令写入发件箱后即返回，agent节点的执行结果通过发件箱命令id查询
      * @param portRule 端口规则对象
-     * @return 添加结果 true:成功 false:失败
+     * @return 发件箱命令id，未受理时返回 null
      */
-    Boolean addPortRule(PortRule portRule);
+    Long addPortRule(PortRule portRule);
 
     /**
      * 删除端口规则
      * @param nodeId 节点ID
      * @param ruleIds 规则ID列表
-     * @return 删除结果 true:成功 false:失败
+     * @return 发件箱命令id，未受理时返回 null
      */
-    Boolean deletePortRules(String nodeId, List<Long> ruleIds);
+    Long deletePortRules(String nodeId, List<Long> ruleIds);
 
     /**
      * 更新端口规则
      * @param ruleId 规则ID
      * @param portRule 更新后的端口规则对象
-     * @return 更新结果 true:成功 false:失败
+     * @return 发件箱命令id，未受理时返回 null
      */
-    Boolean updatePortRule(Long ruleId, PortRule portRule);
+    Long updatePortRule(Long ruleId, PortRule portRule);
 
     /**
      * 获取全部的端口规则
      * @return 列表
      */
     List<PortRule> queryAllPortRules();
+
+    /**
+     * 为没有指纹的端口规则（升级前的数据）回填规则内容指纹
+     * 与已有规则内容相同的规则不回填，指纹保持为空，并在日志中列出这些规则的id
+     * @return 回填的规则数
+     */
+    int backfillFingerprints();
 }
@@ -0,0 +1,60 @@
+package com.zeta.firewall.service;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.model.dto.PortUsageDelta;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * 节点端口使用变化推送
+ *
+ * 端口信息同步到数据库后，把该节点新增、变化和不再使用的端口推送到 /topic/agent/{nodeId}/ports，
+ * 已打开的节点页面订阅后直接更新，不需要轮询端口规则列表接口。
+ * websocket 未启用时不推送。
+ */
+@Slf4j
+@Component
+public class PortUsagePublisher {
+
+    /** 节点端口使用变化的订阅地址 */
+    public static final String TOPIC_TEMPLATE = "/topic/agent/%s/ports";
+
+    private final ObjectProvider<SimpMessagingTemplate> simpMessagingTemplate;
+    private final FirewallProperties.PortSync properties;
+
+    public PortUsagePublisher(ObjectProvider<SimpMessagingTemplate> simpMessagingTemplate,
+                              FirewallProperties firewallProperties) {
+        this.simpMessagingTemplate = simpMessagingTemplate;
+        this.properties = firewallProperties.getPortSync();
+    }
+
+    /**
+     * 推送节点端口使用变化，推送失败只记录日志，不影响端口信息同步
+     *
+     * @param delta 端口使用变化
+     */
+    public void publish(PortUsageDelta delta) {
+        if (!Boolean.TRUE.equals(properties.getPushEnabled())) {
+            return;
+        }
+        SimpMessagingTemplate template = simpMessagingTemplate.getIfAvailable();
+        if (template == null) {
+            return;
+        }
+        try {
+            template.convertAndSend(topicOf(delta.getNodeId()), delta);
+        } catch (Exception e) {
+            log.warn("推送节点 {} 端口使用变化失败", delta.getNodeId(), e);
+        }
+    }
+
+    /**
+     * @param nodeId 节点id
+     * @return 节点端口使用变化的订阅地址
+     */
+    public static String topicOf(String nodeId) {
+        return String.format(TOPIC_TEMPLATE, nodeId);
+    }
+}
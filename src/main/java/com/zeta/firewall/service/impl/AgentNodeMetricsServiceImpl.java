@@ -0,0 +1,161 @@
+package com.zeta.firewall.service.impl;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.dao.AgentNodeMetricsMapper;
+import com.zeta.firewall.dao.AgentNodeMetricsRollupMapper;
+import com.zeta.firewall.model.dto.AgentMetricsPoint;
+import com.zeta.firewall.model.entity.AgentNodeMetrics;
+import com.zeta.firewall.model.entity.AgentNodeMetricsRollup;
+import com.zeta.firewall.model.enums.MetricsResolution;
+import com.zeta.firewall.service.AgentNodeMetricsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * agent节点资源使用率时序服务实现类
+ */
+@Slf4j
+@Service
+public class AgentNodeMetricsServiceImpl extends ServiceImpl<AgentNodeMetricsMapper, AgentNodeMetrics> implements AgentNodeMetricsService {
+
+    // 每次清理删除的最大行数，避免长时间持有锁
+    private static final int PURGE_BATCH_SIZE = 5000;
+
+    private final AgentNodeMetricsRollupMapper rollupMapper;
+    private final FirewallProperties.Metrics properties;
+
+    public AgentNodeMetricsServiceImpl(AgentNodeMetricsRollupMapper rollupMapper, FirewallProperties firewallProperties) {
+        this.rollupMapper = rollupMapper;
+        this.properties = firewallProperties.getMetrics();
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void append(List<AgentNodeMetrics> samples) {
+        if (samples == null || samples.isEmpty()) {
+            return;
+        }
+        this.saveBatch(samples);
+    }
+
+    @Override
+    public void rollup(LocalDateTime now) {
+        // 只汇总已结束的分钟，回溯若干分钟以覆盖迟到的采样
+        LocalDateTime minuteTo = now.truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime minuteFrom = minuteTo.minusMinutes(Math.max(1, properties.getRollupLookbackMinutes()));
+        int minutes = rollupMapper.rollupMinutes(minuteFrom, minuteTo);
+
+        // 小时数据从所在小时的开始重新汇总，当前小时的数据在后续汇总中不断被覆盖
+        LocalDateTime hourFrom = minuteFrom.truncatedTo(ChronoUnit.HOURS);
+        int hours = rollupMapper.rollupHours(hourFrom, minuteTo);
+        log.debug("Metrics rollup finished, minute rows: {}, hour rows: {}", minutes, hours);
+    }
+
+    @Override
+    public void purge(LocalDateTime now) {
+        LocalDateTime rawCutoff = now.minusHours(properties.getRawRetentionHours());
+        int raw = purgeBatched(() -> this.getBaseMapper().delete(Wrappers.<AgentNodeMetrics>lambdaQuery()
+                .lt(AgentNodeMetrics::getSampleTime, rawCutoff)
+                .last("limit " + PURGE_BATCH_SIZE)));
+
+        int minute = purgeRollup(MetricsResolution.MINUTE, now.minusDays(properties.getMinuteRetentionDays()));
+        int hour = purgeRollup(MetricsResolution.HOUR, now.minusDays(properties.getHourRetentionDays()));
+        if (raw + minute + hour > 0) {
+            log.info("Purged expired metrics, raw: {}, minute: {}, hour: {}", raw, minute, hour);
+        }
+    }
+
+    @Override
+    public List<AgentMetricsPoint> query(String agentId, LocalDateTime from, LocalDateTime to, MetricsResolution resolution) {
+        MetricsResolution actual = resolution != null ? resolution : resolve(from, to, LocalDateTime.now());
+        if (actual == MetricsResolution.RAW) {
+            return this.lambdaQuery()
+                    .eq(AgentNodeMetrics::getAgentId, agentId)
+                    .ge(AgentNodeMetrics::getSampleTime, from)
+                    .lt(AgentNodeMetrics::getSampleTime, to)
+                    .orderByAsc(AgentNodeMetrics::getSampleTime)
+                    .list()
+                    .stream()
+                    .map(AgentNodeMetricsServiceImpl::fromSample)
+                    .collect(Collectors.toList());
+        }
+        return rollupMapper.selectList(Wrappers.<AgentNodeMetricsRollup>lambdaQuery()
+                        .eq(AgentNodeMetricsRollup::getAgentId, agentId)
+                        .eq(AgentNodeMetricsRollup::getResolution, actual)
+                        .ge(AgentNodeMetricsRollup::getBucketTime, from)
+                        .lt(AgentNodeMetricsRollup::getBucketTime, to)
+                        .orderByAsc(AgentNodeMetricsRollup::getBucketTime))
+                .stream()
+                .map(AgentNodeMetricsServiceImpl::fromRollup)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public MetricsResolution resolve(LocalDateTime from, LocalDateTime to, LocalDateTime now) {
+        long spanMillis = Math.max(0, Duration.between(from, to).toMillis());
+        long maxPoints = Math.max(1, properties.getMaxPoints());
+
+        long sampleMillis = Math.max(1, properties.getSampleIntervalMillis());
+        if (!from.isBefore(now.minusHours(properties.getRawRetentionHours())) && spanMillis / sampleMillis <= maxPoints) {
+            return MetricsResolution.RAW;
+        }
+        if (!from.isBefore(now.minusDays(properties.getMinuteRetentionDays()))
+                && spanMillis / Duration.ofMinutes(1).toMillis() <= maxPoints) {
+            return MetricsResolution.MINUTE;
+        }
+        return MetricsResolution.HOUR;
+    }
+
+    private int purgeRollup(MetricsResolution resolution, LocalDateTime cutoff) {
+        return purgeBatched(() -> rollupMapper.delete(Wrappers.<AgentNodeMetricsRollup>lambdaQuery()
+                .eq(AgentNodeMetricsRollup::getResolution, resolution)
+                .lt(AgentNodeMetricsRollup::getBucketTime, cutoff)
+                .last("limit " + PURGE_BATCH_SIZE)));
+    }
+
+    private static int purgeBatched(IntSupplier deleteBatch) {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = deleteBatch.getAsInt();
+            total += deleted;
+        } while (deleted >= PURGE_BATCH_SIZE);
+        return total;
+    }
+
+    private static AgentMetricsPoint fromSample(AgentNodeMetrics sample) {
+        return AgentMetricsPoint.builder()
+                .time(sample.getSampleTime())
+                .samples(1)
+                .cpuUsage(sample.getCpuUsage())
+                .cpuMax(sample.getCpuUsage())
+                .memoryUsage(sample.getMemoryUsage())
+                .memoryMax(sample.getMemoryUsage())
+                .diskUsage(sample.getDiskUsage())
+                .diskMax(sample.getDiskUsage())
+                .build();
+    }
+
+    private static AgentMetricsPoint fromRollup(AgentNodeMetricsRollup rollup) {
+        return AgentMetricsPoint.builder()
+                .time(rollup.getBucketTime())
+                .samples(rollup.getSamples())
+                .cpuUsage(rollup.getCpuAvg())
+                .cpuMax(rollup.getCpuMax())
+                .memoryUsage(rollup.getMemoryAvg())
+                .memoryMax(rollup.getMemoryMax())
+                .diskUsage(rollup.getDiskAvg())
+                .diskMax(rollup.getDiskMax())
+                .build();
+    }
+}
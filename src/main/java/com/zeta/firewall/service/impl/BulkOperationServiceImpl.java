@@ -0,0 +1,211 @@
+package com.zeta.firewall.service.impl;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.model.dto.BulkOperationRequest;
+import com.zeta.firewall.model.dto.BulkOperationResult;
+import com.zeta.firewall.model.dto.PortRuleDTO;
+import com.zeta.firewall.model.dto.RedisCommandMessage;
+import com.zeta.firewall.model.entity.PortRule;
+import com.zeta.firewall.model.enums.BulkOperationType;
+import com.zeta.firewall.model.enums.FirewallOperationType;
+import com.zeta.firewall.service.AgentCommandService;
+import com.zeta.firewall.service.BulkOperationService;
+import com.zeta.firewall.service.FirewallStatusInfoService;
+import com.zeta.firewall.service.PortRuleService;
+import com.zeta.firewall.util.IpUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.zetaframework.core.exception.ArgumentException;
+import org.zetaframework.core.exception.BusinessException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Collectors;
+
+/**
+ * 批量操作
+ *
+ * 每个节点的操作作为一个任务提交到 bulkOperationExecutor，线程池大小即并发上限；
+ * 单个节点的操作仍然复用 PortRuleService、FirewallStatusInfoService 的单节点逻辑（下发命令、等待响应、持久化）；
+ * 线程池队列有界，剩余容量放不下本次所有节点时整个批量操作直接失败，避免请求线程在队列后面长时间等待
+ */
+@Slf4j
+@Service
+public class BulkOperationServiceImpl implements BulkOperationService {
+
+    private final PortRuleService portRuleService;
+    private final FirewallStatusInfoService firewallStatusInfoService;
+    private final ThreadPoolTaskExecutor bulkOperationExecutor;
+    private final FirewallProperties firewallProperties;
+
+    public BulkOperationServiceImpl(PortRuleService portRuleService,
+                                    FirewallStatusInfoService firewallStatusInfoService,
+                                    @Qualifier("bulkOperationExecutor") ThreadPoolTaskExecutor bulkOperationExecutor,
+                                    FirewallProperties firewallProperties) {
+        this.portRuleService = portRuleService;
+        this.firewallStatusInfoService = firewallStatusInfoService;
+        this.bulkOperationExecutor = bulkOperationExecutor;
+        this.firewallProperties = firewallProperties;
+    }
+
+    /**
+     * 对一组节点执行同一个操作
+     *
+     * @param request 批量操作请求
+     * @return 汇总结果
+     */
+    @Override
+    public BulkOperationResult execute(BulkOperationRequest request) {
+        // 去重并保持请求中的顺序
+        List<String> nodeIds = new ArrayList<>(new LinkedHashSet<>(request.getNodeIds()));
+        validate(request, nodeIds);
+
+        ensureCapacity(nodeIds.size());
+
+        long start = System.currentTimeMillis();
+        log.info("Executing bulk operation: {} on {} nodes", request.getOperation(), nodeIds.size());
+
+        List<CompletableFuture<BulkOperationResult.NodeResult>> futures = nodeIds.stream()
+                .map(nodeId -> submit(request, nodeId))
+                .collect(Collectors.toList());
+
+        // 单个节点的操作都带有命令超时，这里不会无限等待
+        List<BulkOperationResult.NodeResult> results = futures.stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+
+        int successCount = (int) results.stream().filter(BulkOperationResult.NodeResult::getSuccess).count();
+        int acceptedCount = (int) results.stream().filter(BulkOperationResult.NodeResult::getAccepted).count();
+        int failCount = results.size() - successCount - acceptedCount;
+        long elapsed = System.currentTimeMillis() - start;
+        log.info("Bulk operation: {} finished in {} ms, success: {}, accepted: {}, fail: {}",
+                request.getOperation(), elapsed, successCount, acceptedCount, failCount);
+
+        return BulkOperationResult.builder()
+                .operation(request.getOperation())
+                .total(results.size())
+                .successCount(successCount)
+                .acceptedCount(acceptedCount)
+                .failCount(failCount)
+                .elapsedMillis(elapsed)
+                .results(results)
+                .build();
+    }
+
+    /**
+     * 检查线程池剩余容量（空闲线程 + 队列剩余长度）能否容纳本次所有节点，不能则直接拒绝整个批量操作
+     */
+    private void ensureCapacity(int nodeCount) {
+        ThreadPoolExecutor executor = bulkOperationExecutor.getThreadPoolExecutor();
+        int idleThreads = Math.max(0, executor.getMaximumPoolSize() - executor.getActiveCount());
+        int available = idleThreads + executor.getQueue().remainingCapacity();
+        if (nodeCount > available) {
+            log.warn("Bulk operation executor saturated, required: {}, available: {}", nodeCount, available);
+            throw new BusinessException("批量操作繁忙，当前可接受{}个节点，请稍后重试", available);
+        }
+    }
+
+    /**
+     * 提交单个节点的操作
+     * 容量检查与提交之间可能有其他批量操作抢占队列，被拒绝的节点直接记为失败，不等待
+     */
+    private CompletableFuture<BulkOperationResult.NodeResult> submit(BulkOperationRequest request, String nodeId) {
+        try {
+            // 批量操作走低优先级通道，不阻塞页面上的交互操作
+            return CompletableFuture.supplyAsync(() -> AgentCommandService.withPriority(
+                    RedisCommandMessage.Priority.LOW, () -> executeOnNode(request, nodeId)), bulkOperationExecutor);
+        } catch (TaskRejectedException e) {
+            log.warn("Bulk operation: {} rejected on node: {}, executor saturated", request.getOperation(), nodeId);
+            return CompletableFuture.completedFuture(BulkOperationResult.NodeResult.builder()
+                    .nodeId(nodeId)
+                    .success(false)
+                    .accepted(false)
+                    .message("批量操作繁忙，未执行")
+                    .elapsedMillis(0L)
+                    .build());
+        }
+    }
+
+    /**
+     * 在单个节点上执行操作，异常视为失败，不影响其他节点
+     * 添加端口规则只写入命令发件箱，由发件箱异步下发，返回命令id只代表已提交，记为accepted而不是success
+     */
+    private BulkOperationResult.NodeResult executeOnNode(BulkOperationRequest request, String nodeId) {
+        long start = System.currentTimeMillis();
+        boolean success = false;
+        boolean accepted = false;
+        Long commandId = null;
+        String message = null;
+        try {
+            switch (request.getOperation()) {
+                case ADD_PORT_RULE:
+                    PortRule portRule = request.getPortRule().toEntity();
+                    portRule.setId(null);
+                    portRule.setAgentId(nodeId);
+                    commandId = portRuleService.addPortRule(portRule);
+                    accepted = commandId != null;
+                    if (accepted) {
+                        message = "已提交，等待节点执行";
+                    }
+                    break;
+                case FIREWALL:
+                    success = Boolean.TRUE.equals(firewallStatusInfoService.operateFirewall(nodeId, request.getFirewallOperation()));
+                    break;
+                case PING:
+                    success = Boolean.TRUE.equals(firewallStatusInfoService.operatePing(nodeId, request.getPingStatus()));
+                    break;
+                default:
+                    message = "不支持的操作类型: " + request.getOperation();
+            }
+            if (!success && message == null) {
+                message = "操作失败";
+            }
+        } catch (Exception e) {
+            log.error("Bulk operation: {} failed on node: {}", request.getOperation(), nodeId, e);
+            message = e.getMessage();
+        }
+        return BulkOperationResult.NodeResult.builder()
+                .nodeId(nodeId)
+                .success(success)
+                .accepted(accepted)
+                .commandId(commandId)
+                .message(message)
+                .elapsedMillis(System.currentTimeMillis() - start)
+                .build();
+    }
+
+    /**
+     * 校验操作参数，参数错误时整个批量操作不执行
+     */
+    private void validate(BulkOperationRequest request, List<String> nodeIds) {
+        Integer maxNodes = firewallProperties.getBulk().getMaxNodes();
+        if (nodeIds.size() > maxNodes) {
+            throw new ArgumentException("单次批量操作最多允许{}个节点，当前{}个", maxNodes, nodeIds.size());
+        }
+
+        BulkOperationType operation = request.getOperation();
+        if (operation == BulkOperationType.ADD_PORT_RULE) {
+            PortRuleDTO portRule = request.getPortRule();
+            if (portRule == null) {
+                throw new ArgumentException("添加端口规则时端口规则不能为空");
+            }
+            if (!IpUtils.isMappingIpType(portRule.getSourceAddress(), portRule.getFamily())) {
+                throw new ArgumentException("源ip: {}, 和 指定的ip协议族: {} 类型不匹配", portRule.getSourceAddress(), portRule.getFamily());
+            }
+        } else if (operation == BulkOperationType.FIREWALL) {
+            if (FirewallOperationType.fromValue(request.getFirewallOperation()) == null) {
+                throw new ArgumentException("无效的防火墙操作: {}", request.getFirewallOperation());
+            }
+        } else if (operation == BulkOperationType.PING) {
+            if (!"Enable".equals(request.getPingStatus()) && !"Disable".equals(request.getPingStatus())) {
+                throw new ArgumentException("无效的ping状态: {}", request.getPingStatus());
+            }
+        }
+    }
+}
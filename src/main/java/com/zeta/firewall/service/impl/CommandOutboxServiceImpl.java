@@ -0,0 +1,155 @@
+package com.zeta.firewall.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.zeta.firewall.dao.CommandOutboxMapper;
+import com.zeta.firewall.model.dto.RedisCommandMessage;
+import com.zeta.firewall.model.entity.CommandOutbox;
+import com.zeta.firewall.model.enums.OutboxStatus;
+import com.zeta.firewall.service.AgentCommandService;
+import com.zeta.firewall.service.CommandOutboxService;
+import com.zeta.firewall.util.JsonMessageConverter;
+import com.zeta.firewall.util.UUIDUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * agent命令发件箱服务实现类
+ */
+@Slf4j
+@Service
+public class CommandOutboxServiceImpl extends ServiceImpl<CommandOutboxMapper, CommandOutbox> implements CommandOutboxService {
+
+    // last_error 字段长度
+    private static final int MAX_ERROR_LENGTH = 512;
+    // 每次清理删除的最大行数，避免长时间持有锁
+    private static final int PURGE_BATCH_SIZE = 5000;
+    // 同一节点同一stream后缀没有id更小的未完成命令
+    private static final String NO_EARLIER_UNFINISHED = "NOT EXISTS (SELECT 1 FROM firewall_command_outbox prev"
+            + " WHERE prev.agent_id = firewall_command_outbox.agent_id"
+            + " AND prev.stream_suffix = firewall_command_outbox.stream_suffix"
+            + " AND prev.id < firewall_command_outbox.id"
+            + " AND prev.status IN ('PENDING', 'SENDING'))";
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public CommandOutbox enqueue(String streamSuffix, RedisCommandMessage<?> message) {
+        // 下发线程没有业务线程的优先级上下文，这里先确定优先级再序列化
+        if (message.getPriority() == null) {
+            message.setPriority(AgentCommandService.currentPriority());
+        }
+        CommandOutbox outbox = CommandOutbox.builder()
+                .agentId(message.getAgentId())
+                .streamSuffix(streamSuffix)
+                .opType(String.valueOf(message.getDataOpType()))
+                .payload(JsonMessageConverter.toJsonString(message))
+                .status(OutboxStatus.PENDING)
+                .attempts(0)
+                .nextAttemptTime(LocalDateTime.now())
+                .build();
+        this.save(outbox);
+        log.debug("Enqueued {} command for node: {}, outboxId: {}", outbox.getOpType(), outbox.getAgentId(), outbox.getId());
+        return outbox;
+    }
+
+    @Override
+    public List<CommandOutbox> claim(int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = this.lambdaQuery()
+                .select(CommandOutbox::getId)
+                .eq(CommandOutbox::getStatus, OutboxStatus.PENDING)
+                .le(CommandOutbox::getNextAttemptTime, now)
+                // 同一节点同一stream后缀还有更早的未完成命令（下发中或等待重试）时不领取，保证下发顺序
+                .apply(NO_EARLIER_UNFINISHED)
+                .orderByAsc(CommandOutbox::getId)
+                .last("limit " + limit)
+                .list()
+                .stream()
+                .map(CommandOutbox::getId)
+                .collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // 只有仍为 PENDING 的记录会被领取，其他master节点已领取的记录不会重复下发
+        String token = UUIDUtil.generateSimpleUuid();
+        this.lambdaUpdate()
+                .set(CommandOutbox::getStatus, OutboxStatus.SENDING)
+                .set(CommandOutbox::getClaimToken, token)
+                .set(CommandOutbox::getSentTime, now)
+                .setSql("attempts = attempts + 1")
+                .in(CommandOutbox::getId, ids)
+                .eq(CommandOutbox::getStatus, OutboxStatus.PENDING)
+                .update();
+
+        return this.lambdaQuery()
+                .eq(CommandOutbox::getClaimToken, token)
+                .orderByAsc(CommandOutbox::getId)
+                .list();
+    }
+
+    @Override
+    public int markSucceeded(CommandOutbox outbox) {
+        return finish(outbox, OutboxStatus.SUCCEEDED, null);
+    }
+
+    @Override
+    public int markFailed(CommandOutbox outbox, String reason) {
+        return finish(outbox, OutboxStatus.FAILED, reason);
+    }
+
+    @Override
+    public void retryLater(CommandOutbox outbox, long delayMillis, String reason) {
+        this.lambdaUpdate()
+                .set(CommandOutbox::getStatus, OutboxStatus.PENDING)
+                .set(CommandOutbox::getClaimToken, null)
+                .set(CommandOutbox::getNextAttemptTime, LocalDateTime.now().plusNanos(delayMillis * 1_000_000L))
+                .set(CommandOutbox::getLastError, StrUtil.sub(reason, 0, MAX_ERROR_LENGTH))
+                .eq(CommandOutbox::getId, outbox.getId())
+                .eq(CommandOutbox::getClaimToken, outbox.getClaimToken())
+                .update();
+    }
+
+    @Override
+    public int recoverStale(long sendingTimeoutMillis) {
+        LocalDateTime now = LocalDateTime.now();
+        return this.getBaseMapper().update(null, Wrappers.<CommandOutbox>lambdaUpdate()
+                .set(CommandOutbox::getStatus, OutboxStatus.PENDING)
+                .set(CommandOutbox::getClaimToken, null)
+                .set(CommandOutbox::getNextAttemptTime, now)
+                .eq(CommandOutbox::getStatus, OutboxStatus.SENDING)
+                .lt(CommandOutbox::getSentTime, now.minusNanos(sendingTimeoutMillis * 1_000_000L)));
+    }
+
+    @Override
+    public int purgeFinished(LocalDateTime cutoff) {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = this.getBaseMapper().delete(Wrappers.<CommandOutbox>lambdaQuery()
+                    .in(CommandOutbox::getStatus, OutboxStatus.SUCCEEDED, OutboxStatus.FAILED)
+                    .lt(CommandOutbox::getSentTime, cutoff)
+                    .last("limit " + PURGE_BATCH_SIZE));
+            total += deleted;
+        } while (deleted >= PURGE_BATCH_SIZE);
+        return total;
+    }
+
+    /**
+     * 回写最终结果，只更新本次领取的记录，避免已被恢复并重新领取的命令被旧的结果覆盖
+     */
+    private int finish(CommandOutbox outbox, OutboxStatus status, String reason) {
+        return this.getBaseMapper().update(null, Wrappers.<CommandOutbox>lambdaUpdate()
+                .set(CommandOutbox::getStatus, status)
+                .set(CommandOutbox::getLastError, StrUtil.sub(reason, 0, MAX_ERROR_LENGTH))
+                .eq(CommandOutbox::getId, outbox.getId())
+                .eq(CommandOutbox::getClaimToken, outbox.getClaimToken()));
+    }
+}
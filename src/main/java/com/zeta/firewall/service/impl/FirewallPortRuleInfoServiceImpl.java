@@ -1,14 +1,15 @@
 package com.zeta.firewall.service.impl;
 
-import com.baomidou.mybatisplus.extension.conditions.query.LambdaQueryChainWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.zeta.firewall.dao.FirewallPortRuleInfoMapper;
 import com.zeta.firewall.model.entity.FirewallPortRuleInfo;
 import com.zeta.firewall.service.FirewallPortRuleInfoService;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.zetaframework.core.mybatisplus.mapper.UpsertMapper;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 @Service
@@ -29,24 +30,26 @@ public class FirewallPortRuleInfoServiceImpl extends ServiceImpl<FirewallPortRul
 
     @Transactional(rollbackFor = Exception.class)
     @Override
-    public Boolean addOrUpdateAll(ArrayList<FirewallPortRuleInfo> mappingsList) {
-        if (mappingsList == null || mappingsList.isEmpty()) {
+    public Boolean removeByInfoIds(Collection<Long> infoIds) {
+        if (infoIds == null || infoIds.isEmpty()) {
             return true;
         }
+        this.lambdaUpdate()
+                .in(FirewallPortRuleInfo::getInfoId, infoIds)
+                .remove();
+        return true;
+    }
 
-        //按照ruleId和infoId去查询
-        for (FirewallPortRuleInfo mapping : mappingsList) {
-            LambdaQueryChainWrapper<FirewallPortRuleInfo> eq = this.lambdaQuery()
-                    .eq(FirewallPortRuleInfo::getRuleId, mapping.getRuleId())
-                    .eq(FirewallPortRuleInfo::getInfoId, mapping.getInfoId());
-
-            FirewallPortRuleInfo one = eq.one();
-            if (one != null) {
-                mapping.setId(one.getId());
-            }
+    @Transactional(rollbackFor = Exception.class)
+    @Override
+    public Boolean addOrUpdateAll(ArrayList<FirewallPortRuleInfo> mappingsList) {
+        if (mappingsList == null || mappingsList.isEmpty()) {
+            return true;
         }
 
-        return this.saveOrUpdateBatch(mappingsList);
+        // 按唯一索引 (rule_id, info_id) 批量插入或更新，已存在的映射保持不变
+        baseMapper.insertOrUpdateBatch(mappingsList, UpsertMapper.DEFAULT_BATCH_SIZE);
+        return true;
     }
 
     @Override
@@ -9,16 +9,14 @@ import com.zeta.firewall.model.entity.FirewallStatusInfo;
 import com.zeta.firewall.model.enums.FireWallStatus;
 import com.zeta.firewall.model.enums.FirewallOperationType;
 import com.zeta.firewall.model.enums.PingStatus;
+import com.zeta.firewall.service.AgentCommandService;
 import com.zeta.firewall.service.FirewallStatusInfoService;
-import com.zeta.firewall.service.StreamResponseService;
-import com.zeta.firewall.subscirbe.StreamProducer;
 import com.zeta.firewall.util.JsonMessageConverter;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.connection.stream.RecordId;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
-import org.zetaframework.core.utils.JSONUtil;
+import org.zetaframework.core.mybatisplus.mapper.UpsertMapper;
 
 import java.util.Collections;
 import java.util.HashMap;
@@ -29,12 +27,12 @@ import java.util.Map;
 @Service
 public  class FirewallStatusInfoServiceImpl extends ServiceImpl<FirewallStatusInfoMapper, FirewallStatusInfo> implements FirewallStatusInfoService {
 
-    private final StreamProducer streamProducer;
-    private final StreamResponseService streamResponseService;
+    private static final String STREAM_KEY_SUFFIX = "firewallStatusInfo";
 
-    public FirewallStatusInfoServiceImpl(StreamProducer streamProducer, StreamResponseService streamResponseService) {
-        this.streamProducer = streamProducer;
-        this.streamResponseService = streamResponseService;
+    private final AgentCommandService agentCommandService;
+
+    public FirewallStatusInfoServiceImpl(AgentCommandService agentCommandService) {
+        this.agentCommandService = agentCommandService;
     }
 
     @Transactional(rollbackFor = Exception.class)
@@ -74,28 +72,13 @@ public  class FirewallStatusInfoServiceImpl extends ServiceImpl<FirewallStatusIn
             return true;
         }
 
-        for (FirewallStatusInfo entity : firewallStatusInfoList) {
-            // 根据唯一索引查询
-            QueryWrapper<FirewallStatusInfo> queryWrapper = new QueryWrapper<>();
-            queryWrapper.eq("agent_id", entity.getAgentId())
-                    .eq("firewall_type", entity.getFirewallType().getFirewallType());
-            FirewallStatusInfo existing = getOne(queryWrapper);
-            if (existing != null) {
-                // 如果存在，设置主键 ID，触发更新
-                entity.setId(existing.getId());
-            }else{
-                entity.setId(null);
-            }
-        }
-        return  this.saveOrUpdateBatch(firewallStatusInfoList);
+        // 按唯一索引 (agent_id, firewall_type) 批量插入或更新，不再逐条查询主键
+        baseMapper.insertOrUpdateBatch(firewallStatusInfoList, UpsertMapper.DEFAULT_BATCH_SIZE);
+        return true;
 
     }
 
 
-    private boolean isResponseSuccess(Map<Object, Object> value) {
-        return value.containsKey("status") && value.get("status").equals("200");
-    }
-
     @Transactional(rollbackFor = Exception.class)
     @Override
     public Boolean operateFirewall(String nodeId, String operation) {
@@ -201,16 +184,11 @@ public  class FirewallStatusInfoServiceImpl extends ServiceImpl<FirewallStatusIn
      * @return 操作结果 true:成功 false:失败
      */
     private boolean sendRedisOperationCommandAndGetResponse(String nodeId, RedisCommandMessage<FirewallStatusInfo> commandMessage) {
-        String pubStreamkey = "pub:" + nodeId + ":firewallStatusInfo";
-        String subStreamkey = "sub:" + nodeId + ":firewallStatusInfo";
-
         try {
-            Map<String, String> messageMap = JsonMessageConverter.beanToMap(commandMessage);
-            RecordId recordId = streamProducer.publishMessage(pubStreamkey, messageMap);
-            Map<Object, Object> value = streamResponseService.getResponseEntry(nodeId, subStreamkey, pubStreamkey, recordId);
+            Map<Object, Object> value = agentCommandService.execute(nodeId, STREAM_KEY_SUFFIX, commandMessage);
 
             // 检查响应状态
-            return isResponseSuccess(value);
+            return AgentCommandService.isResponseSuccess(value);
         } catch (Exception e) {
             log.error("Failed to execute firewall operation for node: {}", nodeId, e);
             return false;
@@ -224,27 +202,17 @@ public  class FirewallStatusInfoServiceImpl extends ServiceImpl<FirewallStatusIn
      * @return  List<FirewallStatusInfo>
      */
     private List<FirewallStatusInfo> sendRedisQueryCommandAndGetResponse(String nodeId, RedisCommandMessage<FirewallStatusInfo> build) {
-        String pubStreamkey = "pub:" + nodeId + ":firewallStatusInfo";
-        String subStreamkey = "sub:" + nodeId + ":firewallStatusInfo";
-
         try {
-
-            Map<String, String> messageMap = JsonMessageConverter.beanToMap(build);
-            RecordId recordId = streamProducer.publishMessage(pubStreamkey, messageMap);
-            Map<Object, Object> value = streamResponseService.getResponseEntry(nodeId, subStreamkey, pubStreamkey,recordId);
+            Map<Object, Object> value = agentCommandService.execute(nodeId, STREAM_KEY_SUFFIX, build);
 
             // 检查响应状态
-            if (!isResponseSuccess(value)) {
+            if (!AgentCommandService.isResponseSuccess(value)) {
                 return Collections.emptyList();
             }
 
             // 解析响应数据
-            String dataStr = String.valueOf(value.get("data"));
-            if (dataStr == null || dataStr.equals("null")) {
-                return Collections.emptyList();
-            }
-
-            return JSONUtil.parseObject(dataStr, new TypeReference<List<FirewallStatusInfo>>() {});
+            List<FirewallStatusInfo> data = JsonMessageConverter.readData(value.get("data"), new TypeReference<List<FirewallStatusInfo>>() {});
+            return data == null ? Collections.<FirewallStatusInfo>emptyList() : data;
 
         } catch (Exception e) {
             log.error("Failed to get firewall status for node: {}", nodeId, e);
@@ -5,42 +5,58 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zeta.firewall.config.properties.FirewallProperties;
 import com.zeta.firewall.dao.PortInfoMapper;
 import com.zeta.firewall.model.dto.RedisCommandMessage;
 import com.zeta.firewall.model.entity.PortInfo;
 import com.zeta.firewall.model.entity.PortRule;
+import com.zeta.firewall.service.AgentCommandService;
+import com.zeta.firewall.service.AgentVersionRegistry;
 import com.zeta.firewall.service.PortInfoService;
-import com.zeta.firewall.service.StreamResponseService;
-import com.zeta.firewall.subscirbe.StreamProducer;
 import com.zeta.firewall.util.JsonMessageConverter;
+import com.zeta.firewall.util.PortRangeSet;
 import com.zeta.firewall.util.PortRuleUtils;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.connection.stream.RecordId;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.zetaframework.core.utils.JSONUtil;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.zetaframework.core.mybatisplus.mapper.UpsertMapper;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 
+/**
+ * 端口使用信息服务实现类
+ *
+ * 向agent节点查询端口使用情况的方法不开启事务，查询结果返回后再用 TransactionTemplate 开启短事务写入，
+ * 等待agent节点响应期间不占用数据库连接
+ */
 @Slf4j
 @Service
 public class PortInfoServiceImpl extends ServiceImpl<PortInfoMapper, PortInfo> implements PortInfoService {
 
-    private final StreamProducer streamProducer;
-    private final StreamResponseService streamResponseService;
+    private final AgentCommandService agentCommandService;
+    private final AgentVersionRegistry agentVersionRegistry;
+    private final FirewallProperties firewallProperties;
+    private final TransactionTemplate transactionTemplate;
     private final ObjectMapper mapper = new ObjectMapper();
 
 
-    public PortInfoServiceImpl(StreamProducer streamProducer, StreamResponseService streamResponseService) {
-        this.streamProducer = streamProducer;
-        this.streamResponseService = streamResponseService;
+    public PortInfoServiceImpl(AgentCommandService agentCommandService,
+                               AgentVersionRegistry agentVersionRegistry,
+                               FirewallProperties firewallProperties,
+                               TransactionTemplate transactionTemplate) {
+        this.agentCommandService = agentCommandService;
+        this.agentVersionRegistry = agentVersionRegistry;
+        this.firewallProperties = firewallProperties;
+        this.transactionTemplate = transactionTemplate;
     }
 
 
+    /**
+     * 不开启事务：数据库中端口信息不全时需要向agent节点查询，只有写入时开启短事务
+     */
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public Map<String, List<PortInfo>> getPortInfosByPortRules(List<PortRule> portRules, String nodeId) {
         // redis 命令
         // 获取响应
@@ -51,24 +67,22 @@ public class PortInfoServiceImpl extends ServiceImpl<PortInfoMapper, PortInfo> i
 
         // 从数据库查询
 
-        // portRules 对象展开 和 去重
-        List<PortInfo> portInfos = PortRuleUtils.expandAndDeduplicatePortRules(portRules);
+        // portRules 按 (agentId, 协议) 合并为端口区间，不再逐个端口展开
+        Map<String, PortRangeSet> rangesByKey = PortRuleUtils.portRangesByAgentAndProtocol(portRules);
+        long expectedCount = rangesByKey.values().stream().mapToLong(PortRangeSet::size).sum();
 
         /**
          * SELECT *
          * FROM firewall_port_info
-         * WHERE (agent_id, protocol, port_number) IN
-         *     (('node1', 'tcp', 80),
-         *      ('node2', 'udp', 443),
-         *      ('node3', 'tcp', 8080));
+         * WHERE (agent_id = 'node1' AND protocol = 'tcp' AND (port_number BETWEEN 22 AND 22 OR port_number BETWEEN 1000 AND 2000))
+         *    OR (agent_id = 'node1' AND protocol = 'udp' AND (port_number BETWEEN 53 AND 53));
          */
-        List<PortInfo> dbPortInfos = this.list(new QueryWrapper<PortInfo>()
-                .in("agent_id", portRules.stream().map(PortRule::getAgentId).collect(Collectors.toList()))
-                .in("protocol", portRules.stream().map(PortRule::getProtocol).collect(Collectors.toList()))
-                .in("port_number", portRules.stream().map(PortRule::getPort).collect(Collectors.toList())));
+        List<PortInfo> dbPortInfos = rangesByKey.isEmpty()
+                ? Collections.emptyList()
+                : this.list(rangeQueryWrapper(rangesByKey));
 
-        // dbPortInfos 和 portInfos 数量不一致，则需要发送redis命令来获取最新的端口
-        if (dbPortInfos.size() == portInfos.size()) {
+        // dbPortInfos 和 需要查询的端口数量不一致，则需要发送redis命令来获取最新的端口
+        if (dbPortInfos.size() == expectedCount) {
             // 数据库中已经有需要查询的全部端口使用情况
             // 转化为Map<String, List<PortInfo>> 返回
             return PortRuleUtils.connectPortInfosWithPortRules(portRules, dbPortInfos);
@@ -79,15 +93,8 @@ public class PortInfoServiceImpl extends ServiceImpl<PortInfoMapper, PortInfo> i
         // 构建消息体
         HashMap<String, String> map = new HashMap<>();
         map.put("portType", "RANGE_PORT_COMMA");
-        // todo 端口信息封装
-        // 去重端口号
-        List<String> needPortUsageInfos = portInfos.stream()
-                .map(PortInfo::getPortNumber)
-                .map(String::valueOf)
-                .distinct()
-                .collect(Collectors.toList());
         try {
-            map.put("port", mapper.writeValueAsString(needPortUsageInfos));
+            map.put("port", mapper.writeValueAsString(portParam(nodeId, PortRuleUtils.portRangeSetOf(portRules))));
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
@@ -107,7 +114,7 @@ public class PortInfoServiceImpl extends ServiceImpl<PortInfoMapper, PortInfo> i
         // 查询端口使用情况命令如何判断是否成功？
         List<PortInfo> portInfosFromAgent  = sendRedisQueryCommandAndGetResponse(nodeId,build);
 
-        Boolean execResult = this.insertOrUpdateBatchPortInfos(portInfosFromAgent);
+        Boolean execResult = saveInTransaction(portInfosFromAgent);
 
         // 如果保存到数据库成功，且 agent节点响应的端口使用情况列表不为空，则返回
         if (execResult && portInfosFromAgent != null && !portInfosFromAgent.isEmpty()) {
@@ -119,6 +126,46 @@ public class PortInfoServiceImpl extends ServiceImpl<PortInfoMapper, PortInfo> i
         return Collections.emptyMap();
     }
 
+    /**
+     * 按端口区间构建查询条件，同一 (agentId, 协议) 的多个区间合并到一个 OR 组中
+     * @param rangesByKey key: agentId|协议，value: 端口区间集合
+     * @return QueryWrapper
+     */
+    private QueryWrapper<PortInfo> rangeQueryWrapper(Map<String, PortRangeSet> rangesByKey) {
+        QueryWrapper<PortInfo> queryWrapper = new QueryWrapper<>();
+        rangesByKey.forEach((key, ranges) -> {
+            int separator = key.lastIndexOf('|');
+            String agentId = key.substring(0, separator);
+            String protocol = key.substring(separator + 1);
+            queryWrapper.or(wrapper -> wrapper
+                    .eq("agent_id", agentId)
+                    .eq("protocol", protocol)
+                    .and(portWrapper -> {
+                        for (int i = 0; i < ranges.rangeCount(); i++) {
+                            if (i > 0) {
+                                portWrapper.or();
+                            }
+                            portWrapper.between("port_number", ranges.start(i), ranges.end(i));
+                        }
+                    }));
+        });
+        return queryWrapper;
+    }
+
+    /**
+     * 端口查询命令的 port 参数
+     * 支持区间的agent节点按区间下发（如 ["22","1000-2000"]），旧版本节点展开为单个端口
+     * @param nodeId 节点id
+     * @param ports 端口区间集合
+     * @return port 参数
+     */
+    private List<String> portParam(String nodeId, PortRangeSet ports) {
+        if (agentVersionRegistry.isAtLeast(nodeId, firewallProperties.getCodec().getPortRangeMinClientVersion())) {
+            return ports.toTokens();
+        }
+        return ports.toPortList();
+    }
+
     /**
      * 发送 redis 查询节点端口使用情况命令并获取响应
      * @param nodeId 节点id
@@ -126,27 +173,17 @@ public class PortInfoServiceImpl extends ServiceImpl<PortInfoMapper, PortInfo> i
      * @return  List<PortInfo>
      */
     private List<PortInfo> sendRedisQueryCommandAndGetResponse(String nodeId, RedisCommandMessage<PortRule> build) {
-        String pubStreamkey = "pub:" + nodeId + ":portInfo";
-        String subStreamkey = "sub:" + nodeId + ":portInfo";
-
         try {
-
-            Map<String, String> messageMap = JsonMessageConverter.beanToMap(build);
-            RecordId recordId = streamProducer.publishMessage(pubStreamkey, messageMap);
-            Map<Object, Object> value = streamResponseService.getResponseEntry(nodeId, subStreamkey, pubStreamkey,recordId);
+            Map<Object, Object> value = agentCommandService.execute(nodeId, "portInfo", build);
 
             // 检查响应状态
-            if (!isResponseSuccess(value)) {
+            if (!AgentCommandService.isResponseSuccess(value)) {
                 return Collections.emptyList();
             }
 
             // 解析响应数据
-            String dataStr = String.valueOf(value.get("data"));
-            if (dataStr == null || dataStr.equals("null")) {
-                return Collections.emptyList();
-            }
-
-            return JSONUtil.parseObject(dataStr, new TypeReference<List<PortInfo>>() {});
+            List<PortInfo> data = JsonMessageConverter.readData(value.get("data"), new TypeReference<List<PortInfo>>() {});
+            return data == null ? Collections.<PortInfo>emptyList() : data;
 
         } catch (Exception e) {
             log.error("Failed to get port infos for node: {}", nodeId, e);
@@ -174,27 +211,39 @@ public class PortInfoServiceImpl extends ServiceImpl<PortInfoMapper, PortInfo> i
             return true;
         }
 
-        // saveOrUpdateBatch 方法通过主键来判断是否为更新操作。如果表中定义了唯一键；将要执行saveOrUpdateBatch
-        // 的数据中有唯一键重复，会报唯一索引冲突
-        // 故在执行 saveOrUpdateBatch前通过唯一键查询来设置每条记录的主键，从而正确触发（插入或更新）
-        for (PortInfo entity : portInfos) {
-            // 根据唯一索引查询
-            QueryWrapper<PortInfo> queryWrapper = new QueryWrapper<>();
-            queryWrapper.eq("agent_id", entity.getAgentId())
-                    .eq("protocol", entity.getProtocol())
-                    .eq("port_number", entity.getPortNumber());
-            PortInfo existing = getOne(queryWrapper);
-            if (existing != null) {
-                // 如果存在，设置主键 ID，触发更新
-                entity.setId(existing.getId());
-            }else{
-                entity.setId(null);
-            }
+        // 按唯一索引 (agent_id, protocol, port_number) 批量插入或更新，不再逐条查询主键
+        baseMapper.insertOrUpdateBatch(portInfos, UpsertMapper.DEFAULT_BATCH_SIZE);
+        // 命中唯一索引而更新的记录需要回查id，端口规则映射依赖端口信息的id
+        fillIdsByUniqueKey(portInfos);
+        return true;
+    }
+
+    /**
+     * 按唯一索引回查端口信息的id，每个节点一次查询
+     * @param portInfos 已写入数据库的端口信息
+     */
+    private void fillIdsByUniqueKey(List<PortInfo> portInfos) {
+        Map<String, List<PortInfo>> portInfosByAgent = new HashMap<>();
+        for (PortInfo portInfo : portInfos) {
+            portInfosByAgent.computeIfAbsent(portInfo.getAgentId(), k -> new ArrayList<>()).add(portInfo);
         }
-        return  this.saveOrUpdateBatch(portInfos);
+        portInfosByAgent.forEach((agentId, agentPortInfos) -> {
+            Set<Integer> portNumbers = new HashSet<>();
+            agentPortInfos.forEach(portInfo -> portNumbers.add(portInfo.getPortNumber()));
+            Map<String, Long> idsByKey = new HashMap<>();
+            this.lambdaQuery()
+                    .select(PortInfo::getId, PortInfo::getProtocol, PortInfo::getPortNumber)
+                    .eq(PortInfo::getAgentId, agentId)
+                    .in(PortInfo::getPortNumber, portNumbers)
+                    .list()
+                    .forEach(db -> idsByKey.put(db.getProtocol() + ":" + db.getPortNumber(), db.getId()));
+            agentPortInfos.forEach(portInfo -> portInfo.setId(idsByKey.get(portInfo.getProtocol() + ":" + portInfo.getPortNumber())));
+        });
     }
 
-    @Transactional(rollbackFor = Exception.class)
+    /**
+     * 不开启事务：先向agent节点查询，响应返回后再开启短事务写入
+     */
     @Override
     public List<PortInfo> updatePortInfoByPortRules(List<PortRule> portRules, String nodeId) {
 
@@ -204,11 +253,11 @@ public class PortInfoServiceImpl extends ServiceImpl<PortInfoMapper, PortInfo> i
         HashMap<String, String> map = new HashMap<>();
         map.put("portType", "RANGE_PORT_COMMA");
 
-        // 去重端口号
-        List<String> uniquePorts = PortRuleUtils.extractUniquePortsFromRules(portRules);
+        // 合并端口区间
+        PortRangeSet ports = PortRuleUtils.portRangeSetOf(portRules);
 
         try {
-            map.put("port", mapper.writeValueAsString(uniquePorts));
+            map.put("port", mapper.writeValueAsString(portParam(nodeId, ports)));
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
@@ -228,15 +277,19 @@ public class PortInfoServiceImpl extends ServiceImpl<PortInfoMapper, PortInfo> i
         // 查询端口使用情况命令如何判断是否成功？
         List<PortInfo> portInfosFromAgent  = sendRedisQueryCommandAndGetResponse(nodeId,build);
 
-        if (insertOrUpdateBatchPortInfos(portInfosFromAgent)) {
+        if (saveInTransaction(portInfosFromAgent)) {
             result = portInfosFromAgent;
         }
 
         return result;
     }
 
-    private boolean isResponseSuccess(Map<Object, Object> value) {
-        return value.containsKey("status") && value.get("status").equals("200");
+    /**
+     * 在短事务中批量保存agent节点返回的端口信息
+     * 自调用不经过代理，@Transactional 不生效，这里通过 TransactionTemplate 开启事务
+     */
+    private Boolean saveInTransaction(List<PortInfo> portInfos) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> insertOrUpdateBatchPortInfos(portInfos)));
     }
 
     /**
@@ -281,4 +334,29 @@ public class PortInfoServiceImpl extends ServiceImpl<PortInfoMapper, PortInfo> i
         return this.getBaseMapper().selectList(null);
 
     }
+
+    @Override
+    public List<PortInfo> queryPortInfosByAgentIdDB(String agentId) {
+        return this.lambdaQuery()
+                .eq(PortInfo::getAgentId, agentId)
+                .list();
+    }
+
+    @Override
+    public List<String> queryAgentIdsDB() {
+        QueryWrapper<PortInfo> queryWrapper = new QueryWrapper<>();
+        queryWrapper.select("DISTINCT agent_id");
+        return this.listObjs(queryWrapper, String::valueOf);
+    }
+
+    @Transactional(rollbackFor = Exception.class)
+    @Override
+    public Boolean removePortInfosByIds(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return true;
+        }
+        int deletedCount = baseMapper.deleteBatchIds(ids);
+        log.info("Removed {} port infos that are no longer in use", deletedCount);
+        return true;
+    }
 }
@@ -0,0 +1,160 @@
+package com.zeta.firewall.service.impl;
+
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.zeta.firewall.event.PortRuleUpdateEvent;
+import com.zeta.firewall.model.dto.RedisCommandMessage;
+import com.zeta.firewall.model.entity.CommandOutbox;
+import com.zeta.firewall.model.entity.PortInfo;
+import com.zeta.firewall.model.entity.PortRule;
+import com.zeta.firewall.service.CommandOutboxHandler;
+import com.zeta.firewall.service.PortInfoService;
+import com.zeta.firewall.service.PortRuleService;
+import com.zeta.firewall.util.JsonMessageConverter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 端口规则命令的执行结果处理
+ *
+ * 端口规则的增删改在事务内先修改数据库：
+ * 执行成功后更新端口的使用情况；执行失败时恢复数据库，使其与agent节点上实际生效的规则一致。
+ * 补偿只作用于本命令写入的数据：新增和修改按id + 指纹匹配，之后已被修改的规则不再恢复；删除的规则按原来的id恢复
+ */
+@Slf4j
+@Component
+public class PortRuleOutboxHandler implements CommandOutboxHandler {
+
+    private final PortRuleService portRuleService;
+    private final PortInfoService portInfoService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public PortRuleOutboxHandler(PortRuleService portRuleService, PortInfoService portInfoService, ApplicationEventPublisher eventPublisher) {
+        this.portRuleService = portRuleService;
+        this.portInfoService = portInfoService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public String streamSuffix() {
+        return "portRule";
+    }
+
+    @Override
+    public void onSuccess(CommandOutbox outbox, Map<Object, Object> response) {
+        RedisCommandMessage<PortRule> message = JsonMessageConverter.parseMessage(outbox.getPayload(), PortRule.class);
+        if (message.getDataOpType() != RedisCommandMessage.OperationType.INSERT
+                && message.getDataOpType() != RedisCommandMessage.OperationType.UPDATE) {
+            return;
+        }
+
+        // 规则已在agent节点生效，更新端口的使用情况
+        for (PortRule portRule : dataOf(message)) {
+            List<PortInfo> portInfos = portInfoService.updatePortInfoByPortRules(List.of(portRule), outbox.getAgentId());
+            boolean using = portInfos != null && !portInfos.isEmpty();
+            if (portRule.getId() != null && !Boolean.valueOf(using).equals(portRule.getUsing())) {
+                portRuleService.lambdaUpdate()
+                        .set(PortRule::getUsing, using)
+                        .eq(PortRule::getId, portRule.getId())
+                        .update();
+            }
+        }
+        publishPortRuleUpdateEvent(outbox.getAgentId());
+    }
+
+    @Override
+    public void onFailure(CommandOutbox outbox, String reason) {
+        RedisCommandMessage<PortRule> message = JsonMessageConverter.parseMessage(outbox.getPayload(), PortRule.class);
+        List<PortRule> rules = dataOf(message);
+        switch (message.getDataOpType()) {
+            case INSERT:
+                // 规则未在agent节点生效，删除事务中新增的规则（addPortRule 只插入新规则，不会复用已有规则的id）；
+                // 规则在此期间已被修改时内容不再一致，不删除
+                List<Long> removed = new ArrayList<>();
+                for (PortRule rule : rules) {
+                    if (rule.getId() != null && portRuleService.lambdaUpdate()
+                            .eq(PortRule::getId, rule.getId())
+                            .eq(PortRule::getFingerprint, rule.getFingerprint())
+                            .remove()) {
+                        removed.add(rule.getId());
+                    }
+                }
+                log.warn("端口规则新增失败，已删除规则: {}, 节点: {}", removed, outbox.getAgentId());
+                break;
+            case UPDATE:
+                // 恢复为修改前的规则；规则仍是本命令写入的内容（指纹一致）时才恢复，不覆盖之后已提交的修改
+                PortRule old = message.getOld();
+                boolean restored = old != null && old.getId() != null && !rules.isEmpty()
+                        && restoreUpdated(old, rules.get(0).getFingerprint());
+                log.warn("端口规则修改失败，{}规则: {}, 节点: {}", restored ? "已恢复" : "未恢复",
+                        old == null ? null : old.getId(), outbox.getAgentId());
+                break;
+            case DELETE:
+                // 规则仍在agent节点生效，按原来的id重新写入数据库，客户端持有的id和端口映射保持有效
+                int restoredCount = 0;
+                for (PortRule rule : rules) {
+                    if (restoreDeleted(rule)) {
+                        restoredCount++;
+                    }
+                }
+                log.warn("端口规则删除失败，已恢复 {}/{} 条规则, 节点: {}", restoredCount, rules.size(), outbox.getAgentId());
+                break;
+            default:
+                return;
+        }
+        publishPortRuleUpdateEvent(outbox.getAgentId());
+    }
+
+    /**
+     * 把规则恢复为修改前的内容，只有规则当前的指纹仍是本命令写入的指纹时才更新
+     */
+    private boolean restoreUpdated(PortRule old, String writtenFingerprint) {
+        if (writtenFingerprint == null) {
+            return false;
+        }
+        old.refreshFingerprint();
+        try {
+            return portRuleService.update(old, Wrappers.<PortRule>lambdaUpdate()
+                    .eq(PortRule::getId, old.getId())
+                    .eq(PortRule::getFingerprint, writtenFingerprint));
+        } catch (DuplicateKeyException e) {
+            // 修改前的内容已被其他规则占用
+            log.warn("端口规则 {} 修改前的内容已存在于其他规则，未恢复", old.getId());
+            return false;
+        }
+    }
+
+    /**
+     * 按原来的id重新插入被删除的规则；id或内容已被占用（如规则已被重新添加）时不恢复
+     */
+    private boolean restoreDeleted(PortRule rule) {
+        if (rule.getId() == null) {
+            return false;
+        }
+        rule.refreshFingerprint();
+        try {
+            return portRuleService.save(rule);
+        } catch (DuplicateKeyException e) {
+            log.warn("端口规则 {} 已重新存在，未恢复", rule.getId());
+            return false;
+        }
+    }
+
+    private static List<PortRule> dataOf(RedisCommandMessage<PortRule> message) {
+        return message.getData() == null ? Collections.emptyList() : message.getData();
+    }
+
+    private void publishPortRuleUpdateEvent(String agentId) {
+        try {
+            eventPublisher.publishEvent(new PortRuleUpdateEvent(this, Collections.singleton(agentId)));
+        } catch (Exception e) {
+            log.error("发布端口规则更新事件失败", e);
+        }
+    }
+}
@@ -2,68 +2,97 @@ package com.zeta.firewall.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.zeta.firewall.codec.MessageSchema;
+import com.zeta.firewall.config.properties.FirewallProperties;
 import com.zeta.firewall.dao.PortRuleMapper;
 import com.zeta.firewall.event.PortRuleUpdateEvent;
 import com.zeta.firewall.model.dto.RedisCommandMessage;
-import com.zeta.firewall.model.entity.FirewallPortRuleInfo;
-import com.zeta.firewall.model.entity.PortInfo;
 import com.zeta.firewall.model.entity.PortRule;
-import com.zeta.firewall.service.FirewallPortRuleInfoService;
-import com.zeta.firewall.service.PortInfoService;
+import com.zeta.firewall.service.AgentCommandService;
+import com.zeta.firewall.service.AgentPortUsageView;
+import com.zeta.firewall.service.AgentVersionRegistry;
+import com.zeta.firewall.service.CommandOutboxService;
 import com.zeta.firewall.service.PortRuleService;
-import com.zeta.firewall.service.StreamResponseService;
-import com.zeta.firewall.subscirbe.StreamProducer;
 import com.zeta.firewall.util.JsonMessageConverter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.zetaframework.core.utils.JSONUtil;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.zetaframework.core.exception.BusinessException;
+import org.zetaframework.core.mybatisplus.mapper.UpsertMapper;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * 端口规则服务实现类
+ *
+ * 端口规则的增删改在事务内只修改数据库并把命令写入发件箱，事务提交后由 CommandOutboxRelay 下发到agent节点，
+ * 事务不再等待agent节点的响应；执行结果由 PortRuleOutboxHandler 异步处理，失败时恢复数据库
  */
 @Slf4j
 @Service
 public class PortRuleServiceImpl extends ServiceImpl<PortRuleMapper, PortRule> implements PortRuleService {
 
-    private final StreamResponseService streamResponseService;
-    private final StreamProducer streamProducer;
-    private final PortInfoService portInfoService;
+    private final AgentCommandService agentCommandService;
     private final ApplicationEventPublisher eventPublisher;
-    private final FirewallPortRuleInfoService firewallPortRuleInfoService;
-
-    private String pubStreamKeySuffix;
-    private String subStreamKeySuffix;
-
-    public PortRuleServiceImpl(StreamResponseService streamResponseService, StreamProducer streamProducer, PortInfoService portInfoService, ApplicationEventPublisher eventPublisher, FirewallPortRuleInfoService firewallPortRuleInfoService) {
-        this.streamResponseService = streamResponseService;
-        this.streamProducer = streamProducer;
-        this.portInfoService = portInfoService;
+    private final AgentPortUsageView agentPortUsageView;
+    private final CommandOutboxService commandOutboxService;
+    private final AgentVersionRegistry agentVersionRegistry;
+    private final FirewallProperties firewallProperties;
+    private final TransactionTemplate transactionTemplate;
+
+    private String streamKeySuffix;
+
+    public PortRuleServiceImpl(AgentCommandService agentCommandService, ApplicationEventPublisher eventPublisher,
+                               AgentPortUsageView agentPortUsageView, CommandOutboxService commandOutboxService,
+                               AgentVersionRegistry agentVersionRegistry, FirewallProperties firewallProperties,
+                               TransactionTemplate transactionTemplate) {
+        this.agentCommandService = agentCommandService;
         this.eventPublisher = eventPublisher;
-        this.firewallPortRuleInfoService = firewallPortRuleInfoService;
-        this.pubStreamKeySuffix = "portRule";
-        this.subStreamKeySuffix = "portRule";
+        this.agentPortUsageView = agentPortUsageView;
+        this.commandOutboxService = commandOutboxService;
+        this.agentVersionRegistry = agentVersionRegistry;
+        this.firewallProperties = firewallProperties;
+        this.transactionTemplate = transactionTemplate;
+        this.streamKeySuffix = "portRule";
+    }
+
+    /**
+     * 端口规则命令的主键列
+     * 支持规则指纹的agent节点按 fingerprint 匹配规则，旧版本节点按9个属性匹配
+     * @param agentId 节点id
+     * @return 主键列
+     */
+    private List<String> primaryKeyColumns(String agentId) {
+        if (agentVersionRegistry.isAtLeast(agentId, firewallProperties.getCodec().getFingerprintMinClientVersion())) {
+            return MessageSchema.PORT_RULE_FINGERPRINT.getPrimaryKeyColumns();
+        }
+        return MessageSchema.PORT_RULE.getPrimaryKeyColumns();
     }
 
     /**
      * 发布端口规则更新事件
      * 统一管理事件发布，避免重复代码
      */
-    private void publishPortRuleUpdateEvent() {
+    private void publishPortRuleUpdateEvent(Collection<String> agentIds) {
         try {
-            eventPublisher.publishEvent(new PortRuleUpdateEvent(this));
+            eventPublisher.publishEvent(new PortRuleUpdateEvent(this, agentIds));
             log.debug("端口规则更新事件已发布");
         } catch (Exception e) {
             log.error("发布端口规则更新事件失败", e);
         }
     }
 
+    /**
+     * 不开启事务：数据库中没有规则时需要向agent节点查询，查询结果返回后再用 TransactionTemplate 开启短事务写入
+     */
     @Override
-    @Transactional(rollbackFor = Exception.class)  // 添加事务注解，并指定回滚异常
     public List<PortRule> getPortRulesByNodeId(String nodeId) {
 
         List<PortRule> portRules = new ArrayList<PortRule>();
@@ -81,7 +110,7 @@ public class PortRuleServiceImpl extends ServiceImpl<PortRuleMapper, PortRule> i
         // todo 默认使用public区域
         map.put("zoneName", "public");
 
-        List<String> primaryKeyColumns = List.of("family", "port", "protocol", "sourceRule", "policy", "agentId", "permanent", "type", "zone");
+        List<String> primaryKeyColumns = primaryKeyColumns(nodeId);
 
         RedisCommandMessage<PortRule> build = RedisCommandMessage.<PortRule>builder()
                 .agentId(nodeId)
@@ -98,42 +127,44 @@ public class PortRuleServiceImpl extends ServiceImpl<PortRuleMapper, PortRule> i
         // 设置agentId
         portRules.forEach(portRule -> portRule.setAgentId(nodeId));
 
-        // 3. 保存到数据库
+        // 3. 保存到数据库，agent节点已经响应，只在写入期间开启事务
         if (!portRules.isEmpty()) {
-            // 更新端口规则
-            // 手动触发一次端口使用情况更新
-            if (!(this.saveOrUpdatePortRules(portRules))) {
-                log.error("无法通过节点id: {}, 获取对应的端口规则",nodeId);
-            }else{
-                // 1.发布事件 因为发布的事件中涉及数据库的更新操作，需要开启新的事务
-                publishPortRuleUpdateEvent();
-//                log.info("getPortRulesByNodeId 当前事务: {}", TransactionSynchronizationManager.getCurrentTransactionName());
-
-                // 2. 查询最新数据
-                List<PortRule> lastedPortRules = this.queryAllPortRules();
-                List<FirewallPortRuleInfo> firewallPortRuleInfos = firewallPortRuleInfoService.queryAll();
-
-                // 3. 更新使用状态
-                for (PortRule lastedPortRule : lastedPortRules) {
-                    lastedPortRule.setUsing(false);
-                    for (FirewallPortRuleInfo info : firewallPortRuleInfos) {
-                        if (info.getRuleId().equals(lastedPortRule.getId())) {
-                            lastedPortRule.setUsing(true);
-                            break;
-                        }
-                    }
-                }
-
-                if (this.updateBatchById(lastedPortRules)) {
-                    portRules = lastedPortRules;
-                }
-
+            List<PortRule> agentPortRules = portRules;
+            List<PortRule> saved = transactionTemplate.execute(status -> savePortRulesFromAgent(nodeId, agentPortRules));
+            if (saved != null) {
+                portRules = saved;
             }
         }
 
         return portRules;
     }
 
+    /**
+     * 保存agent节点返回的端口规则，并按读模型更新使用状态
+     * @return 更新后的端口规则，保存失败时返回 null
+     */
+    private List<PortRule> savePortRulesFromAgent(String nodeId, List<PortRule> portRules) {
+        // 更新端口规则
+        // 手动触发一次端口使用情况更新
+        if (!(this.saveOrUpdatePortRules(portRules))) {
+            log.error("无法通过节点id: {}, 获取对应的端口规则",nodeId);
+            return null;
+        }
+        // 1.发布事件 因为发布的事件中涉及数据库的更新操作，需要开启新的事务
+        publishPortRuleUpdateEvent(Collections.singleton(nodeId));
+
+        // 2. 只查询该节点的最新数据，端口使用情况从读模型获取
+        List<PortRule> lastedPortRules = this.queryPortRulesByNodeId(nodeId);
+        Set<Long> usingRuleIds = agentPortUsageView.get(nodeId).getUsingRuleIds();
+
+        // 3. 更新使用状态：有端口正在使用的规则为使用中
+        for (PortRule lastedPortRule : lastedPortRules) {
+            lastedPortRule.setUsing(usingRuleIds.contains(lastedPortRule.getId()));
+        }
+
+        return this.updateBatchById(lastedPortRules) ? lastedPortRules : portRules;
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<PortRule> queryPortRulesByNodeId(String nodeId) {
@@ -150,38 +181,31 @@ public class PortRuleServiceImpl extends ServiceImpl<PortRuleMapper, PortRule> i
         }
 
         try {
-            // 1. 批量查询已存在的记录
-            List<PortRule> existingRules = new ArrayList<>();
-            for (PortRule rule : portRules) {
-                PortRule existing = this.lambdaQuery()
-                        .eq(PortRule::getAgentId, rule.getAgentId())
-                        .eq(PortRule::isPermanent, rule.isPermanent())
-                        .eq(PortRule::getType, rule.getType())
-                        .eq(PortRule::getZone, rule.getZone())
-                        .eq(PortRule::getFamily, rule.getFamily())
-                        .eq(PortRule::getPort, rule.getPort())
-                        .eq(PortRule::getProtocol, rule.getProtocol())
-                        // 使用 apply 方法添加自定义 SQL 条件
-                        .apply("JSON_EXTRACT(source_rule, '$.source') = {0}", rule.getSourceRule().getSource())
-                        .eq(PortRule::getPolicy, rule.getPolicy())
-                        .one();
-
-                if (existing != null) {
-                    // 如果存在记录，设置ID以触发更新
-                    rule.setId(existing.getId());
-                    existingRules.add(existing);
-                }
+            portRules.forEach(PortRule::refreshFingerprint);
+
+            // 1. 已有id的规则按id更新（规则的唯一索引列可能被修改）
+            List<PortRule> existingRules = portRules.stream()
+                    .filter(rule -> rule.getId() != null)
+                    .collect(Collectors.toList());
+            if (!existingRules.isEmpty() && !this.updateBatchById(existingRules)) {
+                log.error("批量更新端口规则失败");
+                return false;
             }
 
-            // 2. 执行批量保存或更新
-            boolean success = this.saveOrUpdateBatch(portRules);
-            if (!success) {
-                log.error("批量保存或更新端口规则失败");
-                return false;
+            // 2. 没有id的规则按指纹去重后批量插入或更新，再按指纹回查id
+            List<PortRule> newRules = portRules.stream()
+                    .filter(rule -> rule.getId() == null)
+                    .collect(Collectors.toList());
+            if (!newRules.isEmpty()) {
+                Collection<PortRule> distinctRules = newRules.stream()
+                        .collect(Collectors.toMap(PortRule::getFingerprint, rule -> rule, (a, b) -> a, LinkedHashMap::new))
+                        .values();
+                baseMapper.insertOrUpdateBatch(distinctRules, UpsertMapper.DEFAULT_BATCH_SIZE);
+                fillIdsByFingerprint(newRules);
             }
 
             // 3. 发布更新事件
-            publishPortRuleUpdateEvent();
+            publishPortRuleUpdateEvent(portRules.stream().map(PortRule::getAgentId).collect(Collectors.toSet()));
 
             return true;
         } catch (Exception e) {
@@ -190,26 +214,99 @@ public class PortRuleServiceImpl extends ServiceImpl<PortRuleMapper, PortRule> i
         }
     }
 
+    /**
+     * 按指纹回查端口规则的id
+     * @param portRules 已写入数据库的端口规则
+     */
+    private void fillIdsByFingerprint(List<PortRule> portRules) {
+        List<String> fingerprints = portRules.stream()
+                .map(PortRule::getFingerprint)
+                .distinct()
+                .collect(Collectors.toList());
+        Map<String, Long> idsByFingerprint = new HashMap<>();
+        for (int from = 0; from < fingerprints.size(); from += UpsertMapper.DEFAULT_BATCH_SIZE) {
+            List<String> batch = fingerprints.subList(from, Math.min(from + UpsertMapper.DEFAULT_BATCH_SIZE, fingerprints.size()));
+            this.lambdaQuery()
+                    .select(PortRule::getId, PortRule::getFingerprint)
+                    .in(PortRule::getFingerprint, batch)
+                    .list()
+                    .forEach(rule -> idsByFingerprint.put(rule.getFingerprint(), rule.getId()));
+        }
+        portRules.forEach(rule -> rule.setId(idsByFingerprint.get(rule.getFingerprint())));
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int backfillFingerprints() {
+        List<PortRule> portRules = this.lambdaQuery()
+                .isNull(PortRule::getFingerprint)
+                .list();
+        if (portRules.isEmpty()) {
+            return 0;
+        }
+
+        // 已有指纹的规则，以及本次回填中指纹相同的规则都不再回填，避免唯一索引冲突
+        // key: 指纹，value: 占用该指纹的规则id
+        Map<String, Long> owners = new HashMap<>();
+        this.lambdaQuery()
+                .select(PortRule::getId, PortRule::getFingerprint)
+                .isNotNull(PortRule::getFingerprint)
+                .list()
+                .forEach(rule -> owners.put(rule.getFingerprint(), rule.getId()));
+        List<PortRule> updates = new ArrayList<>();
+        List<Long> duplicates = new ArrayList<>();
+        for (PortRule portRule : portRules) {
+            Long owner = owners.putIfAbsent(portRule.refreshFingerprint(), portRule.getId());
+            if (owner == null) {
+                updates.add(portRule);
+            } else {
+                duplicates.add(portRule.getId());
+                log.warn("端口规则 {} 与端口规则 {} 内容相同，未回填指纹", portRule.getId(), owner);
+            }
+        }
+        if (!updates.isEmpty()) {
+            this.updateBatchById(updates);
+        }
+        log.info("已回填 {} 条端口规则的指纹", updates.size());
+        if (!duplicates.isEmpty()) {
+            // 重复的规则指纹一直为空，按指纹下发的命令匹配不到它们，需要人工合并或删除
+            log.error("{} 条端口规则与已有规则重复，指纹保持为空，请合并或删除这些规则: {}", duplicates.size(), duplicates);
+        }
+        return updates.size();
+    }
+
+    /**
+     * 启动后回填旧数据的规则指纹
+     * 自调用不经过代理，@Transactional 不生效，这里通过 TransactionTemplate 开启事务
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillFingerprintsOnStartup() {
+        try {
+            transactionTemplate.execute(status -> backfillFingerprints());
+        } catch (Exception e) {
+            log.error("回填端口规则指纹失败", e);
+        }
+    }
+
     /**
      * 添加端口规则
+     * 规则先保存到数据库，添加命令写入发件箱，由 CommandOutboxRelay 在事务提交后下发到agent节点；
+     * 规则按指纹直接插入而不是 upsert，命令中的规则id一定是本次新增的，agent节点执行失败时可以安全删除
      * @param portRule 端口规则对象
-     * @return 添加的端口规则ID
+     * @return 发件箱命令id，未受理时返回 null
+     * @throws BusinessException 节点上已存在内容相同的规则
      */
     @Override
     @Transactional(rollbackFor = Exception.class)
-    public Boolean addPortRule(PortRule portRule) {
-
-        boolean res = false;
+    public Long addPortRule(PortRule portRule) {
 
-        // 保存端口规则到agent
-        // 获取agent节点的添加添加的结果，成功还是失败
         // 构建消息体
         HashMap<String, String> map = new HashMap<>();
         map.put("zoneName", portRule.getZone());
         map.put("policy", String.valueOf(portRule.getPolicy()));
 //        map.put("isUsing", portRule.getUsing());
 
-        List<String> primaryKeyColumns = List.of("family", "port", "protocol", "sourceRule", "policy", "agentId", "permanent", "type", "zone");
+        List<String> primaryKeyColumns = primaryKeyColumns(portRule.getAgentId());
 
         ArrayList<PortRule> data = new ArrayList<>();
         data.add(portRule);
@@ -226,72 +323,41 @@ public class PortRuleServiceImpl extends ServiceImpl<PortRuleMapper, PortRule> i
                 .build();
 
 
-        // 新增端口规则命令如何判断是否成功？
-        boolean success  = sendRedisInsertCommandAndGetResponse(agentId,build);
-
-
-        // 如果成功，则保存到数据库
-        // 失败则返回失败信息
-        if (success && this.saveOrUpdatePortRules(List.of(portRule))) {
-            // 更新端口的使用情况
-            List<PortInfo> portInfos = portInfoService.updatePortInfoByPortRules(List.of(portRule), agentId);
-            if (portInfos != null && !portInfos.isEmpty()) {
-                portRule.setUsing(true);
-            }
-            publishPortRuleUpdateEvent();
-            res = true;
+        // 先保存到数据库，保存后 data 中的规则带有id，agent节点执行失败时据此删除
+        // 已存在相同内容的规则时拒绝添加，避免失败补偿删除已生效的规则
+        portRule.refreshFingerprint();
+        if (this.lambdaQuery().eq(PortRule::getFingerprint, portRule.getFingerprint()).count() > 0) {
+            throw new BusinessException("节点 {} 上已存在相同的端口规则", agentId);
         }
-
-        return res;
-    }
-
-    /**
-     * 发送Redis命令并获取新增端口规则的响应
-     */
-    private boolean sendRedisInsertCommandAndGetResponse(String nodeId, RedisCommandMessage<PortRule> build) {
-        String pubStreamkey = "pub:" + nodeId + ":" + pubStreamKeySuffix;
-        String subStreamkey = "sub:" + nodeId + ":" + subStreamKeySuffix;
-        boolean success = false;
-
         try {
-
-            Map<String, String> messageMap = JsonMessageConverter.beanToMap(build);
-            RecordId recordId = streamProducer.publishMessage(pubStreamkey, messageMap);
-            Map<Object, Object> value = streamResponseService.getResponseEntry(nodeId, subStreamkey,pubStreamkey, recordId);
-
-            return isResponseSuccess(value);
-
-        } catch (Exception e) {
-            log.error("Failed to insert port rules for node: {}", nodeId, e);
-            return success;
+            if (!this.save(portRule)) {
+                return null;
+            }
+        } catch (DuplicateKeyException e) {
+            // 并发添加了相同的规则
+            throw new BusinessException("节点 {} 上已存在相同的端口规则", agentId);
         }
+        publishPortRuleUpdateEvent(Collections.singleton(agentId));
+
+        // 命令随事务一起提交，执行结果（端口使用情况、失败时的补偿）由 PortRuleOutboxHandler 异步处理
+        return commandOutboxService.enqueue(streamKeySuffix, build).getId();
     }
 
     /**
      * 从Redis Stream查询端口规则
      */
     private List<PortRule> sendRedisQueryCommandAndGetResponse(String nodeId, RedisCommandMessage<PortRule> commandMap) {
-        String pubStreamkey = "pub:" + nodeId + ":" + pubStreamKeySuffix;
-        String subStreamkey = "sub:" + nodeId + ":" + subStreamKeySuffix;
-
         try {
-
-            Map<String, String> messageMap = JsonMessageConverter.beanToMap(commandMap);
-            RecordId recordId = streamProducer.publishMessage(pubStreamkey, messageMap);
-            Map<Object, Object> value = streamResponseService.getResponseEntry(nodeId, subStreamkey,pubStreamkey, recordId);
+            Map<Object, Object> value = agentCommandService.execute(nodeId, streamKeySuffix, commandMap);
 
             // 检查响应状态
-            if (!isResponseSuccess(value)) {
+            if (!AgentCommandService.isResponseSuccess(value)) {
                 return Collections.emptyList();
             }
 
             // 解析响应数据
-            String dataStr = String.valueOf(value.get("data"));
-            if (dataStr == null || dataStr.equals("null")) {
-                return Collections.emptyList();
-            }
-
-            return JSONUtil.parseObject(dataStr, new TypeReference<List<PortRule>>() {});
+            List<PortRule> data = JsonMessageConverter.readData(value.get("data"), new TypeReference<List<PortRule>>() {});
+            return data == null ? Collections.<PortRule>emptyList() : data;
 
         } catch (Exception e) {
             log.error("Failed to get port rules for node: {}", nodeId, e);
@@ -299,21 +365,17 @@ public class PortRuleServiceImpl extends ServiceImpl<PortRuleMapper, PortRule> i
         }
     }
 
-    private boolean isResponseSuccess(Map<Object, Object> value) {
-        return value.containsKey("status") && value.get("status").equals("200");
-    }
-
     /**
      * 删除端口规则
      * @param nodeId 节点ID
      * @param ruleIds 规则ID列表
-     * @return 删除结果 true:成功 false:失败
+     * @return 发件箱命令id，未受理时返回 null
      */
     @Override
     @Transactional(rollbackFor = Exception.class)
-    public Boolean deletePortRules(String nodeId, List<Long> ruleIds) {
+    public Long deletePortRules(String nodeId, List<Long> ruleIds) {
         if (nodeId == null || ruleIds == null || ruleIds.isEmpty()) {
-            return false;
+            return null;
         }
 
         try {
@@ -325,14 +387,14 @@ public class PortRuleServiceImpl extends ServiceImpl<PortRuleMapper, PortRule> i
 
             if (portRules.isEmpty()) {
                 log.warn("No port rules found for deletion with nodeId: {} and ruleIds: {}", nodeId, ruleIds);
-                return false;
+                return null;
             }
 
             // 2. 构建删除命令消息
             HashMap<String, String> map = new HashMap<>();
             map.put("zoneName", "public"); // 默认使用public区域
 
-            List<String> primaryKeyColumns = List.of("family", "port", "protocol", "sourceRule", "policy", "agentId", "permanent", "type", "zone");
+            List<String> primaryKeyColumns = primaryKeyColumns(nodeId);
 
             RedisCommandMessage<PortRule> build = RedisCommandMessage.<PortRule>builder()
                     .agentId(nodeId)
@@ -344,40 +406,18 @@ public class PortRuleServiceImpl extends ServiceImpl<PortRuleMapper, PortRule> i
                     .data(portRules)
                     .build();
 
-            // 3. 发送删除命令并获取响应
-            boolean success = sendRedisDeleteCommandAndGetResponse(nodeId, build);
-
-            // 4. 如果成功，则从数据库中删除
+            // 3. 从数据库中删除，删除命令写入发件箱，agent节点执行失败时恢复被删除的规则
             if (this.removeByIds(ruleIds)) {
-                publishPortRuleUpdateEvent();
-                return true;
+                Long commandId = commandOutboxService.enqueue(streamKeySuffix, build).getId();
+                publishPortRuleUpdateEvent(Collections.singleton(nodeId));
+                return commandId;
             }
 
-            return false;
+            return null;
         } catch (Exception e) {
             log.error("Failed to delete port rules for node: {} with ruleIds: {}", nodeId, ruleIds, e);
-            return false;
-        }
-    }
-
-    /**
-     * 发送Redis命令并获取删除端口规则的响应
-     */
-    private boolean sendRedisDeleteCommandAndGetResponse(String nodeId, RedisCommandMessage<PortRule> build) {
-        String pubStreamkey = "pub:" + nodeId + ":" + pubStreamKeySuffix;
-        String subStreamkey = "sub:" + nodeId + ":" + subStreamKeySuffix;
-        boolean success = false;
-
-        try {
-            Map<String, String> messageMap = JsonMessageConverter.beanToMap(build);
-            RecordId recordId = streamProducer.publishMessage(pubStreamkey, messageMap);
-            Map<Object, Object> value = streamResponseService.getResponseEntry(nodeId, subStreamkey, pubStreamkey, recordId);
-
-            return isResponseSuccess(value);
-
-        } catch (Exception e) {
-            log.error("Failed to delete port rules for node: {}", nodeId, e);
-            return success;
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return null;
         }
     }
 
@@ -385,13 +425,13 @@ public class PortRuleServiceImpl extends ServiceImpl<PortRuleMapper, PortRule> i
      * 更新端口规则
      * @param ruleId 规则ID
      * @param portRule 更新后的端口规则对象
-     * @return 更新结果 true:成功 false:失败
+     * @return 发件箱命令id，未受理时返回 null
      */
     @Override
     @Transactional(rollbackFor = Exception.class)
-    public Boolean updatePortRule(Long ruleId, PortRule portRule) {
+    public Long updatePortRule(Long ruleId, PortRule portRule) {
         if (ruleId == null || portRule == null) {
-            return false;
+            return null;
         }
 
         try {
@@ -399,7 +439,7 @@ public class PortRuleServiceImpl extends ServiceImpl<PortRuleMapper, PortRule> i
             PortRule oldRule = this.getById(ruleId);
             if (oldRule == null) {
                 log.warn("No port rule found for update with ruleId: {}", ruleId);
-                return false;
+                return null;
             }
 
             // 2. 设置规则ID和节点ID
@@ -412,7 +452,7 @@ public class PortRuleServiceImpl extends ServiceImpl<PortRuleMapper, PortRule> i
             map.put("zoneName", portRule.getZone());
             map.put("policy", String.valueOf(portRule.getPolicy()));
 
-            List<String> primaryKeyColumns = List.of("family", "port", "protocol", "sourceRule", "policy", "agentId", "permanent", "type", "zone");
+            List<String> primaryKeyColumns = primaryKeyColumns(nodeId);
 
             ArrayList<PortRule> data = new ArrayList<>();
             data.add(portRule);
@@ -428,25 +468,18 @@ public class PortRuleServiceImpl extends ServiceImpl<PortRuleMapper, PortRule> i
                     .old(oldRule)
                     .build();
 
-            // 4. 发送更新命令并获取响应
-            boolean success = sendRedisUpdateCommandAndGetResponse(nodeId, build);
-
-            // 5. 如果成功，则更新数据库
-            if (success) {
-                // 需要更新端口规则对应的 端口使用情况
-                // 获取端口最新的使用情况
-                List<PortInfo> portInfos =  portInfoService.updatePortInfoByPortRules(List.of(portRule), nodeId);
-                // 更新字段Using
-                portRule.setUsing(portInfos != null && !portInfos.isEmpty());
-
-                this.saveOrUpdatePortRules(List.of(portRule));
-                return true;
+            // 4. 先更新数据库，端口使用情况在agent节点执行成功后由 PortRuleOutboxHandler 更新，失败时恢复为 oldRule
+            portRule.setUsing(oldRule.getUsing());
+            if (!this.saveOrUpdatePortRules(List.of(portRule))) {
+                return null;
             }
 
-            return false;
+            // 5. 更新命令随事务一起提交
+            return commandOutboxService.enqueue(streamKeySuffix, build).getId();
         } catch (Exception e) {
             log.error("Failed to update port rule with ruleId: {}", ruleId, e);
-            return false;
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return null;
         }
     }
 
@@ -455,25 +488,4 @@ public class PortRuleServiceImpl extends ServiceImpl<PortRuleMapper, PortRule> i
         return this.getBaseMapper().selectList(null);
     }
 
-    /**
-     * 发送Redis命令并获取更新端口规则的响应
-     */
-    private boolean sendRedisUpdateCommandAndGetResponse(String nodeId, RedisCommandMessage<PortRule> build) {
-        String pubStreamkey = "pub:" + nodeId + ":" + pubStreamKeySuffix;
-        String subStreamkey = "sub:" + nodeId + ":" + subStreamKeySuffix;
-        boolean success = false;
-
-        try {
-            Map<String, String> messageMap = JsonMessageConverter.beanToMap(build);
-            RecordId recordId = streamProducer.publishMessage(pubStreamkey, messageMap);
-            Map<Object, Object> value = streamResponseService.getResponseEntry(nodeId, subStreamkey, pubStreamkey, recordId);
-
-            return isResponseSuccess(value);
-
-        } catch (Exception e) {
-            log.error("Failed to update port rule for node: {}", nodeId, e);
-            return success;
-        }
-    }
-
 }
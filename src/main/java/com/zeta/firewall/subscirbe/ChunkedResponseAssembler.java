@@ -0,0 +1,112 @@
+package com.zeta.firewall.subscirbe;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.zeta.firewall.util.JsonMessageConverter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 分块响应的组装器
+ *
+ * 结果较大的查询（如端口规则、端口使用信息），agent节点可以把响应拆成多条stream消息写入响应stream：
+ * <pre>
+ * requestId  命令的 recordId（分块消息自身使用redis自动生成的id）
+ * chunkSeq   分块序号，从0开始连续递增
+ * chunkLast  最后一个分块为 true，其余为 false
+ * status     响应状态，以最后一个分块为准
+ * data       本分块的数据，为JSON数组（或二进制编码下的数组）
+ * </pre>
+ * requestId、chunkSeq、chunkLast 必须是stream消息的普通字段，不能放进二进制编码的 payload 中，
+ * master节点在解码前依据它们找到等待中的请求。
+ *
+ * 每个分块到达后立即解析并按序追加到结果数组中，乱序到达的分块暂存，重复的分块忽略；
+ * 累计的分块字节数超过上限时组装失败，避免单个响应占用过多内存。
+ */
+public class ChunkedResponseAssembler {
+
+    public static final String FIELD_REQUEST_ID = "requestId";
+    public static final String FIELD_CHUNK_SEQ = "chunkSeq";
+    public static final String FIELD_CHUNK_LAST = "chunkLast";
+    private static final String FIELD_DATA = "data";
+
+    private final long maxBytes;
+    private final ArrayNode data = JsonNodeFactory.instance.arrayNode();
+    private final Map<Object, Object> header = new LinkedHashMap<>();
+    // 乱序到达、尚不能追加的分块
+    private final TreeMap<Integer, Map<Object, Object>> waiting = new TreeMap<>();
+    private int nextSeq = 0;
+    private int lastSeq = -1;
+    private long bytes = 0;
+
+    public ChunkedResponseAssembler(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 接收一个分块
+     *
+     * @param chunk      解码后的分块内容
+     * @param chunkBytes 分块在stream中的字节数
+     * @return 全部分块到齐后返回完整的响应（data 为合并后的数组），否则返回null
+     * @throws IllegalStateException 累计字节数超过上限，或分块序号不合法
+     */
+    public synchronized Map<Object, Object> accept(Map<Object, Object> chunk, long chunkBytes) {
+        int seq = Integer.parseInt(String.valueOf(chunk.get(FIELD_CHUNK_SEQ)));
+        if (seq < nextSeq || waiting.containsKey(seq)) {
+            // 重复的分块：分片线程与超时兜底检查可能读到同一个分块
+            return null;
+        }
+        if (lastSeq >= 0 && seq > lastSeq) {
+            throw new IllegalStateException("Chunk seq " + seq + " is after the last chunk " + lastSeq);
+        }
+
+        bytes += chunkBytes;
+        if (bytes > maxBytes) {
+            throw new IllegalStateException("Chunked response exceeds " + maxBytes + " bytes");
+        }
+        if (Boolean.parseBoolean(String.valueOf(chunk.get(FIELD_CHUNK_LAST)))) {
+            lastSeq = seq;
+        }
+
+        waiting.put(seq, chunk);
+        while (!waiting.isEmpty() && waiting.firstKey() == nextSeq) {
+            append(waiting.pollFirstEntry().getValue());
+            nextSeq++;
+        }
+
+        if (lastSeq < 0 || nextSeq <= lastSeq) {
+            return null;
+        }
+        Map<Object, Object> response = new LinkedHashMap<>(header);
+        response.put(FIELD_DATA, data);
+        return response;
+    }
+
+    /**
+     * 已接收的分块数量
+     */
+    public synchronized int receivedChunks() {
+        return nextSeq + waiting.size();
+    }
+
+    private void append(Map<Object, Object> chunk) {
+        chunk.forEach((key, value) -> {
+            if (!FIELD_DATA.equals(key)) {
+                header.put(key, value);
+            }
+        });
+        JsonNode chunkData = JsonMessageConverter.readTree(chunk.get(FIELD_DATA));
+        if (chunkData == null) {
+            return;
+        }
+        if (chunkData.isArray()) {
+            data.addAll((ArrayNode) chunkData);
+        } else {
+            data.add(chunkData);
+        }
+    }
+}
@@ -35,6 +35,17 @@ public class StreamConsumer {
                           String streamKey,
                           String groupName,
                           String consumerName) {
+        this(connectionFactory, streamKey, groupName, consumerName, ReadOffset.from("0-0"));
+    }
+
+    /**
+     * @param startOffset 新建消费者组时的起始位置，ReadOffset.latest() 表示只消费建组之后写入的消息
+     */
+    public StreamConsumer(RedisConnectionFactory connectionFactory,
+                          String streamKey,
+                          String groupName,
+                          String consumerName,
+                          ReadOffset startOffset) {
         this.redisTemplate = new RedisTemplate<>();
         this.redisTemplate.setConnectionFactory(connectionFactory);
         this.redisTemplate.setKeySerializer(StringRedisSerializer.UTF_8);
@@ -47,14 +58,14 @@ public class StreamConsumer {
         this.groupName = groupName;
         this.consumerName = consumerName;
 
-        createConsumerGroupIfNotExists();
+        createConsumerGroupIfNotExists(startOffset);
     }
 
     /**
      * 确保消费者组存在，如果Stream不存在则自动创建
      * 使用XGROUP CREATE命令的MKSTREAM选项直接创建Stream，无需插入初始条目
      */
-    private void createConsumerGroupIfNotExists() {
+    private void createConsumerGroupIfNotExists(ReadOffset startOffset) {
         try {
             // 使用RedisCallback直接执行XGROUP CREATE命令，带MKSTREAM选项
             redisTemplate.execute((RedisCallback<String>) connection -> {
@@ -62,10 +73,10 @@ public class StreamConsumer {
 
                 try {
                     // 使用MKSTREAM选项创建Stream和消费者组
-                    // 相当于执行: XGROUP CREATE streamKey groupName 0-0 MKSTREAM
+                    // 相当于执行: XGROUP CREATE streamKey groupName startOffset MKSTREAM
                     connection.xGroupCreate(streamKeyBytes,
                             groupName,
-                            ReadOffset.from("0-0"),
+                            startOffset,
                             true);  // true表示使用MKSTREAM选项
                     log.info("Created consumer group and stream: {}", groupName);
                 } catch (Exception e) {
@@ -1,14 +1,22 @@
 package com.zeta.firewall.subscirbe;
 
+import com.zeta.firewall.config.properties.FirewallProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.stream.ByteRecord;
 import org.springframework.data.redis.connection.stream.MapRecord;
 import org.springframework.data.redis.connection.stream.RecordId;
 import org.springframework.data.redis.connection.stream.StreamRecords;
-import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @Service
@@ -16,34 +24,115 @@ public class StreamProducer {
     private static final Logger log = LoggerFactory.getLogger(StreamProducer.class);
 
     private final StringRedisTemplate redisTemplate;
-    public StreamProducer(StringRedisTemplate redisTemplate) {
+    private final FirewallProperties.Retention retention;
+    public StreamProducer(StringRedisTemplate redisTemplate, FirewallProperties firewallProperties) {
         this.redisTemplate = redisTemplate;
+        this.retention = firewallProperties.getRetention();
     }
     /**
-     * 向指定的 Redis Stream 发布一条消息，并设置流的最大长度约为 1000 条。
+     * 向指定的 Redis Stream 发布一条消息。
      * <p>
      * 消息以 Map 形式存储到 Redis Stream {@code streamKey} 中；
-     * 当消息数超过 1000 条时，Stream 会自动进行近似裁剪（approximate trimming），以限制其最大长度，
-     * 有利于节省内存并保持流的活跃状态。
+     * 按时间、内存的裁剪由 {@link com.zeta.firewall.schedule.StreamRetentionService} 在后台完成，
+     * 这里只随 XADD 附带一个较大的 {@code MAXLEN ~} 兜底上限（zeta.firewall.retention.inline-max-length），
+     * 防止后台裁剪停止时stream无限增长。
      *
      * @param streamKey Redis Stream的键
      * @param message 需发布到 Stream 的消息内容，键值对形式
      * @return 新添加消息的 RecordId (相当于Jedis中的StreamEntryID)
      */
     public RecordId publishMessage(String streamKey, Map<String, String> message) {
-        StreamOperations<String, Object, Object> streamOps = redisTemplate.opsForStream();
+        return publishEncodedMessage(streamKey, encode(message));
+    }
 
-        // 创建一个MapRecord
-        MapRecord<String, String, String> record = StreamRecords.newRecord()
-                .ofMap(message)
-                .withStreamKey(streamKey);
+    /**
+     * 发布一条已编码的消息，字段值为原始字节，用于二进制编码的命令
+     *
+     * @param streamKey Redis Stream的键
+     * @param message 消息字段
+     * @return 新添加消息的 RecordId
+     */
+    public RecordId publishEncodedMessage(String streamKey, Map<String, byte[]> message) {
+        ByteRecord record = toByteRecord(streamKey, message);
 
         // 添加消息，如果stream不存在会自动创建
-        RecordId recordId = streamOps.add(record);
+        return redisTemplate.execute((RedisCallback<RecordId>) connection ->
+                connection.streamCommands().xAdd(record, trimOptions()));
+    }
+
+    /**
+     * 批量发布消息
+     * <p>
+     * 所有消息在一个 pipeline 中发送，每条 XADD 都带有兜底的 {@code MAXLEN ~} 上限，
+     * 向大量agent节点下发命令时只需要少量网络往返，而不是每条消息 XADD + XTRIM 两次往返。
+     *
+     * @param records 待发布的消息，streamKey 取自 {@link MapRecord#getStream()}
+     * @return 与入参顺序一致的 RecordId 列表
+     */
+    public List<RecordId> publishMessages(List<MapRecord<String, String, String>> records) {
+        if (records == null || records.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<MapRecord<String, String, byte[]>> encoded = new ArrayList<>(records.size());
+        for (MapRecord<String, String, String> record : records) {
+            encoded.add(StreamRecords.newRecord().in(record.getStream()).ofMap(encode(record.getValue())));
+        }
+        return publishEncodedMessages(encoded);
+    }
+
+    /**
+     * 批量发布已编码的消息，字段值为原始字节
+     *
+     * @param records 待发布的消息，streamKey 取自 {@link MapRecord#getStream()}
+     * @return 与入参顺序一致的 RecordId 列表
+     * @see #publishMessages(List)
+     */
+    public List<RecordId> publishEncodedMessages(List<MapRecord<String, String, byte[]>> records) {
+        if (records == null || records.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<ByteRecord> byteRecords = new ArrayList<>(records.size());
+        for (MapRecord<String, String, byte[]> record : records) {
+            byteRecords.add(toByteRecord(record.getStream(), record.getValue()));
+        }
 
-        // 裁剪流以保持最大长度约为1000
-        streamOps.trim(streamKey, 1000, true);
+        XAddOptions options = trimOptions();
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ByteRecord record : byteRecords) {
+                connection.streamCommands().xAdd(record, options);
+            }
+            return null;
+        });
+
+        List<RecordId> recordIds = new ArrayList<>(results.size());
+        for (Object result : results) {
+            recordIds.add((RecordId) result);
+        }
+        log.debug("Published {} messages in one pipeline", recordIds.size());
+        return recordIds;
+    }
+
+    private XAddOptions trimOptions() {
+        Long maxLength = retention.getInlineMaxLength();
+        if (maxLength == null || maxLength <= 0) {
+            return XAddOptions.none();
+        }
+        return XAddOptions.maxlen(maxLength).approximateTrimming(true);
+    }
+
+    private Map<String, byte[]> encode(Map<String, String> message) {
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        Map<String, byte[]> encoded = new LinkedHashMap<>(message.size());
+        message.forEach((k, v) -> encoded.put(k, serializer.serialize(v)));
+        return encoded;
+    }
 
-        return recordId;
+    private ByteRecord toByteRecord(String streamKey, Map<String, byte[]> message) {
+        RedisSerializer<String> serializer = redisTemplate.getStringSerializer();
+        Map<byte[], byte[]> raw = new LinkedHashMap<>(message.size());
+        message.forEach((k, v) -> raw.put(serializer.serialize(k), v));
+        return StreamRecords.rawBytes(raw).withStreamKey(serializer.serialize(streamKey));
     }
 }
@@ -0,0 +1,449 @@
+package com.zeta.firewall.subscirbe;
+
+import com.zeta.firewall.codec.MessageCodecRegistry;
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.exception.EmptyResultException;
+import com.zeta.firewall.service.AgentShardManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisZSetCommands.Limit;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * agent响应分发器
+ *
+ * 替代按 recordId 轮询（XRANGE + 重试）获取响应的方式：
+ * <ul>
+ *     <li>响应stream（sub:{nodeId}:xxx）按 key 哈希到固定数量的分片，每个分片一个常驻线程</li>
+ *     <li>分片线程使用 XREADGROUP BLOCK 同时阻塞读取分片内全部的响应stream</li>
+ *     <li>读到响应后，按 stream + recordId 找到等待中的 CompletableFuture 并完成它</li>
+ * </ul>
+ * agent节点响应时使用与命令相同的 recordId 写入响应stream，所以 recordId 即是请求与响应的关联键。
+ *
+ * 每个master实例使用独立的消费者组（groupName@实例id），所有实例都能读到全部响应，
+ * 由发出请求的实例完成等待；消费者组从 $ 开始消费，实例重启后不会重放历史响应，
+ * 注册前已写入的响应由 await 的 XRANGE 检查兜底；已退出实例遗留的消费者组在注册stream后由后台线程清理。
+ *
+ * 等待响应的超时由调用方指定，到期前会再用 XRANGE 兜底检查一次，避免因消费者组竞争等原因漏掉响应。
+ * 较大的响应可以分块返回，由 {@link ChunkedResponseAssembler} 边接收边组装。
+ */
+@Service
+public class StreamResponseDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(StreamResponseDispatcher.class);
+    // 超时兜底检查分块响应时最多扫描的消息条数
+    private static final int CHUNK_SCAN_COUNT = 1000;
+    // 消费者组名与实例id之间的分隔符
+    private static final String GROUP_SEPARATOR = "@";
+
+    private final RedisConnectionFactory connectionFactory;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final StreamOperations<String, Object, Object> streamOps;
+    private final FirewallProperties.Dispatcher properties;
+    private final MessageCodecRegistry messageCodecRegistry;
+    // 每个master实例独立的消费者组，保证每个实例都能读到全部响应
+    private final String groupName;
+    private final String consumerName;
+
+    // 等待中的响应 key: streamKey|recordId
+    private final ConcurrentHashMap<String, CompletableFuture<Map<Object, Object>>> pending = new ConcurrentHashMap<>();
+    // 正在组装的分块响应 key: streamKey|recordId
+    private final ConcurrentHashMap<String, ChunkedResponseAssembler> assemblers = new ConcurrentHashMap<>();
+    // 已注册的响应stream，value 用于创建消费者组
+    private final ConcurrentHashMap<String, StreamConsumer> consumers = new ConcurrentHashMap<>();
+    private final Shard[] shards;
+    private final ScheduledExecutorService timeoutScheduler;
+    // 清理已退出实例遗留的消费者组，需要多次往返Redis，不放在注册路径上执行
+    private final ExecutorService cleanupExecutor;
+    private volatile boolean running = true;
+
+    public StreamResponseDispatcher(RedisConnectionFactory connectionFactory, FirewallProperties firewallProperties,
+                                    MessageCodecRegistry messageCodecRegistry, AgentShardManager agentShardManager) {
+        this.connectionFactory = connectionFactory;
+        this.properties = firewallProperties.getDispatcher();
+        this.messageCodecRegistry = messageCodecRegistry;
+        this.groupName = properties.getGroupName() + GROUP_SEPARATOR + agentShardManager.getInstanceId();
+        this.consumerName = groupName + "_" + ManagementFactory.getRuntimeMXBean().getName();
+
+        this.redisTemplate = new RedisTemplate<>();
+        this.redisTemplate.setConnectionFactory(connectionFactory);
+        this.redisTemplate.setKeySerializer(StringRedisSerializer.UTF_8);
+        this.redisTemplate.setHashKeySerializer(StringRedisSerializer.UTF_8);
+        // 响应可能是二进制编码，按原始字节读取，由 MessageCodecRegistry 解码
+        this.redisTemplate.setHashValueSerializer(RedisSerializer.byteArray());
+        this.redisTemplate.afterPropertiesSet();
+        this.streamOps = redisTemplate.opsForStream();
+
+        int shardCount = Math.max(1, properties.getShards());
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+
+        this.timeoutScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "stream-response-timeout");
+            t.setDaemon(true);
+            return t;
+        });
+        this.cleanupExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "stream-response-group-cleanup");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 注册一个需要监听的响应stream
+     * 首次注册时创建消费者组，并把stream加入对应分片的读取列表；遗留消费者组的清理交给后台线程
+     *
+     * @param streamKey 响应stream的key，如 sub:{nodeId}:portRule
+     */
+    public void register(String streamKey) {
+        if (consumers.containsKey(streamKey)) {
+            return;
+        }
+        boolean[] created = new boolean[1];
+        consumers.computeIfAbsent(streamKey, key -> {
+            StreamConsumer consumer = new StreamConsumer(connectionFactory, key, groupName, consumerName, ReadOffset.latest());
+            shardOf(key).add(key);
+            created[0] = true;
+            return consumer;
+        });
+        if (created[0]) {
+            try {
+                cleanupExecutor.execute(() -> destroyStaleGroups(streamKey));
+            } catch (RejectedExecutionException e) {
+                log.debug("Skip cleaning stale consumer groups of stream: {}, dispatcher is shutting down", streamKey);
+            }
+        }
+    }
+
+    /**
+     * 删除已退出的master实例在响应stream上留下的消费者组
+     * 组内全部消费者空闲超过 staleGroupMillis 即视为已退出；还没有消费者的组可能属于刚启动的实例，不删除
+     */
+    private void destroyStaleGroups(String streamKey) {
+        String prefix = properties.getGroupName() + GROUP_SEPARATOR;
+        try {
+            List<String> staleGroups = streamOps.groups(streamKey).stream()
+                    .filter(group -> group.groupName().startsWith(prefix) && !group.groupName().equals(groupName))
+                    .filter(group -> group.consumerCount() > 0)
+                    .map(StreamInfo.XInfoGroup::groupName)
+                    .filter(name -> streamOps.consumers(streamKey, name).stream()
+                            .allMatch(consumer -> consumer.idleTimeMs() > properties.getStaleGroupMillis()))
+                    .collect(Collectors.toList());
+            for (String name : staleGroups) {
+                streamOps.destroyGroup(streamKey, name);
+                log.info("Destroyed stale consumer group {} of stream {}", name, streamKey);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to clean stale consumer groups of stream: {}", streamKey, e);
+        }
+    }
+
+    /**
+     * 等待指定 recordId 的响应
+     *
+     * @param streamKey 响应stream的key
+     * @param recordId  命令的 recordId，agent会使用同一个id写入响应
+     * @param timeout   最长等待时间
+     * @return 响应内容的future；超时未收到响应时以 EmptyResultException 异常完成
+     */
+    public CompletableFuture<Map<Object, Object>> await(String streamKey, RecordId recordId, Duration timeout) {
+        register(streamKey);
+
+        String pendingKey = pendingKey(streamKey, recordId);
+        CompletableFuture<Map<Object, Object>> future = new CompletableFuture<>();
+        pending.put(pendingKey, future);
+
+        // 先挂上超时和清理，后续任何一步失败都不会让等待项遗留在 pending 中
+        ScheduledFuture<?> timer = timeoutScheduler.schedule(
+                () -> expire(streamKey, recordId), timeout.toMillis(), TimeUnit.MILLISECONDS);
+        future.whenComplete((value, ex) -> {
+            pending.remove(pendingKey, future);
+            assemblers.remove(pendingKey);
+            timer.cancel(false);
+        });
+
+        // 响应可能在注册前就已经写入（消费者组从 $ 开始消费，读不到），这里用 XRANGE 检查一次；
+        // 读取或解码失败只让本次请求失败，不抛给调用方
+        try {
+            Map<Object, Object> arrived = rangeResponse(streamKey, recordId);
+            if (arrived != null) {
+                future.complete(arrived);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to check response for recordId: {} in stream: {}", recordId, streamKey, e);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 当前等待中的响应数量
+     */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 等待超时，最后再检查一次响应是否已经写入
+     * 分块响应的分块可能在注册前就已被读取丢弃，这里从 recordId 开始扫描一次响应stream补齐
+     */
+    private void expire(String streamKey, RecordId recordId) {
+        String pendingKey = pendingKey(streamKey, recordId);
+        CompletableFuture<Map<Object, Object>> future = pending.get(pendingKey);
+        if (future == null || future.isDone()) {
+            return;
+        }
+        Map<Object, Object> arrived = null;
+        try {
+            arrived = rangeResponse(streamKey, recordId);
+            if (arrived == null) {
+                scanChunks(streamKey, recordId);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to check response for recordId: {} in stream: {}", recordId, streamKey, e);
+        }
+        if (arrived != null) {
+            future.complete(arrived);
+        } else if (!future.isDone()) {
+            ChunkedResponseAssembler assembler = assemblers.get(pendingKey);
+            String detail = assembler == null ? "" : ", received chunks: " + assembler.receivedChunks();
+            future.completeExceptionally(new EmptyResultException("No response for recordId: " + recordId + " in stream: " + streamKey + detail));
+        }
+    }
+
+    /**
+     * 从 recordId 开始扫描响应stream，把属于该请求的分块交给组装器
+     */
+    private void scanChunks(String streamKey, RecordId recordId) {
+        List<MapRecord<String, Object, Object>> records = streamOps.range(streamKey,
+                Range.rightUnbounded(Range.Bound.inclusive(recordId.getValue())), Limit.limit().count(CHUNK_SCAN_COUNT));
+        if (records == null) {
+            return;
+        }
+        for (MapRecord<String, Object, Object> record : records) {
+            if (recordId.getValue().equals(requestIdOf(record))) {
+                dispatchChunk(record, recordId.getValue());
+            }
+        }
+    }
+
+    private Map<Object, Object> rangeResponse(String streamKey, RecordId recordId) {
+        List<MapRecord<String, Object, Object>> records =
+                streamOps.range(streamKey, Range.closed(recordId.getValue(), recordId.getValue()));
+        if (records == null || records.isEmpty() || records.get(0).getValue().isEmpty()) {
+            return null;
+        }
+        return decode(records.get(0).getValue());
+    }
+
+    private Map<Object, Object> decode(Map<Object, Object> raw) {
+        Map<String, byte[]> fields = new LinkedHashMap<>();
+        raw.forEach((key, value) -> fields.put(String.valueOf(key), (byte[]) value));
+        return messageCodecRegistry.decode(fields);
+    }
+
+    /**
+     * 分片线程读到响应后调用
+     */
+    private void dispatch(MapRecord<String, Object, Object> record) {
+        String requestId = requestIdOf(record);
+        if (requestId != null) {
+            dispatchChunk(record, requestId);
+            return;
+        }
+
+        CompletableFuture<Map<Object, Object>> future = pending.get(pendingKey(record.getStream(), record.getId()));
+        if (future == null) {
+            // 没有等待者：请求已超时，或是由其他master实例发出的请求（该实例从自己的消费者组读取）
+            log.debug("No pending request for recordId: {} in stream: {}", record.getId(), record.getStream());
+            return;
+        }
+        if (record.getValue() == null || record.getValue().isEmpty()) {
+            return;
+        }
+        try {
+            future.complete(decode(record.getValue()));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 分块响应：交给该请求的组装器，全部分块到齐后完成等待中的future
+     */
+    private void dispatchChunk(MapRecord<String, Object, Object> record, String requestId) {
+        String pendingKey = record.getStream() + "|" + requestId;
+        CompletableFuture<Map<Object, Object>> future = pending.get(pendingKey);
+        if (future == null || future.isDone()) {
+            log.debug("No pending request for chunk of requestId: {} in stream: {}", requestId, record.getStream());
+            return;
+        }
+        try {
+            long chunkBytes = 0;
+            for (Object value : record.getValue().values()) {
+                chunkBytes += value == null ? 0 : ((byte[]) value).length;
+            }
+            ChunkedResponseAssembler assembler = assemblers.computeIfAbsent(pendingKey,
+                    key -> new ChunkedResponseAssembler(properties.getMaxResponseBytes()));
+            Map<Object, Object> response = assembler.accept(decode(record.getValue()), chunkBytes);
+            if (response != null) {
+                future.complete(response);
+            }
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private static String requestIdOf(MapRecord<String, Object, Object> record) {
+        Object requestId = record.getValue().get(ChunkedResponseAssembler.FIELD_REQUEST_ID);
+        return requestId == null ? null : new String((byte[]) requestId, StandardCharsets.UTF_8);
+    }
+
+    private Shard shardOf(String streamKey) {
+        return shards[Math.floorMod(streamKey.hashCode(), shards.length)];
+    }
+
+    private static String pendingKey(String streamKey, RecordId recordId) {
+        return streamKey + "|" + recordId.getValue();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        for (Shard shard : shards) {
+            shard.stop();
+        }
+        // 实例退出后不再需要自己的消费者组
+        for (String streamKey : consumers.keySet()) {
+            try {
+                streamOps.destroyGroup(streamKey, groupName);
+            } catch (Exception e) {
+                log.debug("Failed to destroy consumer group {} of stream {}", groupName, streamKey, e);
+            }
+        }
+        cleanupExecutor.shutdownNow();
+        timeoutScheduler.shutdownNow();
+        pending.values().forEach(f -> f.completeExceptionally(new EmptyResultException("Response dispatcher is shutting down")));
+    }
+
+    /**
+     * 一个分片：一个常驻线程，阻塞读取分片内全部的响应stream
+     */
+    private class Shard implements Runnable {
+        private final int index;
+        private final Set<String> streamKeys = ConcurrentHashMap.newKeySet();
+        private final Object monitor = new Object();
+        private volatile Thread thread;
+
+        Shard(int index) {
+            this.index = index;
+        }
+
+        void add(String streamKey) {
+            streamKeys.add(streamKey);
+            // 线程按需启动，没有任何stream时不占用连接
+            if (thread == null) {
+                synchronized (this) {
+                    if (thread == null) {
+                        Thread t = new Thread(this, "stream-response-dispatcher-" + index);
+                        t.setDaemon(true);
+                        t.start();
+                        thread = t;
+                    }
+                }
+            }
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+
+        void stop() {
+            Thread t = thread;
+            if (t != null) {
+                t.interrupt();
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            Consumer consumer = Consumer.from(groupName, consumerName);
+            StreamReadOptions readOptions = StreamReadOptions.empty()
+                    .count(properties.getBatchSize())
+                    .block(Duration.ofMillis(properties.getBlockMillis()));
+
+            while (running) {
+                try {
+                    if (streamKeys.isEmpty()) {
+                        synchronized (monitor) {
+                            monitor.wait(properties.getBlockMillis());
+                        }
+                        continue;
+                    }
+
+                    // 新注册的stream在下一轮读取时生效，最长延迟一个 blockMillis
+                    StreamOffset<String>[] offsets = streamKeys.stream()
+                            .map(key -> StreamOffset.create(key, ReadOffset.lastConsumed()))
+                            .toArray(StreamOffset[]::new);
+
+                    List<MapRecord<String, Object, Object>> records = streamOps.read(consumer, readOptions, offsets);
+                    if (records == null || records.isEmpty()) {
+                        continue;
+                    }
+
+                    Map<String, List<RecordId>> acks = new HashMap<>();
+                    for (MapRecord<String, Object, Object> record : records) {
+                        dispatch(record);
+                        acks.computeIfAbsent(record.getStream(), k -> new ArrayList<>()).add(record.getId());
+                    }
+                    acks.forEach((key, ids) -> streamOps.acknowledge(key, groupName, ids.toArray(new RecordId[0])));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    if (!running) {
+                        return;
+                    }
+                    log.error("Stream response dispatcher shard {} read failed", index, e);
+                    recreateGroupsIfMissing(e);
+                    try {
+                        Thread.sleep(properties.getBlockMillis());
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * stream被删除后消费者组也会丢失（NOGROUP），重新创建
+         */
+        private void recreateGroupsIfMissing(Exception e) {
+            String message = String.valueOf(e.getMessage()) + (e.getCause() != null ? e.getCause().getMessage() : "");
+            if (!message.contains("NOGROUP")) {
+                return;
+            }
+            for (String key : streamKeys) {
+                consumers.put(key, new StreamConsumer(connectionFactory, key, groupName, consumerName, ReadOffset.latest()));
+            }
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.zeta.firewall.util;
+
+/**
+ * IP地址的数值表示
+ *
+ * 地址以128位无符号整数保存在 high、low 两个long中，IPv4 地址只使用 low 的低32位，
+ * 同一版本的地址可以直接按数值比较大小。
+ * 解析完全在字符串上逐字符完成，不经过 InetAddress，不会触发DNS查询；只做校验时不创建任何对象。
+ */
+public final class IpAddress implements Comparable<IpAddress> {
+    public static final int IPV4 = 4;
+    public static final int IPV6 = 6;
+    /** 无效地址 */
+    static final int INVALID = 0;
+
+    private static final int IPV4_MAX_LENGTH = 15;
+
+    private final int version;
+    private final long high;
+    private final long low;
+
+    IpAddress(int version, long high, long low) {
+        this.version = version;
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * 解析IP地址，不支持CIDR
+     *
+     * @param ip IP地址字符串
+     * @return IP地址，无效时返回null
+     */
+    public static IpAddress parse(String ip) {
+        if (ip == null) {
+            return null;
+        }
+        long[] value = new long[2];
+        int version = parse(ip, 0, ip.length(), value);
+        return version == INVALID ? null : new IpAddress(version, value[0], value[1]);
+    }
+
+    /**
+     * 解析 ip 中 [from, to) 范围内的地址
+     *
+     * 与 InetAddress 接受的IP字面量保持一致：
+     * <ul>
+     *     <li>IPv4 支持简写形式，如 "192.168.1"（最后一段占满剩余字节）。</li>
+     *     <li>IPv6 支持 "::" 压缩、末尾内嵌的IPv4地址、方括号和数字形式的zone id。</li>
+     *     <li>IPv4映射的IPv6地址（::ffff:a.b.c.d）视为IPv4地址。</li>
+     * </ul>
+     * 主机名一律视为无效。
+     *
+     * @param value 不为null时写入解析结果 {high, low}
+     * @return IPV4、IPV6，无效时返回 INVALID
+     */
+    static int parse(String ip, int from, int to, long[] value) {
+        if (from >= to) {
+            return INVALID;
+        }
+        if (ip.charAt(from) == '[') {
+            if (to - from < 2 || ip.charAt(to - 1) != ']' || indexOf(ip, ':', from + 1, to - 1) < 0) {
+                return INVALID;
+            }
+            return parseIpv6(ip, from + 1, to - 1, value);
+        }
+        if (indexOf(ip, ':', from, to) >= 0) {
+            return parseIpv6(ip, from, to, value);
+        }
+        long ipv4 = parseIpv4(ip, from, to, false);
+        if (ipv4 < 0) {
+            return INVALID;
+        }
+        if (value != null) {
+            value[0] = 0;
+            value[1] = ipv4;
+        }
+        return IPV4;
+    }
+
+    /**
+     * 解析IPv4地址
+     *
+     * @param dottedQuad 是否只接受 a.b.c.d 四段形式
+     * @return 32位地址，无效时返回-1
+     */
+    static long parseIpv4(String ip, int from, int to, boolean dottedQuad) {
+        int length = to - from;
+        if (length <= 0 || length > IPV4_MAX_LENGTH) {
+            return -1;
+        }
+        long result = 0;
+        long part = 0;
+        int dots = 0;
+        boolean empty = true;
+        for (int i = from; i < to; i++) {
+            char c = ip.charAt(i);
+            if (c == '.') {
+                if (empty || part > 0xff || dots == 3) {
+                    return -1;
+                }
+                result = (result << 8) | part;
+                dots++;
+                part = 0;
+                empty = true;
+            } else if (c >= '0' && c <= '9') {
+                part = part * 10 + (c - '0');
+                if (part > 0xffffffffL) {
+                    return -1;
+                }
+                empty = false;
+            } else {
+                return -1;
+            }
+        }
+        if (empty || (dottedQuad && dots != 3)) {
+            return -1;
+        }
+        // 最后一段占满剩余的字节
+        int remainingBits = (4 - dots) * 8;
+        if (part >= (1L << remainingBits)) {
+            return -1;
+        }
+        return (result << remainingBits) | part;
+    }
+
+    private static int parseIpv6(String ip, int from, int to, long[] value) {
+        // zone id 只支持数字形式，解析时忽略
+        int percent = indexOf(ip, '%', from, to);
+        if (percent >= 0) {
+            if (percent == to - 1) {
+                return INVALID;
+            }
+            for (int i = percent + 1; i < to; i++) {
+                char c = ip.charAt(i);
+                if (c < '0' || c > '9') {
+                    return INVALID;
+                }
+            }
+            to = percent;
+        }
+        if (to - from < 2) {
+            return INVALID;
+        }
+        int i = from;
+        if (ip.charAt(i) == ':') {
+            // 以 ':' 开头时必须是 "::"
+            if (ip.charAt(i + 1) != ':') {
+                return INVALID;
+            }
+            i++;
+        }
+
+        // "::" 之前的部分
+        long headHigh = 0;
+        long headLow = 0;
+        int headGroups = -1;
+        // 当前部分（没有 "::" 时就是整个地址）
+        long high = 0;
+        long low = 0;
+        int groups = 0;
+        int group = 0;
+        int digits = 0;
+        boolean ipv4Tail = false;
+        for (; i < to; i++) {
+            char c = ip.charAt(i);
+            int digit = hexDigit(c);
+            if (digit >= 0) {
+                if (++digits > 4) {
+                    return INVALID;
+                }
+                group = (group << 4) | digit;
+            } else if (c == ':') {
+                if (digits == 0) {
+                    // "::" 只能出现一次
+                    if (headGroups >= 0 || ip.charAt(i - 1) != ':') {
+                        return INVALID;
+                    }
+                    headGroups = groups;
+                    headHigh = high;
+                    headLow = low;
+                    high = 0;
+                    low = 0;
+                    continue;
+                }
+                if (groups == 8 || i + 1 == to) {
+                    return INVALID;
+                }
+                high = (high << 16) | (low >>> 48);
+                low = (low << 16) | group;
+                groups++;
+                group = 0;
+                digits = 0;
+            } else if (c == '.') {
+                // 末尾内嵌的IPv4地址，占两组
+                long ipv4 = digits == 0 ? -1 : parseIpv4(ip, i - digits, to, true);
+                if (ipv4 < 0 || groups + 2 > 8) {
+                    return INVALID;
+                }
+                high = (high << 32) | (low >>> 32);
+                low = (low << 32) | ipv4;
+                groups += 2;
+                ipv4Tail = true;
+                break;
+            } else {
+                return INVALID;
+            }
+        }
+        if (!ipv4Tail && digits > 0) {
+            if (groups == 8) {
+                return INVALID;
+            }
+            high = (high << 16) | (low >>> 48);
+            low = (low << 16) | group;
+            groups++;
+        }
+
+        if (headGroups < 0) {
+            if (groups != 8) {
+                return INVALID;
+            }
+        } else {
+            if (groups > 7) {
+                return INVALID;
+            }
+            // 前半部分左移到最高位，"::" 代表的组补0
+            int shift = 16 * (8 - headGroups);
+            if (shift < 64) {
+                high |= (headHigh << shift) | (headLow >>> (64 - shift));
+                low |= headLow << shift;
+            } else if (shift < 128) {
+                high |= headLow << (shift - 64);
+            }
+        }
+
+        if (high == 0 && (low >>> 32) == 0xffffL) {
+            // IPv4映射地址
+            if (value != null) {
+                value[0] = 0;
+                value[1] = low & 0xffffffffL;
+            }
+            return IPV4;
+        }
+        if (value != null) {
+            value[0] = high;
+            value[1] = low;
+        }
+        return IPV6;
+    }
+
+    /**
+     * 解析CIDR前缀长度
+     *
+     * @return 前缀长度，无效时返回-1
+     */
+    static int parsePrefixLength(String text, int from, int to) {
+        if (from >= to || to - from > 3) {
+            return -1;
+        }
+        int prefix = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            prefix = prefix * 10 + (c - '0');
+        }
+        return prefix;
+    }
+
+    /**
+     * @return 该版本地址的位数，即最大前缀长度
+     */
+    static int bitLength(int version) {
+        return version == IPV4 ? 32 : 128;
+    }
+
+    static int indexOf(String text, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public boolean isIpv4() {
+        return version == IPV4;
+    }
+
+    /**
+     * @return 地址的高64位，IPv4地址为0
+     */
+    public long getHigh() {
+        return high;
+    }
+
+    /**
+     * @return 地址的低64位，IPv4地址为32位地址值
+     */
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * 先按版本（IPv4在前）再按数值（无符号）比较
+     */
+    @Override
+    public int compareTo(IpAddress other) {
+        if (version != other.version) {
+            return Integer.compare(version, other.version);
+        }
+        int result = Long.compareUnsigned(high, other.high);
+        return result != 0 ? result : Long.compareUnsigned(low, other.low);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IpAddress)) {
+            return false;
+        }
+        IpAddress other = (IpAddress) o;
+        return version == other.version && high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * version + Long.hashCode(high)) + Long.hashCode(low);
+    }
+
+    /**
+     * IPv4 为点分十进制，IPv6 为不压缩的8组十六进制（与 Inet6Address.getHostAddress 一致）
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(39);
+        if (isIpv4()) {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                sb.append((low >>> shift) & 0xff);
+                if (shift > 0) {
+                    sb.append('.');
+                }
+            }
+            return sb.toString();
+        }
+        for (int i = 0; i < 8; i++) {
+            long half = i < 4 ? high : low;
+            int shift = 48 - 16 * (i % 4);
+            sb.append(Long.toHexString((half >>> shift) & 0xffff));
+            if (i < 7) {
+                sb.append(':');
+            }
+        }
+        return sb.toString();
+    }
+}
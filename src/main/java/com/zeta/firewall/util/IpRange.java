@@ -0,0 +1,135 @@
+package com.zeta.firewall.util;
+
+/**
+ * IP地址区间
+ *
+ * 单个地址、CIDR（如 "192.168.1.0/24"）和起止地址（如 "10.0.0.1-10.0.0.100"）统一表示为闭区间，
+ * 区间的起止地址为同一版本，可以直接做包含判断和比较。
+ */
+public final class IpRange {
+    private final IpAddress start;
+    private final IpAddress end;
+
+    private IpRange(IpAddress start, IpAddress end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * 解析IP地址区间，支持 "a"、"a/prefix"、"a-b"
+     *
+     * @param text 区间字符串
+     * @return IP地址区间，无效（格式错误、前缀长度超出范围、起止地址版本不同或起始大于结束）时返回null
+     */
+    public static IpRange parse(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        int length = text.length();
+        long[] value = new long[2];
+
+        int dash = IpAddress.indexOf(text, '-', 0, length);
+        if (dash >= 0) {
+            int startVersion = IpAddress.parse(text, 0, dash, value);
+            if (startVersion == IpAddress.INVALID) {
+                return null;
+            }
+            IpAddress start = new IpAddress(startVersion, value[0], value[1]);
+            int endVersion = IpAddress.parse(text, dash + 1, length, value);
+            if (endVersion != startVersion) {
+                return null;
+            }
+            IpAddress end = new IpAddress(endVersion, value[0], value[1]);
+            return start.compareTo(end) <= 0 ? new IpRange(start, end) : null;
+        }
+
+        int slash = IpAddress.indexOf(text, '/', 0, length);
+        int version = IpAddress.parse(text, 0, slash < 0 ? length : slash, value);
+        if (version == IpAddress.INVALID) {
+            return null;
+        }
+        if (slash < 0) {
+            IpAddress address = new IpAddress(version, value[0], value[1]);
+            return new IpRange(address, address);
+        }
+        int prefix = IpAddress.parsePrefixLength(text, slash + 1, length);
+        if (prefix < 0 || prefix > IpAddress.bitLength(version)) {
+            return null;
+        }
+        return ofCidr(version, value[0], value[1], prefix);
+    }
+
+    private static IpRange ofCidr(int version, long high, long low, int prefix) {
+        long maskHigh;
+        long maskLow;
+        if (version == IpAddress.IPV4) {
+            maskLow = prefix == 0 ? 0 : (0xffffffffL << (32 - prefix)) & 0xffffffffL;
+            return new IpRange(new IpAddress(version, 0, low & maskLow),
+                    new IpAddress(version, 0, (low & maskLow) | (~maskLow & 0xffffffffL)));
+        }
+        if (prefix == 0) {
+            maskHigh = 0;
+            maskLow = 0;
+        } else if (prefix <= 64) {
+            maskHigh = -1L << (64 - prefix);
+            maskLow = 0;
+        } else {
+            maskHigh = -1L;
+            maskLow = -1L << (128 - prefix);
+        }
+        return new IpRange(new IpAddress(version, high & maskHigh, low & maskLow),
+                new IpAddress(version, (high & maskHigh) | ~maskHigh, (low & maskLow) | ~maskLow));
+    }
+
+    /**
+     * @param address IP地址
+     * @return 地址是否在区间内，版本不同时返回false
+     */
+    public boolean contains(IpAddress address) {
+        return address != null && address.getVersion() == getVersion()
+                && start.compareTo(address) <= 0 && end.compareTo(address) >= 0;
+    }
+
+    /**
+     * @param other IP地址区间
+     * @return 两个区间是否有交集，版本不同时返回false
+     */
+    public boolean overlaps(IpRange other) {
+        return other != null && other.getVersion() == getVersion()
+                && start.compareTo(other.end) <= 0 && other.start.compareTo(end) <= 0;
+    }
+
+    public int getVersion() {
+        return start.getVersion();
+    }
+
+    public IpAddress getStart() {
+        return start;
+    }
+
+    public IpAddress getEnd() {
+        return end;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IpRange)) {
+            return false;
+        }
+        IpRange other = (IpRange) o;
+        return start.equals(other.start) && end.equals(other.end);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * start.hashCode() + end.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return start.equals(end) ? start.toString() : start + "-" + end;
+    }
+}
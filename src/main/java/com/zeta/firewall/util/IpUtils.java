@@ -1,12 +1,9 @@
 package com.zeta.firewall.util;
 
-import java.net.Inet4Address;
-import java.net.Inet6Address;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
-
 /**
  * IP地址工具类
+ *
+ * 校验由 IpAddress 逐字符完成，不经过 InetAddress，主机名不会触发DNS查询，校验过程不创建对象
  */
 public class IpUtils {
 
@@ -20,39 +17,7 @@ public class IpUtils {
         if (ip == null || ip.isEmpty()) {
             return false;
         }
-        
-        // 处理CIDR格式
-        String ipAddress = ip;
-        if (ip.contains("/")) {
-            String[] parts = ip.split("/");
-            if (parts.length != 2) {
-                return false;
-            }
-            
-            try {
-                int prefixLength = Integer.parseInt(parts[1]);
-                // IPv4前缀长度范围：0-32，IPv6前缀长度范围：0-128
-                if (prefixLength < 0 || prefixLength > 128) {
-                    return false;
-                }
-                
-                // 如果前缀长度超过32且不是IPv6地址，则无效
-                if (prefixLength > 32 && !isIpv6Address(parts[0])) {
-                    return false;
-                }
-            } catch (NumberFormatException e) {
-                return false;
-            }
-            
-            ipAddress = parts[0];
-        }
-        
-        try {
-            InetAddress.getByName(ipAddress);
-            return true;
-        } catch (UnknownHostException e) {
-            return false;
-        }
+        return versionOf(ip, 0, ip.length()) != IpAddress.INVALID;
     }
 
     /**
@@ -65,34 +30,7 @@ public class IpUtils {
         if (ip == null || ip.isEmpty()) {
             return false;
         }
-        
-        // 处理CIDR格式
-        String ipAddress = ip;
-        if (ip.contains("/")) {
-            String[] parts = ip.split("/");
-            if (parts.length != 2) {
-                return false;
-            }
-            
-            try {
-                int prefixLength = Integer.parseInt(parts[1]);
-                // IPv4前缀长度范围：0-32
-                if (prefixLength < 0 || prefixLength > 32) {
-                    return false;
-                }
-            } catch (NumberFormatException e) {
-                return false;
-            }
-            
-            ipAddress = parts[0];
-        }
-        
-        try {
-            InetAddress inetAddress = InetAddress.getByName(ipAddress);
-            return inetAddress instanceof Inet4Address;
-        } catch (UnknownHostException e) {
-            return false;
-        }
+        return versionOf(ip, 0, ip.length()) == IpAddress.IPV4;
     }
 
     /**
@@ -105,34 +43,7 @@ public class IpUtils {
         if (ip == null || ip.isEmpty()) {
             return false;
         }
-        
-        // 处理CIDR格式
-        String ipAddress = ip;
-        if (ip.contains("/")) {
-            String[] parts = ip.split("/");
-            if (parts.length != 2) {
-                return false;
-            }
-            
-            try {
-                int prefixLength = Integer.parseInt(parts[1]);
-                // IPv6前缀长度范围：0-128
-                if (prefixLength < 0 || prefixLength > 128) {
-                    return false;
-                }
-            } catch (NumberFormatException e) {
-                return false;
-            }
-            
-            ipAddress = parts[0];
-        }
-        
-        try {
-            InetAddress inetAddress = InetAddress.getByName(ipAddress);
-            return inetAddress instanceof Inet6Address;
-        } catch (UnknownHostException e) {
-            return false;
-        }
+        return versionOf(ip, 0, ip.length()) == IpAddress.IPV6;
     }
     
     /**
@@ -142,71 +53,68 @@ public class IpUtils {
      * @return 是否有效
      */
     public static boolean isValidCidr(String cidr) {
-        if (cidr == null || cidr.isEmpty() || !cidr.contains("/")) {
-            return false;
-        }
-        
-        String[] parts = cidr.split("/");
-        if (parts.length != 2) {
-            return false;
-        }
-        
-        String ipAddress = parts[0];
-        
-        try {
-            int prefixLength = Integer.parseInt(parts[1]);
-            InetAddress inetAddress = InetAddress.getByName(ipAddress);
-            
-            if (inetAddress instanceof Inet4Address) {
-                // IPv4前缀长度范围：0-32
-                return prefixLength >= 0 && prefixLength <= 32;
-            } else if (inetAddress instanceof Inet6Address) {
-                // IPv6前缀长度范围：0-128
-                return prefixLength >= 0 && prefixLength <= 128;
-            }
-            
-            return false;
-        } catch (NumberFormatException | UnknownHostException e) {
+        if (cidr == null || cidr.isEmpty() || cidr.indexOf('/') < 0) {
             return false;
         }
+        return versionOf(cidr, 0, cidr.length()) != IpAddress.INVALID;
     }
 
 
     /**
      * 根据传入的ip和offerIpType判断是否匹配
      *
-     * @param ip ip
+     * @param ip ip，多个用逗号分隔
      * @param offerIpType offerIpType
      * @return 是否匹配
      */
     public static boolean isMappingIpType(String ip, String offerIpType){
 
-        boolean result = true;
-
         if (offerIpType == null || offerIpType.isEmpty() || ip == null || ip.isEmpty()) {
             return false;
         }
 
-        String[] ipArr = ip.split(",");
-        for (String singleIp : ipArr) {
-
-            if (!isValidIpAddress(singleIp)) {
-                return false;
-            }
+        int expectedVersion;
+        if (offerIpType.equals("ipv4")) {
+            expectedVersion = IpAddress.IPV4;
+        } else if (offerIpType.equals("ipv6")) {
+            expectedVersion = IpAddress.IPV6;
+        } else {
+            return false;
+        }
 
-            if (offerIpType.equals("ipv4")) {
-                result=  isIpv4Address(singleIp);
-            } else if (offerIpType.equals("ipv6")) {
-                result =  isIpv6Address(singleIp);
-            } else {
+        int from = 0;
+        while (true) {
+            int comma = ip.indexOf(',', from);
+            int to = comma < 0 ? ip.length() : comma;
+            if (versionOf(ip, from, to) != expectedVersion) {
                 return false;
             }
-
-            if (!result) {
-                break;
+            if (comma < 0) {
+                return true;
             }
+            from = comma + 1;
         }
+    }
 
-        return result;
+    /**
+     * 判断 ip 中 [from, to) 范围内的地址（可带CIDR前缀长度）的版本
+     * 前缀长度超出该版本的范围（IPv4：0-32，IPv6：0-128）时视为无效
+     *
+     * @return IpAddress.IPV4、IpAddress.IPV6，无效时返回 IpAddress.INVALID
+     */
+    private static int versionOf(String ip, int from, int to) {
+        int slash = IpAddress.indexOf(ip, '/', from, to);
+        if (slash < 0) {
+            return IpAddress.parse(ip, from, to, null);
+        }
+        int prefix = IpAddress.parsePrefixLength(ip, slash + 1, to);
+        if (prefix < 0) {
+            return IpAddress.INVALID;
+        }
+        int version = IpAddress.parse(ip, from, slash, null);
+        if (version == IpAddress.INVALID || prefix > IpAddress.bitLength(version)) {
+            return IpAddress.INVALID;
+        }
+        return version;
     }
-}
\ No newline at end of file
+}
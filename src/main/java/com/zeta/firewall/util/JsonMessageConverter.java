@@ -1,8 +1,10 @@
 package com.zeta.firewall.util;
 
 import cn.hutool.core.date.DatePattern;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
@@ -151,6 +153,10 @@ public class JsonMessageConverter {
             map.put("ts", message.getTs().toString());
         }
 
+        if (message.getPriority() != null) {
+            map.put("priority", message.getPriority().name());
+        }
+
         // 复杂对象转为JSON字符串
         try {
             if (message.getRequestParams() != null) {
@@ -175,4 +181,53 @@ public class JsonMessageConverter {
 
         return map;
     }
-}
\ No newline at end of file
+
+    /**
+     * 读取agent节点响应中的复杂字段（如 data）
+     * JSON编码的响应中该字段为JSON字符串，二进制编码的响应中该字段已解码为 JsonNode
+     *
+     * @param data 响应中的字段值
+     * @param type 目标类型
+     * @return 解析结果，字段不存在时返回null
+     */
+    public static <T> T readData(Object data, TypeReference<T> type) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            if (data instanceof JsonNode) {
+                return objectMapper.readerFor(type).readValue((JsonNode) data);
+            }
+            String json = String.valueOf(data);
+            if (json.equals("null")) {
+                return null;
+            }
+            return objectMapper.readValue(json, type);
+        } catch (Exception e) {
+            log.error("Failed to read response data: {}", e.getMessage());
+            throw new RuntimeException("Response data parsing failed", e);
+        }
+    }
+
+    /**
+     * 将agent节点响应中的复杂字段读取为 JsonNode
+     *
+     * @param data 响应中的字段值，JSON字符串或 JsonNode
+     * @return JsonNode，字段不存在时返回null
+     */
+    public static JsonNode readTree(Object data) {
+        if (data == null || data instanceof JsonNode) {
+            return (JsonNode) data;
+        }
+        String json = String.valueOf(data);
+        if (json.equals("null")) {
+            return null;
+        }
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception e) {
+            log.error("Failed to read response data: {}", e.getMessage());
+            throw new RuntimeException("Response data parsing failed", e);
+        }
+    }
+}
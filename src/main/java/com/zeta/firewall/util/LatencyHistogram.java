@@ -0,0 +1,161 @@
+package com.zeta.firewall.util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 滚动窗口的延迟直方图
+ *
+ * 按固定的桶边界（毫秒）计数，保留当前窗口和上一个窗口的数据，统计结果基于两个窗口合并后的计数，
+ * 因此反映的是最近 1~2 个窗口内的延迟分布。分位数取所在桶的上界，结果偏保守。
+ */
+public class LatencyHistogram {
+    /** 桶的上界（毫秒），最后一个桶之后的样本计入溢出桶 */
+    public static final long[] BUCKET_BOUNDS = {
+            5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 30000, 60000
+    };
+
+    private final long windowMillis;
+    private long windowStart;
+    private long[] current = new long[BUCKET_BOUNDS.length + 1];
+    private long[] previous = new long[BUCKET_BOUNDS.length + 1];
+    private long currentMax;
+    private long previousMax;
+    private long currentTimeouts;
+    private long previousTimeouts;
+
+    public LatencyHistogram(long windowMillis, long now) {
+        this.windowMillis = windowMillis;
+        this.windowStart = now;
+    }
+
+    /**
+     * 记录一次响应延迟
+     *
+     * @param latencyMillis 延迟（毫秒）
+     * @param now           当前时间戳（毫秒）
+     */
+    public synchronized void record(long latencyMillis, long now) {
+        rotate(now);
+        current[bucketOf(latencyMillis)]++;
+        currentMax = Math.max(currentMax, latencyMillis);
+    }
+
+    /**
+     * 记录一次超时，超时没有延迟数据，只计数
+     *
+     * @param now 当前时间戳（毫秒）
+     */
+    public synchronized void recordTimeout(long now) {
+        rotate(now);
+        currentTimeouts++;
+    }
+
+    /**
+     * 窗口内的样本数量
+     */
+    public synchronized long count(long now) {
+        rotate(now);
+        long count = 0;
+        for (int i = 0; i < current.length; i++) {
+            count += current[i] + previous[i];
+        }
+        return count;
+    }
+
+    /**
+     * 窗口内的超时次数
+     */
+    public synchronized long timeouts(long now) {
+        rotate(now);
+        return currentTimeouts + previousTimeouts;
+    }
+
+    /**
+     * 窗口内的最大延迟
+     */
+    public synchronized long max(long now) {
+        rotate(now);
+        return Math.max(currentMax, previousMax);
+    }
+
+    /**
+     * 计算分位数
+     *
+     * @param quantile 分位，如 0.99
+     * @param now      当前时间戳（毫秒）
+     * @return 分位数所在桶的上界（毫秒），溢出桶返回窗口内的最大延迟，没有样本时返回0
+     */
+    public synchronized long percentile(double quantile, long now) {
+        rotate(now);
+        long total = 0;
+        for (int i = 0; i < current.length; i++) {
+            total += current[i] + previous[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < current.length; i++) {
+            seen += current[i] + previous[i];
+            if (seen >= rank) {
+                return i < BUCKET_BOUNDS.length ? BUCKET_BOUNDS[i] : Math.max(currentMax, previousMax);
+            }
+        }
+        return Math.max(currentMax, previousMax);
+    }
+
+    /**
+     * 各个桶的计数
+     *
+     * @return key为桶的上界（溢出桶为 Long.MAX_VALUE），value为计数，只包含计数不为0的桶
+     */
+    public synchronized Map<Long, Long> buckets(long now) {
+        rotate(now);
+        Map<Long, Long> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < current.length; i++) {
+            long count = current[i] + previous[i];
+            if (count > 0) {
+                buckets.put(i < BUCKET_BOUNDS.length ? BUCKET_BOUNDS[i] : Long.MAX_VALUE, count);
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * 窗口到期时滚动：当前窗口变为上一个窗口；超过两个窗口没有数据时全部清空
+     */
+    private void rotate(long now) {
+        long elapsed = now - windowStart;
+        if (elapsed < windowMillis) {
+            return;
+        }
+        if (elapsed < 2 * windowMillis) {
+            long[] recycled = previous;
+            previous = current;
+            current = recycled;
+            Arrays.fill(current, 0);
+            previousMax = currentMax;
+            previousTimeouts = currentTimeouts;
+        } else {
+            Arrays.fill(current, 0);
+            Arrays.fill(previous, 0);
+            previousMax = 0;
+            previousTimeouts = 0;
+        }
+        currentMax = 0;
+        currentTimeouts = 0;
+        windowStart = now - (elapsed % windowMillis);
+    }
+
+    private static int bucketOf(long latencyMillis) {
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            if (latencyMillis <= BUCKET_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS.length;
+    }
+}
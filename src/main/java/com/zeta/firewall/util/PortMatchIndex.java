@@ -0,0 +1,143 @@
+package com.zeta.firewall.util;
+
+import com.zeta.firewall.model.entity.PortRule;
+import java.util.*;
+
+/**
+ * 端口规则的匹配索引
+ *
+ * 按 (agentId, 协议) 分组，把每条端口规则的端口（"80"、"1000-2000"、"22,80,443"）解析为区间，
+ * 再把所有区间的端点切分成互不重叠的基本区间，每个基本区间记录覆盖它的端口规则。
+ * 查询某个端口时二分查找所在的基本区间，端口按数值精确匹配；协议为 tcp/udp 的规则同时登记到 tcp 和 udp。
+ * 构建 O(规则数 * log)，单次查询 O(log 区间数)。
+ */
+public class PortMatchIndex {
+
+    private final Map<String, Segments> segmentsByKey;
+
+    private PortMatchIndex(Map<String, Segments> segmentsByKey) {
+        this.segmentsByKey = segmentsByKey;
+    }
+
+    /**
+     * 为端口规则构建匹配索引，端口格式无效的规则会被忽略
+     *
+     * @param portRules 端口规则
+     * @return 匹配索引
+     */
+    public static PortMatchIndex of(Collection<PortRule> portRules) {
+        Map<String, List<Range>> rangesByKey = new HashMap<>();
+        for (PortRule portRule : portRules) {
+            if (portRule.getAgentId() == null || portRule.getProtocol() == null || portRule.getPort() == null) {
+                continue;
+            }
+            PortRangeSet ranges = PortRangeSet.parse(portRule.getPort());
+            for (String protocol : protocolsOf(portRule.getProtocol())) {
+                List<Range> list = rangesByKey.computeIfAbsent(key(portRule.getAgentId(), protocol), k -> new ArrayList<>());
+                for (int i = 0; i < ranges.rangeCount(); i++) {
+                    list.add(new Range(ranges.start(i), ranges.end(i), portRule));
+                }
+            }
+        }
+        Map<String, Segments> segmentsByKey = new HashMap<>();
+        rangesByKey.forEach((key, ranges) -> segmentsByKey.put(key, Segments.build(ranges)));
+        return new PortMatchIndex(segmentsByKey);
+    }
+
+    /**
+     * 查询匹配指定端口的端口规则
+     *
+     * @param agentId  节点id
+     * @param protocol 协议，tcp 或 udp
+     * @param port     端口号
+     * @return 匹配的端口规则，没有时返回空列表
+     */
+    public List<PortRule> match(String agentId, String protocol, Integer port) {
+        if (agentId == null || protocol == null || port == null) {
+            return Collections.emptyList();
+        }
+        Segments segments = segmentsByKey.get(key(agentId, protocol.trim().toLowerCase()));
+        return segments == null ? Collections.emptyList() : segments.match(port);
+    }
+
+    static List<String> protocolsOf(String protocol) {
+        String normalized = protocol.trim().toLowerCase();
+        if (normalized.contains("/")) {
+            List<String> protocols = new ArrayList<>();
+            for (String p : normalized.split("/")) {
+                if (!p.trim().isEmpty()) {
+                    protocols.add(p.trim());
+                }
+            }
+            return protocols;
+        }
+        return Collections.singletonList(normalized);
+    }
+
+    static String key(String agentId, String protocol) {
+        return agentId + "|" + protocol;
+    }
+
+    private static class Range {
+        private final int start;
+        private final int end;
+        private final PortRule portRule;
+
+        Range(int start, int end, PortRule portRule) {
+            this.start = start;
+            this.end = end;
+            this.portRule = portRule;
+        }
+    }
+
+    /**
+     * 同一 (agentId, 协议) 下互不重叠的基本区间
+     * points[i] 为第 i 个基本区间的起点，第 i 个基本区间为 [points[i], points[i + 1] - 1]
+     */
+    private static class Segments {
+        private final int[] points;
+        private final List<List<PortRule>> rules;
+
+        private Segments(int[] points, List<List<PortRule>> rules) {
+            this.points = points;
+            this.rules = rules;
+        }
+
+        static Segments build(List<Range> ranges) {
+            TreeSet<Integer> boundaries = new TreeSet<>();
+            for (Range range : ranges) {
+                boundaries.add(range.start);
+                boundaries.add(range.end + 1);
+            }
+            int[] points = boundaries.stream().mapToInt(Integer::intValue).toArray();
+            List<List<PortRule>> rules = new ArrayList<>(points.length);
+            for (int i = 0; i < points.length; i++) {
+                rules.add(new ArrayList<>(1));
+            }
+            for (Range range : ranges) {
+                int from = Arrays.binarySearch(points, range.start);
+                int to = Arrays.binarySearch(points, range.end + 1);
+                for (int i = from; i < to; i++) {
+                    List<PortRule> segmentRules = rules.get(i);
+                    // 同一规则的多个区间可能覆盖同一基本区间（如 "80,80"）
+                    if (segmentRules.isEmpty() || segmentRules.get(segmentRules.size() - 1) != range.portRule) {
+                        segmentRules.add(range.portRule);
+                    }
+                }
+            }
+            return new Segments(points, rules);
+        }
+
+        List<PortRule> match(int port) {
+            int index = Arrays.binarySearch(points, port);
+            if (index < 0) {
+                // 插入点的前一个基本区间
+                index = -index - 2;
+            }
+            if (index < 0) {
+                return Collections.emptyList();
+            }
+            return Collections.unmodifiableList(rules.get(index));
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.zeta.firewall.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 端口区间集合
+ *
+ * 以有序、互不重叠且互不相邻的闭区间表示一组端口，"1-65535" 只占一个区间，而不是 65535 个端口。
+ * 不可变，集合运算返回新的对象；内存与序列化后的大小只与区间数有关。
+ */
+@Slf4j
+public final class PortRangeSet {
+    public static final int MIN_PORT = 1;
+    public static final int MAX_PORT = 65535;
+
+    private static final PortRangeSet EMPTY = new PortRangeSet(new int[0], new int[0]);
+
+    // starts[i]、ends[i] 为第 i 个区间的起止端口（含）
+    private final int[] starts;
+    private final int[] ends;
+
+    private PortRangeSet(int[] starts, int[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    public static PortRangeSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 单个区间
+     *
+     * @param start 起始端口（含）
+     * @param end   结束端口（含）
+     * @return 端口区间集合
+     */
+    public static PortRangeSet of(int start, int end) {
+        if (start < MIN_PORT || end > MAX_PORT || start > end) {
+            throw new IllegalArgumentException("Invalid port range: " + start + "-" + end);
+        }
+        return new PortRangeSet(new int[]{start}, new int[]{end});
+    }
+
+    /**
+     * 解析端口规则中的端口，支持 "80"、"1000-2000"、"22,80,1000-2000"
+     * 无效的部分（非数字、超出 1-65535、起始大于结束）会被忽略
+     *
+     * @param port 端口
+     * @return 端口区间集合
+     */
+    public static PortRangeSet parse(String port) {
+        if (port == null || port.trim().isEmpty()) {
+            return EMPTY;
+        }
+        List<int[]> ranges = new ArrayList<>();
+        for (String part : port.split(",")) {
+            part = part.trim();
+            if (part.isEmpty()) {
+                continue;
+            }
+            try {
+                int start;
+                int end;
+                int dash = part.indexOf('-');
+                if (dash >= 0) {
+                    start = Integer.parseInt(part.substring(0, dash).trim());
+                    end = Integer.parseInt(part.substring(dash + 1).trim());
+                } else {
+                    start = end = Integer.parseInt(part);
+                }
+                if (start < MIN_PORT || end > MAX_PORT || start > end) {
+                    log.warn("Invalid port range: {}", part);
+                    continue;
+                }
+                ranges.add(new int[]{start, end});
+            } catch (NumberFormatException e) {
+                log.warn("Invalid port format: {}", part);
+            }
+        }
+        return normalize(ranges);
+    }
+
+    /**
+     * 是否包含指定端口
+     */
+    public boolean contains(int port) {
+        int index = Arrays.binarySearch(starts, port);
+        if (index >= 0) {
+            return true;
+        }
+        // 插入点的前一个区间
+        index = -index - 2;
+        return index >= 0 && port <= ends[index];
+    }
+
+    /**
+     * 并集
+     */
+    public PortRangeSet union(PortRangeSet other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return other;
+        }
+        List<int[]> ranges = new ArrayList<>(rangeCount() + other.rangeCount());
+        for (int i = 0; i < starts.length; i++) {
+            ranges.add(new int[]{starts[i], ends[i]});
+        }
+        for (int i = 0; i < other.starts.length; i++) {
+            ranges.add(new int[]{other.starts[i], other.ends[i]});
+        }
+        return normalize(ranges);
+    }
+
+    /**
+     * 交集
+     */
+    public PortRangeSet intersect(PortRangeSet other) {
+        List<int[]> ranges = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < starts.length && j < other.starts.length) {
+            int start = Math.max(starts[i], other.starts[j]);
+            int end = Math.min(ends[i], other.ends[j]);
+            if (start <= end) {
+                ranges.add(new int[]{start, end});
+            }
+            // 先结束的区间不会再与后面的区间相交
+            if (ends[i] < other.ends[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return normalize(ranges);
+    }
+
+    public boolean isEmpty() {
+        return starts.length == 0;
+    }
+
+    /**
+     * 区间数
+     */
+    public int rangeCount() {
+        return starts.length;
+    }
+
+    /**
+     * 端口数
+     */
+    public long size() {
+        long size = 0;
+        for (int i = 0; i < starts.length; i++) {
+            size += ends[i] - starts[i] + 1;
+        }
+        return size;
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int end(int index) {
+        return ends[index];
+    }
+
+    /**
+     * 按区间输出，单个端口为 "80"，区间为 "1000-2000"
+     *
+     * @return 区间字符串列表
+     */
+    public List<String> toTokens() {
+        List<String> tokens = new ArrayList<>(starts.length);
+        for (int i = 0; i < starts.length; i++) {
+            tokens.add(starts[i] == ends[i] ? String.valueOf(starts[i]) : starts[i] + "-" + ends[i]);
+        }
+        return tokens;
+    }
+
+    /**
+     * 展开为单个端口的列表，仅用于不支持区间的旧版本agent节点
+     *
+     * @return 端口字符串列表
+     */
+    public List<String> toPortList() {
+        if (isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> ports = new ArrayList<>((int) Math.min(size(), MAX_PORT));
+        for (int i = 0; i < starts.length; i++) {
+            for (int port = starts[i]; port <= ends[i]; port++) {
+                ports.add(String.valueOf(port));
+            }
+        }
+        return ports;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PortRangeSet that = (PortRangeSet) o;
+        return Arrays.equals(starts, that.starts) && Arrays.equals(ends, that.ends);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(starts) + Arrays.hashCode(ends);
+    }
+
+    /**
+     * 与端口规则的端口格式一致，如 "22,80,1000-2000"
+     */
+    @Override
+    public String toString() {
+        return String.join(",", toTokens());
+    }
+
+    /** 排序并合并重叠、相邻的区间 */
+    private static PortRangeSet normalize(List<int[]> ranges) {
+        if (ranges.isEmpty()) {
+            return EMPTY;
+        }
+        ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+        int[] starts = new int[ranges.size()];
+        int[] ends = new int[ranges.size()];
+        int count = 0;
+        for (int[] range : ranges) {
+            if (count > 0 && range[0] <= ends[count - 1] + 1) {
+                ends[count - 1] = Math.max(ends[count - 1], range[1]);
+            } else {
+                starts[count] = range[0];
+                ends[count] = range[1];
+                count++;
+            }
+        }
+        return new PortRangeSet(Arrays.copyOf(starts, count), Arrays.copyOf(ends, count));
+    }
+}
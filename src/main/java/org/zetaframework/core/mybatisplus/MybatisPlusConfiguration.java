@@ -13,6 +13,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 import org.zetaframework.core.mybatisplus.generator.HuToolUidGenerator;
 import org.zetaframework.core.mybatisplus.generator.UidGenerator;
+import org.zetaframework.core.mybatisplus.injector.ZetaSqlInjector;
 import org.zetaframework.core.mybatisplus.properties.DatabaseProperties;
 
 /**
@@ -67,6 +68,17 @@ public class MybatisPlusConfiguration {
         return interceptor;
     }
 
+    /**
+     * sql注入器
+     *
+     * 为继承了 UpsertMapper 的mapper注入批量插入或更新方法
+     * @return ZetaSqlInjector
+     */
+    @Bean
+    public ZetaSqlInjector zetaSqlInjector() {
+        return new ZetaSqlInjector();
+    }
+
     /**
      * id生成策略
      * @return UidGenerator
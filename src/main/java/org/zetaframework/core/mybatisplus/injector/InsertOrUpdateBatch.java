@@ -0,0 +1,60 @@
+package org.zetaframework.core.mybatisplus.injector;
+
+import com.baomidou.mybatisplus.annotation.FieldFill;
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.core.injector.AbstractMethod;
+import com.baomidou.mybatisplus.core.metadata.TableFieldInfo;
+import com.baomidou.mybatisplus.core.metadata.TableInfo;
+import com.baomidou.mybatisplus.core.toolkit.sql.SqlScriptUtils;
+import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量插入或更新
+ *
+ * 生成 MySQL 的多行 INSERT ... ON DUPLICATE KEY UPDATE 语句，由表的主键或唯一索引判断插入还是更新，
+ * 不需要先逐条查询主键。更新时 created 类（FieldFill.INSERT）字段保持不变，值为null的字段不覆盖数据库中的值，
+ * 与全局配置 update-strategy: not_null 一致。
+ *
+ * 说明：
+ * 主键为自增（IdType.AUTO）的表不插入id列；命中唯一索引而更新的记录，实体中的id不是数据库中的id，需要id时请按唯一索引回查
+ *
+ * @author gcc
+ */
+public class InsertOrUpdateBatch extends AbstractMethod {
+    public static final String METHOD_NAME = "insertOrUpdateBatch";
+
+    public InsertOrUpdateBatch() {
+        super(METHOD_NAME);
+    }
+
+    @Override
+    public MappedStatement injectMappedStatement(Class<?> mapperClass, Class<?> modelClass, TableInfo tableInfo) {
+        List<String> columns = new ArrayList<>();
+        List<String> properties = new ArrayList<>();
+        List<String> updates = new ArrayList<>();
+        if (tableInfo.havePK() && tableInfo.getIdType() != IdType.AUTO) {
+            columns.add(tableInfo.getKeyColumn());
+            properties.add(SqlScriptUtils.safeParam(ENTITY_DOT + tableInfo.getKeyProperty()));
+        }
+        for (TableFieldInfo field : tableInfo.getFieldList()) {
+            String insertProperty = field.getInsertSqlProperty(ENTITY_DOT);
+            columns.add(field.getColumn());
+            // getInsertSqlProperty 带有结尾的逗号
+            properties.add(insertProperty.substring(0, insertProperty.length() - 1));
+            if (field.getFieldFill() != FieldFill.INSERT) {
+                updates.add(String.format("%s = IFNULL(VALUES(%s), %s)", field.getColumn(), field.getColumn(), field.getColumn()));
+            }
+        }
+        String valuesScript = SqlScriptUtils.convertForeach(
+                LEFT_BRACKET + String.join(COMMA, properties) + RIGHT_BRACKET, "list", null, ENTITY, COMMA);
+        String sql = String.format("<script>\nINSERT INTO %s (%s) VALUES %s\nON DUPLICATE KEY UPDATE %s\n</script>",
+                tableInfo.getTableName(), String.join(COMMA, columns), valuesScript, String.join(COMMA, updates));
+        SqlSource sqlSource = languageDriver.createSqlSource(configuration, sql, modelClass);
+        return this.addInsertMappedStatement(mapperClass, modelClass, METHOD_NAME, sqlSource, NoKeyGenerator.INSTANCE, null, null);
+    }
+}
@@ -0,0 +1,27 @@
+package org.zetaframework.core.mybatisplus.injector;
+
+import com.baomidou.mybatisplus.core.injector.AbstractMethod;
+import com.baomidou.mybatisplus.core.injector.DefaultSqlInjector;
+import com.baomidou.mybatisplus.core.metadata.TableInfo;
+import org.zetaframework.core.mybatisplus.mapper.UpsertMapper;
+
+import java.util.List;
+
+/**
+ * 自定义sql注入器
+ *
+ * 在默认方法的基础上，为继承了 {@link UpsertMapper} 的mapper注入 {@link InsertOrUpdateBatch}
+ *
+ * @author gcc
+ */
+public class ZetaSqlInjector extends DefaultSqlInjector {
+
+    @Override
+    public List<AbstractMethod> getMethodList(Class<?> mapperClass, TableInfo tableInfo) {
+        List<AbstractMethod> methodList = super.getMethodList(mapperClass, tableInfo);
+        if (UpsertMapper.class.isAssignableFrom(mapperClass)) {
+            methodList.add(new InsertOrUpdateBatch());
+        }
+        return methodList;
+    }
+}
@@ -0,0 +1,57 @@
+package org.zetaframework.core.mybatisplus.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.zetaframework.core.mybatisplus.injector.InsertOrUpdateBatch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 支持批量插入或更新的mapper
+ *
+ * 表需要有主键以外的唯一索引，由唯一索引判断插入还是更新，见 {@link InsertOrUpdateBatch}
+ *
+ * @author gcc
+ */
+public interface UpsertMapper<T> extends BaseMapper<T> {
+    /** 默认每条sql的记录数 */
+    int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * 批量插入或更新，单条sql
+     *
+     * 说明：
+     * 命中唯一索引而更新的记录，实体中的id不是数据库中的id
+     * @param entityList 实体列表，不能为空
+     * @return 影响的行数（MySQL中插入计1，更新计2，未变化计0）
+     */
+    int insertOrUpdateBatch(List<T> entityList);
+
+    /**
+     * 批量插入或更新，按 batchSize 分成多条sql执行
+     *
+     * @param entityList 实体列表
+     * @param batchSize  每条sql的记录数
+     * @return 影响的行数
+     */
+    default int insertOrUpdateBatch(Collection<T> entityList, int batchSize) {
+        if (entityList == null || entityList.isEmpty()) {
+            return 0;
+        }
+        int size = Math.max(1, batchSize);
+        int rows = 0;
+        List<T> batch = new ArrayList<>(Math.min(size, entityList.size()));
+        for (T entity : entityList) {
+            batch.add(entity);
+            if (batch.size() == size) {
+                rows += insertOrUpdateBatch(batch);
+                batch = new ArrayList<>(size);
+            }
+        }
+        if (!batch.isEmpty()) {
+            rows += insertOrUpdateBatch(batch);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,24 @@
+-- 续约、抢占或释放一批分片租约，返回当前实例持有的分片
+-- KEYS[i]       分片租约key，值为持有该分片的master实例id
+-- ARGV[1]       当前master实例id
+-- ARGV[2]       租约时长（毫秒）
+-- ARGV[i + 2]   1 表示按一致性哈希该分片应由当前实例持有，0 表示不应持有
+-- 返回值：当前实例持有的分片序号（从 0 开始）
+local held = {}
+for i, key in ipairs(KEYS) do
+    local owner = redis.call('get', key)
+    if ARGV[i + 2] == '1' then
+        if owner == ARGV[1] then
+            redis.call('pexpire', key, ARGV[2])
+            table.insert(held, i - 1)
+        elseif not owner then
+            -- 上一个持有者已释放或租约已过期
+            redis.call('set', key, ARGV[1], 'PX', ARGV[2])
+            table.insert(held, i - 1)
+        end
+    elseif owner == ARGV[1] then
+        -- 成员变化后不再属于当前实例，立即释放，让新持有者尽快接管
+        redis.call('del', key)
+    end
+end
+return held
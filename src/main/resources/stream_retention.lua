@@ -0,0 +1,30 @@
+-- 按保留策略裁剪一批stream，并返回裁剪后的长度与内存占用
+-- KEYS[i]       stream key
+-- ARGV[2i-1]    MINID，早于该id的消息被裁剪，0 表示不按时间裁剪
+-- ARGV[2i]      内存上限（字节），0 表示不按内存裁剪
+-- 返回值：每个stream依次返回 按时间裁剪条数, 按内存裁剪条数, 裁剪后长度, 裁剪后内存占用
+local result = {}
+for i, key in ipairs(KEYS) do
+    local minId = ARGV[2 * i - 1]
+    local maxBytes = tonumber(ARGV[2 * i])
+    local byAge, byMemory, len, bytes = 0, 0, 0, 0
+    if redis.call('exists', key) == 1 then
+        if minId ~= '0' then
+            byAge = redis.call('xtrim', key, 'MINID', '~', minId)
+        end
+        len = redis.call('xlen', key)
+        bytes = redis.call('memory', 'usage', key) or 0
+        if maxBytes > 0 and bytes > maxBytes and len > 0 then
+            -- 按平均消息大小估算需要保留的条数
+            local target = math.floor(len * maxBytes / bytes)
+            byMemory = redis.call('xtrim', key, 'MAXLEN', '~', target)
+            len = redis.call('xlen', key)
+            bytes = redis.call('memory', 'usage', key) or 0
+        end
+    end
+    table.insert(result, byAge)
+    table.insert(result, byMemory)
+    table.insert(result, len)
+    table.insert(result, bytes)
+end
+return result
@@ -0,0 +1,122 @@
+package com.zeta.firewall.codec;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.model.dto.RedisCommandMessage;
+import com.zeta.firewall.model.entity.PortRule;
+import com.zeta.firewall.service.AgentVersionRegistry;
+import com.zeta.firewall.util.JsonMessageConverter;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CborMessageCodecTest {
+
+    private final CborMessageCodec codec = new CborMessageCodec();
+    private final CBORMapper cborMapper = new CBORMapper();
+
+    @Test
+    void encode_shouldReplaceKnownPrimaryKeyColumnsWithSchemaId() throws Exception {
+        RedisCommandMessage<PortRule> message = RedisCommandMessage.<PortRule>builder()
+                .agentId("node1")
+                .ts(1477053217L)
+                .agentComponentType(RedisCommandMessage.ComponentType.FIREWALL)
+                .dataOpType(RedisCommandMessage.OperationType.QUERY)
+                .primaryKeyColumns(MessageSchema.PORT_RULE.getPrimaryKeyColumns())
+                .data(List.of(PortRule.builder().port("8080").protocol("tcp").build()))
+                .build();
+
+        Map<String, byte[]> fields = codec.encode(message);
+
+        assertEquals("cbor", text(fields.get(MessageCodec.FIELD_CODEC)));
+        assertEquals(CborMessageCodec.VERSION, text(fields.get(MessageCodec.FIELD_VERSION)));
+        assertEquals(String.valueOf(MessageSchema.PORT_RULE.getId()), text(fields.get(MessageCodec.FIELD_SCHEMA)));
+
+        JsonNode payload = cborMapper.readTree(fields.get(MessageCodec.FIELD_PAYLOAD));
+        assertEquals("node1", payload.get("agentId").asText());
+        assertEquals("QUERY", payload.get("dataOpType").asText());
+        assertFalse(payload.has("primaryKeyColumns"));
+        assertFalse(payload.has("old"));
+        assertEquals("8080", payload.get("data").get(0).get("port").asText());
+    }
+
+    @Test
+    void encode_shouldKeepUnknownPrimaryKeyColumns() throws Exception {
+        RedisCommandMessage<PortRule> message = RedisCommandMessage.<PortRule>builder()
+                .agentId("node1")
+                .primaryKeyColumns(List.of("zone"))
+                .build();
+
+        Map<String, byte[]> fields = codec.encode(message);
+
+        assertEquals(String.valueOf(MessageSchema.NONE), text(fields.get(MessageCodec.FIELD_SCHEMA)));
+        JsonNode payload = cborMapper.readTree(fields.get(MessageCodec.FIELD_PAYLOAD));
+        assertEquals("zone", payload.get("primaryKeyColumns").get(0).asText());
+    }
+
+    @Test
+    void decode_shouldExposeDataAsJsonNode() throws Exception {
+        ObjectNode response = cborMapper.createObjectNode();
+        response.put("status", "200");
+        response.putArray("data").addObject().put("port", "6379").put("protocol", "udp");
+
+        Map<String, byte[]> fields = new HashMap<>();
+        fields.put(MessageCodec.FIELD_CODEC, "cbor".getBytes(StandardCharsets.UTF_8));
+        fields.put(MessageCodec.FIELD_PAYLOAD, cborMapper.writeValueAsBytes(response));
+
+        Map<Object, Object> value = codec.decode(fields);
+
+        assertEquals("200", value.get("status"));
+        assertTrue(value.get("data") instanceof JsonNode);
+        List<PortRule> rules = JsonMessageConverter.readData(value.get("data"), new TypeReference<List<PortRule>>() {});
+        assertEquals(1, rules.size());
+        assertEquals("6379", rules.get(0).getPort());
+        assertEquals("udp", rules.get(0).getProtocol());
+    }
+
+    @Test
+    void registry_shouldNegotiateByClientVersion() {
+        FirewallProperties properties = new FirewallProperties();
+        AgentVersionRegistry versions = new AgentVersionRegistry();
+        MessageCodecRegistry registry = new MessageCodecRegistry(List.of(new JsonMessageCodec(), codec), properties, versions);
+
+        // 未上报版本的节点使用JSON
+        assertEquals(JsonMessageCodec.NAME, registry.codecFor("node1").name());
+
+        versions.update("node1", "1.9.3");
+        assertEquals(JsonMessageCodec.NAME, registry.codecFor("node1").name());
+
+        versions.update("node1", "2.1.0");
+        assertEquals(CborMessageCodec.NAME, registry.codecFor("node1").name());
+
+        properties.getCodec().setBinaryEnabled(false);
+        assertEquals(JsonMessageCodec.NAME, registry.codecFor("node1").name());
+    }
+
+    @Test
+    void registry_shouldDecodeResponsesWithoutCodecFieldAsJson() {
+        MessageCodecRegistry registry = new MessageCodecRegistry(List.of(new JsonMessageCodec(), codec), new FirewallProperties(), new AgentVersionRegistry());
+
+        Map<String, byte[]> fields = new HashMap<>();
+        fields.put("status", "200".getBytes(StandardCharsets.UTF_8));
+        fields.put("data", "[{\"port\":\"22\"}]".getBytes(StandardCharsets.UTF_8));
+
+        Map<Object, Object> value = registry.decode(fields);
+
+        assertEquals("200", value.get("status"));
+        List<PortRule> rules = JsonMessageConverter.readData(value.get("data"), new TypeReference<List<PortRule>>() {});
+        assertEquals("22", rules.get(0).getPort());
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
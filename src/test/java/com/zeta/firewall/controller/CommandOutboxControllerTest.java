@@ -0,0 +1,46 @@
+package com.zeta.firewall.controller;
+
+import com.zeta.firewall.model.dto.CommandOutboxStatus;
+import com.zeta.firewall.model.entity.CommandOutbox;
+import com.zeta.firewall.model.enums.OutboxStatus;
+import com.zeta.firewall.service.CommandOutboxService;
+import org.junit.jupiter.api.Test;
+import org.zetaframework.base.result.ApiResult;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CommandOutboxControllerTest {
+
+    private final CommandOutboxService commandOutboxService = mock(CommandOutboxService.class);
+    private final CommandOutboxController controller = new CommandOutboxController(commandOutboxService);
+
+    @Test
+    void get_shouldReturnCommandStatusWithoutPayload() {
+        CommandOutbox outbox = CommandOutbox.builder()
+                .agentId("node1")
+                .opType("INSERT")
+                .payload("{}")
+                .status(OutboxStatus.FAILED)
+                .attempts(3)
+                .lastError("Invalid port rule")
+                .build();
+        outbox.setId(7L);
+        when(commandOutboxService.getById(7L)).thenReturn(outbox);
+
+        ApiResult<CommandOutboxStatus> result = controller.get(7L);
+
+        assertTrue(result.getSuccess());
+        assertEquals(7L, result.getData().getId());
+        assertEquals(OutboxStatus.FAILED, result.getData().getStatus());
+        assertEquals("Invalid port rule", result.getData().getLastError());
+    }
+
+    @Test
+    void get_shouldFailWhenCommandIsMissing() {
+        ApiResult<CommandOutboxStatus> result = controller.get(8L);
+
+        assertFalse(result.getSuccess());
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.zeta.firewall.model.dto.PortRuleDTO;
 import com.zeta.firewall.model.entity.PortRule;
 import com.zeta.firewall.model.enums.RuleType;
+import com.zeta.firewall.service.AgentPortUsageView;
 import com.zeta.firewall.service.PortRuleService;
 import com.zeta.firewall.service.StreamResponseService;
 import com.zeta.firewall.subscirbe.StreamProducer;
@@ -41,6 +42,9 @@ public class PortRuleControllerAddTest {
     @MockBean
     private PortRuleService portRuleService;
 
+    @MockBean
+    private AgentPortUsageView agentPortUsageView;
+
     @MockBean
     private StreamProducer streamProducer;
 
@@ -97,7 +101,7 @@ public class PortRuleControllerAddTest {
                 .content(objectMapper.writeValueAsString(portRuleDTO)))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.success").value(true))
-                .andExpect(jsonPath("$.message").value("端口规则添加成功"));
+                .andExpect(jsonPath("$.message").value("端口规则添加已受理，等待节点执行"));
 
         // 验证服务调用
         verify(streamProducer).publishMessage(eq("pub:node1"), messageCaptor.capture());
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.zeta.firewall.model.dto.PortRuleDTO;
 import com.zeta.firewall.model.entity.PortRule;
 import com.zeta.firewall.model.enums.RuleType;
+import com.zeta.firewall.service.AgentPortUsageView;
 import com.zeta.firewall.service.PortRuleService;
 import com.zeta.firewall.service.StreamResponseService;
 import com.zeta.firewall.subscirbe.StreamProducer;
@@ -40,6 +41,9 @@ public class PortRuleControllerTest {
     @MockBean
     private PortRuleService portRuleService;
 
+    @MockBean
+    private AgentPortUsageView agentPortUsageView;
+
     @MockBean
     private StreamProducer streamProducer;
 
@@ -93,7 +97,7 @@ public class PortRuleControllerTest {
                 .content(objectMapper.writeValueAsString(portRuleDTO)))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.success").value(true))
-                .andExpect(jsonPath("$.message").value("端口规则添加成功"));
+                .andExpect(jsonPath("$.message").value("端口规则添加已受理，等待节点执行"));
 
         // 验证服务调用
         verify(streamProducer).publishMessage(eq("pub:node1"), messageCaptor.capture());
@@ -0,0 +1,79 @@
+package com.zeta.firewall.model.entity;
+
+import com.zeta.firewall.model.enums.RuleType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PortRuleTest {
+
+    @Test
+    void computeFingerprint_shouldBeStableForSameContent() {
+        PortRule rule = rule("tcp", "192.168.1.0/24");
+        PortRule same = rule(" TCP ", "192.168.1.0/24");
+        same.setId(99L);
+        same.setUsing(true);
+        same.setDescriptor("web");
+
+        assertEquals(32, rule.computeFingerprint().length());
+        assertEquals(rule.computeFingerprint(), same.computeFingerprint());
+    }
+
+    @Test
+    void computeFingerprint_shouldDifferByKeyAttributes() {
+        PortRule rule = rule("tcp", "192.168.1.0/24");
+
+        assertNotEquals(rule.computeFingerprint(), rule("udp", "192.168.1.0/24").computeFingerprint());
+        assertNotEquals(rule.computeFingerprint(), rule("tcp", "10.0.0.1").computeFingerprint());
+
+        PortRule otherAgent = rule("tcp", "192.168.1.0/24");
+        otherAgent.setAgentId("node2");
+        assertNotEquals(rule.computeFingerprint(), otherAgent.computeFingerprint());
+
+        PortRule denied = rule("tcp", "192.168.1.0/24");
+        denied.setPolicy(false);
+        assertNotEquals(rule.computeFingerprint(), denied.computeFingerprint());
+    }
+
+    @Test
+    void refreshFingerprint_shouldStoreFingerprint() {
+        PortRule rule = rule("tcp", null);
+
+        assertNull(rule.getFingerprint());
+        assertEquals(rule.computeFingerprint(), rule.refreshFingerprint());
+        assertEquals(rule.computeFingerprint(), rule.getFingerprint());
+    }
+
+    @Test
+    void refreshFingerprint_shouldNormalizeFieldsSoEqualsMatchesFingerprint() {
+        PortRule rule = rule("tcp", "192.168.1.0/24");
+        PortRule upperCase = rule(" TCP ", " 192.168.1.0/24 ");
+        upperCase.setFamily("IPv4");
+        upperCase.setPort("80 80");
+        upperCase.setZone(" public ");
+        assertNotEquals(rule, upperCase);
+
+        assertEquals(rule.refreshFingerprint(), upperCase.refreshFingerprint());
+        assertEquals("tcp", upperCase.getProtocol());
+        assertEquals("ipv4", upperCase.getFamily());
+        assertEquals("8080", upperCase.getPort());
+        assertEquals("public", upperCase.getZone());
+        assertEquals("192.168.1.0/24", upperCase.getSourceRule().getSource());
+        assertEquals(rule, upperCase);
+    }
+
+    private static PortRule rule(String protocol, String source) {
+        PortRule rule = PortRule.builder()
+                .family("ipv4")
+                .port("8080")
+                .protocol(protocol)
+                .policy(true)
+                .sourceRule(source == null ? null : SourceRule.builder().source(source).build())
+                .build();
+        rule.setAgentId("node1");
+        rule.setZone("public");
+        rule.setType(RuleType.PORT);
+        rule.setPermanent(true);
+        return rule;
+    }
+}
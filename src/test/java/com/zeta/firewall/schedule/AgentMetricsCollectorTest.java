@@ -0,0 +1,148 @@
+package com.zeta.firewall.schedule;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.model.entity.AgentNodeInfo;
+import com.zeta.firewall.model.entity.AgentNodeMetrics;
+import com.zeta.firewall.service.AgentNodeMetricsService;
+import com.zeta.firewall.service.AgentShardManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AgentMetricsCollectorTest {
+
+    private HashOperations<String, Object, Object> hashOperations;
+    private ZSetOperations<String, String> zSetOperations;
+    private FirewallProperties firewallProperties;
+    private AgentNodeMetricsService agentNodeMetricsService;
+    private AgentShardManager agentShardManager;
+    private AgentMetricsCollector collector;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        hashOperations = mock(HashOperations.class);
+        zSetOperations = mock(ZSetOperations.class);
+        doReturn(hashOperations).when(stringRedisTemplate).opsForHash();
+        doReturn(zSetOperations).when(stringRedisTemplate).opsForZSet();
+        firewallProperties = new FirewallProperties();
+        agentNodeMetricsService = mock(AgentNodeMetricsService.class);
+        agentShardManager = mock(AgentShardManager.class);
+        when(agentShardManager.owns(anyString())).thenReturn(true);
+        collector = new AgentMetricsCollector(stringRedisTemplate, agentNodeMetricsService, agentShardManager, firewallProperties);
+    }
+
+    @Test
+    void toSample_shouldParseNumericUsage() {
+        AgentNodeMetrics sample = collector.toSample("node1", heartbeat(1700000000L, "12.5%", "40", null));
+
+        assertNotNull(sample);
+        assertEquals("node1", sample.getAgentId());
+        assertEquals(12.5, sample.getCpuUsage());
+        assertEquals(40.0, sample.getMemoryUsage());
+        assertNull(sample.getDiskUsage());
+    }
+
+    @Test
+    void toSample_shouldSkipUnchangedHeartbeat() {
+        assertNotNull(collector.toSample("node1", heartbeat(1700000000L, "1", "2", "3")));
+        assertNull(collector.toSample("node1", heartbeat(1700000000L, "4", "5", "6")));
+        assertNotNull(collector.toSample("node1", heartbeat(1700000025L, "4", "5", "6")));
+    }
+
+    @Test
+    void toSample_shouldSkipInvalidData() {
+        assertNull(collector.toSample("node1", "not-json"));
+        assertNull(collector.toSample("node1", "{\"heartbeatTimestamp\":\"2024-01-01 00:00:00\"}"));
+    }
+
+    @Test
+    void collect_shouldAppendOfferedSamplesOncePerCycle() throws Exception {
+        firewallProperties.getLiveness().setEnabled(false);
+        collector.offer("node1", info(1700000000L));
+        collector.offer("node2", info(1700000001L));
+        // 同一心跳不重复采样
+        collector.offer("node1", info(1700000000L));
+
+        assertEquals(2, collector.collect());
+        assertEquals(0, collector.collect());
+
+        verify(agentNodeMetricsService, times(1)).append(argThat((List<AgentNodeMetrics> samples) -> samples.size() == 2));
+        verifyNoInteractions(hashOperations, zSetOperations);
+    }
+
+    @Test
+    void collect_shouldReadOnlyChangedOwnedAgentsFromLivenessIndex() throws Exception {
+        when(agentShardManager.owns("node3")).thenReturn(false);
+        // node1 本轮心跳检查中已采样
+        collector.offer("node1", info(1700000000L));
+        Set<ZSetOperations.TypedTuple<String>> changed = new LinkedHashSet<>();
+        changed.add(new DefaultTypedTuple<>("node1", 1700000000d));
+        changed.add(new DefaultTypedTuple<>("node2", 1700000001d));
+        changed.add(new DefaultTypedTuple<>("node3", 1700000002d));
+        when(zSetOperations.rangeByScoreWithScores(eq("firewall:heartbeats:liveness"), anyDouble(), anyDouble())).thenReturn(changed);
+        when(hashOperations.multiGet("firewall:heartbeats", List.<Object>of("node2")))
+                .thenReturn(List.<Object>of(heartbeat(1700000001L, "4", "5", "6")));
+
+        assertEquals(2, collector.collect());
+
+        verify(hashOperations).multiGet("firewall:heartbeats", List.<Object>of("node2"));
+        verify(hashOperations, never()).scan(anyString(), any());
+        verify(hashOperations, never()).entries(anyString());
+        verify(agentNodeMetricsService).append(argThat((List<AgentNodeMetrics> samples) -> samples.size() == 2));
+    }
+
+    @Test
+    void collect_shouldReadLivenessIndexOnlyOncePerSampleInterval() {
+        when(zSetOperations.rangeByScoreWithScores(anyString(), anyDouble(), anyDouble())).thenReturn(Collections.emptySet());
+
+        assertEquals(0, collector.collect());
+        assertEquals(0, collector.collect());
+
+        verify(zSetOperations, times(1)).rangeByScoreWithScores(anyString(), anyDouble(), anyDouble());
+        verify(agentNodeMetricsService, never()).append(anyList());
+    }
+
+    @Test
+    void offer_shouldIgnoreWhenDisabled() throws Exception {
+        firewallProperties.getMetrics().setEnabled(false);
+        collector.offer("node1", info(1700000000L));
+
+        assertEquals(0, collector.collect());
+        verify(agentNodeMetricsService, never()).append(anyList());
+    }
+
+    @Test
+    void parseUsage_shouldReturnNullForInvalidValue() {
+        assertEquals(3.0, AgentMetricsCollector.parseUsage(" 3 % "));
+        assertNull(AgentMetricsCollector.parseUsage("n/a"));
+        assertNull(AgentMetricsCollector.parseUsage(""));
+    }
+
+    private static AgentNodeInfo info(long timestamp) throws Exception {
+        return new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false).readValue(heartbeat(timestamp, "1", "2", "3"), AgentNodeInfo.class);
+    }
+
+    private static String heartbeat(long timestamp, String cpu, String memory, String disk) {
+        return "{\"heartbeatTimestamp\":\"" + timestamp + "\""
+                + (cpu == null ? "" : ",\"cpuUsage\":\"" + cpu + "\"")
+                + (memory == null ? "" : ",\"memoryUsage\":\"" + memory + "\"")
+                + (disk == null ? "" : ",\"diskUsage\":\"" + disk + "\"")
+                + "}";
+    }
+}
@@ -0,0 +1,157 @@
+package com.zeta.firewall.schedule;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.exception.EmptyResultException;
+import com.zeta.firewall.model.dto.RedisCommandMessage;
+import com.zeta.firewall.model.entity.CommandOutbox;
+import com.zeta.firewall.model.entity.PortRule;
+import com.zeta.firewall.model.enums.OutboxStatus;
+import com.zeta.firewall.service.AgentCommandService;
+import com.zeta.firewall.service.CommandOutboxHandler;
+import com.zeta.firewall.service.CommandOutboxService;
+import com.zeta.firewall.util.JsonMessageConverter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CommandOutboxRelayTest {
+
+    private CommandOutboxService commandOutboxService;
+    private AgentCommandService agentCommandService;
+    private CommandOutboxHandler handler;
+    private FirewallProperties properties;
+    private CommandOutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        commandOutboxService = mock(CommandOutboxService.class);
+        when(commandOutboxService.markSucceeded(any())).thenReturn(1);
+        when(commandOutboxService.markFailed(any(), any())).thenReturn(1);
+        agentCommandService = mock(AgentCommandService.class);
+        handler = mock(CommandOutboxHandler.class);
+        when(handler.streamSuffix()).thenReturn("portRule");
+        properties = new FirewallProperties();
+        relay = new CommandOutboxRelay(commandOutboxService, agentCommandService, properties,
+                mock(ThreadPoolTaskExecutor.class), List.of(handler));
+    }
+
+    @Test
+    void complete_shouldMarkSucceeded() {
+        CommandOutbox command = command(1L, "node1", 1);
+        Map<Object, Object> response = Map.of("status", "200");
+
+        relay.complete(command, response, null);
+
+        verify(commandOutboxService).markSucceeded(command);
+        verify(handler).onSuccess(command, response);
+        verify(handler, never()).onFailure(any(), any());
+    }
+
+    @Test
+    void complete_shouldCompensateWhenAgentFails() {
+        CommandOutbox command = command(1L, "node1", 1);
+
+        relay.complete(command, Map.of("status", "500"), null);
+
+        verify(commandOutboxService).markFailed(eq(command), anyString());
+        verify(handler).onFailure(eq(command), anyString());
+    }
+
+    @Test
+    void complete_shouldSkipHandlerWhenCommandWasReclaimed() {
+        CommandOutbox command = command(1L, "node1", 1);
+        when(commandOutboxService.markSucceeded(command)).thenReturn(0);
+        when(commandOutboxService.markFailed(eq(command), anyString())).thenReturn(0);
+
+        relay.complete(command, Map.of("status", "200"), null);
+        relay.complete(command, Map.of("status", "500"), null);
+
+        verify(handler, never()).onSuccess(any(), any());
+        verify(handler, never()).onFailure(any(), any());
+    }
+
+    @Test
+    void complete_shouldRetryTimeoutWithinMaxAttempts() {
+        CommandOutbox command = command(1L, "node1", 2);
+
+        relay.complete(command, null, new EmptyResultException("timeout"));
+
+        verify(commandOutboxService).retryLater(eq(command), eq(properties.getOutbox().getRetryBackoffMillis() * 2), anyString());
+        verify(handler, never()).onFailure(any(), any());
+    }
+
+    @Test
+    void complete_shouldCompensateWhenAttemptsExhausted() {
+        CommandOutbox command = command(1L, "node1", properties.getOutbox().getMaxAttempts());
+
+        relay.complete(command, null, new EmptyResultException("timeout"));
+
+        verify(commandOutboxService, never()).retryLater(any(), anyLong(), any());
+        verify(handler).onFailure(eq(command), anyString());
+    }
+
+    @Test
+    void relay_shouldSendOneCommandPerNodeEachRound() {
+        when(commandOutboxService.claim(anyInt())).thenReturn(List.of(
+                command(1L, "node1", 1), command(2L, "node2", 1), command(3L, "node1", 1)));
+        when(agentCommandService.submitAll(anyMap(), eq("portRule"))).thenAnswer(invocation -> {
+            Map<String, ?> messages = invocation.getArgument(0);
+            Map<String, CompletableFuture<Map<Object, Object>>> futures = new LinkedHashMap<>();
+            messages.keySet().forEach(nodeId -> futures.put(nodeId, new CompletableFuture<>()));
+            return futures;
+        });
+
+        relay.relay();
+
+        verify(agentCommandService, times(2)).submitAll(anyMap(), eq("portRule"));
+    }
+
+    @Test
+    void purge_shouldDeleteFinishedCommandsOlderThanRetention() {
+        properties.getOutbox().setRetentionHours(24);
+        LocalDateTime before = LocalDateTime.now().minusHours(24);
+
+        relay.purge();
+
+        verify(commandOutboxService).purgeFinished(argThat(cutoff ->
+                !cutoff.isBefore(before) && !cutoff.isAfter(LocalDateTime.now().minusHours(24))));
+    }
+
+    @Test
+    void purge_shouldSkipWhenDisabled() {
+        properties.getOutbox().setEnabled(false);
+
+        relay.purge();
+
+        verify(commandOutboxService, never()).purgeFinished(any());
+    }
+
+    private static CommandOutbox command(Long id, String agentId, int attempts) {
+        RedisCommandMessage<PortRule> message = RedisCommandMessage.<PortRule>builder()
+                .agentId(agentId)
+                .agentComponentType(RedisCommandMessage.ComponentType.FIREWALL)
+                .dataOpType(RedisCommandMessage.OperationType.INSERT)
+                .data(List.of(PortRule.builder().port("8080").protocol("tcp").build()))
+                .build();
+        CommandOutbox command = CommandOutbox.builder()
+                .agentId(agentId)
+                .streamSuffix("portRule")
+                .opType("INSERT")
+                .payload(JsonMessageConverter.toJsonString(message))
+                .status(OutboxStatus.SENDING)
+                .attempts(attempts)
+                .claimToken("token")
+                .build();
+        command.setId(id);
+        return command;
+    }
+}
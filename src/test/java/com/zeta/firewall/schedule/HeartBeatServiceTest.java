@@ -0,0 +1,147 @@
+package com.zeta.firewall.schedule;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.model.entity.AgentNodeInfo;
+import com.zeta.firewall.service.AgentCircuitBreakerRegistry;
+import com.zeta.firewall.service.AgentNodeInfoService;
+import com.zeta.firewall.service.AgentShardManager;
+import com.zeta.firewall.service.AgentVersionRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class HeartBeatServiceTest {
+
+    private static final long NOW = 1700000000L;
+
+    private HashOperations<String, Object, Object> hashOperations;
+    private ZSetOperations<String, String> zSetOperations;
+    private AgentShardManager agentShardManager;
+    private AgentCircuitBreakerRegistry agentCircuitBreakerRegistry;
+    private FirewallProperties firewallProperties;
+    private AgentMetricsCollector agentMetricsCollector;
+    private HeartBeatService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        hashOperations = mock(HashOperations.class);
+        zSetOperations = mock(ZSetOperations.class);
+        doReturn(hashOperations).when(stringRedisTemplate).opsForHash();
+        doReturn(zSetOperations).when(stringRedisTemplate).opsForZSet();
+        when(stringRedisTemplate.execute(any(RedisCallback.class))).thenReturn(NOW * 1000);
+
+        agentShardManager = mock(AgentShardManager.class);
+        when(agentShardManager.getOwnershipVersion()).thenReturn(1L);
+        agentCircuitBreakerRegistry = mock(AgentCircuitBreakerRegistry.class);
+        firewallProperties = new FirewallProperties();
+        agentMetricsCollector = mock(AgentMetricsCollector.class);
+
+        service = new HeartBeatService();
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(service, "agentNodeInfoService", mock(AgentNodeInfoService.class));
+        ReflectionTestUtils.setField(service, "agentVersionRegistry", mock(AgentVersionRegistry.class));
+        ReflectionTestUtils.setField(service, "agentCircuitBreakerRegistry", agentCircuitBreakerRegistry);
+        ReflectionTestUtils.setField(service, "firewallProperties", firewallProperties);
+        ReflectionTestUtils.setField(service, "agentShardManager", agentShardManager);
+        ReflectionTestUtils.setField(service, "agentMetricsCollector", agentMetricsCollector);
+    }
+
+    @Test
+    void heartBeatCheckPeriod_shouldSampleParsedHeartbeatsAndCollectOncePerCycle() throws Exception {
+        firewallProperties.getLiveness().setEnabled(false);
+        when(agentShardManager.owns("node1")).thenReturn(true);
+        when(agentShardManager.owns("node2")).thenReturn(false);
+        heartbeats(Map.of("node1", heartbeat(NOW), "node2", heartbeat(NOW)));
+        // 采样时心跳时间戳还未被格式化
+        doAnswer(invocation -> {
+            AgentNodeInfo info = invocation.getArgument(1);
+            assertEquals(String.valueOf(NOW), info.getHeartbeatTimestamp());
+            return null;
+        }).when(agentMetricsCollector).offer(eq("node1"), any(AgentNodeInfo.class));
+
+        service.heartBeatCheckPeriod();
+
+        verify(agentMetricsCollector).offer(eq("node1"), any(AgentNodeInfo.class));
+        verify(agentMetricsCollector, never()).offer(eq("node2"), any(AgentNodeInfo.class));
+        verify(agentMetricsCollector, times(1)).collect();
+    }
+
+    @Test
+    void heartBeatCheckPeriod_shouldDriveBreakerOfAgentOwnedByOtherMaster() throws Exception {
+        firewallProperties.getLiveness().setEnabled(false);
+        when(agentShardManager.owns("node1")).thenReturn(false);
+
+        heartbeats(Map.of("node1", heartbeat(NOW - 60)));
+        service.heartBeatCheckPeriod();
+        service.heartBeatCheckPeriod();
+
+        // 只在状态变化时通知熔断器
+        verify(agentCircuitBreakerRegistry, times(1)).onHeartbeat("node1", false);
+
+        heartbeats(Map.of("node1", heartbeat(NOW)));
+        service.heartBeatCheckPeriod();
+
+        verify(agentCircuitBreakerRegistry).onHeartbeat("node1", true);
+    }
+
+    @Test
+    void heartBeatCheckPeriod_shouldRecoverRemoteAgentFromLivenessIndex() throws Exception {
+        when(agentShardManager.owns("node1")).thenReturn(false);
+        heartbeats(Map.of("node1", heartbeat(NOW - 60)));
+        when(zSetOperations.range("firewall:heartbeats:liveness", 0, -1)).thenReturn(Set.of("node1"));
+        service.heartBeatCheckPeriod();
+        verify(agentCircuitBreakerRegistry).onHeartbeat("node1", false);
+
+        // 第二轮增量检查，只从存活索引读取其他实例负责的节点的心跳时间
+        when(hashOperations.size("firewall:heartbeats")).thenReturn(1L);
+        when(zSetOperations.zCard("firewall:heartbeats:liveness")).thenReturn(1L);
+        when(zSetOperations.rangeByScore(eq("firewall:heartbeats:liveness"), anyDouble(), anyDouble()))
+                .thenReturn(Collections.emptySet());
+        when(zSetOperations.score("firewall:heartbeats:liveness", "node1")).thenReturn((double) NOW);
+        service.heartBeatCheckPeriod();
+
+        verify(hashOperations, times(1)).entries(anyString());
+        verify(hashOperations, never()).multiGet(anyString(), anyCollection());
+        verify(agentCircuitBreakerRegistry).onHeartbeat("node1", true);
+    }
+
+    @Test
+    void heartBeatCheckPeriod_shouldKeepTrackingOfflineAgentAfterHandOver() throws Exception {
+        firewallProperties.getLiveness().setEnabled(false);
+        when(agentShardManager.owns("node1")).thenReturn(true);
+        heartbeats(Map.of("node1", heartbeat(NOW - 60)));
+        service.heartBeatCheckPeriod();
+        verify(agentCircuitBreakerRegistry).onHeartbeat("node1", false);
+
+        // 节点离线期间移交给其他master实例
+        when(agentShardManager.owns("node1")).thenReturn(false);
+        when(agentShardManager.getOwnershipVersion()).thenReturn(2L);
+        heartbeats(Map.of("node1", heartbeat(NOW)));
+        service.heartBeatCheckPeriod();
+
+        verify(agentCircuitBreakerRegistry).onHeartbeat("node1", true);
+    }
+
+    private void heartbeats(Map<String, String> heartbeats) {
+        when(hashOperations.entries("firewall:heartbeats")).thenReturn(new HashMap<>(heartbeats));
+    }
+
+    private static String heartbeat(long timestamp) {
+        return "{\"agentId\":\"node1\",\"heartbeatTimestamp\":\"" + timestamp + "\",\"isFirstHeartbeat\":false,\"clientVersion\":\"2.0.0\"}";
+    }
+}
@@ -0,0 +1,102 @@
+package com.zeta.firewall.schedule;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.model.dto.JobLaneStats;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobLaneSchedulerTest {
+
+    @Test
+    void run_shouldReportRunningState() throws Exception {
+        JobLaneScheduler.JobLane lane = new JobLaneScheduler.JobLane("job", new ThreadPoolTaskScheduler(), 1000L, 1000L, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread first = new Thread(() -> lane.run(() -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        first.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(lane.snapshot().getRunning());
+
+        release.countDown();
+        first.join(5000);
+
+        JobLaneStats stats = lane.snapshot();
+        assertEquals(1, stats.getRuns());
+        assertFalse(stats.getRunning());
+    }
+
+    @Test
+    void run_shouldCountRunsAndFailures() {
+        JobLaneScheduler.JobLane lane = new JobLaneScheduler.JobLane("job", new ThreadPoolTaskScheduler(), 10L, null, 0);
+
+        lane.run(() -> sleep(30));
+        assertThrows(IllegalStateException.class, () -> lane.run(() -> {
+            throw new IllegalStateException("boom");
+        }));
+
+        JobLaneStats stats = lane.snapshot();
+        assertEquals(2, stats.getRuns());
+        assertEquals(1, stats.getFailures());
+        assertTrue(stats.getMaxDurationMillis() >= 30);
+        assertFalse(stats.getRunning());
+        // 没有预算时不统计 overrun
+        assertEquals(0, stats.getOverruns());
+    }
+
+    @Test
+    void run_shouldCountOverrunsAgainstBudget() {
+        JobLaneScheduler.JobLane lane = new JobLaneScheduler.JobLane("job", new ThreadPoolTaskScheduler(), 60000L, 20L, 0);
+
+        lane.run(() -> sleep(40));
+        lane.run(() -> {
+        });
+
+        JobLaneStats stats = lane.snapshot();
+        assertEquals(2, stats.getRuns());
+        assertEquals(1, stats.getOverruns());
+        assertEquals(20L, stats.getBudgetMillis());
+    }
+
+    @Test
+    void scheduleWithFixedDelay_shouldUseConfiguredBudgetOrInterval() {
+        FirewallProperties properties = new FirewallProperties();
+        properties.getScheduler().setJitterMillis(0L);
+        properties.getScheduler().getBudgets().put("NoopJob", 5L);
+        JobLaneScheduler scheduler = new JobLaneScheduler(properties);
+        try {
+            scheduler.scheduleWithFixedDelay(new NoopJob(), 60000L);
+            scheduler.scheduleWithFixedDelay(new NoopJob(), 60000L);
+            assertEquals(5L, scheduler.getStats("NoopJob").getBudgetMillis());
+            // 未配置预算的任务以调度间隔作为预算
+            assertEquals(60000L, scheduler.getStats("NoopJob#2").getBudgetMillis());
+        } finally {
+            scheduler.destroy();
+        }
+    }
+
+    private static class NoopJob implements Runnable {
+        @Override
+        public void run() {
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.zeta.firewall.schedule;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.dao.PortRuleMapper;
+import com.zeta.firewall.model.dto.PortUsageDelta;
+import com.zeta.firewall.model.entity.PortInfo;
+import com.zeta.firewall.service.AgentPortUsageView;
+import com.zeta.firewall.service.AgentShardManager;
+import com.zeta.firewall.service.FirewallPortRuleInfoService;
+import com.zeta.firewall.service.PortInfoService;
+import com.zeta.firewall.service.PortUsagePublisher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PortInfoPullServiceTest {
+
+    private HashOperations<String, Object, Object> hashOperations;
+    private SetOperations<String, String> setOperations;
+    private AgentShardManager agentShardManager;
+    private PortInfoService portInfoService;
+    private PortRuleMapper portRuleMapper;
+    private FirewallPortRuleInfoService firewallPortRuleInfoService;
+    private PortUsagePublisher portUsagePublisher;
+    private PortInfoPullService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        hashOperations = mock(HashOperations.class);
+        doReturn(hashOperations).when(stringRedisTemplate).opsForHash();
+        setOperations = mock(SetOperations.class);
+        doReturn(setOperations).when(stringRedisTemplate).opsForSet();
+
+        portInfoService = mock(PortInfoService.class);
+        when(portInfoService.queryAgentIdsDB()).thenReturn(Collections.emptyList());
+        when(portInfoService.insertOrUpdateBatchPortInfos(anyList())).thenAnswer(invocation -> {
+            // 模拟插入后回填主键
+            long id = 100;
+            for (PortInfo portInfo : invocation.<List<PortInfo>>getArgument(0)) {
+                if (portInfo.getId() == null) {
+                    portInfo.setId(id++);
+                }
+            }
+            return true;
+        });
+        portRuleMapper = mock(PortRuleMapper.class);
+        firewallPortRuleInfoService = mock(FirewallPortRuleInfoService.class);
+
+        agentShardManager = mock(AgentShardManager.class);
+        when(agentShardManager.owns(anyString())).thenReturn(true);
+
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        portUsagePublisher = mock(PortUsagePublisher.class);
+        FirewallProperties firewallProperties = new FirewallProperties();
+        firewallProperties.getPortSync().setScanCount(2);
+        service = new PortInfoPullService(portInfoService, portRuleMapper, firewallPortRuleInfoService,
+                agentShardManager, transactionTemplate, mock(AgentPortUsageView.class),
+                firewallProperties, Runnable::run, portUsagePublisher);
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", stringRedisTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pullPortInfo_shouldApplyOnlyChangedAgentDelta() {
+        when(portInfoService.queryPortInfosByAgentIdDB("node1")).thenReturn(List.of(
+                portInfo(1L, "node1", 22, "sshd"),
+                portInfo(2L, "node1", 80, "nginx")));
+        report(Map.of("node1", List.of(portInfo(null, "node1", 22, "sshd"), portInfo(null, "node1", 443, "nginx"))));
+
+        assertTrue(service.pullPortInfo());
+
+        verify(portInfoService).removePortInfosByIds(List.of(2L));
+        verify(firewallPortRuleInfoService).removeByInfoIds(List.of(2L));
+        verify(portInfoService).insertOrUpdateBatchPortInfos(argThat((List<PortInfo> changed) ->
+                changed.size() == 1 && changed.get(0).getPortNumber() == 443));
+        verify(portRuleMapper).selectList(any());
+        verify(portUsagePublisher).publish(argThat((PortUsageDelta delta) -> "node1".equals(delta.getNodeId())
+                && delta.getAdded().size() == 1 && delta.getAdded().get(0).getPortNumber() == 443
+                && delta.getChanged().isEmpty()
+                && delta.getRemoved().size() == 1 && delta.getRemoved().get(0).getPortNumber() == 80));
+    }
+
+    @Test
+    void pullPortInfo_shouldSkipUnchangedAgent() {
+        when(portInfoService.queryPortInfosByAgentIdDB("node1")).thenReturn(Collections.emptyList());
+        report(Map.of("node1", List.of(portInfo(null, "node1", 22, "sshd"))));
+
+        service.pullPortInfo();
+        service.pullPortInfo();
+
+        verify(portInfoService, times(1)).queryPortInfosByAgentIdDB("node1");
+        verify(portInfoService, times(1)).insertOrUpdateBatchPortInfos(anyList());
+        // 没有变化时不推送
+        verify(portUsagePublisher, times(1)).publish(any());
+    }
+
+    @Test
+    void pullPortInfo_shouldRemovePortsOfAgentNoLongerReporting() {
+        when(portInfoService.queryPortInfosByAgentIdDB("node1")).thenReturn(Collections.emptyList());
+        report(Map.of("node1", List.of(portInfo(null, "node1", 22, "sshd"))));
+        service.pullPortInfo();
+
+        report(Collections.emptyMap());
+        service.pullPortInfo();
+
+        verify(portInfoService).removePortInfosByIds(anyCollection());
+        verify(firewallPortRuleInfoService).removeByInfoIds(anyCollection());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pullPortInfo_shouldSyncEveryPageAndSkipMalformedReports() {
+        when(portInfoService.queryPortInfosByAgentIdDB(anyString())).thenReturn(Collections.emptyList());
+        report(Map.of(
+                "node1", List.of(portInfo(null, "node1", 22, "sshd")),
+                "node2", List.of(portInfo(null, "node2", 80, "nginx")),
+                "node3", List.of(portInfo(null, "node3", 443, "nginx"))));
+
+        assertTrue(service.pullPortInfo());
+
+        // 每页2个节点，3个节点分两页同步
+        verify(portInfoService, times(3)).insertOrUpdateBatchPortInfos(anyList());
+
+        Map<Object, Object> raw = new HashMap<>();
+        raw.put("node1", "{\"ts\":\"1745900398\",\"reportPortInfos\":[{\"portNumber\":\"oops\"}]}");
+        raw.put("node2", "{\"ts\":\"1745900398\",\"reportPortInfos\":[]}");
+        reportRaw(raw);
+        service.pullPortInfo();
+
+        // 解析失败的 node1 本轮跳过，未上报的 node3 与上报空列表的 node2 被清空
+        verify(portInfoService, times(2)).removePortInfosByIds(anyCollection());
+        Map<String, ?> snapshots = (Map<String, ?>) ReflectionTestUtils.getField(service, "agentSnapshots");
+        assertTrue(snapshots.containsKey("node1"));
+        assertFalse(snapshots.containsKey("node3"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void syncAgents_shouldReadAndSyncOnlyRequestedAgents() {
+        when(portInfoService.queryPortInfosByAgentIdDB("node1")).thenReturn(Collections.emptyList());
+        String json = "{\"ts\":\"1745900398\",\"reportPortInfos\":[{\"agentId\":\"node1\",\"protocol\":\"tcp\",\"portNumber\":22,\"processName\":\"sshd\"}]}";
+        when(hashOperations.multiGet(eq("firewall:portInfo"), anyCollection())).thenReturn(List.of(json));
+
+        assertTrue(service.syncAgents(List.of("node1")));
+
+        verify(hashOperations, never()).scan(anyString(), any());
+        verify(portInfoService, never()).queryPortInfosByAgentIdDB("node2");
+        verify(portInfoService).insertOrUpdateBatchPortInfos(argThat((List<PortInfo> changed) ->
+                changed.size() == 1 && changed.get(0).getPortNumber() == 22));
+        // 按最新的端口规则重建该节点的映射
+        verify(firewallPortRuleInfoService).removeByInfoIds(List.of(100L));
+    }
+
+    @Test
+    void syncAgents_shouldForwardAgentsOwnedByOtherMasters() {
+        when(agentShardManager.owns("node2")).thenReturn(false);
+        when(agentShardManager.shardOf("node2")).thenReturn(7);
+
+        assertTrue(service.syncAgents(List.of("node2")));
+
+        // 其他实例负责的节点不在本实例同步，转交给分片持有者
+        verify(setOperations).add("firewall:portRules:dirty:7", "node2");
+        verify(hashOperations, never()).multiGet(anyString(), anyCollection());
+        verify(portRuleMapper, never()).selectList(any());
+        verifyNoInteractions(firewallPortRuleInfoService);
+    }
+
+    @Test
+    void pollForwardedAgents_shouldDrainHeldShardsOnly() {
+        when(agentShardManager.getHeldShards()).thenReturn(Set.of(3));
+        when(setOperations.members("firewall:portRules:dirty:3")).thenReturn(Set.of("node1"));
+
+        assertEquals(Set.of("node1"), service.pollForwardedAgents());
+
+        verify(setOperations).remove("firewall:portRules:dirty:3", "node1");
+        verify(setOperations, times(1)).members(anyString());
+    }
+
+    private void report(Map<String, List<PortInfo>> reports) {
+        Map<Object, Object> raw = new HashMap<>();
+        reports.forEach((agentId, portInfos) -> {
+            StringBuilder json = new StringBuilder("{\"ts\":\"1745900398\",\"reportPortInfos\":[");
+            for (int i = 0; i < portInfos.size(); i++) {
+                PortInfo p = portInfos.get(i);
+                json.append(i == 0 ? "" : ",")
+                        .append("{\"agentId\":\"").append(p.getAgentId())
+                        .append("\",\"protocol\":\"").append(p.getProtocol())
+                        .append("\",\"portNumber\":").append(p.getPortNumber())
+                        .append(",\"processName\":\"").append(p.getProcessName()).append("\"}");
+            }
+            raw.put(agentId, json.append("]}").toString());
+        });
+        reportRaw(raw);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void reportRaw(Map<Object, Object> raw) {
+        when(hashOperations.scan(eq("firewall:portInfo"), any(ScanOptions.class))).thenAnswer(invocation -> {
+            Iterator<Map.Entry<Object, Object>> iterator = new ArrayList<>(raw.entrySet()).iterator();
+            Cursor<Map.Entry<Object, Object>> cursor = mock(Cursor.class);
+            when(cursor.hasNext()).thenAnswer(i -> iterator.hasNext());
+            when(cursor.next()).thenAnswer(i -> iterator.next());
+            return cursor;
+        });
+    }
+
+    private static PortInfo portInfo(Long id, String agentId, int port, String processName) {
+        PortInfo portInfo = PortInfo.builder()
+                .agentId(agentId)
+                .protocol("tcp")
+                .portNumber(port)
+                .processName(processName)
+                .build();
+        portInfo.setId(id);
+        return portInfo;
+    }
+}
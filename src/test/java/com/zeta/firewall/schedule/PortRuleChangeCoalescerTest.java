@@ -0,0 +1,129 @@
+package com.zeta.firewall.schedule;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.event.PortRuleUpdateEvent;
+import com.zeta.firewall.service.AgentPortUsageView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PortRuleChangeCoalescerTest {
+
+    private PortInfoPullService portInfoPullService;
+    private TaskScheduler scheduler;
+    private ScheduledFuture<?> future;
+    private AgentPortUsageView agentPortUsageView;
+    private PortRuleChangeCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        portInfoPullService = mock(PortInfoPullService.class);
+        scheduler = mock(TaskScheduler.class);
+        future = mock(ScheduledFuture.class);
+        doReturn(future).when(scheduler).schedule(any(Runnable.class), any(Instant.class));
+        agentPortUsageView = mock(AgentPortUsageView.class);
+        coalescer = new PortRuleChangeCoalescer(portInfoPullService, scheduler, new FirewallProperties(), agentPortUsageView);
+    }
+
+    @Test
+    void handlePortRuleUpdate_shouldCoalesceBurstIntoOneSync() {
+        coalescer.handlePortRuleUpdate(new PortRuleUpdateEvent(this, List.of("node1")));
+        coalescer.handlePortRuleUpdate(new PortRuleUpdateEvent(this, List.of("node2", "node1")));
+
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, times(2)).schedule(flush.capture(), any(Instant.class));
+        // 新事件推迟上一次还未执行的同步
+        verify(future).cancel(false);
+        verifyNoInteractions(portInfoPullService);
+
+        flush.getValue().run();
+        verify(portInfoPullService).syncAgents(Set.of("node1", "node2"));
+        verify(portInfoPullService, never()).pullPortInfo();
+
+        // 被取消的任务即使已开始执行，也不会重复同步
+        flush.getAllValues().get(0).run();
+        verify(portInfoPullService, times(1)).syncAgents(anyCollection());
+    }
+
+    @Test
+    void handlePortRuleUpdate_shouldRunFullSyncWhenAgentsUnknown() {
+        coalescer.handlePortRuleUpdate(new PortRuleUpdateEvent(this, List.of("node1")));
+        coalescer.handlePortRuleUpdate(new PortRuleUpdateEvent(this));
+
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, times(2)).schedule(flush.capture(), any(Instant.class));
+        flush.getValue().run();
+
+        verify(portInfoPullService).pullPortInfo();
+        verify(portInfoPullService).remapPortRules();
+        verify(portInfoPullService).forwardAllToOwners();
+        verify(portInfoPullService, never()).syncAgents(anyCollection());
+    }
+
+    @Test
+    void pollForwardedChanges_shouldSyncForwardedAgentsWithoutForwardingBack() {
+        when(portInfoPullService.pollForwardedAgents())
+                .thenReturn(new LinkedHashSet<>(List.of("node1", PortInfoPullService.ALL_AGENTS)));
+
+        coalescer.pollForwardedChanges();
+        verify(agentPortUsageView).invalidateAll();
+
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(flush.capture(), any(Instant.class));
+        flush.getValue().run();
+
+        verify(portInfoPullService).pullPortInfo();
+        verify(portInfoPullService).remapPortRules();
+        // 转交来的全部节点标记不再转交给其他实例
+        verify(portInfoPullService, never()).forwardAllToOwners();
+        verify(portInfoPullService).forwardToOwners(Set.of("node1"));
+    }
+
+    @Test
+    void pollForwardedChanges_shouldInvalidateCachedUsageOfForwardedAgents() {
+        when(portInfoPullService.pollForwardedAgents()).thenReturn(new LinkedHashSet<>(List.of("node1", "node2")));
+
+        coalescer.pollForwardedChanges();
+
+        // 端口规则已在其他实例修改，不等同步完成就丢弃旧的端口使用情况
+        verify(agentPortUsageView).invalidate("node1");
+        verify(agentPortUsageView).invalidate("node2");
+        verify(agentPortUsageView, never()).invalidateAll();
+    }
+
+    @Test
+    void pollForwardedChanges_shouldNotScheduleWhenNothingForwarded() {
+        when(portInfoPullService.pollForwardedAgents()).thenReturn(new LinkedHashSet<>());
+
+        coalescer.pollForwardedChanges();
+
+        verifyNoInteractions(scheduler);
+    }
+
+    @Test
+    void handlePortRuleUpdate_shouldNotDelayBeyondMaxDelay() {
+        FirewallProperties properties = new FirewallProperties();
+        properties.getPortSync().setDebounceMillis(60000L);
+        properties.getPortSync().setMaxDelayMillis(1000L);
+        coalescer = new PortRuleChangeCoalescer(portInfoPullService, scheduler, properties, agentPortUsageView);
+
+        long before = System.currentTimeMillis();
+        coalescer.handlePortRuleUpdate(new PortRuleUpdateEvent(this, List.of("node1")));
+
+        ArgumentCaptor<Instant> startTime = ArgumentCaptor.forClass(Instant.class);
+        verify(scheduler).schedule(any(Runnable.class), startTime.capture());
+        assertTrue(startTime.getValue().toEpochMilli() <= System.currentTimeMillis() + 1000L);
+        assertTrue(startTime.getValue().toEpochMilli() >= before);
+    }
+}
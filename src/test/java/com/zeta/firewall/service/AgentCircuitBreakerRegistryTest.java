@@ -0,0 +1,124 @@
+package com.zeta.firewall.service;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.exception.EmptyResultException;
+import com.zeta.firewall.model.enums.CircuitBreakerState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgentCircuitBreakerRegistryTest {
+
+    private FirewallProperties properties;
+    private AgentCircuitBreakerRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        properties = new FirewallProperties();
+        properties.getBreaker().setFailureThreshold(2);
+        properties.getBreaker().setOpenMillis(60000L);
+        registry = new AgentCircuitBreakerRegistry(properties);
+    }
+
+    @Test
+    void shouldOpenAfterConsecutiveTimeouts() {
+        assertTrue(registry.tryAcquire("node1"));
+        registry.record("node1", new EmptyResultException("timeout"));
+        assertEquals(CircuitBreakerState.CLOSED, registry.getStatus("node1").getState());
+
+        registry.record("node1", new EmptyResultException("timeout"));
+        assertEquals(CircuitBreakerState.OPEN, registry.getStatus("node1").getState());
+        assertFalse(registry.tryAcquire("node1"));
+        assertEquals(1L, registry.getStatus("node1").getRejectedCount());
+    }
+
+    @Test
+    void shouldNotCountNonTimeoutFailures() {
+        registry.record("node1", new IllegalStateException("redis down"));
+        registry.record("node1", new IllegalStateException("redis down"));
+        assertTrue(registry.tryAcquire("node1"));
+    }
+
+    @Test
+    void shouldAllowSingleProbeAfterHeartbeatRecovers() {
+        registry.onHeartbeat("node1", false);
+        assertFalse(registry.tryAcquire("node1"));
+
+        registry.onHeartbeat("node1", true);
+        assertEquals(CircuitBreakerState.HALF_OPEN, registry.getStatus("node1").getState());
+        assertTrue(registry.tryAcquire("node1"));
+        // 探测命令未结束前不再放行
+        assertFalse(registry.tryAcquire("node1"));
+
+        registry.record("node1", null);
+        assertEquals(CircuitBreakerState.CLOSED, registry.getStatus("node1").getState());
+        assertTrue(registry.tryAcquire("node1"));
+    }
+
+    @Test
+    void shouldReopenWhenProbeTimesOut() {
+        registry.onHeartbeat("node1", false);
+        registry.onHeartbeat("node1", true);
+        assertTrue(registry.tryAcquire("node1"));
+
+        registry.record("node1", new EmptyResultException("timeout"));
+        assertEquals(CircuitBreakerState.OPEN, registry.getStatus("node1").getState());
+        assertFalse(registry.tryAcquire("node1"));
+    }
+
+    @Test
+    void shouldKeepTimeoutOpenWhileHeartbeatAlive() {
+        registry.record("node1", new EmptyResultException("timeout"));
+        registry.record("node1", new EmptyResultException("timeout"));
+
+        // 心跳一直在线，不能绕过熔断时间
+        registry.onHeartbeat("node1", true);
+        assertEquals(CircuitBreakerState.OPEN, registry.getStatus("node1").getState());
+        assertFalse(registry.tryAcquire("node1"));
+    }
+
+    @Test
+    void shouldNotHalfOpenOnRepeatedAliveHeartbeat() {
+        registry.onHeartbeat("node1", false);
+        registry.onHeartbeat("node1", true);
+        assertTrue(registry.tryAcquire("node1"));
+        registry.record("node1", new EmptyResultException("timeout"));
+        assertEquals(CircuitBreakerState.OPEN, registry.getStatus("node1").getState());
+
+        // 探测超时后重新熔断，之后的在线心跳不是离线到在线的变化
+        registry.onHeartbeat("node1", true);
+        assertEquals(CircuitBreakerState.OPEN, registry.getStatus("node1").getState());
+    }
+
+    @Test
+    void shouldHalfOpenAfterOpenMillis() {
+        properties.getBreaker().setOpenMillis(0L);
+        registry.record("node1", new EmptyResultException("timeout"));
+        registry.record("node1", new EmptyResultException("timeout"));
+
+        assertTrue(registry.tryAcquire("node1"));
+        assertEquals(CircuitBreakerState.HALF_OPEN, registry.getStatus("node1").getState());
+    }
+
+    @Test
+    void shouldHalfOpenTimeoutAfterResetOfHeartbeatOpenedBreaker() {
+        properties.getBreaker().setOpenMillis(0L);
+        registry.onHeartbeat("node1", false);
+        registry.reset("node1");
+        assertTrue(registry.tryAcquire("node1"));
+
+        // 手动恢复后不再有心跳驱动（如节点已移交给其他master实例），超时熔断仍按熔断时间恢复
+        registry.record("node1", new EmptyResultException("timeout"));
+        registry.record("node1", new EmptyResultException("timeout"));
+        assertTrue(registry.tryAcquire("node1"));
+        assertEquals(CircuitBreakerState.HALF_OPEN, registry.getStatus("node1").getState());
+    }
+
+    @Test
+    void shouldPassThroughWhenDisabled() {
+        properties.getBreaker().setEnabled(false);
+        registry.onHeartbeat("node1", false);
+        assertTrue(registry.tryAcquire("node1"));
+    }
+}
@@ -0,0 +1,188 @@
+package com.zeta.firewall.service;
+
+import com.zeta.firewall.codec.JsonMessageCodec;
+import com.zeta.firewall.codec.MessageCodecRegistry;
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.exception.AgentUnavailableException;
+import com.zeta.firewall.model.dto.RedisCommandMessage;
+import com.zeta.firewall.model.entity.PortRule;
+import com.zeta.firewall.subscirbe.StreamProducer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.stream.RecordId;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class AgentCommandServiceTest {
+
+    private StreamProducer streamProducer;
+    private StreamResponseService streamResponseService;
+    private FirewallProperties properties;
+    private AgentVersionRegistry versions;
+    private AgentCircuitBreakerRegistry breakers;
+    private AgentCommandService agentCommandService;
+
+    @BeforeEach
+    void setUp() {
+        streamProducer = mock(StreamProducer.class);
+        streamResponseService = mock(StreamResponseService.class);
+        properties = new FirewallProperties();
+        versions = new AgentVersionRegistry();
+        MessageCodecRegistry registry = new MessageCodecRegistry(List.of(new JsonMessageCodec()), properties, versions);
+        breakers = new AgentCircuitBreakerRegistry(properties);
+        agentCommandService = new AgentCommandService(streamProducer, streamResponseService, properties, registry, versions, breakers,
+                new AgentLatencyTracker(properties));
+
+        when(streamProducer.publishEncodedMessage(anyString(), any())).thenReturn(RecordId.of("1700000000000-0"));
+    }
+
+    @Test
+    void submit_shouldCoalesceIdenticalQueries() {
+        CompletableFuture<Map<Object, Object>> response = new CompletableFuture<>();
+        when(streamResponseService.awaitResponse(anyString(), anyString(), anyString(), any(), any())).thenReturn(response);
+
+        CompletableFuture<Map<Object, Object>> first = agentCommandService.submit("node1", "portRule", query("public"), Duration.ofSeconds(5));
+        CompletableFuture<Map<Object, Object>> second = agentCommandService.submit("node1", "portRule", query("public"), Duration.ofSeconds(5));
+
+        verify(streamProducer, times(1)).publishEncodedMessage(anyString(), any());
+        assertEquals(1, agentCommandService.getCoalescedCount());
+
+        Map<Object, Object> value = new HashMap<>();
+        value.put("status", "200");
+        response.complete(value);
+
+        assertSame(value, first.join());
+        assertSame(value, second.join());
+
+        // 查询完成后，新的查询重新下发
+        agentCommandService.submit("node1", "portRule", query("public"), Duration.ofSeconds(5));
+        verify(streamProducer, times(2)).publishEncodedMessage(anyString(), any());
+    }
+
+    @Test
+    void submit_shouldNotCoalesceDifferentParamsOrWrites() {
+        when(streamResponseService.awaitResponse(anyString(), anyString(), anyString(), any(), any())).thenReturn(new CompletableFuture<>());
+
+        agentCommandService.submit("node1", "portRule", query("public"), Duration.ofSeconds(5));
+        agentCommandService.submit("node1", "portRule", query("internal"), Duration.ofSeconds(5));
+        agentCommandService.submit("node2", "portRule", query("public"), Duration.ofSeconds(5));
+
+        RedisCommandMessage<PortRule> insert = query("public");
+        insert.setDataOpType(RedisCommandMessage.OperationType.INSERT);
+        agentCommandService.submit("node1", "portRule", insert, Duration.ofSeconds(5));
+        agentCommandService.submit("node1", "portRule", insert, Duration.ofSeconds(5));
+
+        verify(streamProducer, times(5)).publishEncodedMessage(anyString(), any());
+        assertEquals(0, agentCommandService.getCoalescedCount());
+    }
+
+    @Test
+    void submit_shouldNotCoalesceHighPriorityQueryWithLowLaneQuery() {
+        versions.update("node1", "2.0.0");
+        when(streamResponseService.awaitResponse(anyString(), anyString(), anyString(), any(), any())).thenReturn(new CompletableFuture<>());
+
+        RedisCommandMessage<PortRule> bulk = query("public");
+        bulk.setPriority(RedisCommandMessage.Priority.LOW);
+        agentCommandService.submit("node1", "portRule", bulk, Duration.ofSeconds(5));
+        agentCommandService.submit("node1", "portRule", query("public"), Duration.ofSeconds(5));
+
+        // 交互查询不在低优先级通道排队，单独下发
+        verify(streamProducer).publishEncodedMessage(eq("pub:node1:portRule:low"), any());
+        verify(streamProducer).publishEncodedMessage(eq("pub:node1:portRule"), any());
+        assertEquals(0, agentCommandService.getCoalescedCount());
+    }
+
+    @Test
+    void submit_shouldShareFailure() {
+        CompletableFuture<Map<Object, Object>> response = new CompletableFuture<>();
+        when(streamResponseService.awaitResponse(anyString(), anyString(), anyString(), any(), any())).thenReturn(response);
+
+        CompletableFuture<Map<Object, Object>> first = agentCommandService.submit("node1", "portRule", query("public"), Duration.ofSeconds(5));
+        CompletableFuture<Map<Object, Object>> second = agentCommandService.submit("node1", "portRule", query("public"), Duration.ofSeconds(5));
+        response.completeExceptionally(new IllegalStateException("timeout"));
+
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+    }
+
+    @Test
+    void submit_shouldRouteLowPriorityToLowLaneForSupportedAgents() {
+        when(streamResponseService.awaitResponse(anyString(), anyString(), anyString(), any(), any())).thenReturn(new CompletableFuture<>());
+        versions.update("node1", "2.0.0");
+        versions.update("node2", "1.0.0");
+
+        RedisCommandMessage<PortRule> insert = query("public");
+        insert.setDataOpType(RedisCommandMessage.OperationType.INSERT);
+        AgentCommandService.withPriority(RedisCommandMessage.Priority.LOW,
+                () -> agentCommandService.submit("node1", "portRule", insert, Duration.ofSeconds(5)));
+        verify(streamProducer).publishEncodedMessage(eq("pub:node1:portRule:low"), any());
+        verify(streamResponseService).awaitResponse(eq("node1"), eq("sub:node1:portRule:low"), eq("pub:node1:portRule:low"), any(), any());
+        assertEquals(RedisCommandMessage.Priority.LOW, insert.getPriority());
+
+        // 旧版本agent节点只使用高优先级通道
+        RedisCommandMessage<PortRule> oldAgentInsert = query("public");
+        oldAgentInsert.setDataOpType(RedisCommandMessage.OperationType.INSERT);
+        oldAgentInsert.setPriority(RedisCommandMessage.Priority.LOW);
+        agentCommandService.submit("node2", "portRule", oldAgentInsert, Duration.ofSeconds(5));
+        verify(streamProducer).publishEncodedMessage(eq("pub:node2:portRule"), any());
+
+        // 未指定优先级时默认高优先级
+        RedisCommandMessage<PortRule> interactive = query("public");
+        interactive.setDataOpType(RedisCommandMessage.OperationType.INSERT);
+        agentCommandService.submit("node1", "portRule", interactive, Duration.ofSeconds(5));
+        verify(streamProducer).publishEncodedMessage(eq("pub:node1:portRule"), any());
+        assertEquals(RedisCommandMessage.Priority.HIGH, interactive.getPriority());
+    }
+
+    @Test
+    void submit_shouldFailFastWhenCircuitOpen() {
+        breakers.onHeartbeat("node1", false);
+
+        CompletableFuture<Map<Object, Object>> future = agentCommandService.submit("node1", "portRule", query("public"), Duration.ofSeconds(5));
+
+        assertTrue(future.isCompletedExceptionally());
+        CompletionException e = assertThrows(CompletionException.class, future::join);
+        assertTrue(e.getCause() instanceof AgentUnavailableException);
+        verify(streamProducer, never()).publishEncodedMessage(anyString(), any());
+    }
+
+    @Test
+    void submitAll_shouldSkipOpenCircuitNodes() {
+        when(streamProducer.publishEncodedMessages(any())).thenReturn(List.of(RecordId.of("1700000000000-0")));
+        when(streamResponseService.awaitResponse(anyString(), anyString(), anyString(), any(), any())).thenReturn(new CompletableFuture<>());
+        breakers.onHeartbeat("node2", false);
+
+        Map<String, RedisCommandMessage<PortRule>> messages = new HashMap<>();
+        messages.put("node1", query("public"));
+        messages.put("node2", query("public"));
+        Map<String, CompletableFuture<Map<Object, Object>>> futures = agentCommandService.submitAll(messages, "portRule", Duration.ofSeconds(5));
+
+        assertFalse(futures.get("node1").isDone());
+        assertTrue(futures.get("node2").isCompletedExceptionally());
+        verify(streamResponseService, times(1)).awaitResponse(eq("node1"), anyString(), anyString(), any(), any());
+    }
+
+    private static RedisCommandMessage<PortRule> query(String zoneName) {
+        Map<String, String> params = new HashMap<>();
+        params.put("zoneName", zoneName);
+        params.put("policy", "true");
+        return RedisCommandMessage.<PortRule>builder()
+                .agentId("node1")
+                .ts(System.currentTimeMillis() / 1000)
+                .agentComponentType(RedisCommandMessage.ComponentType.FIREWALL)
+                .dataOpType(RedisCommandMessage.OperationType.QUERY)
+                .requestParams(params)
+                .build();
+    }
+}
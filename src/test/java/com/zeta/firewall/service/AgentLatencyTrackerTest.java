@@ -0,0 +1,70 @@
+package com.zeta.firewall.service;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgentLatencyTrackerTest {
+
+    private FirewallProperties properties;
+    private AgentLatencyTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        properties = new FirewallProperties();
+        properties.getLatency().setMinSamples(10);
+        tracker = new AgentLatencyTracker(properties);
+    }
+
+    @Test
+    void timeoutFor_shouldUseDefaultWithoutEnoughSamples() {
+        for (int i = 0; i < 5; i++) {
+            tracker.record("node1", "portRule:QUERY", 30);
+        }
+        assertEquals(Duration.ofMillis(properties.getCommand().getTimeoutMillis()), tracker.timeoutFor("node1", "portRule:QUERY"));
+        assertEquals(Duration.ofMillis(properties.getCommand().getTimeoutMillis()), tracker.timeoutFor("node2", "portRule:QUERY"));
+    }
+
+    @Test
+    void timeoutFor_shouldScaleP99AndClamp() {
+        for (int i = 0; i < 20; i++) {
+            tracker.record("fast", "portRule:QUERY", 30);
+            tracker.record("slow", "portRule:QUERY", 4000);
+            tracker.record("wan", "portRule:QUERY", 15000);
+        }
+
+        // 50ms × 3 低于下限
+        assertEquals(Duration.ofMillis(1000), tracker.timeoutFor("fast", "portRule:QUERY"));
+        // 5000ms × 3
+        assertEquals(Duration.ofMillis(15000), tracker.timeoutFor("slow", "portRule:QUERY"));
+        // 20000ms × 3 超过上限
+        assertEquals(Duration.ofMillis(30000), tracker.timeoutFor("wan", "portRule:QUERY"));
+    }
+
+    @Test
+    void timeoutFor_shouldWidenToCapAfterTimeout() {
+        for (int i = 0; i < 20; i++) {
+            tracker.record("node1", "portRule:QUERY", 30);
+        }
+        assertEquals(Duration.ofMillis(1000), tracker.timeoutFor("node1", "portRule:QUERY"));
+
+        tracker.recordTimeout("node1", "portRule:QUERY");
+
+        assertEquals(Duration.ofMillis(properties.getLatency().getCapMillis()), tracker.timeoutFor("node1", "portRule:QUERY"));
+    }
+
+    @Test
+    void getStats_shouldFilterByNode() {
+        tracker.record("node1", "portRule:QUERY", 30);
+        tracker.record("node1", "portInfo:QUERY", 30);
+        tracker.recordTimeout("node2", "portRule:QUERY");
+
+        assertEquals(2, tracker.getStats("node1").size());
+        assertEquals(3, tracker.getStats().size());
+        assertEquals(1L, tracker.getStats("node2").get(0).getTimeouts());
+    }
+}
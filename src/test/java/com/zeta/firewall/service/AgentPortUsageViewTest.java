@@ -0,0 +1,86 @@
+package com.zeta.firewall.service;
+
+import com.zeta.firewall.dao.PortRuleMapper;
+import com.zeta.firewall.event.PortRuleUpdateEvent;
+import com.zeta.firewall.model.entity.PortInfo;
+import com.zeta.firewall.model.entity.PortRule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class AgentPortUsageViewTest {
+
+    private PortRuleMapper portRuleMapper;
+    private PortInfoService portInfoService;
+    private AgentPortUsageView view;
+
+    private final PortRule web = rule(1L, "node1", "80,443");
+    private final PortRule ssh = rule(2L, "node1", "22");
+
+    @BeforeEach
+    void setUp() {
+        portRuleMapper = mock(PortRuleMapper.class);
+        portInfoService = mock(PortInfoService.class);
+        AgentShardManager agentShardManager = mock(AgentShardManager.class);
+        when(agentShardManager.owns(anyString())).thenReturn(true);
+        view = new AgentPortUsageView(portRuleMapper, portInfoService, agentShardManager);
+
+        when(portRuleMapper.selectList(any())).thenReturn(List.of(web, ssh));
+        when(portInfoService.queryPortInfosByAgentIdDB("node1")).thenReturn(List.of(portInfo(10L, 80)));
+    }
+
+    @Test
+    void get_shouldLoadOnceAndMatchPorts() {
+        AgentPortUsageView.AgentPortUsage usage = view.get("node1");
+        view.get("node1");
+
+        assertEquals(List.of(web, ssh), usage.getRules());
+        assertEquals(Set.of(1L), usage.getUsingRuleIds());
+        assertEquals(80, usage.getPortInfos(1L).get(0).getPortNumber());
+        assertTrue(usage.getPortInfos(2L).isEmpty());
+        verify(portRuleMapper, times(1)).selectList(any());
+    }
+
+    @Test
+    void onPortInfosChanged_shouldRematchWithoutDatabase() {
+        view.get("node1");
+
+        view.onPortInfosChanged("node1", List.of(portInfo(11L, 22)));
+
+        assertEquals(Set.of(2L), view.get("node1").getUsingRuleIds());
+        verify(portRuleMapper, times(1)).selectList(any());
+        verify(portInfoService, times(1)).queryPortInfosByAgentIdDB("node1");
+    }
+
+    @Test
+    void handlePortRuleUpdate_shouldInvalidateOnlyAffectedAgents() {
+        view.get("node1");
+
+        view.handlePortRuleUpdate(new PortRuleUpdateEvent(this, List.of("node2")));
+        view.get("node1");
+        verify(portRuleMapper, times(1)).selectList(any());
+
+        view.handlePortRuleUpdate(new PortRuleUpdateEvent(this, List.of("node1")));
+        view.get("node1");
+        verify(portRuleMapper, times(2)).selectList(any());
+    }
+
+    private static PortRule rule(Long id, String agentId, String port) {
+        PortRule rule = PortRule.builder().id(id).port(port).protocol("tcp").build();
+        rule.setAgentId(agentId);
+        return rule;
+    }
+
+    private static PortInfo portInfo(Long id, int port) {
+        PortInfo portInfo = PortInfo.builder().agentId("node1").protocol("tcp").portNumber(port).processName("nginx").build();
+        portInfo.setId(id);
+        return portInfo;
+    }
+}
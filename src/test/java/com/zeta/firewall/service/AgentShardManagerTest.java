@@ -0,0 +1,51 @@
+package com.zeta.firewall.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgentShardManagerTest {
+
+    @Test
+    void assignShards_shouldAssignEveryShard() {
+        Map<Integer, String> assignment = AgentShardManager.assignShards(List.of("m1", "m2", "m3"), 64, 100);
+
+        assertEquals(64, assignment.size());
+        // 每个实例都应分到分片
+        assertTrue(assignment.values().containsAll(List.of("m1", "m2", "m3")));
+    }
+
+    @Test
+    void assignShards_shouldBeIndependentOfMemberOrder() {
+        assertEquals(AgentShardManager.assignShards(List.of("m1", "m2", "m3"), 64, 100),
+                AgentShardManager.assignShards(List.of("m3", "m1", "m2"), 64, 100));
+    }
+
+    @Test
+    void assignShards_shouldOnlyMoveShardsToNewMember() {
+        Map<Integer, String> before = AgentShardManager.assignShards(List.of("m1", "m2"), 64, 100);
+        Map<Integer, String> after = AgentShardManager.assignShards(List.of("m1", "m2", "m3"), 64, 100);
+
+        for (int shard = 0; shard < 64; shard++) {
+            if (!before.get(shard).equals(after.get(shard))) {
+                assertEquals("m3", after.get(shard), "shard " + shard + " should only move to the new member");
+            }
+        }
+    }
+
+    @Test
+    void assignShards_shouldReturnEmptyWithoutMembers() {
+        assertTrue(AgentShardManager.assignShards(List.of(), 64, 100).isEmpty());
+    }
+
+    @Test
+    void shardOf_shouldBeStableAndInRange() {
+        int shard = AgentShardManager.shardOf("1RrFJTC3tXpli0epSySUPN", 64);
+
+        assertEquals(shard, AgentShardManager.shardOf("1RrFJTC3tXpli0epSySUPN", 64));
+        assertTrue(shard >= 0 && shard < 64);
+    }
+}
@@ -0,0 +1,71 @@
+package com.zeta.firewall.service;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.model.dto.PortUsageDelta;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PortUsagePublisherTest {
+
+    private SimpMessagingTemplate template;
+    private ObjectProvider<SimpMessagingTemplate> provider;
+    private FirewallProperties properties;
+    private PortUsagePublisher publisher;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        template = mock(SimpMessagingTemplate.class);
+        provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(template);
+        properties = new FirewallProperties();
+        publisher = new PortUsagePublisher(provider, properties);
+    }
+
+    @Test
+    void publish_shouldSendToAgentTopic() {
+        PortUsageDelta delta = delta("node1");
+
+        publisher.publish(delta);
+
+        verify(template).convertAndSend("/topic/agent/node1/ports", delta);
+    }
+
+    @Test
+    void publish_shouldSkipWhenDisabledOrWebsocketMissing() {
+        properties.getPortSync().setPushEnabled(false);
+        publisher.publish(delta("node1"));
+
+        properties.getPortSync().setPushEnabled(true);
+        when(provider.getIfAvailable()).thenReturn(null);
+        publisher.publish(delta("node1"));
+
+        verifyNoInteractions(template);
+    }
+
+    @Test
+    void publish_shouldSwallowSendFailure() {
+        doThrow(new MessagingException("broker unavailable")).when(template).convertAndSend(anyString(), any(Object.class));
+
+        assertDoesNotThrow(() -> publisher.publish(delta("node1")));
+    }
+
+    private static PortUsageDelta delta(String nodeId) {
+        return PortUsageDelta.builder()
+                .nodeId(nodeId)
+                .timestamp(System.currentTimeMillis())
+                .added(Collections.emptyList())
+                .changed(Collections.emptyList())
+                .removed(Collections.emptyList())
+                .build();
+    }
+}
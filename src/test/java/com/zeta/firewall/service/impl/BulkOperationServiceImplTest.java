@@ -0,0 +1,91 @@
+package com.zeta.firewall.service.impl;
+
+import com.zeta.firewall.config.properties.FirewallProperties;
+import com.zeta.firewall.model.dto.BulkOperationRequest;
+import com.zeta.firewall.model.dto.BulkOperationResult;
+import com.zeta.firewall.model.enums.BulkOperationType;
+import com.zeta.firewall.service.FirewallStatusInfoService;
+import com.zeta.firewall.service.PortRuleService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.zetaframework.core.exception.BusinessException;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class BulkOperationServiceImplTest {
+
+    private FirewallStatusInfoService firewallStatusInfoService;
+    private ThreadPoolTaskExecutor executor;
+    private BulkOperationServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        FirewallProperties firewallProperties = new FirewallProperties();
+        firewallStatusInfoService = mock(FirewallStatusInfoService.class);
+
+        // 1个线程 + 1个队列位置
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(1);
+        executor.initialize();
+
+        service = new BulkOperationServiceImpl(mock(PortRuleService.class), firewallStatusInfoService,
+                executor, firewallProperties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void execute_shouldRunAllNodesWhenCapacityIsEnough() {
+        when(firewallStatusInfoService.operatePing(anyString(), anyString())).thenReturn(true);
+
+        BulkOperationResult result = service.execute(pingRequest("node1", "node2"));
+
+        assertEquals(2, result.getTotal());
+        assertEquals(2, result.getSuccessCount());
+        assertEquals(0, result.getFailCount());
+    }
+
+    @Test
+    void execute_shouldFailFastWhenExecutorIsSaturated() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        try {
+            // 线程被占用，只剩1个队列位置，放不下2个节点
+            assertThrows(BusinessException.class, () -> service.execute(pingRequest("node1", "node2")));
+            verifyNoInteractions(firewallStatusInfoService);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static BulkOperationRequest pingRequest(String... nodeIds) {
+        BulkOperationRequest request = new BulkOperationRequest();
+        request.setNodeIds(Arrays.asList(nodeIds));
+        request.setOperation(BulkOperationType.PING);
+        request.setPingStatus("Disable");
+        return request;
+    }
+}
@@ -0,0 +1,74 @@
+package com.zeta.firewall.subscirbe;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedResponseAssemblerTest {
+
+    @Test
+    void accept_shouldAssembleChunksInSeqOrder() {
+        ChunkedResponseAssembler assembler = new ChunkedResponseAssembler(1024);
+
+        // 分块乱序到达
+        assertNull(assembler.accept(chunk(1, false, "[{\"port\":\"80\"}]"), 20));
+        assertNull(assembler.accept(chunk(0, false, "[{\"port\":\"22\"}]"), 20));
+        Map<Object, Object> response = assembler.accept(chunk(2, true, "[{\"port\":\"443\"}]"), 20);
+
+        assertNotNull(response);
+        assertEquals("200", response.get("status"));
+        JsonNode data = (JsonNode) response.get("data");
+        assertEquals(3, data.size());
+        assertEquals("22", data.get(0).get("port").asText());
+        assertEquals("80", data.get(1).get("port").asText());
+        assertEquals("443", data.get(2).get("port").asText());
+    }
+
+    @Test
+    void accept_shouldWaitForMissingChunkBeforeLast() {
+        ChunkedResponseAssembler assembler = new ChunkedResponseAssembler(1024);
+
+        assertNull(assembler.accept(chunk(0, false, "[1]"), 10));
+        assertNull(assembler.accept(chunk(2, true, "[3]"), 10));
+        assertEquals(2, assembler.receivedChunks());
+
+        Map<Object, Object> response = assembler.accept(chunk(1, false, "[2]"), 10);
+        assertNotNull(response);
+        assertEquals("[1,2,3]", response.get("data").toString());
+    }
+
+    @Test
+    void accept_shouldIgnoreDuplicateChunks() {
+        ChunkedResponseAssembler assembler = new ChunkedResponseAssembler(25);
+
+        assertNull(assembler.accept(chunk(0, false, "[1]"), 10));
+        // 重复的分块不计入字节数
+        assertNull(assembler.accept(chunk(0, false, "[1]"), 10));
+        Map<Object, Object> response = assembler.accept(chunk(1, true, "[2]"), 10);
+
+        assertNotNull(response);
+        assertEquals("[1,2]", response.get("data").toString());
+    }
+
+    @Test
+    void accept_shouldFailWhenExceedingMaxBytes() {
+        ChunkedResponseAssembler assembler = new ChunkedResponseAssembler(15);
+
+        assertNull(assembler.accept(chunk(0, false, "[1]"), 10));
+        assertThrows(IllegalStateException.class, () -> assembler.accept(chunk(1, true, "[2]"), 10));
+    }
+
+    private static Map<Object, Object> chunk(int seq, boolean last, String data) {
+        Map<Object, Object> chunk = new HashMap<>();
+        chunk.put(ChunkedResponseAssembler.FIELD_REQUEST_ID, "1700000000000-0");
+        chunk.put(ChunkedResponseAssembler.FIELD_CHUNK_SEQ, String.valueOf(seq));
+        chunk.put(ChunkedResponseAssembler.FIELD_CHUNK_LAST, String.valueOf(last));
+        chunk.put("status", "200");
+        chunk.put("data", data);
+        return chunk;
+    }
+}
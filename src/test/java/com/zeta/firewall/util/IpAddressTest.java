@@ -0,0 +1,70 @@
+package com.zeta.firewall.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IpAddressTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "192.168.1.1, 4, 192.168.1.1",
+            "192.168.1, 4, 192.168.0.1",
+            "10.1, 4, 10.0.0.1",
+            "167772161, 4, 10.0.0.1",
+            "::1, 6, 0:0:0:0:0:0:0:1",
+            "2001:db8::1, 6, 2001:db8:0:0:0:0:0:1",
+            "1:2:3:4:5:6:7::, 6, 1:2:3:4:5:6:7:0",
+            "::1.2.3.4, 6, 0:0:0:0:0:0:102:304",
+            "[fe80::1], 6, fe80:0:0:0:0:0:0:1",
+            "fe80::1%2, 6, fe80:0:0:0:0:0:0:1",
+            // IPv4映射地址与 InetAddress 一样视为IPv4
+            "::ffff:192.168.1.1, 4, 192.168.1.1"
+    })
+    void parse_shouldAcceptInetAddressLiterals(String ip, int version, String expected) {
+        IpAddress address = IpAddress.parse(ip);
+
+        assertNotNull(address);
+        assertEquals(version, address.getVersion());
+        assertEquals(expected, address.toString());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "localhost", "invalid-ip", "999.999.999.999", "1.2.3.4.", "1..2.3", "1.2.65536",
+            "1:2:3:4:5:6:7:8:9", "1::2::3", ":1::2", "1:", "12345::", "::1.2.3", "[1.2.3.4]", "fe80::1%eth0", "1.2.3.4/24"})
+    void parse_shouldRejectInvalidAddresses(String ip) {
+        assertNull(IpAddress.parse(ip));
+    }
+
+    @Test
+    void compareTo_shouldOrderNumerically() {
+        assertTrue(IpAddress.parse("10.0.0.2").compareTo(IpAddress.parse("10.0.0.10")) < 0);
+        assertTrue(IpAddress.parse("ffff::").compareTo(IpAddress.parse("7fff::")) > 0);
+        assertTrue(IpAddress.parse("255.255.255.255").compareTo(IpAddress.parse("::")) < 0);
+        assertEquals(IpAddress.parse("2001:db8::1"), IpAddress.parse("2001:0DB8:0:0:0:0:0:1"));
+    }
+
+    @Test
+    void ipRange_shouldParseCidrAndRanges() {
+        IpRange cidr = IpRange.parse("192.168.1.77/24");
+        assertEquals("192.168.1.0-192.168.1.255", cidr.toString());
+        assertTrue(cidr.contains(IpAddress.parse("192.168.1.200")));
+        assertFalse(cidr.contains(IpAddress.parse("192.168.2.1")));
+        assertFalse(cidr.contains(IpAddress.parse("::ffff:c0a8:201")));
+
+        IpRange v6 = IpRange.parse("2001:db8::/65");
+        assertEquals(IpAddress.parse("2001:db8::7fff:ffff:ffff:ffff"), v6.getEnd());
+
+        IpRange range = IpRange.parse("10.0.0.1-10.0.0.100");
+        assertTrue(range.overlaps(IpRange.parse("10.0.0.0/28")));
+        assertFalse(range.overlaps(IpRange.parse("::/0")));
+
+        assertEquals(IpRange.parse("0.0.0.0-255.255.255.255"), IpRange.parse("0.0.0.0/0"));
+        assertNull(IpRange.parse("10.0.0.5-10.0.0.1"));
+        assertNull(IpRange.parse("10.0.0.1-::1"));
+        assertNull(IpRange.parse("1.2.3.4/33"));
+    }
+}
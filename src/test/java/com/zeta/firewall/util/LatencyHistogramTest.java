@@ -0,0 +1,51 @@
+package com.zeta.firewall.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentile_shouldReturnBucketUpperBound() {
+        LatencyHistogram histogram = new LatencyHistogram(60000, 0);
+        for (int i = 0; i < 99; i++) {
+            histogram.record(30, 0);
+        }
+        histogram.record(1500, 0);
+
+        assertEquals(100, histogram.count(0));
+        assertEquals(50, histogram.percentile(0.5, 0));
+        assertEquals(50, histogram.percentile(0.99, 0));
+        assertEquals(2000, histogram.percentile(1.0, 0));
+        assertEquals(1500, histogram.max(0));
+    }
+
+    @Test
+    void percentile_shouldUseMaxForOverflowBucket() {
+        LatencyHistogram histogram = new LatencyHistogram(60000, 0);
+        histogram.record(90000, 0);
+
+        assertEquals(90000, histogram.percentile(0.99, 0));
+    }
+
+    @Test
+    void rotate_shouldKeepPreviousWindowOnly() {
+        LatencyHistogram histogram = new LatencyHistogram(1000, 0);
+        histogram.record(10, 0);
+        histogram.recordTimeout(0);
+
+        // 进入下一个窗口，上一个窗口的数据仍然参与统计
+        histogram.record(10, 1500);
+        assertEquals(2, histogram.count(1500));
+        assertEquals(1, histogram.timeouts(1500));
+
+        // 再过一个窗口，最早的数据被淘汰
+        assertEquals(1, histogram.count(2500));
+        assertEquals(0, histogram.timeouts(2500));
+
+        // 长时间没有数据时全部清空
+        assertEquals(0, histogram.count(10000));
+        assertEquals(0, histogram.percentile(0.99, 10000));
+    }
+}
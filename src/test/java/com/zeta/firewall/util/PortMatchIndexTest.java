@@ -0,0 +1,77 @@
+package com.zeta.firewall.util;
+
+import com.zeta.firewall.model.entity.PortInfo;
+import com.zeta.firewall.model.entity.PortRule;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PortMatchIndexTest {
+
+    @Test
+    void match_shouldMatchCommaSeparatedPortsExactly() {
+        PortRule rule = rule(1L, "node1", "8080,22", "tcp");
+        PortMatchIndex index = PortMatchIndex.of(List.of(rule));
+
+        assertEquals(List.of(rule), index.match("node1", "tcp", 8080));
+        assertEquals(List.of(rule), index.match("node1", "tcp", 22));
+        // "8080" 不应匹配 80，"22" 不应匹配 2
+        assertTrue(index.match("node1", "tcp", 80).isEmpty());
+        assertTrue(index.match("node1", "tcp", 2).isEmpty());
+    }
+
+    @Test
+    void match_shouldMatchRangesAndOverlaps() {
+        PortRule range = rule(1L, "node1", "1000-2000", "tcp");
+        PortRule single = rule(2L, "node1", "1500", "tcp");
+        PortMatchIndex index = PortMatchIndex.of(List.of(range, single));
+
+        assertEquals(List.of(range), index.match("node1", "tcp", 1000));
+        assertEquals(List.of(range), index.match("node1", "tcp", 2000));
+        assertEquals(List.of(range, single), index.match("node1", "tcp", 1500));
+        assertTrue(index.match("node1", "tcp", 999).isEmpty());
+        assertTrue(index.match("node1", "tcp", 2001).isEmpty());
+    }
+
+    @Test
+    void match_shouldSeparateAgentsAndProtocols() {
+        PortRule both = rule(1L, "node1", "53", "tcp/udp");
+        PortRule udp = rule(2L, "node2", "53", "UDP");
+        PortMatchIndex index = PortMatchIndex.of(List.of(both, udp));
+
+        assertEquals(List.of(both), index.match("node1", "tcp", 53));
+        assertEquals(List.of(both), index.match("node1", "udp", 53));
+        assertEquals(List.of(udp), index.match("node2", "udp", 53));
+        assertTrue(index.match("node2", "tcp", 53).isEmpty());
+    }
+
+    @Test
+    void of_shouldIgnoreInvalidPorts() {
+        PortRule rule = rule(1L, "node1", "abc, 70000, 443, 20-10", "tcp");
+        PortMatchIndex index = PortMatchIndex.of(List.of(rule));
+
+        assertEquals(List.of(rule), index.match("node1", "tcp", 443));
+        assertTrue(index.match("node1", "tcp", 15).isEmpty());
+    }
+
+    @Test
+    void connectPortInfosWithPortRules_shouldKeepEveryRuleKey() {
+        PortRule web = rule(1L, "node1", "80,443", "tcp");
+        PortRule alt = rule(2L, "node1", "8080", "tcp");
+        PortInfo info = PortInfo.builder().agentId("node1").protocol("tcp").portNumber(80).build();
+
+        Map<String, List<PortInfo>> mappings = PortRuleUtils.connectPortInfosWithPortRules(List.of(web, alt), List.of(info));
+
+        assertEquals(List.of(info), mappings.get("1"));
+        assertTrue(mappings.get("2").isEmpty());
+    }
+
+    private static PortRule rule(Long id, String agentId, String port, String protocol) {
+        PortRule rule = PortRule.builder().id(id).port(port).protocol(protocol).build();
+        rule.setAgentId(agentId);
+        return rule;
+    }
+}
@@ -0,0 +1,80 @@
+package com.zeta.firewall.util;
+
+import com.zeta.firewall.model.entity.PortRule;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PortRangeSetTest {
+
+    @Test
+    void parse_shouldSortAndMergeOverlappingAndAdjacentRanges() {
+        PortRangeSet ports = PortRangeSet.parse("1000-2000, 80, 1500-2500, 2501, 22, abc, 70000, 20-10");
+
+        assertEquals(List.of("22", "80", "1000-2501"), ports.toTokens());
+        assertEquals("22,80,1000-2501", ports.toString());
+        assertEquals(3, ports.rangeCount());
+        assertEquals(1504, ports.size());
+    }
+
+    @Test
+    void parse_shouldNotExpandFullRange() {
+        PortRangeSet ports = PortRangeSet.parse("1-65535");
+
+        assertEquals(1, ports.rangeCount());
+        assertEquals(65535, ports.size());
+        assertTrue(ports.contains(1));
+        assertTrue(ports.contains(65535));
+    }
+
+    @Test
+    void contains_shouldCheckRangeBoundaries() {
+        PortRangeSet ports = PortRangeSet.parse("22,1000-2000");
+
+        assertTrue(ports.contains(22));
+        assertTrue(ports.contains(1000));
+        assertTrue(ports.contains(2000));
+        assertFalse(ports.contains(21));
+        assertFalse(ports.contains(999));
+        assertFalse(ports.contains(2001));
+        assertFalse(PortRangeSet.empty().contains(22));
+    }
+
+    @Test
+    void unionAndIntersect() {
+        PortRangeSet a = PortRangeSet.parse("1-100,200-300");
+        PortRangeSet b = PortRangeSet.parse("50-250,301");
+
+        assertEquals(PortRangeSet.parse("1-301"), a.union(b));
+        assertEquals(List.of("50-100", "200-250"), a.intersect(b).toTokens());
+        assertTrue(a.intersect(PortRangeSet.of(400, 500)).isEmpty());
+        assertEquals(a, a.union(PortRangeSet.empty()));
+    }
+
+    @Test
+    void toPortList_shouldExpandForLegacyAgents() {
+        assertEquals(List.of("22", "80", "81", "82"), PortRangeSet.parse("80-82,22").toPortList());
+    }
+
+    @Test
+    void portRangesByAgentAndProtocol_shouldSplitTcpUdp() {
+        PortRule both = rule("node1", "53", "tcp/udp");
+        PortRule tcp = rule("node1", "1000-2000,54", "TCP");
+        PortRule invalid = rule("node2", "abc", "tcp");
+
+        Map<String, PortRangeSet> ranges = PortRuleUtils.portRangesByAgentAndProtocol(List.of(both, tcp, invalid));
+
+        assertEquals("53-54,1000-2000", ranges.get("node1|tcp").toString());
+        assertEquals("53", ranges.get("node1|udp").toString());
+        assertFalse(ranges.containsKey("node2|tcp"));
+    }
+
+    private static PortRule rule(String agentId, String port, String protocol) {
+        PortRule rule = PortRule.builder().port(port).protocol(protocol).build();
+        rule.setAgentId(agentId);
+        return rule;
+    }
+}
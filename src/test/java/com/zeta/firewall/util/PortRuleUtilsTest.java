@@ -1,17 +1,17 @@
 package com.zeta.firewall.util;
 
 
-import com.zeta.firewall.model.entity.PortInfo;
 import com.zeta.firewall.model.entity.PortRule;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
-import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class PortRuleUtilsTest {
 
     @Test
-    public void expandAndDeduplicatePortRules() {
+    public void portRangesByAgentAndProtocol() {
 
         PortRule portRule1 = PortRule
                 .builder()
@@ -25,12 +25,14 @@ public class PortRuleUtilsTest {
                 .protocol("tcp/udp")
                 .build();
 
+        portRule1.setAgentId("node1");
+        portRule2.setAgentId("node1");
+
         ArrayList<PortRule> portRules = new ArrayList<>();
         portRules.add(portRule1);
         portRules.add(portRule2);
 
-        List<PortInfo> expandedPortRules = PortRuleUtils.expandAndDeduplicatePortRules(portRules);
-        expandedPortRules.forEach(System.out::println);
-
+        assertEquals(PortRangeSet.of(1000, 1005), PortRuleUtils.portRangesByAgentAndProtocol(portRules).get("node1|tcp"));
+        assertEquals(PortRangeSet.of(1000, 1005), PortRuleUtils.portRangesByAgentAndProtocol(portRules).get("node1|udp"));
     }
-}
\ No newline at end of file
+}
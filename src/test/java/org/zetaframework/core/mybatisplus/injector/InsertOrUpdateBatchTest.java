@@ -0,0 +1,65 @@
+package org.zetaframework.core.mybatisplus.injector;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfo;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.zeta.firewall.dao.PortInfoMapper;
+import com.zeta.firewall.dao.PortRuleMapper;
+import com.zeta.firewall.model.entity.PortInfo;
+import com.zeta.firewall.model.entity.PortRule;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InsertOrUpdateBatchTest {
+
+    @Test
+    void shouldBuildMultiRowUpsertKeepingInsertOnlyColumns() {
+        PortInfo first = PortInfo.builder().agentId("node1").protocol("tcp").portNumber(22).build();
+        PortInfo second = PortInfo.builder().agentId("node1").protocol("tcp").portNumber(80).build();
+
+        BoundSql boundSql = boundSql(PortInfoMapper.class, PortInfo.class, List.of(first, second));
+        String sql = boundSql.getSql().replaceAll("\\s+", " ");
+
+        assertTrue(sql.startsWith("INSERT INTO firewall_port_info (id,"), sql);
+        assertTrue(sql.contains("ON DUPLICATE KEY UPDATE"), sql);
+        assertTrue(sql.contains("port_number = IFNULL(VALUES(port_number), port_number)"), sql);
+        assertTrue(sql.contains("update_time = IFNULL(VALUES(update_time), update_time)"), sql);
+        // 创建时间、创建人只在插入时写入
+        assertFalse(sql.contains("create_time = "), sql);
+        assertFalse(sql.contains("created_by = "), sql);
+        // 两行 VALUES
+        assertEquals(2, sql.split("\\)\\s*,\\s*\\(").length, sql);
+    }
+
+    @Test
+    void shouldSkipAutoIncrementId() {
+        PortRule rule = PortRule.builder().port("80").protocol("tcp").build();
+
+        String sql = boundSql(PortRuleMapper.class, PortRule.class, List.of(rule)).getSql().replaceAll("\\s+", " ");
+
+        assertFalse(sql.startsWith("INSERT INTO firewall_port_rule (id,"), sql);
+        assertTrue(sql.contains("source_rule = IFNULL(VALUES(source_rule), source_rule)"), sql);
+    }
+
+    private static BoundSql boundSql(Class<?> mapperClass, Class<?> modelClass, List<?> entityList) {
+        MybatisConfiguration configuration = new MybatisConfiguration();
+        configuration.setMapUnderscoreToCamelCase(true);
+        MapperBuilderAssistant assistant = new MapperBuilderAssistant(configuration, "");
+        assistant.setCurrentNamespace(mapperClass.getName());
+        TableInfo tableInfo = TableInfoHelper.initTableInfo(assistant, modelClass);
+        new InsertOrUpdateBatch().inject(assistant, mapperClass, modelClass, tableInfo);
+
+        MappedStatement statement = configuration.getMappedStatement(mapperClass.getName() + "." + InsertOrUpdateBatch.METHOD_NAME);
+        Map<String, Object> param = new HashMap<>();
+        param.put("list", entityList);
+        return statement.getBoundSql(param);
+    }
+}